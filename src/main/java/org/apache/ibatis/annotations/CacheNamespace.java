@@ -45,6 +45,12 @@ public @interface CacheNamespace {
 
   boolean blocking() default false;
 
+  /**
+   * Whether concurrent misses of a key share the query of the first one.
+   * @since 3.5.3
+   */
+  boolean singleFlight() default false;
+
   /**
    * Property values for a implementation object.
    * @since 3.4.2
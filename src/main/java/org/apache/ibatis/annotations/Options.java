@@ -63,4 +63,16 @@ public @interface Options {
   String keyColumn() default "";
 
   String resultSets() default "";
+
+  /**
+   * @return whether the rows are mapped to objects by a pool of threads (simple result maps only)
+   * @since 3.5.3
+   */
+  boolean parallelMapping() default false;
+
+  /**
+   * @return whether the items of a cursor are read ahead on another thread
+   * @since 3.5.3
+   */
+  boolean cursorPrefetch() default false;
 }
@@ -23,10 +23,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import org.apache.ibatis.annotations.Flush;
 import org.apache.ibatis.annotations.MapKey;
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.mapping.StatementType;
@@ -37,6 +40,7 @@ import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
 
 /**
  * @author Clinton Begin
@@ -57,6 +61,31 @@ public class MapperMethod {
   }
 
   public Object execute(SqlSession sqlSession, Object[] args) {
+    if (method.returnsFuture()) {
+      return executeAsync(sqlSession.getConfiguration(), args);
+    }
+    return executeInSession(sqlSession, args);
+  }
+
+  /**
+   * Executes the statement on the asynchronous executor of the configuration, in a session of its own that is
+   * committed when the statement succeeds (the SqlSession of the caller cannot be used by another thread).
+   */
+  private CompletableFuture<Object> executeAsync(Configuration configuration, Object[] args) {
+    return CompletableFuture.supplyAsync(() -> {
+      try (SqlSession sqlSession = new DefaultSqlSessionFactory(configuration).openSession()) {
+        Object result = executeInSession(sqlSession, args);
+        if (command.getType() != SqlCommandType.SELECT) {
+          sqlSession.commit();
+        }
+        return result;
+      } finally {
+        ErrorContext.instance().reset();
+      }
+    }, configuration.getAsyncExecutor());
+  }
+
+  private Object executeInSession(SqlSession sqlSession, Object[] args) {
     Object result;
     // 判断 SQL 语句的类型
     switch (command.getType()) {
@@ -314,6 +343,7 @@ public class MapperMethod {
     private final boolean returnsVoid;
     private final boolean returnsCursor;
     private final boolean returnsOptional;
+    private final boolean returnsFuture;
     private final Class<?> returnType;
     private final String mapKey;
     private final Integer resultHandlerIndex;
@@ -323,6 +353,11 @@ public class MapperMethod {
     public MethodSignature(Configuration configuration, Class<?> mapperInterface, Method method) {
       // 通过 TypeParameterResolver 工具类解析方法的返回值类型，初始化 returnType 字段值
       Type resolvedReturnType = TypeParameterResolver.resolveReturnType(method, mapperInterface);
+      // 异步方法的各项属性取决于 CompletableFuture 中结果的类型
+      this.returnsFuture = isFuture(resolvedReturnType);
+      if (this.returnsFuture) {
+        resolvedReturnType = ((ParameterizedType) resolvedReturnType).getActualTypeArguments()[0];
+      }
       if (resolvedReturnType instanceof Class<?>) {
         this.returnType = (Class<?>) resolvedReturnType;
       } else if (resolvedReturnType instanceof ParameterizedType) {
@@ -332,13 +367,17 @@ public class MapperMethod {
       }
 
       // 根据返回值类型，初始化 returnsVoid、returnsMany、returnsCursor、 returnsMap、returnsOptional 这五个字段
-      this.returnsVoid = void.class.equals(this.returnType);
+      this.returnsVoid = void.class.equals(this.returnType) || this.returnsFuture && Void.class.equals(this.returnType);
       this.returnsMany = configuration.getObjectFactory().isCollection(this.returnType) || this.returnType.isArray();
       this.returnsCursor = Cursor.class.equals(this.returnType);
       this.returnsOptional = Optional.class.equals(this.returnType);
+      if (this.returnsFuture && this.returnsCursor) {
+        throw new BindingException("Mapper method '" + mapperInterface.getName() + "." + method.getName()
+            + "' cannot return a Cursor asynchronously, the cursor would be closed with its session.");
+      }
 
       // 如果返回值为 Map 类型，则从方法的 @MapKey 注解中获取 Map 中为 key 的字段名称
-      this.mapKey = getMapKey(method);
+      this.mapKey = getMapKey(method, this.returnsFuture ? this.returnType : method.getReturnType());
       this.returnsMap = this.mapKey != null;
 
       // 获取 RowBounds 参数在参数列表中的位置，如果参数列表中包含多个 RowBounds 参数，此方法会抛出异常
@@ -404,6 +443,24 @@ public class MapperMethod {
       return returnsOptional;
     }
 
+    /**
+     * return whether return type is {@code java.util.concurrent.CompletableFuture} or
+     * {@code java.util.concurrent.CompletionStage}, in which case the other properties are those of the result type.
+     * @return return {@code true}, if return type is a future
+     * @since 3.5.3
+     */
+    public boolean returnsFuture() {
+      return returnsFuture;
+    }
+
+    private static boolean isFuture(Type type) {
+      if (!(type instanceof ParameterizedType)) {
+        return false;
+      }
+      Type rawType = ((ParameterizedType) type).getRawType();
+      return CompletableFuture.class.equals(rawType) || CompletionStage.class.equals(rawType);
+    }
+
     private Integer getUniqueParamIndex(Method method, Class<?> paramType) {
       Integer index = null;
       final Class<?>[] argTypes = method.getParameterTypes();
@@ -419,9 +476,9 @@ public class MapperMethod {
       return index;
     }
 
-    private String getMapKey(Method method) {
+    private String getMapKey(Method method, Class<?> returnType) {
       String mapKey = null;
-      if (Map.class.isAssignableFrom(method.getReturnType())) {
+      if (Map.class.isAssignableFrom(returnType)) {
         final MapKey mapKeyAnnotation = method.getAnnotation(MapKey.class);
         if (mapKeyAnnotation != null) {
           mapKey = mapKeyAnnotation.value();
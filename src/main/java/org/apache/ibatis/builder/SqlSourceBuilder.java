@@ -50,9 +50,85 @@ public class SqlSourceBuilder extends BaseBuilder {
     return new StaticSqlSource(configuration, sql, handler.getParameterMappings());
   }
 
+  /**
+   * Parses the SQL like {@link #parse(String, Class, Map)}, keeping what is needed to check whether the result can be
+   * reused for the same SQL with other parameters (see {@link ParsedSql#isReusableFor(Class, Map)}).
+   *
+   * @since 3.5.3
+   */
+  public ParsedSql parseReusable(String originalSql, Class<?> parameterType, Map<String, Object> additionalParameters) {
+    ParameterMappingTokenHandler handler = new ParameterMappingTokenHandler(configuration, parameterType, additionalParameters);
+    GenericTokenParser parser = new GenericTokenParser("#{", "}", handler);
+    String sql = parser.parse(originalSql);
+    return new ParsedSql(configuration, sql, handler.getParameterMappings(), parameterType, handler.inferredTypes);
+  }
+
+  /**
+   * The SQL of a statement with its {@code #{}} placeholders replaced by {@code ?}, and the mappings of the parameters.
+   * <p>
+   * The type of a parameter that does not declare its {@code javaType} is found from the type of the parameter object
+   * and from the additional parameters (e.g. the items of a {@code foreach}), so it may not be the same the next time
+   * the same SQL is generated: the result can only be reused when these types are unchanged.
+   *
+   * @since 3.5.3
+   */
+  public static final class ParsedSql {
+
+    private final Configuration configuration;
+    private final String sql;
+    private final List<ParameterMapping> parameterMappings;
+    private final Class<?> parameterType;
+    /**
+     * Type found for each parameter mapping without javaType (null for the others).
+     */
+    private final Class<?>[] inferredTypes;
+
+    ParsedSql(Configuration configuration, String sql, List<ParameterMapping> parameterMappings, Class<?> parameterType,
+        List<Class<?>> inferredTypes) {
+      this.configuration = configuration;
+      this.sql = sql;
+      this.parameterMappings = parameterMappings;
+      this.parameterType = parameterType;
+      this.inferredTypes = inferredTypes.toArray(new Class<?>[0]);
+    }
+
+    public String getSql() {
+      return sql;
+    }
+
+    public List<ParameterMapping> getParameterMappings() {
+      return parameterMappings;
+    }
+
+    /**
+     * @return true when parsing the same SQL with these parameters would give the same parameter mappings
+     */
+    public boolean isReusableFor(Class<?> parameterType, Map<String, Object> additionalParameters) {
+      if (this.parameterType != parameterType) {
+        return false;
+      }
+      ParameterMappingTokenHandler handler = null;
+      for (int i = 0; i < inferredTypes.length; i++) {
+        if (inferredTypes[i] == null) {
+          continue;
+        }
+        if (handler == null) {
+          handler = new ParameterMappingTokenHandler(configuration, parameterType, additionalParameters);
+        }
+        ParameterMapping parameterMapping = parameterMappings.get(i);
+        String jdbcType = parameterMapping.getJdbcType() == null ? null : parameterMapping.getJdbcType().name();
+        if (handler.resolvePropertyType(parameterMapping.getProperty(), jdbcType) != inferredTypes[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
   private static class ParameterMappingTokenHandler extends BaseBuilder implements TokenHandler {
 
     private List<ParameterMapping> parameterMappings = new ArrayList<>();
+    private final List<Class<?>> inferredTypes = new ArrayList<>();
     private Class<?> parameterType;
     private MetaObject metaParameters;
 
@@ -100,36 +176,8 @@ public class SqlSourceBuilder extends BaseBuilder {
        */
       Map<String, String> propertiesMap = parseParameterMapping(content);
       String property = propertiesMap.get("property");
-      Class<?> propertyType;
-      // metaParameters 为 DynamicContext 成员变量 bindings 的元信息对象
-      if (metaParameters.hasGetter(property)) { // issue #448 get type from additional params
-        propertyType = metaParameters.getGetterType(property);
-
-        /*
-         * parameterType 是运行时参数的类型。如果用户传入的是单个参数，比如 Article 对象，此时 parameterType 为 Article.class。
-         * 如果用户传入的多个参数，比如 [id = 1, author = "coolblog"]，MyBatis 会使用 ParamMap 封装这些参数，
-         * 此时 parameterType 为 ParamMap.class。如果 parameterType 有相应的
-         * TypeHandler，这里则把 parameterType 设为 propertyType
-         *
-         */
-      } else if (typeHandlerRegistry.hasTypeHandler(parameterType)) {
-        propertyType = parameterType;
-      } else if (JdbcType.CURSOR.name().equals(propertiesMap.get("jdbcType"))) {
-        propertyType = java.sql.ResultSet.class;
-      } else if (property == null || Map.class.isAssignableFrom(parameterType)) {
-        // 如果 property 为空，或 parameterType 是 Map 类型，则将 propertyType 设为 Object.class
-        propertyType = Object.class;
-      } else {
-        // 代码逻辑走到此分支中，表明 parameterType 是一个自定义的类，比如 Article，此时为该类创建一个元信息对象
-        MetaClass metaClass = MetaClass.forClass(parameterType, configuration.getReflectorFactory());
-        // 检测参数对象有没有与 property 想对应的 getter 方法
-        if (metaClass.hasGetter(property)) {
-          // 获取成员变量的类型
-          propertyType = metaClass.getGetterType(property);
-        } else {
-          propertyType = Object.class;
-        }
-      }
+      Class<?> propertyType = resolvePropertyType(property, propertiesMap.get("jdbcType"));
+      inferredTypes.add(propertiesMap.containsKey("javaType") ? null : propertyType);
 
       ParameterMapping.Builder builder = new ParameterMapping.Builder(configuration, property, propertyType);
       // 将 propertyType 赋值给 javaType
@@ -172,6 +220,38 @@ public class SqlSourceBuilder extends BaseBuilder {
       return builder.build();
     }
 
+    private Class<?> resolvePropertyType(String property, String jdbcType) {
+      // metaParameters 为 DynamicContext 成员变量 bindings 的元信息对象
+      if (metaParameters.hasGetter(property)) { // issue #448 get type from additional params
+        return metaParameters.getGetterType(property);
+
+        /*
+         * parameterType 是运行时参数的类型。如果用户传入的是单个参数，比如 Article 对象，此时 parameterType 为 Article.class。
+         * 如果用户传入的多个参数，比如 [id = 1, author = "coolblog"]，MyBatis 会使用 ParamMap 封装这些参数，
+         * 此时 parameterType 为 ParamMap.class。如果 parameterType 有相应的
+         * TypeHandler，这里则把 parameterType 设为 propertyType
+         *
+         */
+      } else if (typeHandlerRegistry.hasTypeHandler(parameterType)) {
+        return parameterType;
+      } else if (JdbcType.CURSOR.name().equals(jdbcType)) {
+        return java.sql.ResultSet.class;
+      } else if (property == null || Map.class.isAssignableFrom(parameterType)) {
+        // 如果 property 为空，或 parameterType 是 Map 类型，则将 propertyType 设为 Object.class
+        return Object.class;
+      } else {
+        // 代码逻辑走到此分支中，表明 parameterType 是一个自定义的类，比如 Article，此时为该类创建一个元信息对象
+        MetaClass metaClass = MetaClass.forClass(parameterType, configuration.getReflectorFactory());
+        // 检测参数对象有没有与 property 想对应的 getter 方法
+        if (metaClass.hasGetter(property)) {
+          // 获取成员变量的类型
+          return metaClass.getGetterType(property);
+        } else {
+          return Object.class;
+        }
+      }
+    }
+
     private Map<String, String> parseParameterMapping(String content) {
       try {
         return new ParameterExpression(content);
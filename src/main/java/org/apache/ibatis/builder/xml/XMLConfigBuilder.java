@@ -18,6 +18,7 @@ package org.apache.ibatis.builder.xml;
 import java.io.InputStream;
 import java.io.Reader;
 import java.util.Properties;
+import java.util.concurrent.Executor;
 import javax.sql.DataSource;
 
 import org.apache.ibatis.builder.BaseBuilder;
@@ -344,6 +345,18 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setCallSettersOnNulls(booleanValueOf(props.getProperty("callSettersOnNulls"), false));
     configuration.setUseActualParamName(booleanValueOf(props.getProperty("useActualParamName"), true));
     configuration.setReturnInstanceForEmptyRow(booleanValueOf(props.getProperty("returnInstanceForEmptyRow"), false));
+    configuration.setCompiledRowMapping(booleanValueOf(props.getProperty("compiledRowMapping"), false));
+    configuration.setNestedResultStreaming(booleanValueOf(props.getProperty("nestedResultStreaming"), false));
+    configuration.setBatchGrouping(booleanValueOf(props.getProperty("batchGrouping"), false));
+    configuration.setBatchFlushSize(integerValueOf(props.getProperty("batchFlushSize"), 0));
+    configuration.setBatchFlushBytes(integerValueOf(props.getProperty("batchFlushBytes"), 0));
+    configuration.setBatchInsertRewrite(booleanValueOf(props.getProperty("batchInsertRewrite"), false));
+    configuration.setBatchInsertParameterLimit(integerValueOf(props.getProperty("batchInsertParameterLimit"), 1000));
+    configuration.setCursorPrefetchSize(integerValueOf(props.getProperty("cursorPrefetchSize"), 100));
+    configuration.setCursorPrefetchQueueSize(integerValueOf(props.getProperty("cursorPrefetchQueueSize"), 2));
+    configuration.setCompiledDynamicSql(booleanValueOf(props.getProperty("compiledDynamicSql"), false));
+    configuration.setReuseStatementCacheSize(integerValueOf(props.getProperty("reuseStatementCacheSize"), 0));
+    configuration.setAsyncExecutor((Executor) createInstance(props.getProperty("asyncExecutor")));
     configuration.setLogPrefix(props.getProperty("logPrefix"));
     configuration.setConfigurationFactory(resolveClass(props.getProperty("configurationFactory")));
   }
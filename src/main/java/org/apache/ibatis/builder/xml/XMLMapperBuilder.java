@@ -247,12 +247,13 @@ public class XMLMapperBuilder extends BaseBuilder {
       Integer size = context.getIntAttribute("size");
       boolean readWrite = !context.getBooleanAttribute("readOnly", false);
       boolean blocking = context.getBooleanAttribute("blocking", false);
+      boolean singleFlight = context.getBooleanAttribute("singleFlight", false);
 
       // 获取子节点配置
       Properties props = context.getChildrenAsProperties();
 
       // 构建缓存对象
-      builderAssistant.useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, blocking, props);
+      builderAssistant.useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, blocking, singleFlight, props);
     }
   }
 
@@ -0,0 +1,785 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.Externalizable;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.executor.loader.WriteReplaceInterface;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
+
+/**
+ * Compact binary {@link CacheCodec}.
+ * <p>
+ * The usual result types (strings, numbers, dates, enums, arrays, the common lists, sets and maps) are written with a
+ * one byte tag and their raw value. JavaBeans are written as the values of their fields, read and written through the
+ * getters and setters found by the {@link Reflector}, whose metadata is cached; the class name and the property names
+ * are written once per encoded value. Sizes, identifiers and integers are written as variable length integers, and a
+ * string instance that appears several times is written once. Shared and circular references are preserved.
+ * <p>
+ * A class is encoded as a bean only if it is {@link Serializable}, has a default constructor, does not customize its
+ * serialization and every non-transient field is readable and writable. When a value contains other serializable
+ * objects, lazy loading proxies included, the whole value is written with the Java serialization instead, so that the
+ * references shared between these objects and the rest of the value are preserved too. This codec can therefore
+ * replace {@link JavaSerializationCodec} for any value the latter accepts.
+ *
+ * @since 3.5.3
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte INTEGER = 2;
+  private static final byte LONG = 3;
+  private static final byte SHORT = 4;
+  private static final byte BYTE = 5;
+  private static final byte DOUBLE = 6;
+  private static final byte FLOAT = 7;
+  private static final byte BOOLEAN = 8;
+  private static final byte CHARACTER = 9;
+  private static final byte BIG_DECIMAL = 10;
+  private static final byte BIG_INTEGER = 11;
+  private static final byte DATE = 12;
+  private static final byte SQL_DATE = 13;
+  private static final byte SQL_TIME = 14;
+  private static final byte SQL_TIMESTAMP = 15;
+  private static final byte BYTE_ARRAY = 16;
+  private static final byte ENUM = 17;
+  private static final byte ARRAY_LIST = 18;
+  private static final byte LINKED_LIST = 19;
+  private static final byte HASH_SET = 20;
+  private static final byte LINKED_HASH_SET = 21;
+  private static final byte HASH_MAP = 22;
+  private static final byte LINKED_HASH_MAP = 23;
+  private static final byte OBJECT_ARRAY = 24;
+  private static final byte BEAN = 25;
+  private static final byte REFERENCE = 26;
+  private static final byte SERIALIZED = 27;
+  private static final byte STRING_REFERENCE = 28;
+
+  private static final Map<Class<?>, Byte> TAGS = new HashMap<>();
+  private static final Object[] NO_ARGUMENTS = new Object[0];
+  private static final BeanType NOT_A_BEAN = new BeanType(null, null, null, null);
+
+  static {
+    TAGS.put(String.class, STRING);
+    TAGS.put(Integer.class, INTEGER);
+    TAGS.put(Long.class, LONG);
+    TAGS.put(Short.class, SHORT);
+    TAGS.put(Byte.class, BYTE);
+    TAGS.put(Double.class, DOUBLE);
+    TAGS.put(Float.class, FLOAT);
+    TAGS.put(Boolean.class, BOOLEAN);
+    TAGS.put(Character.class, CHARACTER);
+    TAGS.put(BigDecimal.class, BIG_DECIMAL);
+    TAGS.put(BigInteger.class, BIG_INTEGER);
+    TAGS.put(java.util.Date.class, DATE);
+    TAGS.put(java.sql.Date.class, SQL_DATE);
+    TAGS.put(java.sql.Time.class, SQL_TIME);
+    TAGS.put(java.sql.Timestamp.class, SQL_TIMESTAMP);
+    TAGS.put(byte[].class, BYTE_ARRAY);
+    TAGS.put(ArrayList.class, ARRAY_LIST);
+    TAGS.put(LinkedList.class, LINKED_LIST);
+    TAGS.put(HashSet.class, HASH_SET);
+    TAGS.put(LinkedHashSet.class, LINKED_HASH_SET);
+    TAGS.put(HashMap.class, HASH_MAP);
+    TAGS.put(LinkedHashMap.class, LINKED_HASH_MAP);
+  }
+
+  private final ReflectorFactory reflectorFactory = new DefaultReflectorFactory();
+  private final Map<Class<?>, BeanType> beanTypes = new ConcurrentHashMap<>();
+  private final JavaSerializationCodec fallback = new JavaSerializationCodec();
+
+  @Override
+  public byte[] encode(Object value) {
+    Output out = new Output();
+    try {
+      new Encoder(out).write(value);
+    } catch (ReflectiveOperationException e) {
+      throw new CacheException("Error serializing object.  Cause: " + e, e);
+    } catch (JavaSerializationRequired e) {
+      // 部分对象只能由 Java 序列化复制，整体序列化以保留它们与其他对象之间的引用
+      out = new Output();
+      out.writeByte(SERIALIZED);
+      new Encoder(out).writeBytes(fallback.encode(value));
+    }
+    return out.toByteArray();
+  }
+
+  @Override
+  public Object decode(byte[] data) {
+    try {
+      return new Decoder(new Input(data)).read();
+    } catch (ReflectiveOperationException | IndexOutOfBoundsException e) {
+      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+    }
+  }
+
+  private BeanType beanType(Class<?> type) {
+    BeanType beanType = beanTypes.get(type);
+    return beanType != null ? beanType : beanTypes.computeIfAbsent(type, this::resolveBeanType);
+  }
+
+  private BeanType resolveBeanType(Class<?> type) {
+    if (type.isInterface() || Modifier.isAbstract(type.getModifiers()) || type.getName().startsWith("java.")
+        || !Serializable.class.isAssignableFrom(type) || Externalizable.class.isAssignableFrom(type)
+        || WriteReplaceInterface.class.isAssignableFrom(type)) {
+      return NOT_A_BEAN;
+    }
+    Reflector reflector = reflectorFactory.findForClass(type);
+    if (!reflector.hasDefaultConstructor()) {
+      return NOT_A_BEAN;
+    }
+    List<String> properties = new ArrayList<>();
+    for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+      if (hasSerializationMethod(c)) {
+        return NOT_A_BEAN;
+      }
+      for (Field field : c.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+          continue;
+        }
+        String name = field.getName();
+        if (properties.contains(name) || !reflector.hasGetter(name) || !reflector.hasSetter(name)) {
+          // 字段被隐藏或无法通过属性访问，交给 Java 序列化处理
+          return NOT_A_BEAN;
+        }
+        properties.add(name);
+      }
+    }
+    Constructor<?> constructor = reflector.getDefaultConstructor();
+    if (!constructor.isAccessible()) {
+      if (!Reflector.canControlMemberAccessible()) {
+        return NOT_A_BEAN;
+      }
+      constructor.setAccessible(true);
+    }
+    String[] names = properties.toArray(new String[0]);
+    Invoker[] getters = new Invoker[names.length];
+    Invoker[] setters = new Invoker[names.length];
+    for (int i = 0; i < names.length; i++) {
+      getters[i] = reflector.getGetInvoker(names[i]);
+      setters[i] = reflector.getSetInvoker(names[i]);
+    }
+    return new BeanType(constructor, names, getters, setters);
+  }
+
+  private static boolean hasSerializationMethod(Class<?> type) {
+    for (java.lang.reflect.Method method : type.getDeclaredMethods()) {
+      String name = method.getName();
+      if (("writeObject".equals(name) || "readObject".equals(name)) && method.getParameterCount() == 1
+          || ("writeReplace".equals(name) || "readResolve".equals(name)) && method.getParameterCount() == 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Thrown when a part of the value can only be copied by the Java serialization.
+   */
+  private static final class JavaSerializationRequired extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    static final JavaSerializationRequired INSTANCE = new JavaSerializationRequired();
+
+    private JavaSerializationRequired() {
+      super(null, null, false, false);
+    }
+  }
+
+  private static final class BeanType {
+    final Constructor<?> constructor;
+    final String[] properties;
+    final Invoker[] getters;
+    final Invoker[] setters;
+
+    BeanType(Constructor<?> constructor, String[] properties, Invoker[] getters, Invoker[] setters) {
+      this.constructor = constructor;
+      this.properties = properties;
+      this.getters = getters;
+      this.setters = setters;
+    }
+  }
+
+  private final class Encoder {
+    private final Output out;
+    private final Map<Object, Integer> references = new IdentityHashMap<>();
+    private final Map<String, Integer> strings = new IdentityHashMap<>();
+    private final Map<Class<?>, Integer> classIds = new HashMap<>();
+    private final Map<Class<?>, Integer> beanIds = new HashMap<>();
+
+    Encoder(Output out) {
+      this.out = out;
+    }
+
+    void write(Object value) throws ReflectiveOperationException {
+      if (value == null) {
+        out.writeByte(NULL);
+        return;
+      }
+      Class<?> type = value.getClass();
+      Byte tag = TAGS.get(type);
+      if (tag != null) {
+        writeTagged(tag, value);
+      } else if (value instanceof Enum) {
+        out.writeByte(ENUM);
+        writeClass(((Enum<?>) value).getDeclaringClass());
+        writeString(((Enum<?>) value).name());
+      } else if (type.isArray() && !type.getComponentType().isPrimitive()) {
+        if (writeReference(value)) {
+          return;
+        }
+        out.writeByte(OBJECT_ARRAY);
+        writeClass(type.getComponentType());
+        Object[] array = (Object[]) value;
+        writeVarLong(array.length);
+        for (Object element : array) {
+          write(element);
+        }
+      } else {
+        BeanType beanType = beanType(type);
+        if (beanType != NOT_A_BEAN) {
+          if (!writeReference(value)) {
+            out.writeByte(BEAN);
+            writeBean(beanType, type, value);
+          }
+        } else if (value instanceof Serializable) {
+          throw JavaSerializationRequired.INSTANCE;
+        } else {
+          throw new CacheException("BinaryCacheCodec failed to make a copy of a non-serializable object: " + value);
+        }
+      }
+    }
+
+    private void writeTagged(byte tag, Object value) throws ReflectiveOperationException {
+      if (tag >= ARRAY_LIST && writeReference(value)) {
+        return;
+      }
+      if (tag == STRING) {
+        Integer index = strings.get(value);
+        if (index != null) {
+          out.writeByte(STRING_REFERENCE);
+          writeVarLong(index);
+          return;
+        }
+        strings.put((String) value, strings.size());
+      }
+      out.writeByte(tag);
+      switch (tag) {
+        case STRING:
+          writeString((String) value);
+          break;
+        case INTEGER:
+          writeVarLong(zigZag((Integer) value));
+          break;
+        case LONG:
+          writeVarLong(zigZag((Long) value));
+          break;
+        case SHORT:
+          out.writeShort((Short) value);
+          break;
+        case BYTE:
+          out.writeByte((Byte) value);
+          break;
+        case DOUBLE:
+          out.writeDouble((Double) value);
+          break;
+        case FLOAT:
+          out.writeFloat((Float) value);
+          break;
+        case BOOLEAN:
+          out.writeBoolean((Boolean) value);
+          break;
+        case CHARACTER:
+          out.writeChar((Character) value);
+          break;
+        case BIG_DECIMAL:
+          BigDecimal decimal = (BigDecimal) value;
+          writeVarLong(zigZag(decimal.scale()));
+          writeBytes(decimal.unscaledValue().toByteArray());
+          break;
+        case BIG_INTEGER:
+          writeBytes(((BigInteger) value).toByteArray());
+          break;
+        case DATE:
+        case SQL_DATE:
+        case SQL_TIME:
+          out.writeLong(((java.util.Date) value).getTime());
+          break;
+        case SQL_TIMESTAMP:
+          out.writeLong(((java.sql.Timestamp) value).getTime());
+          out.writeInt(((java.sql.Timestamp) value).getNanos());
+          break;
+        case BYTE_ARRAY:
+          writeBytes((byte[]) value);
+          break;
+        case HASH_MAP:
+        case LINKED_HASH_MAP:
+          Map<?, ?> map = (Map<?, ?>) value;
+          writeVarLong(map.size());
+          for (Map.Entry<?, ?> entry : map.entrySet()) {
+            write(entry.getKey());
+            write(entry.getValue());
+          }
+          break;
+        default:
+          Collection<?> collection = (Collection<?>) value;
+          writeVarLong(collection.size());
+          for (Object element : collection) {
+            write(element);
+          }
+          break;
+      }
+    }
+
+    private void writeBean(BeanType beanType, Class<?> type, Object bean) throws ReflectiveOperationException {
+      Integer id = beanIds.get(type);
+      if (id == null) {
+        beanIds.put(type, beanIds.size());
+        writeVarLong(0);
+        writeString(type.getName());
+        writeVarLong(beanType.properties.length);
+        for (String property : beanType.properties) {
+          writeString(property);
+        }
+      } else {
+        writeVarLong(id + 1);
+      }
+      for (Invoker getter : beanType.getters) {
+        write(getter.invoke(bean, NO_ARGUMENTS));
+      }
+    }
+
+    /**
+     * @return true if the value has already been written, in which case a reference to it has been written instead
+     */
+    private boolean writeReference(Object value) {
+      Integer index = references.get(value);
+      if (index != null) {
+        out.writeByte(REFERENCE);
+        writeVarLong(index);
+        return true;
+      }
+      references.put(value, references.size());
+      return false;
+    }
+
+    private void writeClass(Class<?> type) {
+      Integer id = classIds.get(type);
+      if (id == null) {
+        classIds.put(type, classIds.size());
+        writeVarLong(0);
+        writeString(type.getName());
+      } else {
+        writeVarLong(id + 1);
+      }
+    }
+
+    private void writeString(String value) {
+      writeVarLong(value.length());
+      out.writeChars(value);
+    }
+
+    private void writeBytes(byte[] value) {
+      writeVarLong(value.length);
+      out.write(value);
+    }
+
+    private void writeVarLong(long value) {
+      while ((value & ~0x7FL) != 0) {
+        out.writeByte((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      out.writeByte((int) value);
+    }
+
+    private long zigZag(long value) {
+      return (value << 1) ^ (value >> 63);
+    }
+  }
+
+  private final class Decoder {
+    private final Input in;
+    private final List<Object> references = new ArrayList<>();
+    private final List<String> strings = new ArrayList<>();
+    private final List<Class<?>> classes = new ArrayList<>();
+    private final List<DecodedBeanType> beanTypes = new ArrayList<>();
+
+    Decoder(Input in) {
+      this.in = in;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    Object read() throws ReflectiveOperationException {
+      byte tag = in.readByte();
+      switch (tag) {
+        case NULL:
+          return null;
+        case STRING:
+          String string = readString();
+          strings.add(string);
+          return string;
+        case STRING_REFERENCE:
+          return strings.get((int) readVarLong());
+        case INTEGER:
+          return (int) unZigZag(readVarLong());
+        case LONG:
+          return unZigZag(readVarLong());
+        case SHORT:
+          return in.readShort();
+        case BYTE:
+          return in.readByte();
+        case DOUBLE:
+          return in.readDouble();
+        case FLOAT:
+          return in.readFloat();
+        case BOOLEAN:
+          return in.readBoolean();
+        case CHARACTER:
+          return in.readChar();
+        case BIG_DECIMAL:
+          int scale = (int) unZigZag(readVarLong());
+          return new BigDecimal(new BigInteger(readBytes()), scale);
+        case BIG_INTEGER:
+          return new BigInteger(readBytes());
+        case DATE:
+          return new java.util.Date(in.readLong());
+        case SQL_DATE:
+          return new java.sql.Date(in.readLong());
+        case SQL_TIME:
+          return new java.sql.Time(in.readLong());
+        case SQL_TIMESTAMP:
+          java.sql.Timestamp timestamp = new java.sql.Timestamp(in.readLong());
+          timestamp.setNanos(in.readInt());
+          return timestamp;
+        case BYTE_ARRAY:
+          return readBytes();
+        case ENUM:
+          return Enum.valueOf((Class<Enum>) readClass(), readString());
+        case ARRAY_LIST:
+          return readCollection(new ArrayList<>());
+        case LINKED_LIST:
+          return readCollection(new LinkedList<>());
+        case HASH_SET:
+          return readCollection(new HashSet<>());
+        case LINKED_HASH_SET:
+          return readCollection(new LinkedHashSet<>());
+        case HASH_MAP:
+          return readMap(new HashMap<>());
+        case LINKED_HASH_MAP:
+          return readMap(new LinkedHashMap<>());
+        case OBJECT_ARRAY:
+          Class<?> componentType = readClass();
+          Object[] array = (Object[]) Array.newInstance(componentType, (int) readVarLong());
+          references.add(array);
+          for (int i = 0; i < array.length; i++) {
+            array[i] = read();
+          }
+          return array;
+        case BEAN:
+          return readBean();
+        case REFERENCE:
+          return references.get((int) readVarLong());
+        case SERIALIZED:
+          return fallback.decode(readBytes());
+        default:
+          throw new CacheException("Unknown type tag " + tag + " in cached value.");
+      }
+    }
+
+    private Object readCollection(Collection<Object> collection) throws ReflectiveOperationException {
+      references.add(collection);
+      long size = readVarLong();
+      for (int i = 0; i < size; i++) {
+        collection.add(read());
+      }
+      return collection;
+    }
+
+    private Object readMap(Map<Object, Object> map) throws ReflectiveOperationException {
+      references.add(map);
+      long size = readVarLong();
+      for (int i = 0; i < size; i++) {
+        Object key = read();
+        map.put(key, read());
+      }
+      return map;
+    }
+
+    private Object readBean() throws ReflectiveOperationException {
+      int id = (int) readVarLong();
+      DecodedBeanType type;
+      if (id == 0) {
+        Class<?> beanClass = Resources.classForName(readString());
+        String[] properties = new String[(int) readVarLong()];
+        for (int i = 0; i < properties.length; i++) {
+          properties[i] = readString();
+        }
+        type = new DecodedBeanType(beanType(beanClass), properties);
+        beanTypes.add(type);
+      } else {
+        type = beanTypes.get(id - 1);
+      }
+      Object bean = type.beanType.constructor.newInstance();
+      references.add(bean);
+      Object[] argument = new Object[1];
+      for (Invoker setter : type.setters) {
+        argument[0] = read();
+        setter.invoke(bean, argument);
+      }
+      return bean;
+    }
+
+    private Class<?> readClass() throws ClassNotFoundException {
+      int id = (int) readVarLong();
+      if (id == 0) {
+        Class<?> type = Resources.classForName(readString());
+        classes.add(type);
+        return type;
+      }
+      return classes.get(id - 1);
+    }
+
+    private String readString() {
+      return in.readChars((int) readVarLong());
+    }
+
+    private byte[] readBytes() {
+      byte[] bytes = new byte[(int) readVarLong()];
+      in.readFully(bytes);
+      return bytes;
+    }
+
+    private long readVarLong() {
+      long value = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = in.readByte();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+    }
+
+    private long unZigZag(long value) {
+      return (value >>> 1) ^ -(value & 1);
+    }
+  }
+
+  /**
+   * Unsynchronized replacement of {@code DataOutputStream} over a {@code ByteArrayOutputStream}.
+   */
+  private static final class Output {
+    private byte[] buffer = new byte[256];
+    private int position;
+
+    void write(byte[] bytes) {
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, position, bytes.length);
+      position += bytes.length;
+    }
+
+    void writeByte(int value) {
+      ensureCapacity(1);
+      buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Writes each char in 1 to 3 bytes like UTF-8 does, without the cost of a {@code CharsetEncoder}. Surrogates are
+     * written one by one.
+     */
+    void writeChars(String value) {
+      int length = value.length();
+      ensureCapacity(length * 3);
+      for (int i = 0; i < length; i++) {
+        char c = value.charAt(i);
+        if (c < 0x80) {
+          buffer[position++] = (byte) c;
+        } else if (c < 0x800) {
+          buffer[position++] = (byte) (0xC0 | (c >> 6));
+          buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        } else {
+          buffer[position++] = (byte) (0xE0 | (c >> 12));
+          buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        }
+      }
+    }
+
+    void writeBoolean(boolean value) {
+      writeByte(value ? 1 : 0);
+    }
+
+    void writeShort(int value) {
+      ensureCapacity(2);
+      buffer[position++] = (byte) (value >>> 8);
+      buffer[position++] = (byte) value;
+    }
+
+    void writeChar(int value) {
+      writeShort(value);
+    }
+
+    void writeInt(int value) {
+      ensureCapacity(4);
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        buffer[position++] = (byte) (value >>> shift);
+      }
+    }
+
+    void writeLong(long value) {
+      ensureCapacity(8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        buffer[position++] = (byte) (value >>> shift);
+      }
+    }
+
+    void writeFloat(float value) {
+      writeInt(Float.floatToIntBits(value));
+    }
+
+    void writeDouble(double value) {
+      writeLong(Double.doubleToLongBits(value));
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, position);
+    }
+
+    private void ensureCapacity(int length) {
+      if (position + length > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+      }
+    }
+  }
+
+  private static final class Input {
+    private final byte[] buffer;
+    private int position;
+
+    Input(byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    void readFully(byte[] bytes) {
+      System.arraycopy(buffer, position, bytes, 0, bytes.length);
+      position += bytes.length;
+    }
+
+    byte readByte() {
+      return buffer[position++];
+    }
+
+    String readChars(int length) {
+      char[] chars = new char[length];
+      for (int i = 0; i < length; i++) {
+        int b = buffer[position++] & 0xFF;
+        if (b < 0x80) {
+          chars[i] = (char) b;
+        } else if (b < 0xE0) {
+          chars[i] = (char) (((b & 0x1F) << 6) | (buffer[position++] & 0x3F));
+        } else {
+          chars[i] = (char) (((b & 0x0F) << 12) | ((buffer[position++] & 0x3F) << 6) | (buffer[position++] & 0x3F));
+        }
+      }
+      return new String(chars);
+    }
+
+    boolean readBoolean() {
+      return readByte() != 0;
+    }
+
+    short readShort() {
+      return (short) (((buffer[position++] & 0xFF) << 8) | (buffer[position++] & 0xFF));
+    }
+
+    char readChar() {
+      return (char) readShort();
+    }
+
+    int readInt() {
+      int value = 0;
+      for (int i = 0; i < 4; i++) {
+        value = (value << 8) | (buffer[position++] & 0xFF);
+      }
+      return value;
+    }
+
+    long readLong() {
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+        value = (value << 8) | (buffer[position++] & 0xFF);
+      }
+      return value;
+    }
+
+    float readFloat() {
+      return Float.intBitsToFloat(readInt());
+    }
+
+    double readDouble() {
+      return Double.longBitsToDouble(readLong());
+    }
+  }
+
+  private static final class DecodedBeanType {
+    final BeanType beanType;
+    final Invoker[] setters;
+
+    DecodedBeanType(BeanType beanType, String[] properties) {
+      if (beanType == NOT_A_BEAN) {
+        throw new CacheException("Cached value contains a bean that can no longer be decoded.");
+      }
+      this.beanType = beanType;
+      this.setters = new Invoker[properties.length];
+      // 按写入时的属性顺序解析 setter，与当前类的字段顺序无关
+      for (int i = 0; i < properties.length; i++) {
+        for (int j = 0; j < beanType.properties.length; j++) {
+          if (beanType.properties[j].equals(properties[i])) {
+            setters[i] = beanType.setters[j];
+          }
+        }
+        if (setters[i] == null) {
+          throw new CacheException("Cached value contains an unknown property '" + properties[i] + "'.");
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,45 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Turns cached values into bytes and back, for the caches that store copies of the results (read/write caches and
+ * {@link org.apache.ibatis.cache.impl.OffHeapCache}).
+ * <p>
+ * Implementations must have a public no-argument constructor and be thread safe. They are selected with the
+ * {@code codec} property of the cache.
+ *
+ * @since 3.5.3
+ * @see JavaSerializationCodec
+ * @see BinaryCacheCodec
+ */
+public interface CacheCodec {
+
+  /**
+   * @param value the value to encode, may be null
+   * @return the encoded value
+   * @throws CacheException if the value cannot be encoded
+   */
+  byte[] encode(Object value);
+
+  /**
+   * @param data bytes returned by {@link #encode(Object)}
+   * @return a new copy of the encoded value
+   * @throws CacheException if the data cannot be decoded
+   */
+  Object decode(byte[] data);
+
+}
@@ -0,0 +1,36 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Estimates the memory used by a cache entry, for caches bounded by size in bytes.
+ * <p>
+ * Implementations must have a public no-argument constructor and be thread safe.
+ *
+ * @since 3.5.3
+ * @see org.apache.ibatis.cache.decorators.WeightedCache
+ */
+public interface CacheWeigher {
+
+  /**
+   * @param key the key of the entry
+   * @param value the cached value, usually the {@code List} returned by a select, or its serialized form
+   *          ({@code byte[]}) when the cache is read/write
+   * @return the estimated size of the value in bytes, never negative
+   */
+  long weigh(Object key, Object value);
+
+}
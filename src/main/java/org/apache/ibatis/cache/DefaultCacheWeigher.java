@@ -0,0 +1,146 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Default {@link CacheWeigher}.
+ * <p>
+ * A {@code byte[]} (the form stored by a read/write cache) weighs its length. Other values are estimated by walking
+ * their fields down to a few levels, assuming a 64-bit JVM with compressed references. Only the first elements of a
+ * collection are measured and the average is applied to the rest, so a list of 50,000 rows costs the same to weigh as
+ * a list of {@value #SAMPLE_SIZE}. The result is an approximation meant to make memory budgets predictable, not an
+ * exact measure.
+ *
+ * @since 3.5.3
+ */
+public class DefaultCacheWeigher implements CacheWeigher {
+
+  private static final int SAMPLE_SIZE = 16;
+  private static final int MAX_DEPTH = 4;
+  private static final int OBJECT_HEADER = 16;
+  private static final int REFERENCE = 4;
+
+  private final Map<Class<?>, List<Field>> fieldsCache = new ConcurrentHashMap<>();
+
+  @Override
+  public long weigh(Object key, Object value) {
+    if (value instanceof byte[]) {
+      return ((byte[]) value).length;
+    }
+    return estimate(value, 0);
+  }
+
+  protected long estimate(Object value, int depth) {
+    if (value == null) {
+      return 0;
+    }
+    Class<?> type = value.getClass();
+    if (value instanceof String) {
+      return OBJECT_HEADER + 8 + OBJECT_HEADER + 2L * ((String) value).length();
+    } else if (value instanceof Number || value instanceof Boolean || value instanceof Character
+        || value instanceof java.util.Date || type.isEnum()) {
+      return 24;
+    } else if (type.isArray()) {
+      return estimateArray(value, depth);
+    } else if (depth >= MAX_DEPTH) {
+      return OBJECT_HEADER;
+    } else if (value instanceof Collection) {
+      Collection<?> collection = (Collection<?>) value;
+      return OBJECT_HEADER + estimateElements(collection.iterator(), collection.size(), depth);
+    } else if (value instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) value;
+      return OBJECT_HEADER + estimateElements(map.entrySet().iterator(), map.size(), depth);
+    } else if (value instanceof Map.Entry) {
+      Map.Entry<?, ?> entry = (Map.Entry<?, ?>) value;
+      return OBJECT_HEADER + 2 * REFERENCE + estimate(entry.getKey(), depth + 1) + estimate(entry.getValue(), depth + 1);
+    }
+    long size = OBJECT_HEADER;
+    for (Field field : getFields(type)) {
+      if (field.getType().isPrimitive()) {
+        size += 8;
+      } else {
+        size += REFERENCE;
+        try {
+          size += estimate(field.get(value), depth + 1);
+        } catch (IllegalAccessException e) {
+          // ignore, the reference is already counted
+        }
+      }
+    }
+    return size;
+  }
+
+  private long estimateArray(Object array, int depth) {
+    int length = Array.getLength(array);
+    Class<?> componentType = array.getClass().getComponentType();
+    if (componentType.isPrimitive()) {
+      int elementSize = componentType == byte.class || componentType == boolean.class ? 1
+          : componentType == char.class || componentType == short.class ? 2
+          : componentType == int.class || componentType == float.class ? 4 : 8;
+      return OBJECT_HEADER + (long) length * elementSize;
+    }
+    if (depth >= MAX_DEPTH) {
+      return OBJECT_HEADER + (long) length * REFERENCE;
+    }
+    List<Object> elements = new ArrayList<>();
+    for (int i = 0; i < length && i < SAMPLE_SIZE; i++) {
+      elements.add(Array.get(array, i));
+    }
+    return OBJECT_HEADER + estimateElements(elements.iterator(), length, depth);
+  }
+
+  private long estimateElements(Iterator<?> elements, int size, int depth) {
+    long sampled = 0;
+    int count = 0;
+    while (count < SAMPLE_SIZE && elements.hasNext()) {
+      sampled += estimate(elements.next(), depth + 1);
+      count++;
+    }
+    long average = count == 0 ? 0 : sampled / count;
+    return (long) size * (REFERENCE + average);
+  }
+
+  private List<Field> getFields(Class<?> type) {
+    return fieldsCache.computeIfAbsent(type, k -> {
+      List<Field> fields = new ArrayList<>();
+      for (Class<?> c = k; c != null && c != Object.class; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          try {
+            field.setAccessible(true);
+            fields.add(field);
+          } catch (RuntimeException e) {
+            // 跳过无法访问的字段（如 JDK 模块内部字段）
+          }
+        }
+      }
+      return fields;
+    });
+  }
+
+}
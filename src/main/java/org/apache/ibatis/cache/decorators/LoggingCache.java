@@ -15,6 +15,8 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.concurrent.atomic.LongAdder;
+
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
@@ -28,6 +30,9 @@ public class LoggingCache implements Cache {
   private final Cache delegate;
   protected int requests = 0;
   protected int hits = 0;
+  // the int fields above are kept for subclasses, the ratio is computed from these thread safe counters
+  private final LongAdder requestCount = new LongAdder();
+  private final LongAdder hitCount = new LongAdder();
 
   public LoggingCache(Cache delegate) {
     this.delegate = delegate;
@@ -52,9 +57,11 @@ public class LoggingCache implements Cache {
   @Override
   public Object getObject(Object key) {
     requests++;
+    requestCount.increment();
     final Object value = delegate.getObject(key);
     if (value != null) {
       hits++;
+      hitCount.increment();
     }
     if (log.isDebugEnabled()) {
       log.debug("Cache Hit Ratio [" + getId() + "]: " + getHitRatio());
@@ -83,7 +90,7 @@ public class LoggingCache implements Cache {
   }
 
   private double getHitRatio() {
-    return (double) hits / (double) requests;
+    return (double) hitCount.sum() / (double) requestCount.sum();
   }
 
 }
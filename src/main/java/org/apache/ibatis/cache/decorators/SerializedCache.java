@@ -15,17 +15,15 @@
  */
 package org.apache.ibatis.cache.decorators;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
-import java.io.Serializable;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheCodec;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.JavaSerializationCodec;
 import org.apache.ibatis.io.Resources;
 
 /**
@@ -34,11 +32,33 @@ import org.apache.ibatis.io.Resources;
 public class SerializedCache implements Cache {
 
   private final Cache delegate;
+  private CacheCodec codec = new JavaSerializationCodec();
 
   public SerializedCache(Cache delegate) {
     this.delegate = delegate;
   }
 
+  /**
+   * @param className the {@link CacheCodec} implementation used to copy the values
+   * @since 3.5.3
+   */
+  public void setCodec(String className) {
+    this.codec = newCodec(className);
+  }
+
+  /**
+   * @param className a {@link CacheCodec} implementation with a public no-argument constructor
+   * @return a new instance of the codec
+   * @since 3.5.3
+   */
+  public static CacheCodec newCodec(String className) {
+    try {
+      return (CacheCodec) Resources.classForName(className).getDeclaredConstructor().newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Error creating cache codec " + className + ".  Cause: " + e, e);
+    }
+  }
+
   @Override
   public String getId() {
     return delegate.getId();
@@ -51,17 +71,14 @@ public class SerializedCache implements Cache {
 
   @Override
   public void putObject(Object key, Object object) {
-    if (object == null || object instanceof Serializable) {
-      delegate.putObject(key, serialize((Serializable) object));
-    } else {
-      throw new CacheException("SharedCache failed to make a copy of a non-serializable object: " + object);
-    }
+    // 无法复制的值由 codec 拒绝
+    delegate.putObject(key, codec.encode(object));
   }
 
   @Override
   public Object getObject(Object key) {
     Object object = delegate.getObject(key);
-    return object == null ? null : deserialize((byte[]) object);
+    return object == null ? null : codec.decode((byte[]) object);
   }
 
   @Override
@@ -84,28 +101,6 @@ public class SerializedCache implements Cache {
     return delegate.equals(obj);
   }
 
-  private byte[] serialize(Serializable value) {
-    try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
-         ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-      oos.writeObject(value);
-      oos.flush();
-      return bos.toByteArray();
-    } catch (Exception e) {
-      throw new CacheException("Error serializing object.  Cause: " + e, e);
-    }
-  }
-
-  private Serializable deserialize(byte[] value) {
-    Serializable result;
-    try (ByteArrayInputStream bis = new ByteArrayInputStream(value);
-         ObjectInputStream ois = new CustomObjectInputStream(bis)) {
-      result = (Serializable) ois.readObject();
-    } catch (Exception e) {
-      throw new CacheException("Error deserializing object.  Cause: " + e, e);
-    }
-    return result;
-  }
-
   public static class CustomObjectInputStream extends ObjectInputStream {
 
     public CustomObjectInputStream(InputStream in) throws IOException {
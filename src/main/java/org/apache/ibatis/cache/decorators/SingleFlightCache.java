@@ -0,0 +1,182 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+
+/**
+ * Single-flight decorator, an alternative to {@link BlockingCache}.
+ * <p>
+ * The first thread that misses a key becomes its loader and goes to the database; the other threads that miss the
+ * same key meanwhile wait for the loader to put the value and then read it from the cache, so N concurrent misses cost
+ * one query. The pending loads are kept as futures that are removed as soon as the loader puts the value or rolls back
+ * ({@link #removeObject(Object)}), so nothing is left behind for the keys that are no longer loading.
+ * <p>
+ * When the loader rolls back, one of the waiting threads becomes the new loader. If {@code timeout} (in milliseconds)
+ * is set, a thread that waited that long gets a {@link CacheException}. Otherwise a thread waits at most
+ * {@value #DEFAULT_WAIT} milliseconds (e.g. for a loader whose session is kept open without committing) and then
+ * goes to the database itself.
+ *
+ * @since 3.5.3
+ */
+public class SingleFlightCache implements Cache {
+
+  /**
+   * The longest time a thread waits for the loader when no {@code timeout} is set.
+   */
+  public static final long DEFAULT_WAIT = 5000;
+
+  private long timeout;
+  private final Cache delegate;
+  private final ConcurrentHashMap<Object, Flight> flights = new ConcurrentHashMap<>();
+
+  public SingleFlightCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    try {
+      delegate.putObject(key, value);
+    } finally {
+      // 值已经可用，不论由哪个线程放入都唤醒等待者
+      land(flights.get(key));
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Thread current = Thread.currentThread();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout > 0 ? timeout : DEFAULT_WAIT);
+    while (true) {
+      Object value = delegate.getObject(key);
+      if (value != null) {
+        return value;
+      }
+      Flight flight = new Flight(key, current);
+      Flight pending = flights.putIfAbsent(key, flight);
+      if (pending == null) {
+        // 再查一次，避免在第一次查询与登记之间值刚好被放入
+        value = delegate.getObject(key);
+        if (value != null) {
+          land(flight);
+        }
+        return value;
+      }
+      if (pending.loader == current) {
+        // 加载者自己再次查询（例如同一事务中），不能等待自己
+        return null;
+      }
+      if (!pending.loader.isAlive()) {
+        // 加载者线程已结束却没有放入值，放弃这次加载
+        land(pending);
+        continue;
+      }
+      if (!await(pending, deadline)) {
+        // 加载者迟迟没有放入值也没有放弃，不再等待，由当前线程自己查询数据库
+        return null;
+      }
+    }
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    // despite of its name, this method is called only to give up a load
+    Flight flight = flights.get(key);
+    if (flight != null && flight.loader == Thread.currentThread()) {
+      land(flight);
+    }
+    return null;
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  public long getTimeout() {
+    return timeout;
+  }
+
+  public void setTimeout(long timeout) {
+    this.timeout = timeout;
+  }
+
+  /**
+   * @return the number of keys being loaded
+   */
+  public int getInFlightCount() {
+    return flights.size();
+  }
+
+  private void land(Flight flight) {
+    if (flight != null) {
+      flights.remove(flight.key, flight);
+      flight.future.complete(null);
+    }
+  }
+
+  /**
+   * @return false if the loader did not land before the default wait elapsed
+   */
+  private boolean await(Flight flight, long deadline) {
+    try {
+      flight.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      return true;
+    } catch (TimeoutException e) {
+      if (timeout <= 0) {
+        return false;
+      }
+      throw new CacheException("Couldn't get a value in " + timeout + " for the key " + flight.key + " at the cache "
+          + delegate.getId());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CacheException("Got interrupted while waiting for the value of key " + flight.key, e);
+    } catch (ExecutionException e) {
+      // 不会发生，future 只会正常完成
+      throw new CacheException("Error waiting for the value of key " + flight.key, e.getCause());
+    }
+  }
+
+  private static final class Flight {
+    final Object key;
+    final Thread loader;
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    Flight(Object key, Thread loader) {
+      this.key = key;
+      this.loader = loader;
+    }
+  }
+
+}
@@ -19,6 +19,7 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.ibatis.cache.Cache;
 
@@ -30,6 +31,7 @@ import org.apache.ibatis.cache.Cache;
  */
 public class SoftCache implements Cache {
   private final Deque<Object> hardLinksToAvoidGarbageCollection;
+  private final ReentrantLock hardLinksLock = new ReentrantLock();
   private final ReferenceQueue<Object> queueOfGarbageCollectedEntries;
   private final Cache delegate;
   private int numberOfHardLinks;
@@ -81,12 +83,15 @@ public class SoftCache implements Cache {
       // 未被 GC 回收
       else {
         // 将 Value 添加到 hardLinksToAvoidGarbageCollection 集合中，防止被 GC 回收
-        synchronized (hardLinksToAvoidGarbageCollection) {
+        hardLinksLock.lock();
+        try {
           hardLinksToAvoidGarbageCollection.addFirst(result);
           // 检查 hardLinksToAvoidGarbageCollection 长度，超过上限，则清理最早添加的 Value
           if (hardLinksToAvoidGarbageCollection.size() > numberOfHardLinks) {
             hardLinksToAvoidGarbageCollection.removeLast();
           }
+        } finally {
+          hardLinksLock.unlock();
         }
       }
     }
@@ -101,8 +106,11 @@ public class SoftCache implements Cache {
 
   @Override
   public void clear() {
-    synchronized (hardLinksToAvoidGarbageCollection) {
+    hardLinksLock.lock();
+    try {
       hardLinksToAvoidGarbageCollection.clear();
+    } finally {
+      hardLinksLock.unlock();
     }
     removeGarbageCollectedItems();
     delegate.clear();
@@ -0,0 +1,485 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * Thread safe, bounded cache decorator using the W-TinyLFU policy.
+ * <p>
+ * Entries are kept in a {@link ConcurrentHashMap} owned by this decorator rather than in the decorated cache, which
+ * only provides the id. Reads never block: accesses are recorded in lossy striped buffers and replayed later.
+ * Writes go straight to the map and queue their policy update. Buffers are drained by whichever thread gets the
+ * eviction lock first, with a try-lock, so no caller waits for another one's bookkeeping.
+ * <p>
+ * New entries enter a small LRU window. When they leave it they compete with the least recently used entry of the
+ * main space, and the one that has been requested more often (according to a compact frequency sketch) stays. This
+ * keeps one-off lookups from flushing the popular entries, which plain LRU does. As the cache is thread safe,
+ * {@link org.apache.ibatis.mapping.CacheBuilder} does not wrap it in a {@link SynchronizedCache}.
+ *
+ * @since 3.5.3
+ */
+public class TinyLfuCache implements Cache {
+
+  private static final int READ_BUFFER_SIZE = 16;
+  private static final int READ_BUFFER_STRIPES = Math.min(16, ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors()));
+
+  private static final int UNLINKED = 0;
+  private static final int WINDOW = 1;
+  private static final int PROBATION = 2;
+  private static final int PROTECTED = 3;
+
+  private final Cache delegate;
+  private final ConcurrentHashMap<Object, Node> data = new ConcurrentHashMap<>();
+  private final ReadBuffer[] readBuffers = new ReadBuffer[READ_BUFFER_STRIPES];
+  private final Queue<Runnable> writeBuffer = new ConcurrentLinkedQueue<>();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  // 以下字段只在持有 evictionLock 时访问
+  private final AccessOrderDeque window = new AccessOrderDeque();
+  private final AccessOrderDeque probation = new AccessOrderDeque();
+  private final AccessOrderDeque protectedDeque = new AccessOrderDeque();
+  private FrequencySketch sketch;
+  private int maximumSize;
+  private int windowMaximum;
+  private int protectedMaximum;
+  private int windowSize;
+  private int protectedSize;
+  private int linkedSize;
+
+  public TinyLfuCache(Cache delegate) {
+    this.delegate = delegate;
+    for (int i = 0; i < readBuffers.length; i++) {
+      readBuffers[i] = new ReadBuffer();
+    }
+    setSize(1024);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return data.size();
+  }
+
+  public void setSize(int size) {
+    evictionLock.lock();
+    try {
+      maximumSize = Math.max(size, 1);
+      // 1% 的窗口区，其余为主区，主区的 80% 为受保护区
+      windowMaximum = Math.max(1, maximumSize / 100);
+      protectedMaximum = (maximumSize - windowMaximum) * 4 / 5;
+      sketch = new FrequencySketch(maximumSize);
+      maintenance();
+    } finally {
+      unlockEvictionLock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    Node node = new Node(key, value);
+    Node prior = data.putIfAbsent(key, node);
+    if (prior == null) {
+      afterWrite(() -> onAdd(node));
+    } else {
+      prior.value = value;
+      afterRead(prior);
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Node node = data.get(key);
+    // 未命中也要记录，频率统计的是请求次数
+    afterRead(node == null ? key : node);
+    return node == null ? null : node.value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Node node = data.remove(key);
+    if (node == null) {
+      return null;
+    }
+    afterWrite(() -> unlink(node));
+    return node.value;
+  }
+
+  @Override
+  public void clear() {
+    evictionLock.lock();
+    try {
+      maintenance();
+      data.clear();
+      // 读缓冲区中可能还留有旧条目，必须标记为已移除
+      for (AccessOrderDeque deque : new AccessOrderDeque[] { window, probation, protectedDeque }) {
+        for (Node node = deque.pollFirst(); node != null; node = deque.pollFirst()) {
+          node.queue = UNLINKED;
+        }
+      }
+      windowSize = 0;
+      protectedSize = 0;
+      linkedSize = 0;
+    } finally {
+      unlockEvictionLock();
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  private void afterRead(Object keyOrNode) {
+    int stripe = (int) mix(Thread.currentThread().getId()) & (READ_BUFFER_STRIPES - 1);
+    if (!readBuffers[stripe].offer(keyOrNode)) {
+      tryMaintenance();
+    }
+  }
+
+  private void afterWrite(Runnable task) {
+    writeBuffer.add(task);
+    // tryLock 失败时直接返回：持锁线程在 unlockEvictionLock() 中释放锁后会再检查写缓冲区，执行这个任务
+    tryMaintenance();
+  }
+
+  private void tryMaintenance() {
+    if (!evictionLock.tryLock()) {
+      return;
+    }
+    try {
+      maintenance();
+    } finally {
+      unlockEvictionLock();
+    }
+  }
+
+  /**
+   * Releases the eviction lock, then runs the writes queued by the threads that could not get it in the meantime.
+   */
+  private void unlockEvictionLock() {
+    evictionLock.unlock();
+    // 若再次 tryLock 失败，新的持锁线程释放锁时会做同样的检查
+    while (!writeBuffer.isEmpty() && evictionLock.tryLock()) {
+      try {
+        maintenance();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  private void maintenance() {
+    for (ReadBuffer buffer : readBuffers) {
+      buffer.drain(this);
+    }
+    Runnable task;
+    while ((task = writeBuffer.poll()) != null) {
+      task.run();
+    }
+    evict();
+  }
+
+  private void onAccess(Object keyOrNode) {
+    if (!(keyOrNode instanceof Node)) {
+      sketch.increment(keyOrNode);
+      return;
+    }
+    Node node = (Node) keyOrNode;
+    sketch.increment(node.key);
+    switch (node.queue) {
+      case WINDOW:
+        window.moveToBack(node);
+        break;
+      case PROBATION:
+        // 在主区再次被访问的条目晋升到受保护区
+        probation.remove(node);
+        protectedDeque.addLast(node);
+        node.queue = PROTECTED;
+        protectedSize++;
+        while (protectedSize > protectedMaximum) {
+          Node demoted = protectedDeque.pollFirst();
+          protectedSize--;
+          probation.addLast(demoted);
+          demoted.queue = PROBATION;
+        }
+        break;
+      case PROTECTED:
+        protectedDeque.moveToBack(node);
+        break;
+      default:
+        // 已被淘汰或尚未加入
+        break;
+    }
+  }
+
+  private void onAdd(Node node) {
+    if (data.get(node.key) != node) {
+      // 在策略更新之前已被删除或替换
+      return;
+    }
+    sketch.increment(node.key);
+    window.addLast(node);
+    node.queue = WINDOW;
+    windowSize++;
+    linkedSize++;
+  }
+
+  private void unlink(Node node) {
+    switch (node.queue) {
+      case WINDOW:
+        window.remove(node);
+        windowSize--;
+        break;
+      case PROBATION:
+        probation.remove(node);
+        break;
+      case PROTECTED:
+        protectedDeque.remove(node);
+        protectedSize--;
+        break;
+      default:
+        return;
+    }
+    node.queue = UNLINKED;
+    linkedSize--;
+  }
+
+  private void evict() {
+    // 窗口区溢出的条目进入主区的试用区，成为淘汰的候选者
+    while (windowSize > windowMaximum) {
+      Node node = window.pollFirst();
+      windowSize--;
+      probation.addLast(node);
+      node.queue = PROBATION;
+    }
+    while (linkedSize > maximumSize) {
+      Node victim = probation.peekFirst();
+      Node candidate = probation.peekLast();
+      if (victim == null) {
+        victim = protectedDeque.peekFirst() != null ? protectedDeque.peekFirst() : window.peekFirst();
+        evictEntry(victim);
+      } else if (victim == candidate || sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+        evictEntry(victim);
+      } else {
+        evictEntry(candidate);
+      }
+    }
+  }
+
+  private void evictEntry(Node node) {
+    unlink(node);
+    data.remove(node.key, node);
+  }
+
+  private static int ceilingPowerOfTwo(int x) {
+    return 1 << -Integer.numberOfLeadingZeros(Math.max(x, 2) - 1);
+  }
+
+  private static long mix(long x) {
+    x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+    x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return x ^ (x >>> 33);
+  }
+
+  private static final class Node {
+    final Object key;
+    volatile Object value;
+    // 以下字段只在持有 evictionLock 时访问
+    int queue = UNLINKED;
+    Node prev;
+    Node next;
+
+    Node(Object key, Object value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Intrusive doubly linked list ordered from the least to the most recently used node.
+   */
+  private static final class AccessOrderDeque {
+    private Node first;
+    private Node last;
+
+    Node peekFirst() {
+      return first;
+    }
+
+    Node peekLast() {
+      return last;
+    }
+
+    void addLast(Node node) {
+      node.prev = last;
+      node.next = null;
+      if (last == null) {
+        first = node;
+      } else {
+        last.next = node;
+      }
+      last = node;
+    }
+
+    Node pollFirst() {
+      Node node = first;
+      if (node != null) {
+        remove(node);
+      }
+      return node;
+    }
+
+    void remove(Node node) {
+      if (node.prev == null) {
+        first = node.next;
+      } else {
+        node.prev.next = node.next;
+      }
+      if (node.next == null) {
+        last = node.prev;
+      } else {
+        node.next.prev = node.prev;
+      }
+      node.prev = null;
+      node.next = null;
+    }
+
+    void moveToBack(Node node) {
+      if (node != last) {
+        remove(node);
+        addLast(node);
+      }
+    }
+  }
+
+  /**
+   * Bounded buffer of recent accesses. Offers are dropped when it is full, which only loses some frequency
+   * information.
+   */
+  private static final class ReadBuffer {
+    private final AtomicReferenceArray<Object> buffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final AtomicLong writeCounter = new AtomicLong();
+    private volatile long readCounter;
+
+    /**
+     * @return false if the buffer is full and should be drained
+     */
+    boolean offer(Object e) {
+      long head = readCounter;
+      long tail = writeCounter.get();
+      if (tail - head >= READ_BUFFER_SIZE) {
+        return false;
+      }
+      if (writeCounter.compareAndSet(tail, tail + 1)) {
+        buffer.lazySet((int) (tail & (READ_BUFFER_SIZE - 1)), e);
+      }
+      return true;
+    }
+
+    void drain(TinyLfuCache cache) {
+      long head = readCounter;
+      long tail = writeCounter.get();
+      for (; head < tail; head++) {
+        int index = (int) (head & (READ_BUFFER_SIZE - 1));
+        Object e = buffer.get(index);
+        if (e == null) {
+          // 写入者已占位但尚未发布
+          break;
+        }
+        buffer.lazySet(index, null);
+        cache.onAccess(e);
+      }
+      readCounter = head;
+    }
+  }
+
+  /**
+   * Count-min sketch of 4-bit counters that are halved periodically, so that the frequencies reflect recent
+   * popularity.
+   */
+  private static final class FrequencySketch {
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int maximumSize) {
+      table = new long[ceilingPowerOfTwo(Math.max(maximumSize, 16))];
+      sampleSize = 10 * maximumSize;
+    }
+
+    int frequency(Object key) {
+      long hash = mix(key.hashCode());
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++) {
+        frequency = Math.min(frequency, (int) ((table[indexOf(hash, i)] >>> offsetOf(hash, i)) & 0xfL));
+      }
+      return frequency;
+    }
+
+    void increment(Object key) {
+      long hash = mix(key.hashCode());
+      boolean added = false;
+      for (int i = 0; i < 4; i++) {
+        int index = indexOf(hash, i);
+        int offset = offsetOf(hash, i);
+        if (((table[index] >>> offset) & 0xfL) != 0xfL) {
+          table[index] += 1L << offset;
+          added = true;
+        }
+      }
+      if (added && ++additions >= sampleSize) {
+        reset();
+      }
+    }
+
+    private void reset() {
+      for (int i = 0; i < table.length; i++) {
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      additions /= 2;
+    }
+
+    private int indexOf(long hash, int i) {
+      long h = mix(hash + i * 0x9e3779b97f4a7c15L);
+      return (int) h & (table.length - 1);
+    }
+
+    private static int offsetOf(long hash, int i) {
+      // 每个 long 存放 16 个计数器，第 i 个哈希函数使用其中的一组
+      return (((int) (hash >>> (i << 3)) & 3) << 2) + (i << 4);
+    }
+  }
+
+}
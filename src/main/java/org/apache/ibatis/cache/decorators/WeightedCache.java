@@ -0,0 +1,144 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheWeigher;
+import org.apache.ibatis.cache.DefaultCacheWeigher;
+import org.apache.ibatis.io.Resources;
+
+/**
+ * Lru (least recently used) cache decorator bounded by the estimated size in bytes of the entries rather than by
+ * their number.
+ * <p>
+ * The weight of an entry is computed once, when it is put, by a {@link CacheWeigher}. In a read/write cache the values
+ * reach this decorator serialized, so their weight is their exact serialized size. An entry heavier than
+ * {@code maxBytes} is not cached at all.
+ *
+ * @since 3.5.3
+ */
+public class WeightedCache implements Cache {
+
+  private final Cache delegate;
+  private final Map<Object, Long> weights;
+  private CacheWeigher weigher;
+  private long maxBytes;
+  private long totalWeight;
+
+  public WeightedCache(Cache delegate) {
+    this.delegate = delegate;
+    this.weights = new LinkedHashMap<>(16, .75F, true);
+    this.weigher = new DefaultCacheWeigher();
+    this.maxBytes = 64L * 1024 * 1024;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    evict();
+  }
+
+  /**
+   * @param className the {@link CacheWeigher} implementation used to weigh the entries
+   */
+  public void setWeigher(String className) {
+    try {
+      this.weigher = (CacheWeigher) Resources.classForName(className).getDeclaredConstructor().newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Error creating cache weigher " + className + ".  Cause: " + e, e);
+    }
+  }
+
+  public long getTotalWeight() {
+    return totalWeight;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    long weight = Math.max(0, weigher.weigh(key, value));
+    Long previous = weights.remove(key);
+    if (previous != null) {
+      totalWeight -= previous;
+    }
+    if (weight > maxBytes) {
+      delegate.removeObject(key);
+      return;
+    }
+    delegate.putObject(key, value);
+    weights.put(key, weight);
+    totalWeight += weight;
+    evict();
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    // 修改当前 Key 在 LinkedHashMap 中记录的顺序
+    weights.get(key);
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Long weight = weights.remove(key);
+    if (weight != null) {
+      totalWeight -= weight;
+    }
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+    weights.clear();
+    totalWeight = 0;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<Object, Long>> it = weights.entrySet().iterator();
+    while (totalWeight > maxBytes && it.hasNext()) {
+      // 从最久未使用的条目开始删除，直到总大小回到上限以内
+      Map.Entry<Object, Long> eldest = it.next();
+      it.remove();
+      totalWeight -= eldest.getValue();
+      delegate.removeObject(eldest.getKey());
+    }
+  }
+
+}
@@ -0,0 +1,333 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.builder.InitializingObject;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheCodec;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.JavaSerializationCodec;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+
+/**
+ * Cache that keeps the serialized values outside of the Java heap, in direct {@link ByteBuffer}s.
+ * <p>
+ * Values are encoded on put by a {@link CacheCodec} (the Java serialization unless the {@code codec} property says
+ * otherwise) and decoded on every get, so like a read/write cache each caller receives its own copy. Only the keys
+ * and a small index stay on the heap, which lets a namespace cache a large amount of reference data without growing
+ * the old generation or the GC pauses.
+ * <p>
+ * The memory ({@code maxBytes}, 64MB by default) is split into segments selected by the hash of the key, each with its
+ * own lock. A segment allocates slabs of {@code slabSize} bytes as it fills up and carves them into blocks of
+ * {@code blockSize} bytes; a value takes as many blocks as it needs. When a segment runs out of blocks it evicts its
+ * least recently used values. The memory of the slabs is released when the cache itself is garbage collected.
+ * <p>
+ * This cache is thread safe. Being a custom cache type, it is not wrapped by the eviction, read/write and synchronized
+ * decorators.
+ *
+ * @since 3.5.3
+ */
+public class OffHeapCache implements Cache, InitializingObject {
+
+  private final String id;
+  private long maxBytes = 64L * 1024 * 1024;
+  private int slabSize = 1024 * 1024;
+  private int blockSize = 512;
+  private int segmentCount = 16;
+  private CacheCodec codec = new JavaSerializationCodec();
+  private Segment[] segments;
+
+  public OffHeapCache(String id) {
+    this.id = id;
+    initialize();
+  }
+
+  @Override
+  public void initialize() {
+    int count = Integer.highestOneBit(Math.max(segmentCount, 1));
+    long segmentBytes = maxBytes / count;
+    if (segmentBytes < blockSize) {
+      throw new CacheException("Cache " + id + " is too small (" + maxBytes + " bytes) for " + count + " segments of "
+          + blockSize + " bytes blocks.");
+    }
+    Segment[] newSegments = new Segment[count];
+    for (int i = 0; i < count; i++) {
+      newSegments[i] = new Segment((int) Math.min(segmentBytes / blockSize, Integer.MAX_VALUE),
+          Math.max(1, Math.min(slabSize, (int) Math.min(segmentBytes, Integer.MAX_VALUE)) / blockSize));
+    }
+    segments = newSegments;
+  }
+
+  public void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  public void setSlabSize(int slabSize) {
+    this.slabSize = slabSize;
+  }
+
+  public void setBlockSize(int blockSize) {
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * @param segmentCount number of independently locked segments, rounded down to a power of two
+   */
+  public void setSegments(int segmentCount) {
+    this.segmentCount = segmentCount;
+  }
+
+  /**
+   * @param className the {@link CacheCodec} implementation used to serialize the values
+   */
+  public void setCodec(String className) {
+    this.codec = SerializedCache.newCodec(className);
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public int getSize() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /**
+   * @return the number of bytes currently allocated outside of the heap
+   */
+  public long getAllocatedBytes() {
+    long allocated = 0;
+    for (Segment segment : segments) {
+      allocated += segment.allocatedBytes();
+    }
+    return allocated;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    // 序列化在锁外完成，无法复制的值由 codec 拒绝
+    segmentFor(key).put(key, codec.encode(value));
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    byte[] data = segmentFor(key).get(key);
+    return data == null ? null : codec.decode(data);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    segmentFor(key).remove(key);
+    return null;
+  }
+
+  @Override
+  public void clear() {
+    for (Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+  private Segment segmentFor(Object key) {
+    int h = key.hashCode();
+    h ^= h >>> 16;
+    return segments[h & (segments.length - 1)];
+  }
+
+  private final class Segment {
+
+    private final Map<Object, Entry> entries = new LinkedHashMap<>(16, .75F, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final int maxBlocks;
+    private final int blocksPerSlab;
+    private final int[] freeBlocks;
+    private int freeCount;
+    private int allocatedBlocks;
+
+    Segment(int maxBlocks, int blocksPerSlab) {
+      this.maxBlocks = maxBlocks;
+      this.blocksPerSlab = blocksPerSlab;
+      this.freeBlocks = new int[maxBlocks];
+    }
+
+    int size() {
+      lock.lock();
+      try {
+        return entries.size();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    long allocatedBytes() {
+      lock.lock();
+      try {
+        return (long) allocatedBlocks * blockSize;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void put(Object key, byte[] data) {
+      lock.lock();
+      try {
+        remove(key);
+        int needed = Math.max(1, (data.length + blockSize - 1) / blockSize);
+        if (needed > maxBlocks) {
+          // 单个值超过了整个分段的容量，不缓存
+          return;
+        }
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (freeCount + maxBlocks - allocatedBlocks < needed) {
+          Entry victim = eldest.next();
+          eldest.remove();
+          release(victim);
+        }
+        int[] blocks = new int[needed];
+        for (int i = 0; i < needed; i++) {
+          blocks[i] = allocateBlock();
+          int offset = i * blockSize;
+          buffer(blocks[i]).put(data, offset, Math.min(blockSize, data.length - offset));
+        }
+        entries.put(key, new Entry(blocks, data.length));
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    byte[] get(Object key) {
+      lock.lock();
+      try {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+          return null;
+        }
+        byte[] data = new byte[entry.length];
+        for (int i = 0; i < entry.blocks.length; i++) {
+          int offset = i * blockSize;
+          buffer(entry.blocks[i]).get(data, offset, Math.min(blockSize, data.length - offset));
+        }
+        return data;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void remove(Object key) {
+      lock.lock();
+      try {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+          release(entry);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void clear() {
+      lock.lock();
+      try {
+        entries.clear();
+        // 保留已分配的 slab，全部块重新标记为空闲
+        freeCount = 0;
+        for (int block = allocatedBlocks - 1; block >= 0; block--) {
+          freeBlocks[freeCount++] = block;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private int allocateBlock() {
+      if (freeCount == 0) {
+        int slabBlocks = Math.min(blocksPerSlab, maxBlocks - allocatedBlocks);
+        slabs.add(ByteBuffer.allocateDirect(slabBlocks * blockSize));
+        for (int block = allocatedBlocks + slabBlocks - 1; block >= allocatedBlocks; block--) {
+          freeBlocks[freeCount++] = block;
+        }
+        allocatedBlocks += slabBlocks;
+      }
+      return freeBlocks[--freeCount];
+    }
+
+    private void release(Entry entry) {
+      for (int block : entry.blocks) {
+        freeBlocks[freeCount++] = block;
+      }
+    }
+
+    /**
+     * @return the slab holding the block, positioned at the start of the block (only valid while holding the lock)
+     */
+    private ByteBuffer buffer(int block) {
+      ByteBuffer slab = slabs.get(block / blocksPerSlab);
+      slab.clear();
+      slab.position((block % blocksPerSlab) * blockSize);
+      return slab;
+    }
+  }
+
+  private static final class Entry {
+    final int[] blocks;
+    final int length;
+
+    Entry(int[] blocks, int length) {
+      this.blocks = blocks;
+      this.length = length;
+    }
+  }
+
+}
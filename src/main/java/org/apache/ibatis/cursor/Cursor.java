@@ -16,12 +16,19 @@
 package org.apache.ibatis.cursor;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Cursor contract to handle fetching items lazily using an Iterator.
  * Cursors are a perfect fit to handle millions of items queries that would not normally fits in memory.
- * If you use collections in resultMaps then cursor SQL queries must be ordered (resultOrdered="true")
- * using the id columns of the resultMap.
+ * If you use collections in resultMaps then cursor SQL queries must be ordered (resultOrdered="true", or the
+ * nestedResultStreaming setting) using the id columns of the resultMap.
  *
  * @author Guillaume Darmont / guillaume@dropinocean.com
  */
@@ -43,4 +50,49 @@ public interface Cursor<T> extends Closeable, Iterable<T> {
    * @return -1 if the first cursor item has not been retrieved. The index of the current item retrieved.
    */
   int getCurrentIndex();
+
+  /**
+   * Returns a sequential stream of the items of this cursor. Closing the stream closes the cursor.
+   *
+   * @return a stream reading the items from this cursor
+   * @since 3.5.3
+   */
+  default Stream<T> stream() {
+    return StreamSupport.stream(spliterator(), false).onClose(() -> {
+      try {
+        close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  /**
+   * Passes the items of this cursor to the action, in lists of {@code batchSize} items (the last one may be smaller).
+   * The lists are not reused, and the cursor is not closed.
+   * <p>
+   * The items are read through {@link #iterator()}, so this cannot be called once an iterator has been retrieved (or
+   * another iteration, e.g. {@link #stream()}, started): an {@link IllegalStateException} is then thrown.
+   *
+   * @param batchSize the number of items of each list
+   * @param action the action to perform on each list
+   * @throws IllegalStateException if an iterator has already been retrieved or the cursor is closed
+   * @since 3.5.3
+   */
+  default void forEachBatch(int batchSize, Consumer<List<T>> action) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("The batch size must be positive, but was " + batchSize);
+    }
+    List<T> batch = new ArrayList<>(batchSize);
+    for (T item : this) {
+      batch.add(item);
+      if (batch.size() == batchSize) {
+        action.accept(batch);
+        batch = new ArrayList<>(batchSize);
+      }
+    }
+    if (!batch.isEmpty()) {
+      action.accept(batch);
+    }
+  }
 }
@@ -0,0 +1,249 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor.defaults;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.ibatis.cursor.Cursor;
+
+/**
+ * A cursor that reads the items of another cursor ahead, on a thread of an {@link Executor}.
+ * <p>
+ * The items are read in batches of {@code batchSize} items, and at most {@code queueSize} batches wait for the
+ * consumer: the mapping of the next rows overlaps with the processing of the previous items. Reading starts when the
+ * iterator is retrieved, and stops when the cursor is closed.
+ * <p>
+ * As the rows are read from another thread, which uses the JDBC connection of the session, the session of the cursor
+ * must not be used (e.g. to execute other statements, to load lazy properties or to commit) until the cursor is consumed
+ * or closed. It is only used for statements with {@code cursorPrefetch} enabled.
+ * This implementation is not thread safe.
+ *
+ * @since 3.5.3
+ */
+public class PrefetchingCursor<T> implements Cursor<T> {
+
+  private static final Batch<?> END = new Batch<>(Collections.emptyList(), null);
+
+  private final Cursor<T> delegate;
+  private final int batchSize;
+  private final Executor executor;
+  private final BlockingQueue<Batch<T>> queue;
+  private final CountDownLatch producerDone = new CountDownLatch(1);
+  private final CursorIterator cursorIterator = new CursorIterator();
+  private final int initialIndex;
+
+  private volatile boolean closed;
+  private boolean iteratorRetrieved;
+  private boolean consumed;
+  private int returnedCount;
+
+  public PrefetchingCursor(Cursor<T> delegate, int batchSize, int queueSize, Executor executor) {
+    if (batchSize < 1 || queueSize < 1) {
+      throw new IllegalArgumentException("The batch size and the queue size must be positive");
+    }
+    this.delegate = delegate;
+    this.batchSize = batchSize;
+    this.executor = executor;
+    this.queue = new ArrayBlockingQueue<>(queueSize);
+    this.initialIndex = delegate.getCurrentIndex();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return iteratorRetrieved && !closed && !consumed;
+  }
+
+  @Override
+  public boolean isConsumed() {
+    return consumed;
+  }
+
+  @Override
+  public int getCurrentIndex() {
+    return initialIndex + returnedCount;
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    if (iteratorRetrieved) {
+      throw new IllegalStateException("Cannot open more than one iterator on a Cursor");
+    }
+    if (closed || consumed) {
+      throw new IllegalStateException("A Cursor is already closed.");
+    }
+    iteratorRetrieved = true;
+    try {
+      executor.execute(this::produce);
+    } catch (RejectedExecutionException e) {
+      // 生产者没有启动，close() 不能等待它结束
+      iteratorRetrieved = false;
+      throw e;
+    }
+    return cursorIterator;
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (iteratorRetrieved) {
+      // 清空队列以唤醒阻塞的生产者，等它读完当前行后再关闭结果集
+      queue.clear();
+      boolean interrupted = false;
+      while (true) {
+        try {
+          producerDone.await();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      queue.clear();
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    closeDelegate();
+  }
+
+  private void produce() {
+    try {
+      Iterator<T> iterator = delegate.iterator();
+      List<T> items = new ArrayList<>(batchSize);
+      while (!closed && iterator.hasNext()) {
+        items.add(iterator.next());
+        if (items.size() == batchSize) {
+          if (!offer(new Batch<>(items, null))) {
+            return;
+          }
+          items = new ArrayList<>(batchSize);
+        }
+      }
+      if (!items.isEmpty() && !offer(new Batch<>(items, null))) {
+        return;
+      }
+      offer(end());
+    } catch (RuntimeException | Error e) {
+      offer(new Batch<>(Collections.emptyList(), e));
+    } finally {
+      producerDone.countDown();
+    }
+  }
+
+  /**
+   * @return false when the cursor has been closed
+   */
+  private boolean offer(Batch<T> batch) {
+    if (closed) {
+      return false;
+    }
+    try {
+      // close() 设置标志后会清空队列，put 不会一直阻塞
+      queue.put(batch);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  private Batch<T> take() {
+    try {
+      return queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+      throw new IllegalStateException("Interrupted while waiting for the next items of the cursor", e);
+    }
+  }
+
+  private void closeDelegate() {
+    try {
+      delegate.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Batch<T> end() {
+    return (Batch<T>) END;
+  }
+
+  private static final class Batch<T> {
+    final List<T> items;
+    final Throwable failure;
+
+    Batch(List<T> items, Throwable failure) {
+      this.items = items;
+      this.failure = failure;
+    }
+  }
+
+  private class CursorIterator implements Iterator<T> {
+
+    private Batch<T> batch;
+    private int position;
+
+    @Override
+    public boolean hasNext() {
+      while (!consumed && !closed && (batch == null || position == batch.items.size())) {
+        Batch<T> next = take();
+        if (next == END) {
+          consumed = true;
+          batch = null;
+          closeDelegate();
+        } else if (next.failure != null) {
+          close();
+          if (next.failure instanceof Error) {
+            throw (Error) next.failure;
+          }
+          throw (RuntimeException) next.failure;
+        } else {
+          batch = next;
+          position = 0;
+        }
+      }
+      return !closed && batch != null && position < batch.items.size();
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      returnedCount++;
+      return batch.items.get(position++);
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Cannot remove element from Cursor");
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * Proxy of a prepared statement taken from a {@link StatementCache}. Closing it gives the statement back to the cache
+ * instead of closing it.
+ */
+class CachedStatement implements InvocationHandler {
+
+  private static final String CLOSE = "close";
+  private static final String IS_CLOSED = "isClosed";
+  private static final String ADD_BATCH = "addBatch";
+  private static final String SET_MAX_ROWS = "setMaxRows";
+  private static final String SET_QUERY_TIMEOUT = "setQueryTimeout";
+  private static final String SET_FETCH_SIZE = "setFetchSize";
+  private static final Class<?>[] IFACES = new Class<?>[] { PreparedStatement.class };
+
+  private final StatementCache cache;
+  private final StatementCache.Key key;
+  private final PreparedStatement realStatement;
+  private final PreparedStatement proxyStatement;
+  private boolean closed;
+  private boolean batched;
+  /**
+   * The settings before they were first changed, restored when the statement goes back to the cache (null when
+   * unchanged).
+   */
+  private Integer maxRows;
+  private Integer queryTimeout;
+  private Integer fetchSize;
+
+  CachedStatement(StatementCache cache, StatementCache.Key key, PreparedStatement statement) {
+    this.cache = cache;
+    this.key = key;
+    this.realStatement = statement;
+    this.proxyStatement = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), IFACES, this);
+  }
+
+  PreparedStatement getProxyStatement() {
+    return proxyStatement;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    String methodName = method.getName();
+    if (CLOSE.equals(methodName)) {
+      if (!closed) {
+        closed = true;
+        if (restoreSettings()) {
+          cache.release(key, realStatement, batched);
+        } else {
+          StatementCache.closeQuietly(realStatement);
+        }
+      }
+      return null;
+    } else if (IS_CLOSED.equals(methodName)) {
+      return closed || realStatement.isClosed();
+    }
+    if (!Object.class.equals(method.getDeclaringClass())) {
+      if (closed) {
+        throw new SQLException("Error accessing cached PreparedStatement. Statement is closed.");
+      }
+      if (ADD_BATCH.equals(methodName)) {
+        batched = true;
+      } else if (SET_MAX_ROWS.equals(methodName) && maxRows == null) {
+        maxRows = realStatement.getMaxRows();
+      } else if (SET_QUERY_TIMEOUT.equals(methodName) && queryTimeout == null) {
+        queryTimeout = realStatement.getQueryTimeout();
+      } else if (SET_FETCH_SIZE.equals(methodName) && fetchSize == null) {
+        fetchSize = realStatement.getFetchSize();
+      }
+    }
+    try {
+      return method.invoke(realStatement, args);
+    } catch (Throwable t) {
+      throw ExceptionUtil.unwrapThrowable(t);
+    }
+  }
+
+  /**
+   * Restores the settings the next user of the statement expects.
+   *
+   * @return false if the statement cannot be reused
+   */
+  private boolean restoreSettings() {
+    try {
+      if (maxRows != null) {
+        realStatement.setMaxRows(maxRows);
+      }
+      if (queryTimeout != null) {
+        realStatement.setQueryTimeout(queryTimeout);
+      }
+      if (fetchSize != null) {
+        realStatement.setFetchSize(fetchSize);
+      }
+      return true;
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,326 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free container of physical connections used by {@link PoolMode#CONCURRENT}.
+ * <p>
+ * Each entry carries its own state which is claimed with a CAS, so checking out and returning a connection never
+ * takes a shared monitor. A thread first looks at the connections it returned most recently, then scans the shared
+ * list, and finally waits on a fair handoff queue that hands returned connections to waiters in arrival order.
+ */
+class ConnectionBag {
+
+  static final int STATE_NOT_IN_USE = 0;
+  static final int STATE_IN_USE = 1;
+  static final int STATE_REMOVED = -1;
+
+  private static final int MAX_THREAD_LOCAL_ENTRIES = 16;
+
+  /**
+   * Handed to a waiter when a slot has been freed, so that it can go and create a new connection right away.
+   */
+  private static final Entry SLOT_RELEASED = new Entry(null);
+
+  private final CopyOnWriteArrayList<Entry> sharedList = new CopyOnWriteArrayList<>();
+  private final ThreadLocal<List<Entry>> threadList = ThreadLocal.withInitial(() -> new ArrayList<>(MAX_THREAD_LOCAL_ENTRIES));
+  private final SynchronousQueue<Entry> handoffQueue = new SynchronousQueue<>(true);
+  private final AtomicInteger waiters = new AtomicInteger();
+  private final AtomicInteger slots = new AtomicInteger();
+
+  /**
+   * Claims an idle connection without blocking.
+   *
+   * @return the claimed entry (in state {@link #STATE_IN_USE}) or null if there is no idle connection
+   */
+  Entry borrow() {
+    List<Entry> list = threadList.get();
+    for (int i = list.size() - 1; i >= 0; i--) {
+      Entry entry = list.remove(i);
+      if (entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+        return entry;
+      }
+    }
+    for (Entry entry : sharedList) {
+      if (entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Claims the given entry if it is idle. Used by the housekeeper to take a connection out of circulation while it is
+   * checked; the entry must then be either returned with {@link #requite(Entry)} or removed.
+   *
+   * @param entry the entry to claim
+   * @return true if the entry was idle and is now in use by the caller
+   */
+  boolean claim(Entry entry) {
+    return entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE);
+  }
+
+  /**
+   * Waits for a connection to be handed off by another thread.
+   *
+   * @param timeoutMillis the maximum time to wait, or 0 (or less) to wait until a connection or a slot is released
+   * @return the claimed entry, or null if the wait timed out or a slot became free for a new connection
+   * @throws InterruptedException if the current thread was interrupted while waiting
+   */
+  Entry await(long timeoutMillis) throws InterruptedException {
+    waiters.incrementAndGet();
+    try {
+      // a connection may have been returned after borrow() gave up but before we registered as a waiter
+      for (Entry entry : sharedList) {
+        if (entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+          return entry;
+        }
+      }
+      if (timeoutMillis <= 0) {
+        // 与 SYNCHRONIZED 模式一致，不设超时时一直等待
+        for (;;) {
+          Entry entry = handoffQueue.take();
+          if (entry == SLOT_RELEASED) {
+            return null;
+          }
+          if (entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+            return entry;
+          }
+        }
+      }
+      long timeout = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      while (timeout > 0) {
+        long start = System.nanoTime();
+        Entry entry = handoffQueue.poll(timeout, TimeUnit.NANOSECONDS);
+        if (entry == null || entry == SLOT_RELEASED) {
+          return null;
+        }
+        if (entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+          return entry;
+        }
+        timeout -= System.nanoTime() - start;
+      }
+      return null;
+    } finally {
+      waiters.decrementAndGet();
+    }
+  }
+
+  /**
+   * Reserves a slot for a new connection if the bag holds less than the given number of connections.
+   * A successful reservation must be followed by either {@link #add(Connection)} or {@link #cancelReservation()}.
+   *
+   * @param maximum the maximum number of connections
+   * @return true if a slot was reserved
+   */
+  boolean reserve(int maximum) {
+    for (;;) {
+      int current = slots.get();
+      if (current >= maximum) {
+        return false;
+      }
+      if (slots.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  void cancelReservation() {
+    slots.decrementAndGet();
+    releaseSlot();
+  }
+
+  /**
+   * Adds a new connection to a previously reserved slot. The entry is returned in use by the caller.
+   *
+   * @param connection the physical connection
+   * @return the new entry
+   */
+  Entry add(Connection connection) {
+    Entry entry = new Entry(connection);
+    sharedList.add(entry);
+    return entry;
+  }
+
+  /**
+   * Makes a checked out entry available again, handing it directly to a waiting thread if there is one.
+   *
+   * @param entry the entry to return
+   * @return false if the entry had been removed in the meantime
+   */
+  boolean requite(Entry entry) {
+    if (!entry.state.compareAndSet(STATE_IN_USE, STATE_NOT_IN_USE)) {
+      return false;
+    }
+    for (int i = 0; waiters.get() > 0; i++) {
+      if (entry.state.get() != STATE_NOT_IN_USE || handoffQueue.offer(entry)) {
+        return true;
+      } else if ((i & 0xff) == 0xff) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+      } else {
+        Thread.yield();
+      }
+    }
+    List<Entry> list = threadList.get();
+    if (list.size() < MAX_THREAD_LOCAL_ENTRIES) {
+      list.add(entry);
+    }
+    return true;
+  }
+
+  /**
+   * Removes an entry from the bag whatever its state. Removing an entry twice has no effect.
+   *
+   * @param entry the entry to remove
+   * @return true if this call removed the entry
+   */
+  boolean remove(Entry entry) {
+    if (entry.state.getAndSet(STATE_REMOVED) == STATE_REMOVED) {
+      return false;
+    }
+    if (sharedList.remove(entry)) {
+      slots.decrementAndGet();
+      releaseSlot();
+    }
+    return true;
+  }
+
+  private void releaseSlot() {
+    // 等待者可能还没进入 take()，像 requite() 一样重试，否则不设超时的等待者会错过这次通知
+    for (int i = 0; waiters.get() > 0; i++) {
+      if (handoffQueue.offer(SLOT_RELEASED)) {
+        return;
+      } else if ((i & 0xff) == 0xff) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+      } else {
+        Thread.yield();
+      }
+    }
+  }
+
+  /**
+   * Finds the in-use entry that has been checked out for the longest time.
+   *
+   * @return the entry, or null if no connection is checked out
+   */
+  Entry oldestInUse() {
+    Entry oldest = null;
+    long oldestCheckout = Long.MAX_VALUE;
+    for (Entry entry : sharedList) {
+      PooledConnection owner = entry.owner.get();
+      if (owner != null && entry.state.get() == STATE_IN_USE && owner.getCheckoutTimestamp() < oldestCheckout) {
+        oldest = entry;
+        oldestCheckout = owner.getCheckoutTimestamp();
+      }
+    }
+    return oldest;
+  }
+
+  int getCount(int state) {
+    int count = 0;
+    for (Entry entry : sharedList) {
+      if (entry.state.get() == state) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  int size() {
+    return slots.get();
+  }
+
+  int getWaitingThreadCount() {
+    return waiters.get();
+  }
+
+  List<Entry> values() {
+    return new ArrayList<>(sharedList);
+  }
+
+  static final class Entry {
+
+    private final Connection realConnection;
+    private final AtomicInteger state = new AtomicInteger(STATE_IN_USE);
+    private final AtomicReference<PooledConnection> owner = new AtomicReference<>();
+    private final long createdTimestamp;
+    private volatile long lastUsedTimestamp;
+    private StatementCache statementCache;
+
+    Entry(Connection realConnection) {
+      this.realConnection = realConnection;
+      this.createdTimestamp = System.currentTimeMillis();
+      this.lastUsedTimestamp = createdTimestamp;
+    }
+
+    Connection getRealConnection() {
+      return realConnection;
+    }
+
+    StatementCache getStatementCache() {
+      return statementCache;
+    }
+
+    void setStatementCache(StatementCache statementCache) {
+      this.statementCache = statementCache;
+    }
+
+    int getState() {
+      return state.get();
+    }
+
+    PooledConnection getOwner() {
+      return owner.get();
+    }
+
+    void setOwner(PooledConnection connection) {
+      owner.set(connection);
+    }
+
+    /**
+     * Takes the entry away from the given owner. Only one of a returning owner and an overdue claimer can succeed.
+     *
+     * @param connection the expected current owner
+     * @return true if the given connection was the owner
+     */
+    boolean release(PooledConnection connection) {
+      return owner.compareAndSet(connection, null);
+    }
+
+    long getCreatedTimestamp() {
+      return createdTimestamp;
+    }
+
+    long getLastUsedTimestamp() {
+      return lastUsedTimestamp;
+    }
+
+    void setLastUsedTimestamp(long lastUsedTimestamp) {
+      this.lastUsedTimestamp = lastUsedTimestamp;
+    }
+  }
+
+}
@@ -0,0 +1,97 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.sql.Connection;
+
+/**
+ * Receives the life cycle events of the connections of a {@link PooledDataSource}, e.g. to export metrics.
+ * <p>
+ * Listeners are called on the thread that triggers the event. Checkout, return and creation events are fired
+ * outside of the pool lock; the other events may be fired while the lock is held, so implementations must be fast and
+ * must not call back into the pool. Exceptions thrown by a listener are logged and ignored.
+ *
+ * @since 3.5.3
+ */
+public interface PoolListener {
+
+  /**
+   * Why a physical connection was closed by the pool.
+   */
+  enum EvictionCause {
+    /** The connection failed validation. */
+    BAD,
+    /** The connection exceeded {@code poolMaximumLifetime}. */
+    EXPIRED,
+    /** The connection stayed idle longer than {@code poolIdleTimeout}. */
+    IDLE,
+    /** The connection was returned while the pool already held {@code poolMaximumIdleConnections} idle connections. */
+    SURPLUS,
+    /** The pool was reset by {@link PooledDataSource#forceCloseAll()}. */
+    FORCED,
+    /**
+     * The connection could not be made available, as the pool was reset or reconfigured while it was being opened or
+     * validated.
+     */
+    REJECTED
+  }
+
+  /**
+   * A new physical connection has been opened.
+   *
+   * @param connection the physical connection
+   * @param elapsedMicros the time spent by the driver to open it
+   */
+  default void connectionCreated(Connection connection, long elapsedMicros) {
+  }
+
+  /**
+   * A connection has been handed out to a caller.
+   *
+   * @param connection the physical connection
+   * @param waitMicros the time the caller waited for it
+   */
+  default void connectionCheckedOut(Connection connection, long waitMicros) {
+  }
+
+  /**
+   * A caller has given a connection back.
+   *
+   * @param connection the physical connection
+   * @param checkoutMicros the time the connection was held by the caller
+   */
+  default void connectionReturned(Connection connection, long checkoutMicros) {
+  }
+
+  /**
+   * A physical connection has been closed by the pool.
+   *
+   * @param connection the physical connection
+   * @param cause why it was closed
+   */
+  default void connectionEvicted(Connection connection, EvictionCause cause) {
+  }
+
+  /**
+   * A connection held longer than {@code poolMaximumCheckoutTime} has been taken away from its owner.
+   *
+   * @param connection the physical connection
+   * @param checkoutMicros the time the connection had been held by its previous owner
+   */
+  default void overdueConnectionClaimed(Connection connection, long checkoutMicros) {
+  }
+
+}
@@ -0,0 +1,32 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+/**
+ * The strategy used by {@link PooledDataSource} to hand out and take back connections.
+ *
+ * <ul>
+ * <li>{@link #SYNCHRONIZED}: idle and active connections are kept in lists guarded by the {@link java.util.concurrent.locks.ReentrantLock} of the
+ * {@link PoolState}.</li>
+ * <li>{@link #CONCURRENT}: connections are kept in a {@link ConnectionBag}, with per-thread affinity for recently used
+ * connections and a fair handoff queue for waiting threads. Checkout and return do not take a shared lock.</li>
+ * </ul>
+ *
+ * @since 3.5.3
+ */
+public enum PoolMode {
+  SYNCHRONIZED, CONCURRENT
+}
@@ -17,6 +17,9 @@ package org.apache.ibatis.datasource.pooled;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @author Clinton Begin
@@ -25,8 +28,21 @@ public class PoolState {
 
   protected PooledDataSource dataSource;
 
+  /**
+   * Guards the connection lists and counters of the synchronized pool mode.
+   */
+  final ReentrantLock lock = new ReentrantLock();
+  /**
+   * Signalled when a connection is returned to the pool or a reserved slot is released.
+   */
+  final Condition connectionAvailable = lock.newCondition();
+
   protected final List<PooledConnection> idleConnections = new ArrayList<>();
   protected final List<PooledConnection> activeConnections = new ArrayList<>();
+  protected int pendingConnectionCount = 0;
+  protected int waitingThreadCount = 0;
+  final ConnectionBag bag = new ConnectionBag();
+  // 保留给子类读取，只在 SYNCHRONIZED 模式下持有 lock 时更新（CONCURRENT 模式下不再变化）；getter 读取的是下面的 LongAdder
   protected long requestCount = 0;
   protected long accumulatedRequestTime = 0;
   protected long accumulatedCheckoutTime = 0;
@@ -35,68 +51,229 @@ public class PoolState {
   protected long accumulatedWaitTime = 0;
   protected long hadToWaitCount = 0;
   protected long badConnectionCount = 0;
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder requestTime = new LongAdder();
+  private final LongAdder checkoutTime = new LongAdder();
+  private final LongAdder claimedOverdueConnections = new LongAdder();
+  private final LongAdder overdueCheckoutTime = new LongAdder();
+  private final LongAdder waitTime = new LongAdder();
+  private final LongAdder waits = new LongAdder();
+  private final LongAdder badConnections = new LongAdder();
+  private final LongAdder createdConnections = new LongAdder();
+  protected final LatencyHistogram requestTimeHistogram = new LatencyHistogram();
+  protected final LatencyHistogram checkoutTimeHistogram = new LatencyHistogram();
+  protected final LatencyHistogram creationTimeHistogram = new LatencyHistogram();
 
   public PoolState(PooledDataSource dataSource) {
     this.dataSource = dataSource;
   }
 
-  public synchronized long getRequestCount() {
-    return requestCount;
+  /**
+   * The protected counters are only updated by the synchronized pool mode, under {@link #lock}, so that they are never
+   * updated concurrently. The getters read the adders, updated in both modes.
+   */
+  private boolean updatesGuardedCounters() {
+    return dataSource.poolMode == PoolMode.SYNCHRONIZED && lock.isHeldByCurrentThread();
+  }
+
+  void recordRequest(long time) {
+    if (updatesGuardedCounters()) {
+      requestCount++;
+      accumulatedRequestTime += time;
+    }
+    requests.increment();
+    requestTime.add(time);
+  }
+
+  void recordCheckoutTime(long time) {
+    if (updatesGuardedCounters()) {
+      accumulatedCheckoutTime += time;
+    }
+    checkoutTime.add(time);
+  }
+
+  void recordClaimedOverdueConnection(long time) {
+    if (updatesGuardedCounters()) {
+      claimedOverdueConnectionCount++;
+      accumulatedCheckoutTimeOfOverdueConnections += time;
+    }
+    claimedOverdueConnections.increment();
+    overdueCheckoutTime.add(time);
+    recordCheckoutTime(time);
   }
 
-  public synchronized long getAverageRequestTime() {
-    return requestCount == 0 ? 0 : accumulatedRequestTime / requestCount;
+  void recordHadToWait() {
+    if (updatesGuardedCounters()) {
+      hadToWaitCount++;
+    }
+    waits.increment();
   }
 
-  public synchronized long getAverageWaitTime() {
-    return hadToWaitCount == 0 ? 0 : accumulatedWaitTime / hadToWaitCount;
+  void recordWaitTime(long time) {
+    if (updatesGuardedCounters()) {
+      accumulatedWaitTime += time;
+    }
+    waitTime.add(time);
+  }
 
+  void recordBadConnection() {
+    if (updatesGuardedCounters()) {
+      badConnectionCount++;
+    }
+    badConnections.increment();
   }
 
-  public synchronized long getHadToWaitCount() {
-    return hadToWaitCount;
+  void recordCreatedConnection() {
+    createdConnections.increment();
+  }
+
+  public long getRequestCount() {
+    return requests.sum();
+  }
+
+  public long getAverageRequestTime() {
+    long count = requests.sum();
+    return count == 0 ? 0 : requestTime.sum() / count;
+  }
+
+  public long getAverageWaitTime() {
+    long count = waits.sum();
+    return count == 0 ? 0 : waitTime.sum() / count;
+
   }
 
-  public synchronized long getBadConnectionCount() {
-    return badConnectionCount;
+  public long getHadToWaitCount() {
+    return waits.sum();
   }
 
-  public synchronized long getClaimedOverdueConnectionCount() {
-    return claimedOverdueConnectionCount;
+  public long getBadConnectionCount() {
+    return badConnections.sum();
   }
 
-  public synchronized long getAverageOverdueCheckoutTime() {
-    return claimedOverdueConnectionCount == 0 ? 0 : accumulatedCheckoutTimeOfOverdueConnections / claimedOverdueConnectionCount;
+  public long getClaimedOverdueConnectionCount() {
+    return claimedOverdueConnections.sum();
   }
 
-  public synchronized long getAverageCheckoutTime() {
-    return requestCount == 0 ? 0 : accumulatedCheckoutTime / requestCount;
+  public long getAverageOverdueCheckoutTime() {
+    long claimed = claimedOverdueConnections.sum();
+    return claimed == 0 ? 0 : overdueCheckoutTime.sum() / claimed;
   }
 
+  public long getAverageCheckoutTime() {
+    long count = requests.sum();
+    return count == 0 ? 0 : checkoutTime.sum() / count;
+  }
+
+
+  public int getIdleConnectionCount() {
+    if (dataSource.poolMode == PoolMode.CONCURRENT) {
+      return bag.getCount(ConnectionBag.STATE_NOT_IN_USE);
+    }
+    lock.lock();
+    try {
+      return idleConnections.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getActiveConnectionCount() {
+    if (dataSource.poolMode == PoolMode.CONCURRENT) {
+      return bag.getCount(ConnectionBag.STATE_IN_USE);
+    }
+    lock.lock();
+    try {
+      return activeConnections.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of physical connections opened by the pool
+   * @since 3.5.3
+   */
+  public long getCreatedConnectionCount() {
+    return createdConnections.sum();
+  }
+
+  /**
+   * @return the number of physical connections currently held by the pool, including those being opened
+   * @since 3.5.3
+   */
+  public int getTotalConnectionCount() {
+    if (dataSource.poolMode == PoolMode.CONCURRENT) {
+      return bag.size();
+    }
+    lock.lock();
+    try {
+      return idleConnections.size() + activeConnections.size() + pendingConnectionCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of threads currently waiting for a connection
+   * @since 3.5.3
+   */
+  public int getWaitingThreadCount() {
+    if (dataSource.poolMode == PoolMode.CONCURRENT) {
+      return bag.getWaitingThreadCount();
+    }
+    lock.lock();
+    try {
+      return waitingThreadCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the time (in microseconds) callers waited to get a connection
+   * @since 3.5.3
+   */
+  public LatencyHistogram getRequestTimeHistogram() {
+    return requestTimeHistogram;
+  }
 
-  public synchronized int getIdleConnectionCount() {
-    return idleConnections.size();
+  /**
+   * @return the time (in microseconds) callers held a connection before returning it
+   * @since 3.5.3
+   */
+  public LatencyHistogram getCheckoutTimeHistogram() {
+    return checkoutTimeHistogram;
   }
 
-  public synchronized int getActiveConnectionCount() {
-    return activeConnections.size();
+  /**
+   * @return the time (in microseconds) the driver took to open a physical connection
+   * @since 3.5.3
+   */
+  public LatencyHistogram getCreationTimeHistogram() {
+    return creationTimeHistogram;
   }
 
   @Override
-  public synchronized String toString() {
+  public String toString() {
     StringBuilder builder = new StringBuilder();
     builder.append("\n===CONFINGURATION==============================================");
     builder.append("\n jdbcDriver                     ").append(dataSource.getDriver());
     builder.append("\n jdbcUrl                        ").append(dataSource.getUrl());
     builder.append("\n jdbcUsername                   ").append(dataSource.getUsername());
     builder.append("\n jdbcPassword                   ").append(dataSource.getPassword() == null ? "NULL" : "************");
+    builder.append("\n poolMode                       ").append(dataSource.poolMode);
     builder.append("\n poolMaxActiveConnections       ").append(dataSource.poolMaximumActiveConnections);
     builder.append("\n poolMaxIdleConnections         ").append(dataSource.poolMaximumIdleConnections);
+    builder.append("\n poolMinIdleConnections         ").append(dataSource.poolMinimumIdleConnections);
     builder.append("\n poolMaxCheckoutTime            ").append(dataSource.poolMaximumCheckoutTime);
     builder.append("\n poolTimeToWait                 ").append(dataSource.poolTimeToWait);
     builder.append("\n poolPingEnabled                ").append(dataSource.poolPingEnabled);
     builder.append("\n poolPingQuery                  ").append(dataSource.poolPingQuery);
     builder.append("\n poolPingConnectionsNotUsedFor  ").append(dataSource.poolPingConnectionsNotUsedFor);
+    builder.append("\n poolHousekeepingInterval       ").append(dataSource.poolHousekeepingInterval);
+    builder.append("\n poolMaximumLifetime            ").append(dataSource.poolMaximumLifetime);
+    builder.append("\n poolIdleTimeout                ").append(dataSource.poolIdleTimeout);
+    builder.append("\n poolPreparedStatementCacheSize ").append(dataSource.poolPreparedStatementCacheSize);
     builder.append("\n ---STATUS-----------------------------------------------------");
     builder.append("\n activeConnections              ").append(getActiveConnectionCount());
     builder.append("\n idleConnections                ").append(getIdleConnectionCount());
@@ -108,6 +285,11 @@ public class PoolState {
     builder.append("\n hadToWait                      ").append(getHadToWaitCount());
     builder.append("\n averageWaitTime                ").append(getAverageWaitTime());
     builder.append("\n badConnectionCount             ").append(getBadConnectionCount());
+    builder.append("\n createdConnectionCount         ").append(getCreatedConnectionCount());
+    builder.append("\n waitingThreads                 ").append(getWaitingThreadCount());
+    builder.append("\n requestTime (us)               ").append(requestTimeHistogram);
+    builder.append("\n checkoutTime (us)              ").append(checkoutTimeHistogram);
+    builder.append("\n creationTime (us)              ").append(creationTimeHistogram);
     builder.append("\n===============================================================");
     return builder.toString();
   }
@@ -29,6 +29,7 @@ import org.apache.ibatis.reflection.ExceptionUtil;
 class PooledConnection implements InvocationHandler {
 
   private static final String CLOSE = "close";
+  private static final String PREPARE_STATEMENT = "prepareStatement";
   private static final Class<?>[] IFACES = new Class<?>[] { Connection.class };
 
   private final int hashCode;
@@ -36,10 +37,13 @@ class PooledConnection implements InvocationHandler {
   private final Connection realConnection;
   private final Connection proxyConnection;
   private long checkoutTimestamp;
+  private long checkoutNanoTime;
   private long createdTimestamp;
   private long lastUsedTimestamp;
   private int connectionTypeCode;
-  private boolean valid;
+  private volatile boolean valid;
+  private ConnectionBag.Entry poolEntry;
+  private StatementCache statementCache;
 
   /**
    * Constructor for SimplePooledConnection that uses the Connection and PooledDataSource passed in.
@@ -73,6 +77,32 @@ class PooledConnection implements InvocationHandler {
     return valid && realConnection != null && dataSource.pingConnection(this);
   }
 
+  /**
+   * Getter for the bag entry this connection was checked out from (only used by {@link PoolMode#CONCURRENT}).
+   *
+   * @return The entry, or null if the pool does not use a {@link ConnectionBag}
+   */
+  ConnectionBag.Entry getPoolEntry() {
+    return poolEntry;
+  }
+
+  void setPoolEntry(ConnectionBag.Entry poolEntry) {
+    this.poolEntry = poolEntry;
+  }
+
+  /**
+   * Getter for the prepared statement cache of the physical connection.
+   *
+   * @return The cache, or null if statements are not cached
+   */
+  StatementCache getStatementCache() {
+    return statementCache;
+  }
+
+  void setStatementCache(StatementCache statementCache) {
+    this.statementCache = statementCache;
+  }
+
   /**
    * Getter for the *real* connection that this wraps.
    *
@@ -188,6 +218,17 @@ class PooledConnection implements InvocationHandler {
    */
   public void setCheckoutTimestamp(long timestamp) {
     this.checkoutTimestamp = timestamp;
+    this.checkoutNanoTime = System.nanoTime();
+  }
+
+  /**
+   * Getter for the {@link System#nanoTime()} at which this connection was checked out, used to measure the checkout
+   * time precisely.
+   *
+   * @return the nano time
+   */
+  long getCheckoutNanoTime() {
+    return checkoutNanoTime;
   }
 
   /**
@@ -244,6 +285,10 @@ class PooledConnection implements InvocationHandler {
         // 只要不是 Object 的方法，都需要检测当前 PooledConnection 是否可用
         checkConnection();
       }
+      // 从物理连接的 PreparedStatement 缓存中获取
+      if (statementCache != null && PREPARE_STATEMENT.equals(methodName)) {
+        return statementCache.prepareStatement(realConnection, method, args);
+      }
       // 调用 realConnection 的对应方法
       return method.invoke(realConnection, args);
     } catch (Throwable t) {
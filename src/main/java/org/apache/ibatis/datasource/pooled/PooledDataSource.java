@@ -16,23 +16,39 @@
 package org.apache.ibatis.datasource.pooled;
 
 import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import javax.sql.DataSource;
 
+import org.apache.ibatis.datasource.DataSourceException;
+import org.apache.ibatis.datasource.pooled.PoolListener.EvictionCause;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
 /**
  * This is a simple, synchronous, thread-safe database connection pool.
+ * <p>
+ * The pool is guarded by a {@link java.util.concurrent.locks.ReentrantLock} rather than a monitor, so that threads
+ * waiting for a connection do not pin the carrier of a virtual thread.
  *
  * @author Clinton Begin
  */
@@ -44,15 +60,27 @@ public class PooledDataSource implements DataSource {
 
   private final UnpooledDataSource dataSource;
 
+  private final ScheduledThreadPoolExecutor housekeeper = createHousekeeper();
+  private final AtomicBoolean fillScheduled = new AtomicBoolean();
+  private ScheduledFuture<?> housekeepingTask;
+  private final List<PoolListener> poolListeners = new CopyOnWriteArrayList<>();
+
   // OPTIONAL CONFIGURATION FIELDS
+  protected volatile PoolMode poolMode = PoolMode.SYNCHRONIZED;
   protected int poolMaximumActiveConnections = 10;
   protected int poolMaximumIdleConnections = 5;
+  protected int poolMinimumIdleConnections;
   protected int poolMaximumCheckoutTime = 20000;
   protected int poolTimeToWait = 20000;
   protected int poolMaximumLocalBadConnectionTolerance = 3;
   protected String poolPingQuery = "NO PING QUERY SET";
   protected boolean poolPingEnabled;
   protected int poolPingConnectionsNotUsedFor;
+  protected int poolHousekeepingInterval;
+  protected int poolValidationTimeout = 5000;
+  protected int poolMaximumLifetime;
+  protected int poolIdleTimeout;
+  protected int poolPreparedStatementCacheSize;
 
   private int expectedConnectionTypeCode;
 
@@ -161,6 +189,17 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /**
+   * The strategy used to check out and return connections.
+   *
+   * @param poolMode The pool mode
+   * @since 3.5.3
+   */
+  public void setPoolMode(PoolMode poolMode) {
+    this.poolMode = poolMode == null ? PoolMode.SYNCHRONIZED : poolMode;
+    forceCloseAll();
+  }
+
   /**
    * The maximum number of active connections.
    *
@@ -181,6 +220,18 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /**
+   * The number of idle connections the pool tries to keep available. Missing connections are created in the
+   * background, so threads checking out a connection rarely have to wait for the driver to connect.
+   *
+   * @param poolMinimumIdleConnections The minimum number of idle connections
+   * @since 3.5.3
+   */
+  public void setPoolMinimumIdleConnections(int poolMinimumIdleConnections) {
+    this.poolMinimumIdleConnections = poolMinimumIdleConnections;
+    forceCloseAll();
+  }
+
   /**
    * The maximum number of tolerance for bad connection happens in one thread
    * which are applying for new {@link PooledConnection}.
@@ -247,6 +298,101 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /**
+   * Enables a background thread that validates idle connections and retires expired ones every this many
+   * milliseconds. When enabled, checking out a connection no longer pings the database.
+   *
+   * @param milliseconds the interval between two housekeeping runs, or 0 to disable housekeeping
+   * @since 3.5.3
+   */
+  public void setPoolHousekeepingInterval(int milliseconds) {
+    this.poolHousekeepingInterval = milliseconds;
+    forceCloseAll();
+    scheduleHousekeeping();
+  }
+
+  /**
+   * The time the housekeeper waits for an idle connection to be validated.
+   * The connection is validated with {@link Connection#isValid(int)}, or with the ping query if it is enabled.
+   *
+   * @param milliseconds the validation timeout
+   * @since 3.5.3
+   */
+  public void setPoolValidationTimeout(int milliseconds) {
+    this.poolValidationTimeout = milliseconds;
+  }
+
+  /**
+   * The maximum time a physical connection is kept open. Expired connections are closed when they are returned to
+   * the pool or by the housekeeper when they are idle.
+   *
+   * @param milliseconds the maximum lifetime, or 0 for no limit
+   * @since 3.5.3
+   */
+  public void setPoolMaximumLifetime(int milliseconds) {
+    this.poolMaximumLifetime = milliseconds;
+    forceCloseAll();
+  }
+
+  /**
+   * The time after which the housekeeper closes an unused idle connection, as long as more than
+   * {@code poolMinimumIdleConnections} idle connections remain.
+   *
+   * @param milliseconds the idle timeout, or 0 to keep idle connections
+   * @since 3.5.3
+   */
+  public void setPoolIdleTimeout(int milliseconds) {
+    this.poolIdleTimeout = milliseconds;
+    forceCloseAll();
+  }
+
+  /**
+   * The number of prepared statements cached by each physical connection. The cache survives the return of the
+   * connection to the pool, so statements prepared by a session are reused by the next sessions.
+   *
+   * @param poolPreparedStatementCacheSize the cache size, or 0 to disable the cache
+   * @since 3.5.3
+   */
+  public void setPoolPreparedStatementCacheSize(int poolPreparedStatementCacheSize) {
+    this.poolPreparedStatementCacheSize = poolPreparedStatementCacheSize;
+    forceCloseAll();
+  }
+
+  /**
+   * Registers listeners by class name. Each class must implement {@link PoolListener} and have a public no-argument
+   * constructor.
+   *
+   * @param classNames comma separated class names
+   * @since 3.5.3
+   */
+  public void setPoolListeners(String classNames) {
+    for (String className : classNames.split(",")) {
+      if (!className.trim().isEmpty()) {
+        try {
+          addPoolListener((PoolListener) Resources.classForName(className.trim()).getDeclaredConstructor().newInstance());
+        } catch (Exception e) {
+          throw new DataSourceException("Error creating pool listener " + className.trim() + ".  Cause: " + e, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param listener the listener to notify of connection events
+   * @since 3.5.3
+   */
+  public void addPoolListener(PoolListener listener) {
+    poolListeners.add(listener);
+  }
+
+  /**
+   * @param listener a previously added listener
+   * @since 3.5.3
+   */
+  public void removePoolListener(PoolListener listener) {
+    poolListeners.remove(listener);
+  }
+
   public String getDriver() {
     return dataSource.getDriver();
   }
@@ -282,6 +428,13 @@ public class PooledDataSource implements DataSource {
     return dataSource.getDefaultNetworkTimeout();
   }
 
+  /**
+   * @since 3.5.3
+   */
+  public PoolMode getPoolMode() {
+    return poolMode;
+  }
+
   public int getPoolMaximumActiveConnections() {
     return poolMaximumActiveConnections;
   }
@@ -290,6 +443,13 @@ public class PooledDataSource implements DataSource {
     return poolMaximumIdleConnections;
   }
 
+  /**
+   * @since 3.5.3
+   */
+  public int getPoolMinimumIdleConnections() {
+    return poolMinimumIdleConnections;
+  }
+
   public int getPoolMaximumLocalBadConnectionTolerance() {
     return poolMaximumLocalBadConnectionTolerance;
   }
@@ -314,11 +474,58 @@ public class PooledDataSource implements DataSource {
     return poolPingConnectionsNotUsedFor;
   }
 
+  /**
+   * @since 3.5.3
+   */
+  public int getPoolHousekeepingInterval() {
+    return poolHousekeepingInterval;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public int getPoolValidationTimeout() {
+    return poolValidationTimeout;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public int getPoolMaximumLifetime() {
+    return poolMaximumLifetime;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public int getPoolIdleTimeout() {
+    return poolIdleTimeout;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public int getPoolPreparedStatementCacheSize() {
+    return poolPreparedStatementCacheSize;
+  }
+
+  /**
+   * Stops the housekeeping and closes all active and idle connections in the pool. The housekeeping is started again
+   * by {@link #setPoolHousekeepingInterval(int)}.
+   *
+   * @since 3.5.3
+   */
+  public void close() {
+    cancelHousekeeping();
+    forceCloseAll();
+  }
+
   /**
    * Closes all active and idle connections in the pool.
    */
   public void forceCloseAll() {
-    synchronized (state) {
+    state.lock.lock();
+    try {
       expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(), dataSource.getPassword());
       for (int i = state.activeConnections.size(); i > 0; i--) {
         try {
@@ -330,6 +537,7 @@ public class PooledDataSource implements DataSource {
             realConn.rollback();
           }
           realConn.close();
+          fireConnectionEvicted(realConn, EvictionCause.FORCED);
         } catch (Exception e) {
           // ignore
         }
@@ -344,10 +552,20 @@ public class PooledDataSource implements DataSource {
             realConn.rollback();
           }
           realConn.close();
+          fireConnectionEvicted(realConn, EvictionCause.FORCED);
         } catch (Exception e) {
           // ignore
         }
       }
+      for (ConnectionBag.Entry entry : state.bag.values()) {
+        PooledConnection owner = entry.getOwner();
+        if (owner != null) {
+          owner.invalidate();
+        }
+        discardConcurrentConnection(entry, EvictionCause.FORCED);
+      }
+    } finally {
+      state.lock.unlock();
     }
     if (log.isDebugEnabled()) {
       log.debug("PooledDataSource forcefully closed/removed all connections.");
@@ -358,27 +576,48 @@ public class PooledDataSource implements DataSource {
     return state;
   }
 
+  /**
+   * Starts creating connections in the background until {@code poolMinimumIdleConnections} idle connections are
+   * available. Does nothing if no minimum is configured.
+   *
+   * @since 3.5.3
+   */
+  public void warmUp() {
+    if (poolMinimumIdleConnections > 0) {
+      scheduleFill();
+    }
+  }
+
   private int assembleConnectionTypeCode(String url, String username, String password) {
     return ("" + url + username + password).hashCode();
   }
 
   protected void pushConnection(PooledConnection conn) throws SQLException {
+    if (conn.getPoolEntry() != null) {
+      pushConcurrentConnection(conn);
+      return;
+    }
 
-    synchronized (state) {
+    boolean checkedOut;
+    state.lock.lock();
+    try {
       // 从活跃连接集合中删除该连接
-      state.activeConnections.remove(conn);
+      checkedOut = state.activeConnections.remove(conn);
       // 检测该 PooledConnection 对象是否可用
       if (conn.isValid()) {
         // 检测当前 PooledDataSource 连接池中的空闲连接是否已经达到上限值
-        if (state.idleConnections.size() < poolMaximumIdleConnections && conn.getConnectionTypeCode() == expectedConnectionTypeCode) {
+        EvictionCause retirementCause = retirementCause(conn.getCreatedTimestamp(), conn.getLastUsedTimestamp(), false);
+        if (state.idleConnections.size() < poolMaximumIdleConnections && conn.getConnectionTypeCode() == expectedConnectionTypeCode
+            && retirementCause == null) {
           // 累计增加 accumulatedCheckoutTime
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
+          state.recordCheckoutTime(conn.getCheckoutTime());
           if (!conn.getRealConnection().getAutoCommit()) {
             // 回滚未提交的事务
             conn.getRealConnection().rollback();
           }
           // 将底层连接重新封装成 PooledConnection 对象，并添加到空闲连接集合（也就是前面提到的 idleConnections 集合）
           PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this);
+          newConn.setStatementCache(conn.getStatementCache());
           state.idleConnections.add(newConn);
           // 设置新 PooledConnection 对象的创建时间戳和最后使用时间戳
           newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
@@ -389,13 +628,13 @@ public class PooledDataSource implements DataSource {
             log.debug("Returned connection " + newConn.getRealHashCode() + " to pool.");
           }
           // 唤醒所有阻塞等待空闲连接的线程
-          state.notifyAll();
+          state.connectionAvailable.signalAll();
         }
         // 当前 PooledDataSource 连接池中的空闲连接已经达到上限值,当前数据库连接无法放回到池中
         else {
 
           // 累计增加 accumulatedCheckoutTime
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
+          state.recordCheckoutTime(conn.getCheckoutTime());
           if (!conn.getRealConnection().getAutoCommit()) {
             // 回滚未提交的事务
             conn.getRealConnection().rollback();
@@ -407,6 +646,7 @@ public class PooledDataSource implements DataSource {
           }
           // 将 PooledConnection 对象设置为无效
           conn.invalidate();
+          fireConnectionEvicted(conn.getRealConnection(), retirementCause == null ? EvictionCause.SURPLUS : retirementCause);
         }
       }
       // 统计无效 PooledConnection 对象个数
@@ -414,22 +654,45 @@ public class PooledDataSource implements DataSource {
         if (log.isDebugEnabled()) {
           log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
         }
-        state.badConnectionCount++;
+        state.recordBadConnection();
+        if (checkedOut) {
+          fireConnectionEvicted(conn.getRealConnection(), EvictionCause.BAD);
+        }
       }
+    } finally {
+      state.lock.unlock();
+    }
+    // 在锁外记录归还统计
+    if (checkedOut) {
+      recordReturn(conn);
     }
   }
 
   private PooledConnection popConnection(String username, String password) throws SQLException {
+    if (poolMode == PoolMode.CONCURRENT) {
+      return popConcurrentConnection(username, password);
+    }
     boolean countedWait = false;
     PooledConnection conn = null;
     long t = System.currentTimeMillis();
+    long start = System.nanoTime();
     int localBadConnectionCount = 0;
+    boolean reservedConnection = false;
 
     while (conn == null) {
+      if (reservedConnection) {
+        // 在锁外创建新数据库连接，避免一次缓慢的建连阻塞其他线程
+        conn = createConnection();
+      }
       // 加锁同步
-      synchronized (state) {
+      state.lock.lock();
+      try {
+        if (reservedConnection) {
+          reservedConnection = false;
+          state.pendingConnectionCount--;
+        }
         // 检测空闲连接集合
-        if (!state.idleConnections.isEmpty()) {
+        else if (!state.idleConnections.isEmpty()) {
           // Pool has available connection
           // 获取空闲连接
           conn = state.idleConnections.remove(0);
@@ -441,28 +704,24 @@ public class PooledDataSource implements DataSource {
         else {
           // Pool does not have available connection
           // 活跃连接数没有到上限值，则创建新连接
-          if (state.activeConnections.size() < poolMaximumActiveConnections) {
+          if (state.activeConnections.size() + state.pendingConnectionCount < poolMaximumActiveConnections) {
             // Can create new connection
-            // 创建新数据库连接，并封装成 PooledConnection 对象
-            conn = new PooledConnection(dataSource.getConnection(), this);
-            if (log.isDebugEnabled()) {
-              log.debug("Created connection " + conn.getRealHashCode() + ".");
-            }
+            // 预留一个连接名额，释放锁之后再创建新数据库连接
+            state.pendingConnectionCount++;
+            reservedConnection = true;
           }
           // 活跃连接数已到上限值，则无法创建新连接
           else {
             // Cannot create new connection
-            // 检测超时连接,获取最早的活跃连接
-            PooledConnection oldestActiveConnection = state.activeConnections.get(0);
-            long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
+            // 检测超时连接,获取最早的活跃连接（其余名额可能都在创建中）
+            PooledConnection oldestActiveConnection = state.activeConnections.isEmpty() ? null : state.activeConnections.get(0);
+            long longestCheckoutTime = oldestActiveConnection == null ? 0 : oldestActiveConnection.getCheckoutTime();
 
             // 检测该连接是否超时
-            if (longestCheckoutTime > poolMaximumCheckoutTime) {
+            if (oldestActiveConnection != null && longestCheckoutTime > poolMaximumCheckoutTime) {
               // Can claim overdue connection
               // 对超时连接的信息进行统计
-              state.claimedOverdueConnectionCount++;
-              state.accumulatedCheckoutTimeOfOverdueConnections += longestCheckoutTime;
-              state.accumulatedCheckoutTime += longestCheckoutTime;
+              state.recordClaimedOverdueConnection(longestCheckoutTime);
               // 将超时连接移出 activeConnections 集合
               state.activeConnections.remove(oldestActiveConnection);
               // 如果超时连接上有未提交的事务，则自动回滚
@@ -483,10 +742,12 @@ public class PooledDataSource implements DataSource {
               }
               // 创建新 PooledConnection 对象，但是真正的数据库连接
               conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
+              conn.setStatementCache(renewStatementCache(oldestActiveConnection.getStatementCache()));
               conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
               conn.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
               // 将超时 PooledConnection 设置为无效
               oldestActiveConnection.invalidate();
+              fireOverdueConnectionClaimed(conn.getRealConnection(), longestCheckoutTime);
               if (log.isDebugEnabled()) {
                 log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
               }
@@ -497,7 +758,7 @@ public class PooledDataSource implements DataSource {
               try {
                 // 统计阻塞等待次数
                 if (!countedWait) {
-                  state.hadToWaitCount++;
+                  state.recordHadToWait();
                   countedWait = true;
                 }
                 if (log.isDebugEnabled()) {
@@ -505,9 +766,19 @@ public class PooledDataSource implements DataSource {
                 }
                 long wt = System.currentTimeMillis();
                 // 阻塞等待
-                state.wait(poolTimeToWait);
+                state.waitingThreadCount++;
+                try {
+                  if (poolTimeToWait > 0) {
+                    state.connectionAvailable.await(poolTimeToWait, TimeUnit.MILLISECONDS);
+                  } else {
+                    // 与 Object.wait(0) 一致，一直等待
+                    state.connectionAvailable.await();
+                  }
+                } finally {
+                  state.waitingThreadCount--;
+                }
                 // 统计累积的等待时间
-                state.accumulatedWaitTime += System.currentTimeMillis() - wt;
+                state.recordWaitTime(System.currentTimeMillis() - wt);
               } catch (InterruptedException e) {
                 break;
               }
@@ -529,15 +800,18 @@ public class PooledDataSource implements DataSource {
 
             // 添加到活跃连接集合
             state.activeConnections.add(conn);
-            state.requestCount++;
-            state.accumulatedRequestTime += System.currentTimeMillis() - t;
+            state.recordRequest(System.currentTimeMillis() - t);
+            if (state.idleConnections.size() + state.pendingConnectionCount < poolMinimumIdleConnections) {
+              scheduleFill();
+            }
           }
           // 统计失败的情况
           else {
             if (log.isDebugEnabled()) {
               log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
             }
-            state.badConnectionCount++;
+            state.recordBadConnection();
+            fireConnectionEvicted(conn.getRealConnection(), EvictionCause.BAD);
             localBadConnectionCount++;
             conn = null;
             if (localBadConnectionCount > (poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance)) {
@@ -548,6 +822,8 @@ public class PooledDataSource implements DataSource {
             }
           }
         }
+      } finally {
+        state.lock.unlock();
       }
 
     }
@@ -559,9 +835,602 @@ public class PooledDataSource implements DataSource {
       throw new SQLException("PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
     }
 
+    recordCheckout(conn, start);
     return conn;
   }
 
+  private PooledConnection createConnection() throws SQLException {
+    try {
+      PooledConnection conn = new PooledConnection(openConnection(), this);
+      conn.setStatementCache(renewStatementCache(null));
+      if (log.isDebugEnabled()) {
+        log.debug("Created connection " + conn.getRealHashCode() + ".");
+      }
+      return conn;
+    } catch (SQLException | RuntimeException e) {
+      // 创建失败，归还预留的名额并唤醒等待线程
+      state.lock.lock();
+      try {
+        state.pendingConnectionCount--;
+        state.connectionAvailable.signalAll();
+      } finally {
+        state.lock.unlock();
+      }
+      throw e;
+    }
+  }
+
+  private void scheduleFill() {
+    if (fillScheduled.compareAndSet(false, true)) {
+      housekeeper.execute(() -> {
+        try {
+          fillPool();
+        } finally {
+          fillScheduled.set(false);
+        }
+      });
+    }
+  }
+
+  /**
+   * Creates idle connections until {@code poolMinimumIdleConnections} is reached. Runs on the filler thread and
+   * never holds the pool lock while the driver is connecting.
+   */
+  private void fillPool() {
+    int typeCode = expectedConnectionTypeCode;
+    boolean filled = true;
+    while (filled) {
+      if (poolMode == PoolMode.CONCURRENT) {
+        filled = fillConcurrentPool(typeCode);
+      } else {
+        filled = fillSynchronizedPool(typeCode);
+      }
+    }
+  }
+
+  private boolean fillSynchronizedPool(int typeCode) {
+    state.lock.lock();
+    try {
+      int idle = state.idleConnections.size() + state.pendingConnectionCount;
+      if (idle >= poolMinimumIdleConnections || idle >= poolMaximumIdleConnections
+          || idle + state.activeConnections.size() >= poolMaximumActiveConnections) {
+        return false;
+      }
+      state.pendingConnectionCount++;
+    } finally {
+      state.lock.unlock();
+    }
+    PooledConnection conn;
+    try {
+      conn = createConnection();
+    } catch (SQLException | RuntimeException e) {
+      log.warn("Could not fill the pool with a new connection: " + e.getMessage());
+      return false;
+    }
+    state.lock.lock();
+    try {
+      state.pendingConnectionCount--;
+      if (typeCode == expectedConnectionTypeCode && state.idleConnections.size() < poolMaximumIdleConnections) {
+        state.idleConnections.add(conn);
+        state.connectionAvailable.signalAll();
+        return true;
+      }
+    } finally {
+      state.lock.unlock();
+    }
+    // 连接池配置已改变或空闲连接已满
+    conn.invalidate();
+    closeQuietly(conn.getRealConnection(), EvictionCause.SURPLUS);
+    return false;
+  }
+
+  private boolean fillConcurrentPool(int typeCode) {
+    ConnectionBag bag = state.bag;
+    int idle = bag.getCount(ConnectionBag.STATE_NOT_IN_USE);
+    if (idle >= poolMinimumIdleConnections || idle >= poolMaximumIdleConnections || !bag.reserve(poolMaximumActiveConnections)) {
+      return false;
+    }
+    ConnectionBag.Entry entry;
+    try {
+      entry = addConcurrentConnection(bag);
+    } catch (SQLException | RuntimeException e) {
+      log.warn("Could not fill the pool with a new connection: " + e.getMessage());
+      return false;
+    }
+    if (typeCode != expectedConnectionTypeCode || !bag.requite(entry)) {
+      discardConcurrentConnection(entry, EvictionCause.REJECTED);
+      return false;
+    }
+    return true;
+  }
+
+  private void scheduleHousekeeping() {
+    state.lock.lock();
+    try {
+      cancelHousekeeping();
+      if (poolHousekeepingInterval > 0) {
+        HousekeepingTask task = new HousekeepingTask(this);
+        housekeepingTask = housekeeper.scheduleWithFixedDelay(task, poolHousekeepingInterval,
+            poolHousekeepingInterval, TimeUnit.MILLISECONDS);
+        task.future = housekeepingTask;
+      }
+    } finally {
+      state.lock.unlock();
+    }
+  }
+
+  private void cancelHousekeeping() {
+    state.lock.lock();
+    try {
+      if (housekeepingTask != null) {
+        housekeepingTask.cancel(false);
+        housekeepingTask = null;
+      }
+    } finally {
+      state.lock.unlock();
+    }
+  }
+
+  /**
+   * Retires expired idle connections and validates the ones that have not been used since the previous run.
+   * The connections being checked are taken out of the pool, so they are never handed out while being validated.
+   */
+  private void houseKeep() {
+    try {
+      if (poolMode == PoolMode.CONCURRENT) {
+        houseKeepConcurrentPool();
+      } else {
+        houseKeepSynchronizedPool();
+      }
+      warmUp();
+    } catch (RuntimeException e) {
+      // 异常不能抛出，否则后续的定时任务将不再执行
+      log.warn("PooledDataSource housekeeping failed: " + e.getMessage());
+    }
+  }
+
+  private void houseKeepSynchronizedPool() {
+    int typeCode;
+    List<PooledConnection> retired = new ArrayList<>();
+    List<EvictionCause> causes = new ArrayList<>();
+    List<PooledConnection> candidates = new ArrayList<>();
+    state.lock.lock();
+    try {
+      typeCode = expectedConnectionTypeCode;
+      int idle = state.idleConnections.size();
+      for (Iterator<PooledConnection> it = state.idleConnections.iterator(); it.hasNext();) {
+        PooledConnection conn = it.next();
+        EvictionCause cause = retirementCause(conn.getCreatedTimestamp(), conn.getLastUsedTimestamp(), idle > poolMinimumIdleConnections);
+        if (cause != null) {
+          it.remove();
+          idle--;
+          retired.add(conn);
+          causes.add(cause);
+        } else if (conn.getTimeElapsedSinceLastUse() >= poolHousekeepingInterval) {
+          it.remove();
+          candidates.add(conn);
+        }
+      }
+      // 校验期间仍占用连接名额，避免其他线程越过上限创建新连接
+      state.pendingConnectionCount += candidates.size();
+    } finally {
+      state.lock.unlock();
+    }
+    for (int i = 0; i < retired.size(); i++) {
+      PooledConnection conn = retired.get(i);
+      conn.invalidate();
+      closeQuietly(conn.getRealConnection(), causes.get(i));
+      if (log.isDebugEnabled()) {
+        log.debug("Retired connection " + conn.getRealHashCode() + ".");
+      }
+    }
+    List<PooledConnection> valid = new ArrayList<>();
+    for (PooledConnection conn : candidates) {
+      if (validateConnection(conn.getRealConnection())) {
+        valid.add(conn);
+      } else {
+        conn.invalidate();
+        closeQuietly(conn.getRealConnection(), EvictionCause.BAD);
+      }
+    }
+    state.lock.lock();
+    try {
+      state.pendingConnectionCount -= candidates.size();
+      for (int i = valid.size(); i < candidates.size(); i++) {
+        state.recordBadConnection();
+      }
+      for (PooledConnection conn : valid) {
+        if (typeCode == expectedConnectionTypeCode && state.idleConnections.size() < poolMaximumIdleConnections) {
+          state.idleConnections.add(conn);
+        } else {
+          conn.invalidate();
+          closeQuietly(conn.getRealConnection(), EvictionCause.SURPLUS);
+        }
+      }
+      state.connectionAvailable.signalAll();
+    } finally {
+      state.lock.unlock();
+    }
+  }
+
+  private void houseKeepConcurrentPool() {
+    ConnectionBag bag = state.bag;
+    int idle = bag.getCount(ConnectionBag.STATE_NOT_IN_USE);
+    for (ConnectionBag.Entry entry : bag.values()) {
+      if (!bag.claim(entry)) {
+        continue;
+      }
+      EvictionCause cause = retirementCause(entry.getCreatedTimestamp(), entry.getLastUsedTimestamp(), idle > poolMinimumIdleConnections);
+      if (cause != null) {
+        idle--;
+        discardConcurrentConnection(entry, cause);
+        if (log.isDebugEnabled()) {
+          log.debug("Retired connection " + entry.getRealConnection().hashCode() + ".");
+        }
+      } else if (System.currentTimeMillis() - entry.getLastUsedTimestamp() >= poolHousekeepingInterval
+          && !validateConnection(entry.getRealConnection())) {
+        idle--;
+        discardConcurrentConnection(entry, EvictionCause.BAD);
+        state.recordBadConnection();
+      } else if (!bag.requite(entry)) {
+        discardConcurrentConnection(entry, EvictionCause.REJECTED);
+      }
+    }
+  }
+
+  /**
+   * @return why the connection must be retired, or null if it can stay in the pool
+   */
+  private EvictionCause retirementCause(long createdTimestamp, long lastUsedTimestamp, boolean idleTimeoutApplies) {
+    long now = System.currentTimeMillis();
+    if (poolMaximumLifetime > 0 && now - createdTimestamp > poolMaximumLifetime) {
+      return EvictionCause.EXPIRED;
+    }
+    if (idleTimeoutApplies && poolIdleTimeout > 0 && now - lastUsedTimestamp > poolIdleTimeout) {
+      return EvictionCause.IDLE;
+    }
+    return null;
+  }
+
+  private boolean validateConnection(Connection realConn) {
+    try {
+      if (realConn.isClosed()) {
+        return false;
+      }
+      if (poolPingEnabled) {
+        try (Statement statement = realConn.createStatement()) {
+          statement.executeQuery(poolPingQuery).close();
+        }
+        if (!realConn.getAutoCommit()) {
+          realConn.rollback();
+        }
+        return true;
+      }
+      return realConn.isValid((int) TimeUnit.MILLISECONDS.toSeconds(poolValidationTimeout + 999));
+    } catch (Exception e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Connection " + realConn.hashCode() + " is BAD: " + e.getMessage());
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Runs the housekeeping of a data source. The task only holds a weak reference to the data source, so that a data
+   * source dropped without being closed can be garbage collected: the task then cancels itself.
+   */
+  private static final class HousekeepingTask implements Runnable {
+    private final WeakReference<PooledDataSource> dataSource;
+    private volatile ScheduledFuture<?> future;
+
+    HousekeepingTask(PooledDataSource dataSource) {
+      this.dataSource = new WeakReference<>(dataSource);
+    }
+
+    @Override
+    public void run() {
+      PooledDataSource ds = dataSource.get();
+      if (ds != null) {
+        ds.houseKeep();
+      } else if (future != null) {
+        future.cancel(false);
+      }
+    }
+  }
+
+  private static ScheduledThreadPoolExecutor createHousekeeper() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "MyBatis-PooledDataSource-housekeeper");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.setKeepAliveTime(30, TimeUnit.SECONDS);
+    executor.allowCoreThreadTimeOut(true);
+    executor.setRemoveOnCancelPolicy(true);
+    return executor;
+  }
+
+  private void pushConcurrentConnection(PooledConnection conn) throws SQLException {
+    ConnectionBag.Entry entry = conn.getPoolEntry();
+    // 连接已被当作超时连接回收，或者已经归还过
+    if (!entry.release(conn)) {
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+      }
+      state.recordBadConnection();
+      return;
+    }
+    recordReturn(conn);
+    if (!conn.isValid()) {
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+      }
+      state.recordBadConnection();
+      discardConcurrentConnection(entry, EvictionCause.BAD);
+      return;
+    }
+    state.recordCheckoutTime(conn.getCheckoutTime());
+    conn.invalidate();
+    entry.setLastUsedTimestamp(conn.getLastUsedTimestamp());
+    try {
+      if (!entry.getRealConnection().getAutoCommit()) {
+        entry.getRealConnection().rollback();
+      }
+    } catch (SQLException e) {
+      discardConcurrentConnection(entry, EvictionCause.BAD);
+      throw e;
+    }
+    ConnectionBag bag = state.bag;
+    EvictionCause retirementCause = retirementCause(entry.getCreatedTimestamp(), entry.getLastUsedTimestamp(), false);
+    if (conn.getConnectionTypeCode() == expectedConnectionTypeCode
+        && retirementCause == null
+        && (bag.getWaitingThreadCount() > 0 || bag.getCount(ConnectionBag.STATE_NOT_IN_USE) < poolMaximumIdleConnections)
+        && bag.requite(entry)) {
+      if (log.isDebugEnabled()) {
+        log.debug("Returned connection " + conn.getRealHashCode() + " to pool.");
+      }
+    } else {
+      bag.remove(entry);
+      entry.getRealConnection().close();
+      if (log.isDebugEnabled()) {
+        log.debug("Closed connection " + conn.getRealHashCode() + ".");
+      }
+      fireConnectionEvicted(entry.getRealConnection(), retirementCause == null ? EvictionCause.SURPLUS : retirementCause);
+    }
+  }
+
+  private PooledConnection popConcurrentConnection(String username, String password) throws SQLException {
+    ConnectionBag bag = state.bag;
+    boolean countedWait = false;
+    long t = System.currentTimeMillis();
+    long start = System.nanoTime();
+    int localBadConnectionCount = 0;
+
+    while (true) {
+      // 优先复用本线程最近归还的连接，其次扫描共享列表
+      ConnectionBag.Entry entry = bag.borrow();
+      if (entry == null && bag.reserve(poolMaximumActiveConnections)) {
+        // 在任何锁之外创建新的数据库连接
+        entry = addConcurrentConnection(bag);
+      }
+      if (entry == null) {
+        entry = claimOverdueConnection(bag);
+      }
+      if (entry == null) {
+        if (!countedWait) {
+          state.recordHadToWait();
+          countedWait = true;
+        }
+        if (log.isDebugEnabled()) {
+          log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
+        }
+        long wt = System.currentTimeMillis();
+        try {
+          entry = bag.await(poolTimeToWait);
+        } catch (InterruptedException e) {
+          break;
+        }
+        state.recordWaitTime(System.currentTimeMillis() - wt);
+        if (entry == null) {
+          continue;
+        }
+      }
+
+      PooledConnection conn = new PooledConnection(entry.getRealConnection(), this);
+      conn.setPoolEntry(entry);
+      conn.setStatementCache(entry.getStatementCache());
+      conn.setCreatedTimestamp(entry.getCreatedTimestamp());
+      conn.setLastUsedTimestamp(entry.getLastUsedTimestamp());
+      if (conn.isValid()) {
+        try {
+          if (!conn.getRealConnection().getAutoCommit()) {
+            conn.getRealConnection().rollback();
+          }
+        } catch (SQLException e) {
+          discardConcurrentConnection(entry, EvictionCause.BAD);
+          throw e;
+        }
+        conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
+        conn.setCheckoutTimestamp(System.currentTimeMillis());
+        conn.setLastUsedTimestamp(System.currentTimeMillis());
+        entry.setOwner(conn);
+        state.recordRequest(System.currentTimeMillis() - t);
+        if (log.isDebugEnabled()) {
+          log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
+        }
+        if (poolMinimumIdleConnections > 0 && bag.getCount(ConnectionBag.STATE_NOT_IN_USE) < poolMinimumIdleConnections) {
+          scheduleFill();
+        }
+        recordCheckout(conn, start);
+        return conn;
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
+      }
+      discardConcurrentConnection(entry, EvictionCause.BAD);
+      state.recordBadConnection();
+      localBadConnectionCount++;
+      if (localBadConnectionCount > (poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance)) {
+        if (log.isDebugEnabled()) {
+          log.debug("PooledDataSource: Could not get a good connection to the database.");
+        }
+        throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
+      }
+    }
+
+    if (log.isDebugEnabled()) {
+      log.debug("PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+    }
+    throw new SQLException("PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+  }
+
+  private ConnectionBag.Entry claimOverdueConnection(ConnectionBag bag) {
+    ConnectionBag.Entry oldest = bag.oldestInUse();
+    if (oldest == null) {
+      return null;
+    }
+    PooledConnection overdue = oldest.getOwner();
+    if (overdue == null) {
+      return null;
+    }
+    long longestCheckoutTime = overdue.getCheckoutTime();
+    // 只有一个线程能从原持有者手中抢到超时连接
+    if (longestCheckoutTime <= poolMaximumCheckoutTime || !oldest.release(overdue)) {
+      return null;
+    }
+    state.recordClaimedOverdueConnection(longestCheckoutTime);
+    overdue.invalidate();
+    oldest.setStatementCache(renewStatementCache(oldest.getStatementCache()));
+    try {
+      if (!oldest.getRealConnection().getAutoCommit()) {
+        oldest.getRealConnection().rollback();
+      }
+    } catch (SQLException e) {
+      // same as the synchronized pool: the validity check that follows will discard the connection if it is broken
+      log.debug("Bad connection. Could not roll back");
+    }
+    oldest.setLastUsedTimestamp(overdue.getLastUsedTimestamp());
+    if (log.isDebugEnabled()) {
+      log.debug("Claimed overdue connection " + overdue.getRealHashCode() + ".");
+    }
+    fireOverdueConnectionClaimed(oldest.getRealConnection(), longestCheckoutTime);
+    return oldest;
+  }
+
+  /**
+   * Creates the statement cache of a connection, closing the idle statements of the previous cache if any. A claimed
+   * overdue connection gets a new cache because its previous owner may still be using some of the statements.
+   */
+  /**
+   * Opens a connection for a slot reserved in the bag. The slot is released if anything fails, so that a failure does
+   * not lower the maximum number of connections for good.
+   *
+   * @return the new entry, in use by the caller
+   */
+  private ConnectionBag.Entry addConcurrentConnection(ConnectionBag bag) throws SQLException {
+    Connection realConn = null;
+    ConnectionBag.Entry entry = null;
+    try {
+      realConn = openConnection();
+      entry = bag.add(realConn);
+      entry.setStatementCache(renewStatementCache(null));
+    } catch (SQLException | RuntimeException e) {
+      if (entry != null) {
+        discardConcurrentConnection(entry, EvictionCause.REJECTED);
+      } else {
+        bag.cancelReservation();
+        if (realConn != null) {
+          closeQuietly(realConn, EvictionCause.REJECTED);
+        }
+      }
+      throw e;
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Created connection " + realConn.hashCode() + ".");
+    }
+    return entry;
+  }
+
+  private StatementCache renewStatementCache(StatementCache previous) {
+    if (previous != null) {
+      // 之前的持有者可能仍在归还语句，关闭旧的缓存而不是共享它
+      previous.close();
+    }
+    return poolPreparedStatementCacheSize > 0 ? new StatementCache(poolPreparedStatementCacheSize) : null;
+  }
+
+  private void discardConcurrentConnection(ConnectionBag.Entry entry, EvictionCause cause) {
+    if (state.bag.remove(entry)) {
+      closeQuietly(entry.getRealConnection(), cause);
+    }
+  }
+
+  private void closeQuietly(Connection realConn, EvictionCause cause) {
+    try {
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+      realConn.close();
+    } catch (Exception e) {
+      // ignore
+    }
+    fireConnectionEvicted(realConn, cause);
+  }
+
+  private Connection openConnection() throws SQLException {
+    long start = System.nanoTime();
+    Connection realConn = dataSource.getConnection();
+    long elapsed = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    state.recordCreatedConnection();
+    state.creationTimeHistogram.record(elapsed);
+    if (!poolListeners.isEmpty()) {
+      fireEvent(listener -> listener.connectionCreated(realConn, elapsed));
+    }
+    return realConn;
+  }
+
+  private void recordCheckout(PooledConnection conn, long start) {
+    long elapsed = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    state.requestTimeHistogram.record(elapsed);
+    if (!poolListeners.isEmpty()) {
+      fireEvent(listener -> listener.connectionCheckedOut(conn.getRealConnection(), elapsed));
+    }
+  }
+
+  private void recordReturn(PooledConnection conn) {
+    long elapsed = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - conn.getCheckoutNanoTime());
+    state.checkoutTimeHistogram.record(elapsed);
+    if (!poolListeners.isEmpty()) {
+      fireEvent(listener -> listener.connectionReturned(conn.getRealConnection(), elapsed));
+    }
+  }
+
+  private void fireConnectionEvicted(Connection realConn, EvictionCause cause) {
+    if (!poolListeners.isEmpty()) {
+      fireEvent(listener -> listener.connectionEvicted(realConn, cause));
+    }
+  }
+
+  private void fireOverdueConnectionClaimed(Connection realConn, long checkoutMillis) {
+    if (!poolListeners.isEmpty()) {
+      fireEvent(listener ->
+          listener.overdueConnectionClaimed(realConn, TimeUnit.MILLISECONDS.toMicros(checkoutMillis)));
+    }
+  }
+
+  /**
+   * Callers check that there are listeners first, so that no event is allocated on the checkout path without listeners.
+   */
+  private void fireEvent(Consumer<PoolListener> event) {
+    for (PoolListener listener : poolListeners) {
+      try {
+        event.accept(listener);
+      } catch (RuntimeException e) {
+        log.warn("Pool listener " + listener + " failed: " + e.getMessage());
+      }
+    }
+  }
+
   /**
    * Method to check to see if a connection is still usable
    *
@@ -584,8 +1453,8 @@ public class PooledDataSource implements DataSource {
 
     // 如果底层与数据库的网络连接没断开，则需要检测 poolPingEnabled 字段的配置
     if (result) {
-      // 是否能执行 ping 操作
-      if (poolPingEnabled) {
+      // 是否能执行 ping 操作（开启后台维护线程时由其负责校验，检出连接时不再执行 I/O）
+      if (poolPingEnabled && poolHousekeepingInterval <= 0) {
        // ping操作不能频繁执行，只有超过一定时长(超过poolPingConnectionsNotUsedFor指定的时长)未使用的连接，才需要ping 操作来检测数据库连接是否正常
         if (poolPingConnectionsNotUsedFor >= 0 && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor) {
           try {
@@ -642,7 +1511,7 @@ public class PooledDataSource implements DataSource {
 
   @Override
   protected void finalize() throws Throwable {
-    forceCloseAll();
+    close();
     super.finalize();
   }
 
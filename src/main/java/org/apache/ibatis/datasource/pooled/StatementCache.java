@@ -0,0 +1,234 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LRU cache of the prepared statements of one physical connection.
+ * <p>
+ * Only statements that are not in use are kept in the cache, so a statement handed out to a caller is never evicted
+ * under its feet. Preparing the same statement twice without closing the first one creates a second statement. The
+ * cache follows the physical connection from one checkout to the next, which lets the driver-side prepare be shared by
+ * all the sessions that use the connection.
+ * <p>
+ * When an overdue connection is claimed, its previous owner may still give statements back while the cache is being
+ * closed, so the cache is guarded by a lock and a closed cache closes the statements it takes back.
+ */
+class StatementCache {
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<Key, PreparedStatement> idleStatements;
+  private boolean closed;
+
+  StatementCache(final int size) {
+    this.idleStatements = new LinkedHashMap<Key, PreparedStatement>(size, .75F, true) {
+      private static final long serialVersionUID = -8052436413985489457L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+        boolean tooBig = size() > size;
+        if (tooBig) {
+          closeQuietly(eldest.getValue());
+        }
+        return tooBig;
+      }
+    };
+  }
+
+  /**
+   * Handles a call to one of the {@code prepareStatement} methods of the connection.
+   *
+   * @param connection the physical connection
+   * @param method the {@code prepareStatement} method
+   * @param args the arguments of the call
+   * @return a cached statement, a new statement that will be cached when closed, or a plain statement if the variant
+   *         of {@code prepareStatement} is not cacheable
+   * @throws Throwable if the driver fails to prepare the statement
+   */
+  Object prepareStatement(Connection connection, Method method, Object[] args) throws Throwable {
+    Key key = Key.of(args);
+    if (key == null) {
+      return method.invoke(connection, args);
+    }
+    PreparedStatement statement;
+    lock.lock();
+    try {
+      statement = idleStatements.remove(key);
+    } finally {
+      lock.unlock();
+    }
+    if (statement == null || isClosed(statement)) {
+      statement = (PreparedStatement) method.invoke(connection, args);
+    }
+    return new CachedStatement(this, key, statement).getProxyStatement();
+  }
+
+  /**
+   * Takes back a statement closed by its user.
+   *
+   * @param key the key of the statement
+   * @param statement the physical statement
+   * @param batched whether statements were added to the batch of this statement
+   */
+  void release(Key key, PreparedStatement statement, boolean batched) {
+    try {
+      statement.clearParameters();
+      if (batched) {
+        statement.clearBatch();
+      }
+      statement.clearWarnings();
+    } catch (SQLException e) {
+      closeQuietly(statement);
+      return;
+    }
+    PreparedStatement discarded;
+    lock.lock();
+    try {
+      if (closed) {
+        discarded = statement;
+      } else {
+        PreparedStatement previous = idleStatements.put(key, statement);
+        discarded = previous != statement ? previous : null;
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (discarded != null) {
+      closeQuietly(discarded);
+    }
+  }
+
+  /**
+   * Closes all idle statements, and the statements given back later. Statements that are in use are closed by their
+   * users.
+   */
+  void close() {
+    List<PreparedStatement> statements;
+    lock.lock();
+    try {
+      closed = true;
+      statements = new ArrayList<>(idleStatements.values());
+      idleStatements.clear();
+    } finally {
+      lock.unlock();
+    }
+    for (PreparedStatement statement : statements) {
+      closeQuietly(statement);
+    }
+  }
+
+  int size() {
+    lock.lock();
+    try {
+      return idleStatements.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static boolean isClosed(Statement statement) {
+    try {
+      return statement.isClosed();
+    } catch (SQLException e) {
+      return true;
+    }
+  }
+
+  static void closeQuietly(Statement statement) {
+    try {
+      statement.close();
+    } catch (SQLException e) {
+      // ignore
+    }
+  }
+
+  static final class Key {
+
+    private static final int NO_GENERATED_KEYS_FLAG = -1;
+
+    private final String sql;
+    private final int resultSetType;
+    private final int resultSetConcurrency;
+    private final int autoGeneratedKeys;
+    private final int hashCode;
+
+    private Key(String sql, int resultSetType, int resultSetConcurrency, int autoGeneratedKeys) {
+      this.sql = sql;
+      this.resultSetType = resultSetType;
+      this.resultSetConcurrency = resultSetConcurrency;
+      this.autoGeneratedKeys = autoGeneratedKeys;
+      int result = sql.hashCode();
+      result = 31 * result + resultSetType;
+      result = 31 * result + resultSetConcurrency;
+      result = 31 * result + autoGeneratedKeys;
+      this.hashCode = result;
+    }
+
+    /**
+     * Builds the key of a {@code prepareStatement} call.
+     *
+     * @param args the arguments of the call
+     * @return the key, or null if the variant is not cached (column indexes, column names or holdability)
+     */
+    static Key of(Object[] args) {
+      if (args == null || !(args[0] instanceof String)) {
+        return null;
+      }
+      String sql = (String) args[0];
+      if (args.length == 1) {
+        return new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, NO_GENERATED_KEYS_FLAG);
+      } else if (args.length == 2 && args[1] instanceof Integer) {
+        return new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, (Integer) args[1]);
+      } else if (args.length == 3) {
+        return new Key(sql, (Integer) args[1], (Integer) args[2], NO_GENERATED_KEYS_FLAG);
+      }
+      return null;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hashCode == other.hashCode
+          && resultSetType == other.resultSetType
+          && resultSetConcurrency == other.resultSetConcurrency
+          && autoGeneratedKeys == other.autoGeneratedKeys
+          && sql.equals(other.sql);
+    }
+  }
+
+}
@@ -65,6 +65,7 @@ public class UnpooledDataSourceFactory implements DataSourceFactory {
     return dataSource;
   }
 
+  @SuppressWarnings({ "unchecked", "rawtypes" })
   private Object convertValue(MetaObject metaDataSource, String propertyName, String value) {
     Object convertedValue = value;
     Class<?> targetType = metaDataSource.getSetterType(propertyName);
@@ -74,6 +75,8 @@ public class UnpooledDataSourceFactory implements DataSourceFactory {
       convertedValue = Long.valueOf(value);
     } else if (targetType == Boolean.class || targetType == boolean.class) {
       convertedValue = Boolean.valueOf(value);
+    } else if (targetType.isEnum()) {
+      convertedValue = Enum.valueOf((Class<? extends Enum>) targetType, value);
     }
     return convertedValue;
   }
@@ -44,6 +44,8 @@ public class BatchExecutor extends BaseExecutor {
 
   private final List<Statement> statementList = new ArrayList<>();
   private final List<BatchResult> batchResultList = new ArrayList<>();
+  // 改写为多行 INSERT 的批处理，与 statementList 一一对应，其他批处理为 null
+  private final List<MultiRowInsert> multiRowInsertList = new ArrayList<>();
   private String currentSql;
   private MappedStatement currentStatement;
 
@@ -63,6 +65,12 @@ public class BatchExecutor extends BaseExecutor {
     // 比较此次追加的 SQL 模板与最近一次追加的 SQL 模板，以及两个 MappedStatement 对象
     if (sql.equals(currentSql) && ms.equals(currentStatement)) {
       int last = statementList.size() - 1;
+      MultiRowInsert multiRowInsert = multiRowInsertList.get(last);
+      if (multiRowInsert != null) {
+        multiRowInsert.addRow(boundSql, parameterObject);
+        batchResultList.get(last).addParameterObject(parameterObject);
+        return BATCH_UPDATE_RETURN_VALUE;
+      }
       stmt = statementList.get(last);
       applyTransactionTimeout(stmt);
       // 设置实参
@@ -71,6 +79,17 @@ public class BatchExecutor extends BaseExecutor {
       BatchResult batchResult = batchResultList.get(last);
       batchResult.addParameterObject(parameterObject);
     } else {
+      MultiRowInsert multiRowInsert = configuration.isBatchInsertRewrite() ? MultiRowInsert.of(ms, boundSql) : null;
+      if (multiRowInsert != null) {
+        // 参数在执行时才绑定到多行 INSERT 语句
+        multiRowInsert.addRow(boundSql, parameterObject);
+        currentSql = sql;
+        currentStatement = ms;
+        statementList.add(null);
+        multiRowInsertList.add(multiRowInsert);
+        batchResultList.add(new BatchResult(ms, sql, parameterObject));
+        return BATCH_UPDATE_RETURN_VALUE;
+      }
       Connection connection = getConnection(ms.getStatementLog());
       // 创建新的 Statement 对象
       stmt = handler.prepare(connection, transaction.getTimeout());
@@ -81,6 +100,7 @@ public class BatchExecutor extends BaseExecutor {
       currentStatement = ms;
       // 将新创建的 Statement 对象添加到 statementList 集合中
       statementList.add(stmt);
+      multiRowInsertList.add(null);
       // 为新 Statement 对象添加新的 BatchResult 对象
       batchResultList.add(new BatchResult(ms, sql, parameterObject));
     }
@@ -131,10 +151,16 @@ public class BatchExecutor extends BaseExecutor {
       for (int i = 0, n = statementList.size(); i < n; i++) {
         // 获取 Statement 对象
         Statement stmt = statementList.get(i);
-        applyTransactionTimeout(stmt);
         // 获取对应 BatchResult 对象
         BatchResult batchResult = batchResultList.get(i);
         try {
+          MultiRowInsert multiRowInsert = multiRowInsertList.get(i);
+          if (multiRowInsert != null) {
+            batchResult.setUpdateCounts(multiRowInsert.execute(this, batchResult.getParameterObjects()));
+            results.add(batchResult);
+            continue;
+          }
+          applyTransactionTimeout(stmt);
           // 调用 Statement.executeBatch() 方法批量执行其中记录的SQL语句，并使用返回的 int 数组
           // 更新 BatchResult.updateCounts 字段，其中每一个元素都表示一条 SQL 语句影响的记录条数
           batchResult.setUpdateCounts(stmt.executeBatch());
@@ -181,6 +207,7 @@ public class BatchExecutor extends BaseExecutor {
       currentSql = null;
       statementList.clear();
       batchResultList.clear();
+      multiRowInsertList.clear();
     }
   }
 
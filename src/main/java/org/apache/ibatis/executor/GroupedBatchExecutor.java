@@ -0,0 +1,280 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+
+/**
+ * Batch executor that keeps one batched statement per distinct SQL, instead of starting a new one each time the SQL
+ * changes like {@link BatchExecutor} does.
+ * <p>
+ * Interleaved inserts (e.g. of parents and of their children) are grouped by statement, and the statements are
+ * executed in the order their SQL was first used. An insert is only moved ahead of other inserts: when the kind of
+ * statement changes, the next statements go to new batches, executed after the pending ones. So the statements a batch
+ * depends on must have been issued first, e.g. the first parent before the first child. A new SQL of a statement that
+ * already has a pending batch (e.g. a dynamic insert that now skips a column) is also such a change, so that the
+ * statements issued after it do not join a batch executed before it. Updates and deletes are never
+ * reordered (the last one to write a row must win): they only join the current batch when they have the same SQL.
+ * <p>
+ * When a batch reaches {@link Configuration#getBatchFlushSize()} statements, or the parameters of the pending
+ * statements reach {@link Configuration#getBatchFlushBytes()} bytes (estimated), all the pending batches are
+ * executed. Their results are returned, in execution order, by the next {@link #flushStatements()}.
+ *
+ * @since 3.5.3
+ */
+public class GroupedBatchExecutor extends BaseExecutor {
+
+  private final List<Batch> batches = new ArrayList<>();
+  private final Map<CacheKey, Batch> openBatches = new HashMap<>();
+  private final List<BatchResult> flushedResults = new ArrayList<>();
+  private SqlCommandType currentCommandType;
+  private CacheKey currentKey;
+  private long pendingBytes;
+
+  public GroupedBatchExecutor(Configuration configuration, Transaction transaction) {
+    super(configuration, transaction);
+  }
+
+  @Override
+  public int doUpdate(MappedStatement ms, Object parameterObject) throws SQLException {
+    final Configuration configuration = ms.getConfiguration();
+    final StatementHandler handler = configuration.newStatementHandler(this, ms, parameterObject, RowBounds.DEFAULT, null, null);
+    final BoundSql boundSql = handler.getBoundSql();
+    final String sql = boundSql.getSql();
+    final CacheKey key = new CacheKey(new Object[] { ms, sql });
+    if (ms.getSqlCommandType() != currentCommandType
+        || ms.getSqlCommandType() != SqlCommandType.INSERT && !key.equals(currentKey)) {
+      // 语句类型变化（或 update/delete 的 SQL 变化），之后的语句不能再越过已有的语句执行
+      openBatches.clear();
+      currentCommandType = ms.getSqlCommandType();
+    }
+    currentKey = key;
+    Batch batch = openBatches.get(key);
+    if (batch == null) {
+      if (hasOpenBatch(ms)) {
+        // 同一语句的另一种 SQL，之后的语句也不能加入在它之前执行的批次
+        openBatches.clear();
+      }
+      MultiRowInsert multiRowInsert = configuration.isBatchInsertRewrite() ? MultiRowInsert.of(ms, boundSql) : null;
+      Statement stmt = null;
+      if (multiRowInsert == null) {
+        Connection connection = getConnection(ms.getStatementLog());
+        stmt = handler.prepare(connection, transaction.getTimeout());
+      }
+      batch = new Batch(stmt, multiRowInsert, new BatchResult(ms, sql));
+      batches.add(batch);
+      openBatches.put(key, batch);
+    }
+    batch.result.addParameterObject(parameterObject);
+    if (batch.multiRowInsert != null) {
+      batch.multiRowInsert.addRow(boundSql, parameterObject);
+    } else {
+      applyTransactionTimeout(batch.statement);
+      handler.parameterize(batch.statement);
+      handler.batch(batch.statement);
+    }
+    if (configuration.getBatchFlushBytes() > 0) {
+      pendingBytes += estimateSize(configuration, boundSql, parameterObject);
+    }
+    if (isFlushNeeded(configuration, batch)) {
+      flushedResults.addAll(executeBatches());
+    }
+    return BatchExecutor.BATCH_UPDATE_RETURN_VALUE;
+  }
+
+  @Override
+  public <E> List<E> doQuery(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql)
+      throws SQLException {
+    Statement stmt = null;
+    try {
+      flushStatements();
+      Configuration configuration = ms.getConfiguration();
+      StatementHandler handler = configuration.newStatementHandler(wrapper, ms, parameterObject, rowBounds, resultHandler, boundSql);
+      Connection connection = getConnection(ms.getStatementLog());
+      stmt = handler.prepare(connection, transaction.getTimeout());
+      handler.parameterize(stmt);
+      return handler.query(stmt, resultHandler);
+    } finally {
+      closeStatement(stmt);
+    }
+  }
+
+  @Override
+  protected <E> Cursor<E> doQueryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds, BoundSql boundSql) throws SQLException {
+    flushStatements();
+    Configuration configuration = ms.getConfiguration();
+    StatementHandler handler = configuration.newStatementHandler(wrapper, ms, parameter, rowBounds, null, boundSql);
+    Connection connection = getConnection(ms.getStatementLog());
+    Statement stmt = handler.prepare(connection, transaction.getTimeout());
+    handler.parameterize(stmt);
+    Cursor<E> cursor = handler.queryCursor(stmt);
+    stmt.closeOnCompletion();
+    return cursor;
+  }
+
+  @Override
+  public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
+    try {
+      if (isRollback) {
+        clearBatches();
+        return Collections.emptyList();
+      }
+      List<BatchResult> results = new ArrayList<>(flushedResults);
+      results.addAll(executeBatches());
+      return results;
+    } finally {
+      flushedResults.clear();
+    }
+  }
+
+  private boolean hasOpenBatch(MappedStatement ms) {
+    for (Batch batch : openBatches.values()) {
+      if (batch.result.getMappedStatement() == ms) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isFlushNeeded(Configuration configuration, Batch batch) {
+    int flushSize = configuration.getBatchFlushSize();
+    if (flushSize > 0 && batch.result.getParameterObjects().size() >= flushSize) {
+      return true;
+    }
+    int flushBytes = configuration.getBatchFlushBytes();
+    return flushBytes > 0 && pendingBytes >= flushBytes;
+  }
+
+  private List<BatchResult> executeBatches() throws SQLException {
+    try {
+      List<BatchResult> results = new ArrayList<>();
+      for (int i = 0, n = batches.size(); i < n; i++) {
+        Batch batch = batches.get(i);
+        Statement stmt = batch.statement;
+        BatchResult batchResult = batch.result;
+        try {
+          if (batch.multiRowInsert != null) {
+            batchResult.setUpdateCounts(batch.multiRowInsert.execute(this, batchResult.getParameterObjects()));
+            results.add(batchResult);
+            continue;
+          }
+          applyTransactionTimeout(stmt);
+          batchResult.setUpdateCounts(stmt.executeBatch());
+          MappedStatement ms = batchResult.getMappedStatement();
+          List<Object> parameterObjects = batchResult.getParameterObjects();
+          KeyGenerator keyGenerator = ms.getKeyGenerator();
+          if (Jdbc3KeyGenerator.class.equals(keyGenerator.getClass())) {
+            Jdbc3KeyGenerator jdbc3KeyGenerator = (Jdbc3KeyGenerator) keyGenerator;
+            jdbc3KeyGenerator.processBatch(ms, stmt, parameterObjects);
+          } else if (!NoKeyGenerator.class.equals(keyGenerator.getClass())) {
+            for (Object parameter : parameterObjects) {
+              keyGenerator.processAfter(this, ms, stmt, parameter);
+            }
+          }
+          // Close statement to close cursor #1109
+          closeStatement(stmt);
+        } catch (BatchUpdateException e) {
+          List<BatchResult> successfulResults = new ArrayList<>(flushedResults);
+          successfulResults.addAll(results);
+          StringBuilder message = new StringBuilder();
+          message.append(batchResult.getMappedStatement().getId())
+              .append(" (batch index #")
+              .append(successfulResults.size() + 1)
+              .append(")")
+              .append(" failed.");
+          if (!successfulResults.isEmpty()) {
+            message.append(" ")
+                .append(successfulResults.size())
+                .append(" prior sub executor(s) completed successfully, but will be rolled back.");
+          }
+          throw new BatchExecutorException(message.toString(), e, successfulResults, batchResult);
+        }
+        results.add(batchResult);
+      }
+      return results;
+    } finally {
+      clearBatches();
+    }
+  }
+
+  private void clearBatches() {
+    for (Batch batch : batches) {
+      closeStatement(batch.statement);
+    }
+    batches.clear();
+    openBatches.clear();
+    currentCommandType = null;
+    currentKey = null;
+    pendingBytes = 0;
+  }
+
+  /**
+   * Rough size of the parameters of a statement, as the driver will keep them until the batch is executed.
+   */
+  private long estimateSize(Configuration configuration, BoundSql boundSql, Object parameterObject) {
+    long size = 0;
+    for (Object value : MultiRowInsert.resolveParameterValues(configuration, boundSql, parameterObject)) {
+      size += estimateSize(value);
+    }
+    return size;
+  }
+
+  private long estimateSize(Object value) {
+    if (value instanceof CharSequence) {
+      return 2L * ((CharSequence) value).length();
+    } else if (value instanceof byte[]) {
+      return ((byte[]) value).length;
+    } else if (value instanceof char[]) {
+      return 2L * ((char[]) value).length;
+    }
+    return 8;
+  }
+
+  private static final class Batch {
+    final Statement statement;
+    final MultiRowInsert multiRowInsert;
+    final BatchResult result;
+
+    Batch(Statement statement, MultiRowInsert multiRowInsert, BatchResult result) {
+      this.statement = statement;
+      this.multiRowInsert = multiRowInsert;
+      this.result = result;
+    }
+  }
+
+}
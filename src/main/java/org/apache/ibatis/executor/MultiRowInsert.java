@@ -0,0 +1,303 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * A batch of single row {@code INSERT ... VALUES (...)} statements, executed as multi row
+ * {@code INSERT ... VALUES (...), (...)} statements.
+ * <p>
+ * The parameter values of each row are resolved when the row is added, like they would be bound to a batched
+ * statement. On execution the rows are sent in chunks of {@link Configuration#getBatchInsertParameterLimit()}
+ * parameters, and the keys generated by a {@link Jdbc3KeyGenerator} are assigned to the parameter objects of each
+ * chunk (this needs a driver that returns the keys of all the rows of a multi row insert).
+ *
+ * @since 3.5.3
+ */
+final class MultiRowInsert {
+
+  private static final String ROW_PARAMETER_PREFIX = "__row";
+
+  private final MappedStatement mappedStatement;
+  private final String head;
+  private final String tuple;
+  private final List<ParameterMapping> parameterMappings;
+  private final List<Object[]> rows = new ArrayList<>();
+
+  private MultiRowInsert(MappedStatement mappedStatement, String head, String tuple, List<ParameterMapping> parameterMappings) {
+    this.mappedStatement = mappedStatement;
+    this.head = head;
+    this.tuple = tuple;
+    this.parameterMappings = parameterMappings;
+  }
+
+  /**
+   * @return a new batch for the statement, or null when it cannot be rewritten
+   */
+  static MultiRowInsert of(MappedStatement ms, BoundSql boundSql) {
+    if (ms.getSqlCommandType() != SqlCommandType.INSERT || ms.getStatementType() != StatementType.PREPARED) {
+      return null;
+    }
+    KeyGenerator keyGenerator = ms.getKeyGenerator();
+    if (!NoKeyGenerator.class.equals(keyGenerator.getClass()) && !Jdbc3KeyGenerator.class.equals(keyGenerator.getClass())) {
+      // selectKey 需要逐行执行
+      return null;
+    }
+    for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
+      if (parameterMapping.getMode() != ParameterMode.IN) {
+        return null;
+      }
+    }
+    String sql = boundSql.getSql();
+    int values = findValues(sql);
+    if (values < 0) {
+      return null;
+    }
+    int open = skipWhitespace(sql, values + "VALUES".length());
+    if (open >= sql.length() || sql.charAt(open) != '(') {
+      return null;
+    }
+    int close = findClosingParenthesis(sql, open);
+    if (close < 0 || !sql.substring(close + 1).trim().isEmpty()) {
+      // 只改写以单个 VALUES 元组结尾的语句
+      return null;
+    }
+    if (countPlaceholders(sql, 0, open) != 0
+        || countPlaceholders(sql, open, close) != boundSql.getParameterMappings().size()) {
+      return null;
+    }
+    return new MultiRowInsert(ms, sql.substring(0, open), sql.substring(open, close + 1), boundSql.getParameterMappings());
+  }
+
+  void addRow(BoundSql boundSql, Object parameterObject) {
+    rows.add(resolveParameterValues(mappedStatement.getConfiguration(), boundSql, parameterObject));
+  }
+
+  /**
+   * Executes the rows in chunks.
+   *
+   * @return the update counts, one per row
+   */
+  int[] execute(BaseExecutor executor, List<Object> parameterObjects) throws SQLException {
+    final Configuration configuration = mappedStatement.getConfiguration();
+    final int columns = Math.max(1, parameterMappings.size());
+    final int chunkSize = Math.max(1, configuration.getBatchInsertParameterLimit() / columns);
+    final int[] updateCounts = new int[rows.size()];
+    Statement stmt = null;
+    int preparedSize = 0;
+    try {
+      for (int from = 0; from < rows.size(); from += chunkSize) {
+        int size = Math.min(chunkSize, rows.size() - from);
+        BoundSql boundSql = createBoundSql(configuration, from, size);
+        if (size != preparedSize) {
+          executor.closeStatement(stmt);
+          StatementHandler handler = configuration.newStatementHandler(executor, mappedStatement, null, RowBounds.DEFAULT, null, boundSql);
+          stmt = handler.prepare(executor.getConnection(mappedStatement.getStatementLog()), executor.getTransaction().getTimeout());
+          preparedSize = size;
+        }
+        executor.applyTransactionTimeout(stmt);
+        configuration.newParameterHandler(mappedStatement, null, boundSql).setParameters((PreparedStatement) stmt);
+        int count = execute(stmt, updateCounts, from);
+        // 每行插入一条记录时才能给出每行的影响行数
+        Arrays.fill(updateCounts, from, from + size, count == size ? 1 : Statement.SUCCESS_NO_INFO);
+        if (Jdbc3KeyGenerator.class.equals(mappedStatement.getKeyGenerator().getClass())) {
+          ((Jdbc3KeyGenerator) mappedStatement.getKeyGenerator()).processBatch(mappedStatement, stmt,
+              new ArrayList<>(parameterObjects.subList(from, from + size)));
+        }
+      }
+      return updateCounts;
+    } finally {
+      executor.closeStatement(stmt);
+    }
+  }
+
+  private int execute(Statement stmt, int[] updateCounts, int from) throws BatchUpdateException {
+    try {
+      ((PreparedStatement) stmt).execute();
+      return stmt.getUpdateCount();
+    } catch (SQLException e) {
+      // 与 executeBatch() 一致，报告之前成功的行
+      throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(),
+          Arrays.copyOf(updateCounts, from), e);
+    }
+  }
+
+  private BoundSql createBoundSql(Configuration configuration, int from, int size) {
+    StringBuilder sql = new StringBuilder(head.length() + (tuple.length() + 2) * size);
+    sql.append(head);
+    List<ParameterMapping> mappings = new ArrayList<>(parameterMappings.size() * size);
+    List<Object[]> values = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      if (i > 0) {
+        sql.append(", ");
+      }
+      sql.append(tuple);
+      for (int j = 0; j < parameterMappings.size(); j++) {
+        ParameterMapping parameterMapping = parameterMappings.get(j);
+        mappings.add(new ParameterMapping.Builder(configuration, ROW_PARAMETER_PREFIX + i + "_" + j, parameterMapping.getTypeHandler())
+            .javaType(parameterMapping.getJavaType())
+            .jdbcType(parameterMapping.getJdbcType())
+            .numericScale(parameterMapping.getNumericScale())
+            .jdbcTypeName(parameterMapping.getJdbcTypeName())
+            .build());
+      }
+      values.add(rows.get(from + i));
+    }
+    BoundSql boundSql = new BoundSql(configuration, sql.toString(), mappings, null);
+    for (int i = 0; i < size; i++) {
+      Object[] row = values.get(i);
+      for (int j = 0; j < row.length; j++) {
+        boundSql.setAdditionalParameter(ROW_PARAMETER_PREFIX + i + "_" + j, row[j]);
+      }
+    }
+    return boundSql;
+  }
+
+  /**
+   * Resolves the values of the parameters of a statement, the same way as
+   * {@link org.apache.ibatis.scripting.defaults.DefaultParameterHandler}.
+   */
+  static Object[] resolveParameterValues(Configuration configuration, BoundSql boundSql, Object parameterObject) {
+    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+    Object[] values = new Object[parameterMappings.size()];
+    MetaObject metaObject = null;
+    for (int i = 0; i < values.length; i++) {
+      ParameterMapping parameterMapping = parameterMappings.get(i);
+      if (parameterMapping.getMode() == ParameterMode.OUT) {
+        continue;
+      }
+      String propertyName = parameterMapping.getProperty();
+      if (boundSql.hasAdditionalParameter(propertyName)) {
+        values[i] = boundSql.getAdditionalParameter(propertyName);
+      } else if (parameterObject == null) {
+        values[i] = null;
+      } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+        values[i] = parameterObject;
+      } else {
+        if (metaObject == null) {
+          metaObject = configuration.newMetaObject(parameterObject);
+        }
+        values[i] = metaObject.getValue(propertyName);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * @return the index of the VALUES keyword of an {@code INSERT INTO ... VALUES} statement, or -1
+   */
+  private static int findValues(String sql) {
+    String upper = sql.toUpperCase(Locale.ENGLISH);
+    int start = skipWhitespace(upper, 0);
+    if (!upper.startsWith("INSERT", start)) {
+      return -1;
+    }
+    char quote = 0;
+    int depth = 0;
+    for (int i = start; i < upper.length(); i++) {
+      char c = upper.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"' || c == '`') {
+        quote = c;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (depth == 0 && upper.startsWith("VALUES", i) && isBoundary(upper, i - 1)
+          && isBoundary(upper, i + "VALUES".length())) {
+        return i;
+      } else if (depth == 0 && upper.startsWith("SELECT", i) && isBoundary(upper, i - 1)) {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isBoundary(String sql, int index) {
+    return index < 0 || index >= sql.length() || !Character.isLetterOrDigit(sql.charAt(index)) && sql.charAt(index) != '_';
+  }
+
+  private static int skipWhitespace(String sql, int index) {
+    while (index < sql.length() && Character.isWhitespace(sql.charAt(index))) {
+      index++;
+    }
+    return index;
+  }
+
+  private static int findClosingParenthesis(String sql, int open) {
+    char quote = 0;
+    int depth = 0;
+    for (int i = open; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"' || c == '`') {
+        quote = c;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')' && --depth == 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int countPlaceholders(String sql, int from, int to) {
+    char quote = 0;
+    int count = 0;
+    for (int i = from; i < to; i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"' || c == '`') {
+        quote = c;
+      } else if (c == '?') {
+        count++;
+      }
+    }
+    return count;
+  }
+
+}
@@ -20,6 +20,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -34,14 +35,46 @@ import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
 
 /**
+ * Executor that keeps the statements it prepares, keyed by SQL, and reuses them for the next executions of the same SQL.
+ * <p>
+ * By default the statements are closed at each commit or rollback. When {@link Configuration#getReuseStatementCacheSize()}
+ * is set, the executor keeps up to that many statements (the least recently used are closed first) until it is closed,
+ * so that the statements are also reused by the next transactions of the session. In both cases the SQL differing only
+ * by whitespace (e.g. from dynamic SQL elements) shares the same statement.
+ *
  * @author Clinton Begin
  */
 public class ReuseExecutor extends BaseExecutor {
 
-  private final Map<String, Statement> statementMap = new HashMap<>();
+  private final Map<String, Statement> statementMap;
+  private final int statementCacheSize;
+  private final ReuseStatementStatistics statistics;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
 
   public ReuseExecutor(Configuration configuration, Transaction transaction) {
     super(configuration, transaction);
+    this.statementCacheSize = configuration.getReuseStatementCacheSize();
+    this.statistics = configuration.getReuseStatementStatistics();
+    if (statementCacheSize > 0) {
+      this.statementMap = new LinkedHashMap<String, Statement>(16, .75F, true) {
+        private static final long serialVersionUID = 6480218727394916547L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Statement> eldest) {
+          boolean tooBig = size() > statementCacheSize;
+          if (tooBig) {
+            evictionCount++;
+            statistics.recordEviction();
+            closeStatement(eldest.getValue());
+          }
+          return tooBig;
+        }
+      };
+    } else {
+      this.statementMap = new HashMap<>();
+    }
   }
 
   @Override
@@ -64,29 +97,84 @@ public class ReuseExecutor extends BaseExecutor {
   protected <E> Cursor<E> doQueryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds, BoundSql boundSql) throws SQLException {
     Configuration configuration = ms.getConfiguration();
     StatementHandler handler = configuration.newStatementHandler(wrapper, ms, parameter, rowBounds, null, boundSql);
+    if (statementCacheSize > 0) {
+      // 游标可能在语句被淘汰后仍在使用，不放入缓存
+      Statement stmt = handler.prepare(getConnection(ms.getStatementLog()), transaction.getTimeout());
+      handler.parameterize(stmt);
+      Cursor<E> cursor = handler.queryCursor(stmt);
+      stmt.closeOnCompletion();
+      return cursor;
+    }
     Statement stmt = prepareStatement(handler, ms.getStatementLog());
     return handler.queryCursor(stmt);
   }
 
   @Override
   public List<BatchResult> doFlushStatements(boolean isRollback) {
+    if (statementCacheSize > 0) {
+      // 缓存的 Statement 在 Executor 关闭时才关闭
+      return Collections.emptyList();
+    }
+    closeStatements();
+    return Collections.emptyList();
+  }
+
+  @Override
+  public void close(boolean forceRollback) {
+    try {
+      closeStatements();
+    } finally {
+      super.close(forceRollback);
+    }
+  }
+
+  /**
+   * @return the number of executions of this executor that reused a statement (see
+   *         {@link Configuration#getReuseStatementStatistics()} for all the executors)
+   * @since 3.5.3
+   */
+  public long getStatementHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * @return the number of executions that prepared a new statement
+   * @since 3.5.3
+   */
+  public long getStatementMissCount() {
+    return missCount;
+  }
+
+  /**
+   * @return the number of statements closed to keep at most {@link Configuration#getReuseStatementCacheSize()}
+   *         statements
+   * @since 3.5.3
+   */
+  public long getStatementEvictionCount() {
+    return evictionCount;
+  }
+
+  private void closeStatements() {
     // 关闭 statementMap 集合中缓存的全部 Statement 对象
     for (Statement stmt : statementMap.values()) {
       closeStatement(stmt);
     }
     // 清空 statementMap 集合
     statementMap.clear();
-    return Collections.emptyList();
   }
 
   private Statement prepareStatement(StatementHandler handler, Log statementLog) throws SQLException {
     Statement stmt;
     BoundSql boundSql = handler.getBoundSql();
-    String sql = boundSql.getSql();
+    String sql = canonicalize(boundSql.getSql());
     if (hasStatementFor(sql)) {
+      hitCount++;
+      statistics.recordHit();
       stmt = getStatement(sql);
       applyTransactionTimeout(stmt);
     } else {
+      missCount++;
+      statistics.recordMiss();
       Connection connection = getConnection(statementLog);
       stmt = handler.prepare(connection, transaction.getTimeout());
       putStatement(sql, stmt);
@@ -97,7 +185,8 @@ public class ReuseExecutor extends BaseExecutor {
 
   private boolean hasStatementFor(String sql) {
     try {
-      return statementMap.keySet().contains(sql) && !statementMap.get(sql).getConnection().isClosed();
+      Statement stmt = statementMap.get(sql);
+      return stmt != null && !stmt.getConnection().isClosed();
     } catch (SQLException e) {
       return false;
     }
@@ -108,7 +197,59 @@ public class ReuseExecutor extends BaseExecutor {
   }
 
   private void putStatement(String sql, Statement stmt) {
-    statementMap.put(sql, stmt);
+    Statement previous = statementMap.put(sql, stmt);
+    if (previous != null && previous != stmt) {
+      closeStatement(previous);
+    }
+  }
+
+  /**
+   * Collapses the runs of whitespace outside of quotes to a single space and trims the SQL.
+   *
+   * @return the SQL as it is when it does not change, when it has comments (which may end with a line break), or when
+   *         it has backslashes, {@code #} or {@code $$} (escaped quotes, MySQL comments and dollar quoting are not
+   *         parsed)
+   */
+  static String canonicalize(String sql) {
+    if (sql.indexOf('\\') >= 0 || sql.indexOf('#') >= 0 || sql.contains("$$")) {
+      return sql;
+    }
+    int start = 0;
+    int end = sql.length();
+    while (start < end && Character.isWhitespace(sql.charAt(start))) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(sql.charAt(end - 1))) {
+      end--;
+    }
+    boolean changed = start > 0 || end < sql.length();
+    StringBuilder builder = new StringBuilder(end - start);
+    char quote = 0;
+    for (int i = start; i < end; i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+        builder.append(c);
+      } else if (c == '\'' || c == '"' || c == '`') {
+        quote = c;
+        builder.append(c);
+      } else if (Character.isWhitespace(c)) {
+        int next = i + 1;
+        while (next < end && Character.isWhitespace(sql.charAt(next))) {
+          next++;
+        }
+        changed |= c != ' ' || next > i + 1;
+        builder.append(' ');
+        i = next - 1;
+      } else if (i + 1 < end && (c == '-' && sql.charAt(i + 1) == '-' || c == '/' && sql.charAt(i + 1) == '*')) {
+        return sql;
+      } else {
+        builder.append(c);
+      }
+    }
+    return changed ? builder.toString() : sql;
   }
 
 }
@@ -0,0 +1,68 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * The statement counters of all the {@link ReuseExecutor}s created by a configuration, which are not reachable from
+ * the sessions as the executors are wrapped (see {@link Configuration#getReuseStatementStatistics()}).
+ *
+ * @since 3.5.3
+ */
+public class ReuseStatementStatistics {
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  void recordHit() {
+    hitCount.increment();
+  }
+
+  void recordMiss() {
+    missCount.increment();
+  }
+
+  void recordEviction() {
+    evictionCount.increment();
+  }
+
+  /**
+   * @return the number of executions that reused a statement
+   */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * @return the number of executions that prepared a new statement
+   */
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * @return the number of statements closed to keep at most {@link Configuration#getReuseStatementCacheSize()}
+   *         statements per executor
+   */
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+}
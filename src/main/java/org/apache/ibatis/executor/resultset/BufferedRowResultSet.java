@@ -0,0 +1,325 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.type.ArrayTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.OffsetDateTimeTypeHandler;
+import org.apache.ibatis.type.OffsetTimeTypeHandler;
+import org.apache.ibatis.type.SqlxmlTypeHandler;
+import org.apache.ibatis.type.TypeHandler;
+import org.apache.ibatis.type.ZonedDateTimeTypeHandler;
+
+/**
+ * Read-only {@link ResultSet} proxy over rows copied from another result set, so that they can be mapped on another
+ * thread while the original result set moves on.
+ * <p>
+ * A row is copied with {@link ResultSet#getObject(int)}, except the LOBs that are copied to a {@link SerialClob} or a
+ * {@link SerialBlob}. The typed getters called by the type handlers convert the copied values like a JDBC driver does
+ * for the common types; the other getters are not supported. {@link #supportsColumn(JdbcType, String)} and
+ * {@link #supportsTypeHandler(TypeHandler)} tell whether a result set can be mapped through the buffer at all.
+ *
+ * @since 3.5.3
+ */
+final class BufferedRowResultSet implements InvocationHandler {
+
+  private static final Set<JdbcType> SUPPORTED_JDBC_TYPES = EnumSet.of(JdbcType.BIT, JdbcType.TINYINT,
+      JdbcType.SMALLINT, JdbcType.INTEGER, JdbcType.BIGINT, JdbcType.FLOAT, JdbcType.REAL, JdbcType.DOUBLE,
+      JdbcType.NUMERIC, JdbcType.DECIMAL, JdbcType.CHAR, JdbcType.VARCHAR, JdbcType.LONGVARCHAR, JdbcType.NCHAR,
+      JdbcType.NVARCHAR, JdbcType.LONGNVARCHAR, JdbcType.DATE, JdbcType.TIME, JdbcType.TIMESTAMP, JdbcType.BINARY,
+      JdbcType.VARBINARY, JdbcType.LONGVARBINARY, JdbcType.NULL, JdbcType.BLOB, JdbcType.CLOB, JdbcType.NCLOB,
+      JdbcType.BOOLEAN);
+
+  private final ResultSetWrapper source;
+  private final ResultSetMetaData metaData;
+  private final ResultSet proxy;
+  private Object[] row;
+  private boolean wasNull;
+
+  BufferedRowResultSet(ResultSetWrapper source, ResultSetMetaData metaData) {
+    this.source = source;
+    this.metaData = metaData;
+    this.proxy = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, this);
+  }
+
+  /**
+   * Whether the values of a column can be copied and read back through the typed getters.
+   */
+  static boolean supportsColumn(JdbcType jdbcType, String className) {
+    if (jdbcType == null || !SUPPORTED_JDBC_TYPES.contains(jdbcType)) {
+      return false;
+    }
+    if (jdbcType == JdbcType.DATE || jdbcType == JdbcType.TIME || jdbcType == JdbcType.TIMESTAMP) {
+      // 驱动自有的日期时间类型(如 oracle.sql.TIMESTAMP)无法按 java.sql/java.time 类型转换
+      return className == null || className.startsWith("java.");
+    }
+    return true;
+  }
+
+  /**
+   * Whether a type handler only reads columns through getters the buffer supports.
+   */
+  static boolean supportsTypeHandler(TypeHandler<?> typeHandler) {
+    return !(typeHandler instanceof OffsetDateTimeTypeHandler || typeHandler instanceof OffsetTimeTypeHandler
+        || typeHandler instanceof ZonedDateTimeTypeHandler || typeHandler instanceof SqlxmlTypeHandler
+        || typeHandler instanceof ArrayTypeHandler);
+  }
+
+  /**
+   * Copies the current row of a result set.
+   */
+  static Object[] readRow(ResultSet rs, List<JdbcType> jdbcTypes) throws SQLException {
+    final Object[] row = new Object[jdbcTypes.size()];
+    for (int i = 0; i < row.length; i++) {
+      final JdbcType jdbcType = jdbcTypes.get(i);
+      if (jdbcType == JdbcType.CLOB || jdbcType == JdbcType.NCLOB) {
+        // LOB 在游标移动后可能失效，复制其内容
+        final Clob clob = rs.getClob(i + 1);
+        row[i] = clob == null ? null : new SerialClob(clob);
+      } else if (jdbcType == JdbcType.BLOB) {
+        final Blob blob = rs.getBlob(i + 1);
+        row[i] = blob == null ? null : new SerialBlob(blob);
+      } else {
+        row[i] = rs.getObject(i + 1);
+      }
+    }
+    return row;
+  }
+
+  ResultSet getResultSet() {
+    return proxy;
+  }
+
+  void setRow(Object[] row) {
+    this.row = row;
+    this.wasNull = false;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] params) throws Throwable {
+    try {
+      final String name = method.getName();
+      if (Object.class.equals(method.getDeclaringClass())) {
+        if ("equals".equals(name)) {
+          return proxy == params[0];
+        } else if ("hashCode".equals(name)) {
+          return System.identityHashCode(proxy);
+        }
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+      }
+      switch (name) {
+        case "wasNull":
+          return wasNull;
+        case "getMetaData":
+          return metaData;
+        case "findColumn":
+          return findColumn((String) params[0]);
+        case "isClosed":
+          return false;
+        case "close":
+          return null;
+        case "getType":
+          return ResultSet.TYPE_FORWARD_ONLY;
+        case "getConcurrency":
+          return ResultSet.CONCUR_READ_ONLY;
+        case "isWrapperFor":
+          return ((Class<?>) params[0]).isInstance(proxy);
+        default:
+          break;
+      }
+      if (name.startsWith("get") && params != null && params.length > 0
+          && (params[0] instanceof Integer || params[0] instanceof String)) {
+        if (params.length == 2 && "getObject".equals(name) && params[1] instanceof Class) {
+          return getValue(params[0], (Class<?>) params[1]);
+        } else if (params.length == 1 || "getObject".equals(name)) {
+          return getValue(params[0], "getObject".equals(name) ? Object.class : method.getReturnType());
+        }
+      }
+      throw new SQLFeatureNotSupportedException("ResultSet." + name + " is not supported on rows mapped in parallel.");
+    } catch (Throwable t) {
+      throw ExceptionUtil.unwrapThrowable(t);
+    }
+  }
+
+  private int findColumn(String columnLabel) throws SQLException {
+    final int columnIndex = source.getColumnIndex(columnLabel);
+    if (columnIndex == 0) {
+      throw new SQLException("Column '" + columnLabel + "' not found.");
+    }
+    return columnIndex;
+  }
+
+  private Object getValue(Object column, Class<?> type) throws SQLException {
+    final int columnIndex = column instanceof Integer ? (Integer) column : findColumn((String) column);
+    if (columnIndex < 1 || columnIndex > row.length) {
+      throw new SQLException("Invalid column index " + columnIndex + ".");
+    }
+    final Object value = row[columnIndex - 1];
+    wasNull = value == null;
+    if (value == null) {
+      // 与 JDBC 一致，基本类型的 getter 返回 0 或 false
+      return type.isPrimitive() ? Array.get(Array.newInstance(type, 1), 0) : null;
+    }
+    return convert(value, type);
+  }
+
+  private static Object convert(Object value, Class<?> type) throws SQLException {
+    final Class<?> targetType = type.isPrimitive() ? Array.get(Array.newInstance(type, 1), 0).getClass() : type;
+    if (targetType.isInstance(value)) {
+      return value;
+    } else if (targetType == String.class) {
+      return toString(value);
+    } else if (Number.class.isAssignableFrom(targetType)) {
+      return toNumber(value, targetType);
+    } else if (targetType == Boolean.class) {
+      if (value instanceof Number) {
+        return ((Number) value).intValue() != 0;
+      }
+      final String string = toString(value).trim();
+      return "1".equals(string) || "true".equalsIgnoreCase(string);
+    } else if (targetType == byte[].class && value instanceof Blob) {
+      final Blob blob = (Blob) value;
+      return blob.getBytes(1, (int) blob.length());
+    } else if (targetType == Clob.class && value instanceof String) {
+      return new SerialClob(((String) value).toCharArray());
+    } else if (targetType == Blob.class && value instanceof byte[]) {
+      return new SerialBlob((byte[]) value);
+    } else if (Reader.class.isAssignableFrom(targetType)) {
+      return value instanceof Clob ? ((Clob) value).getCharacterStream() : new StringReader(toString(value));
+    } else if (InputStream.class.isAssignableFrom(targetType)) {
+      if (value instanceof Blob) {
+        return ((Blob) value).getBinaryStream();
+      } else if (value instanceof byte[]) {
+        return new ByteArrayInputStream((byte[]) value);
+      }
+    }
+    final Object temporal = toTemporal(value, targetType);
+    if (temporal != null) {
+      return temporal;
+    }
+    throw new SQLException("Cannot convert a value of type " + value.getClass().getName() + " to " + type.getName() + ".");
+  }
+
+  private static String toString(Object value) throws SQLException {
+    if (value instanceof Clob) {
+      final Clob clob = (Clob) value;
+      return clob.getSubString(1, (int) clob.length());
+    }
+    return value.toString();
+  }
+
+  private static Object toNumber(Object value, Class<?> type) throws SQLException {
+    final Number number;
+    if (value instanceof Number) {
+      number = (Number) value;
+    } else if (value instanceof Boolean) {
+      number = (Boolean) value ? 1 : 0;
+    } else {
+      try {
+        number = new BigDecimal(toString(value).trim());
+      } catch (NumberFormatException e) {
+        throw new SQLException("Cannot convert '" + value + "' to " + type.getName() + ".", e);
+      }
+    }
+    if (type == Integer.class) {
+      return number.intValue();
+    } else if (type == Long.class) {
+      return number.longValue();
+    } else if (type == Short.class) {
+      return number.shortValue();
+    } else if (type == Byte.class) {
+      return number.byteValue();
+    } else if (type == Double.class) {
+      return number.doubleValue();
+    } else if (type == Float.class) {
+      return number.floatValue();
+    } else if (type == BigDecimal.class) {
+      return number instanceof BigInteger ? new BigDecimal((BigInteger) number) : new BigDecimal(number.toString());
+    } else if (type == BigInteger.class) {
+      return number instanceof BigDecimal ? ((BigDecimal) number).toBigInteger() : BigInteger.valueOf(number.longValue());
+    }
+    throw new SQLException("Cannot convert a value of type " + value.getClass().getName() + " to " + type.getName() + ".");
+  }
+
+  private static Object toTemporal(Object value, Class<?> type) {
+    final Timestamp timestamp;
+    if (value instanceof Timestamp) {
+      timestamp = (Timestamp) value;
+    } else if (value instanceof Date) {
+      timestamp = Timestamp.valueOf(((Date) value).toLocalDate().atStartOfDay());
+    } else if (value instanceof Time) {
+      timestamp = Timestamp.valueOf(LocalDateTime.of(LocalDate.of(1970, 1, 1), ((Time) value).toLocalTime()));
+    } else if (value instanceof java.util.Date) {
+      timestamp = new Timestamp(((java.util.Date) value).getTime());
+    } else if (value instanceof LocalDateTime) {
+      timestamp = Timestamp.valueOf((LocalDateTime) value);
+    } else if (value instanceof LocalDate) {
+      timestamp = Timestamp.valueOf(((LocalDate) value).atStartOfDay());
+    } else {
+      return null;
+    }
+    if (type == Timestamp.class) {
+      return timestamp;
+    } else if (type == Date.class) {
+      return Date.valueOf(timestamp.toLocalDateTime().toLocalDate());
+    } else if (type == Time.class) {
+      return Time.valueOf(timestamp.toLocalDateTime().toLocalTime());
+    } else if (type == java.util.Date.class) {
+      return new java.util.Date(timestamp.getTime());
+    } else if (type == LocalDateTime.class) {
+      return timestamp.toLocalDateTime();
+    } else if (type == LocalDate.class) {
+      return timestamp.toLocalDateTime().toLocalDate();
+    } else if (type == LocalTime.class) {
+      return timestamp.toLocalDateTime().toLocalTime();
+    } else if (type == Instant.class) {
+      return timestamp.toInstant();
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,87 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.util.List;
+
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * How the columns of a result set are mapped to the properties of a result map (with a column prefix): the column
+ * index of each property mapping and the automatic mappings of the other columns, with their type handlers resolved.
+ * <p>
+ * A plan is built by {@link DefaultResultSetHandler} the first time a result map is applied to a result set, then
+ * shared by all its rows. It is also kept by the {@link org.apache.ibatis.mapping.MappedStatement} and reused by the
+ * next executions returning the same columns (see {@link ResultSetWrapper#getLayout()}), so that mapping a row does not
+ * look up any column by name.
+ *
+ * @since 3.5.3
+ */
+public final class ColumnPlan {
+
+  final String layout;
+  /**
+   * Index of the column of each property mapping of the result map (same order), 0 when the result set does not have it.
+   */
+  final int[] propertyColumns;
+  /**
+   * Whether the setter of each property mapping takes a primitive.
+   */
+  final boolean[] propertyPrimitives;
+  /**
+   * Automatic mappings of the unmapped columns, computed on first use.
+   */
+  volatile List<AutoMapping> autoMappings;
+  /**
+   * Unmapped columns without a matching property or type handler, reported again each time the plan is reused.
+   */
+  volatile List<UnknownColumn> unknownColumns;
+
+  ColumnPlan(String layout, int[] propertyColumns, boolean[] propertyPrimitives) {
+    this.layout = layout;
+    this.propertyColumns = propertyColumns;
+    this.propertyPrimitives = propertyPrimitives;
+  }
+
+  static final class AutoMapping {
+    final int columnIndex;
+    final String column;
+    final String property;
+    final TypeHandler<?> typeHandler;
+    final boolean primitive;
+
+    AutoMapping(int columnIndex, String column, String property, TypeHandler<?> typeHandler, boolean primitive) {
+      this.columnIndex = columnIndex;
+      this.column = column;
+      this.property = property;
+      this.typeHandler = typeHandler;
+      this.primitive = primitive;
+    }
+  }
+
+  static final class UnknownColumn {
+    final String column;
+    final String property;
+    final Class<?> propertyType;
+
+    UnknownColumn(String column, String property, Class<?> propertyType) {
+      this.column = column;
+      this.property = property;
+      this.propertyType = propertyType;
+    }
+  }
+
+}
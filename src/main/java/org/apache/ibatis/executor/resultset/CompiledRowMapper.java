@@ -0,0 +1,53 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.apache.ibatis.executor.result.ResultMapException;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * Base class of the row mappers generated by {@link RowMapperCompiler}.
+ * <p>
+ * A generated mapper creates the result object with its default constructor, reads the columns by index and calls the
+ * setters directly. The type handlers that could not be inlined are called through {@link #typeHandlers}.
+ *
+ * @since 3.5.3
+ */
+public abstract class CompiledRowMapper {
+
+  protected final TypeHandler<?>[] typeHandlers;
+
+  protected CompiledRowMapper(TypeHandler<?>[] typeHandlers) {
+    this.typeHandlers = typeHandlers;
+  }
+
+  /**
+   * @param rs the result set, positioned on the row to map
+   * @return the result object, or null when no column was found and empty instances are not returned
+   */
+  public abstract Object map(ResultSet rs) throws SQLException;
+
+  /**
+   * Wraps an error of an inlined getter like {@link org.apache.ibatis.type.BaseTypeHandler} does.
+   */
+  protected static ResultMapException columnError(int columnIndex, Exception e) {
+    return new ResultMapException("Error attempting to get column #" + columnIndex + " from result set.  Cause: " + e, e);
+  }
+
+}
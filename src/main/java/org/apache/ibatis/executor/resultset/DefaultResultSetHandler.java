@@ -18,21 +18,30 @@ package org.apache.ibatis.executor.resultset;
 import java.lang.reflect.Constructor;
 import java.sql.CallableStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.ibatis.annotations.AutomapConstructor;
 import org.apache.ibatis.binding.MapperMethod.ParamMap;
 import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.cursor.defaults.DefaultCursor;
+import org.apache.ibatis.cursor.defaults.PrefetchingCursor;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
@@ -52,7 +61,9 @@ import org.apache.ibatis.mapping.ResultMapping;
 import org.apache.ibatis.reflection.MetaClass;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.factory.DefaultObjectFactory;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
+import org.apache.ibatis.reflection.wrapper.DefaultObjectWrapperFactory;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultContext;
@@ -71,6 +82,7 @@ import org.apache.ibatis.type.TypeHandlerRegistry;
 public class DefaultResultSetHandler implements ResultSetHandler {
 
   private static final Object DEFERRED = new Object();
+  private static final int PARALLEL_MAPPING_BATCH_SIZE = 256;
 
   private final Executor executor;
   private final Configuration configuration;
@@ -84,16 +96,26 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   private final ReflectorFactory reflectorFactory;
 
   // nested resultmaps
-  private final Map<CacheKey, Object> nestedResultObjects = new HashMap<>();
+  private final Map<RowKey, Object> nestedResultObjects = new HashMap<>();
   private final Map<String, Object> ancestorObjects = new HashMap<>();
+  // 每一层嵌套映射复用的行键，查找已存在的对象时不需要分配新的行键
+  private final List<RowKey> scratchRowKeys = new ArrayList<>();
   private Object previousRowValue;
 
   // multiple resultsets
   private final Map<String, ResultMapping> nextResultMaps = new HashMap<>();
   private final Map<CacheKey, List<PendingRelation>> pendingRelations = new HashMap<>();
 
-  // Cached Automappings
-  private final Map<String, List<UnMappedColumnAutoMapping>> autoMappingsCache = new HashMap<>();
+  // Column plans (property column indexes and automappings)
+  private static final int MAX_SHARED_COLUMN_PLANS = 64;
+  private final Map<String, ColumnPlan> columnPlans = new HashMap<>();
+  private ResultSetWrapper lastPlanResultSet;
+  private ResultMap lastPlanResultMap;
+  private String lastPlanColumnPrefix;
+  private ColumnPlan lastPlan;
+
+  // Compiled row mappers, null when the result map cannot be compiled
+  private final Map<ColumnPlan, CompiledRowMapper> compiledRowMappers = new IdentityHashMap<>();
 
   // temporary marking flag that indicate using constructor mapping (use field to reduce memory usage)
   private boolean useConstructorMappings;
@@ -103,20 +125,6 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     public ResultMapping propertyMapping;
   }
 
-  private static class UnMappedColumnAutoMapping {
-    private final String column;
-    private final String property;
-    private final TypeHandler<?> typeHandler;
-    private final boolean primitive;
-
-    public UnMappedColumnAutoMapping(String column, String property, TypeHandler<?> typeHandler, boolean primitive) {
-      this.column = column;
-      this.property = property;
-      this.typeHandler = typeHandler;
-      this.primitive = primitive;
-    }
-  }
-
   public DefaultResultSetHandler(Executor executor, MappedStatement mappedStatement, ParameterHandler parameterHandler, ResultHandler<?> resultHandler, BoundSql boundSql,
                                  RowBounds rowBounds) {
     this.executor = executor;
@@ -131,6 +139,16 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     this.resultHandler = resultHandler;
   }
 
+  /**
+   * Creates a handler that maps rows of the same result set on another thread, reusing the column plans (and compiled
+   * row mappers) built by {@code parent}.
+   */
+  private DefaultResultSetHandler(DefaultResultSetHandler parent) {
+    this(parent.executor, parent.mappedStatement, parent.parameterHandler, null, parent.boundSql, parent.rowBounds);
+    columnPlans.putAll(parent.columnPlans);
+    compiledRowMappers.putAll(parent.compiledRowMappers);
+  }
+
   //
   // HANDLE OUTPUT PARAMETER
   //
@@ -257,7 +275,12 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     }
 
     ResultMap resultMap = resultMaps.get(0);
-    return new DefaultCursor<>(this, resultMap, rsw, rowBounds);
+    Cursor<E> cursor = new DefaultCursor<>(this, resultMap, rsw, rowBounds);
+    if (mappedStatement.isCursorPrefetch() && configuration.getCursorPrefetchSize() > 0) {
+      cursor = new PrefetchingCursor<>(cursor, configuration.getCursorPrefetchSize(),
+          configuration.getCursorPrefetchQueueSize(), configuration.getAsyncExecutor());
+    }
+    return cursor;
   }
 
   private ResultSetWrapper getFirstResultSet(Statement stmt) throws SQLException {
@@ -389,7 +412,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   }
 
   protected void checkResultHandler() {
-    if (resultHandler != null && configuration.isSafeResultHandlerEnabled() && !mappedStatement.isResultOrdered()) {
+    if (resultHandler != null && configuration.isSafeResultHandlerEnabled() && !mappedStatement.isResultOrdered()
+        && !configuration.isNestedResultStreaming()) {
       throw new ExecutorException("Mapped Statements with nested result mappings cannot be safely used with a custom ResultHandler. "
           + "Use safeResultHandlerEnabled=false setting to bypass this check "
           + "or ensure your statement returns ordered data and set resultOrdered=true on it.");
@@ -406,6 +430,10 @@ public class DefaultResultSetHandler implements ResultSetHandler {
    */
   private void handleRowValuesForSimpleResultMap(ResultSetWrapper rsw, ResultMap resultMap, ResultHandler<?> resultHandler, RowBounds rowBounds, ResultMapping parentMapping)
       throws SQLException {
+    if (isParallelMapping(rsw, resultMap, resultHandler, parentMapping)) {
+      handleRowValuesInParallel(rsw, resultMap, resultHandler, rowBounds);
+      return;
+    }
     DefaultResultContext<Object> resultContext = new DefaultResultContext<>();
     ResultSet resultSet = rsw.getResultSet();
     // 根据 RowBounds 定位到指定行记录
@@ -421,6 +449,136 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     }
   }
 
+  /**
+   * 并行映射只用于语句的查询结果（游标逐行取值，不适用），且映射过程不能执行嵌套查询或依赖鉴别器，
+   * 结果集的各列也必须能复制到行缓冲中
+   */
+  private boolean isParallelMapping(ResultSetWrapper rsw, ResultMap resultMap, ResultHandler<?> resultHandler, ResultMapping parentMapping) {
+    if (!mappedStatement.isParallelMapping() || parentMapping != null || resultMap.getDiscriminator() != null
+        || !(resultHandler instanceof DefaultResultHandler || resultHandler == this.resultHandler)) {
+      return false;
+    }
+    for (ResultMapping resultMapping : resultMap.getResultMappings()) {
+      if (resultMapping.getNestedQueryId() != null || resultMapping.getResultSet() != null) {
+        return false;
+      }
+    }
+    final List<JdbcType> jdbcTypes = rsw.getJdbcTypes();
+    final List<String> classNames = rsw.getClassNames();
+    for (int i = 0; i < jdbcTypes.size(); i++) {
+      if (!BufferedRowResultSet.supportsColumn(jdbcTypes.get(i), classNames.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 自动映射的类型处理器在映射第一行后才确定，此时再检查各类型处理器是否只使用行缓冲支持的取值方法
+   */
+  private boolean supportsBufferedRows(ResultSetWrapper rsw, ResultMap resultMap) throws SQLException {
+    for (ResultMapping resultMapping : resultMap.getResultMappings()) {
+      if (resultMapping.getTypeHandler() != null && !BufferedRowResultSet.supportsTypeHandler(resultMapping.getTypeHandler())) {
+        return false;
+      }
+    }
+    final List<ColumnPlan.AutoMapping> autoMappings = getColumnPlan(rsw, resultMap, null).autoMappings;
+    if (autoMappings != null) {
+      for (ColumnPlan.AutoMapping autoMapping : autoMappings) {
+        if (!BufferedRowResultSet.supportsTypeHandler(autoMapping.typeHandler)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 读取线程只把各行的列值复制到行缓冲中，类型转换和结果对象的创建分批交给 fork/join 线程池完成，
+   * 结果仍按行的顺序在读取线程上交给 ResultHandler
+   */
+  private void handleRowValuesInParallel(ResultSetWrapper rsw, ResultMap resultMap, ResultHandler<?> resultHandler, RowBounds rowBounds)
+      throws SQLException {
+    final DefaultResultContext<Object> resultContext = new DefaultResultContext<>();
+    final ResultSet resultSet = rsw.getResultSet();
+    skipRows(resultSet, rowBounds);
+    if (!shouldProcessMoreRows(resultContext, rowBounds) || resultSet.isClosed() || !resultSet.next()) {
+      return;
+    }
+    // 第一行在读取线程上映射，建立各批次共用的 ColumnPlan
+    callResultHandler(resultHandler, resultContext, getRowValue(rsw, resultMap, null));
+    if (!supportsBufferedRows(rsw, resultMap)) {
+      while (shouldProcessMoreRows(resultContext, rowBounds) && !resultSet.isClosed() && resultSet.next()) {
+        callResultHandler(resultHandler, resultContext, getRowValue(rsw, resultMap, null));
+      }
+      return;
+    }
+    final ForkJoinPool pool = ForkJoinPool.commonPool();
+    final int maxPendingBatches = 2 * Math.max(1, pool.getParallelism());
+    final ResultSetMetaData metaData = resultSet.getMetaData();
+    final Deque<Future<Object[]>> pendingBatches = new ArrayDeque<>();
+    long remainingRows = rowBounds.getLimit() - 1L;
+    boolean moreRows = shouldProcessMoreRows(resultContext, rowBounds);
+    try {
+      while (moreRows || !pendingBatches.isEmpty()) {
+        if (moreRows && pendingBatches.size() < maxPendingBatches) {
+          final List<Object[]> rows = new ArrayList<>(PARALLEL_MAPPING_BATCH_SIZE);
+          while (rows.size() < PARALLEL_MAPPING_BATCH_SIZE && remainingRows > 0 && !resultSet.isClosed() && resultSet.next()) {
+            rows.add(BufferedRowResultSet.readRow(resultSet, rsw.getJdbcTypes()));
+            remainingRows--;
+          }
+          moreRows = rows.size() == PARALLEL_MAPPING_BATCH_SIZE;
+          if (!rows.isEmpty()) {
+            final DefaultResultSetHandler worker = new DefaultResultSetHandler(this);
+            pendingBatches.add(pool.submit(() -> worker.mapRows(rsw, metaData, resultMap, rows)));
+          }
+        } else {
+          // 等待最早提交的一批，保持结果的顺序并限制缓冲的行数
+          for (Object rowValue : getMappedRows(pendingBatches.removeFirst())) {
+            if (!shouldProcessMoreRows(resultContext, rowBounds)) {
+              return;
+            }
+            callResultHandler(resultHandler, resultContext, rowValue);
+          }
+        }
+      }
+    } finally {
+      for (Future<Object[]> batch : pendingBatches) {
+        batch.cancel(false);
+      }
+    }
+  }
+
+  private Object[] mapRows(ResultSetWrapper rsw, ResultSetMetaData metaData, ResultMap resultMap, List<Object[]> rows) throws SQLException {
+    final BufferedRowResultSet buffer = new BufferedRowResultSet(rsw, metaData);
+    final ResultSetWrapper bufferWrapper = new ResultSetWrapper(rsw, buffer.getResultSet());
+    final Object[] rowValues = new Object[rows.size()];
+    for (int i = 0; i < rowValues.length; i++) {
+      buffer.setRow(rows.get(i));
+      rowValues[i] = getRowValue(bufferWrapper, resultMap, null);
+    }
+    return rowValues;
+  }
+
+  private Object[] getMappedRows(Future<Object[]> batch) throws SQLException {
+    try {
+      return batch.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ExecutorException("Interrupted while waiting for rows mapped in parallel.", e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new ExecutorException("Error mapping rows in parallel. Cause: " + cause, cause);
+    }
+  }
+
   private void storeObject(ResultHandler<?> resultHandler, DefaultResultContext<Object> resultContext, Object rowValue, ResultMapping parentMapping, ResultSet rs) throws SQLException {
     if (parentMapping != null) {
       // 嵌套查询或嵌套映射的场景，此时需要将结果对象保存到外层对象对应的属性中
@@ -469,6 +627,13 @@ public class DefaultResultSetHandler implements ResultSetHandler {
    * 3. 按<resultMap>中配置的映射关系进行映射
    */
   private Object getRowValue(ResultSetWrapper rsw, ResultMap resultMap, String columnPrefix) throws SQLException {
+    if (configuration.isCompiledRowMapping()) {
+      // 使用为该 ResultMap 及列布局生成的映射类
+      final CompiledRowMapper rowMapper = getCompiledRowMapper(rsw, resultMap, columnPrefix);
+      if (rowMapper != null) {
+        return rowMapper.map(rsw.getResultSet());
+      }
+    }
     final ResultLoaderMap lazyLoader = new ResultLoaderMap();
     // 根据 ResultMap 的 type 属性值创建映射的结果对象
     Object rowValue = createResultObject(rsw, resultMap, lazyLoader, columnPrefix);
@@ -490,6 +655,115 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return rowValue;
   }
 
+  private CompiledRowMapper getCompiledRowMapper(ResultSetWrapper rsw, ResultMap resultMap, String columnPrefix) throws SQLException {
+    final ColumnPlan plan = getColumnPlan(rsw, resultMap, columnPrefix);
+    if (compiledRowMappers.containsKey(plan)) {
+      return compiledRowMappers.get(plan);
+    }
+    CompiledRowMapper rowMapper = null;
+    if (isCompilable(rsw, resultMap)) {
+      final MetaObject metaObject = configuration.newMetaObject(objectFactory.create(resultMap.getType()));
+      final List<RowMapperCompiler.Mapping> mappings = new ArrayList<>();
+      if (shouldApplyAutomaticMappings(resultMap, false)) {
+        for (ColumnPlan.AutoMapping mapping : createAutomaticMappings(rsw, resultMap, metaObject, columnPrefix)) {
+          mappings.add(new RowMapperCompiler.Mapping(mapping.columnIndex, mapping.property,
+              metaObject.getSetterType(mapping.property), mapping.typeHandler));
+        }
+      }
+      final List<ResultMapping> propertyMappings = resultMap.getPropertyResultMappings();
+      for (int i = 0; i < propertyMappings.size(); i++) {
+        final ResultMapping propertyMapping = propertyMappings.get(i);
+        final String property = propertyMapping.getProperty();
+        if (property != null && plan.propertyColumns[i] > 0) {
+          mappings.add(new RowMapperCompiler.Mapping(plan.propertyColumns[i], property,
+              metaObject.getSetterType(property), propertyMapping.getTypeHandler()));
+        }
+      }
+      // 嵌套属性（a.b）找不到对应的 setter，compile 会返回 null
+      rowMapper = configuration.getRowMapperCompiler().compile(resultMap.getType(), mappings,
+          configuration.isCallSettersOnNulls(), configuration.isReturnInstanceForEmptyRow());
+    }
+    compiledRowMappers.put(plan, rowMapper);
+    return rowMapper;
+  }
+
+  private boolean isCompilable(ResultSetWrapper rsw, ResultMap resultMap) {
+    final Class<?> resultType = resultMap.getType();
+    if (!resultMap.getConstructorResultMappings().isEmpty() || hasTypeHandlerForResultObject(rsw, resultType)
+        || resultType.isInterface() || !MetaClass.forClass(resultType, reflectorFactory).hasDefaultConstructor()
+        || objectFactory.getClass() != DefaultObjectFactory.class
+        || configuration.getObjectWrapperFactory().getClass() != DefaultObjectWrapperFactory.class) {
+      return false;
+    }
+    for (ResultMapping propertyMapping : resultMap.getPropertyResultMappings()) {
+      if (propertyMapping.getNestedQueryId() != null || propertyMapping.getNestedResultMapId() != null
+          || propertyMapping.getResultSet() != null || propertyMapping.isCompositeResult()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  //
+  // COLUMN PLANS
+  //
+
+  /**
+   * 获取 ResultMap 在当前结果集上的 ColumnPlan，依次查找：上一次使用的 plan、本次执行中已建立的 plan、
+   * MappedStatement 中列布局相同的 plan，都没有时才新建
+   */
+  private ColumnPlan getColumnPlan(ResultSetWrapper rsw, ResultMap resultMap, String columnPrefix) throws SQLException {
+    if (rsw == lastPlanResultSet && resultMap == lastPlanResultMap && Objects.equals(columnPrefix, lastPlanColumnPrefix)) {
+      return lastPlan;
+    }
+    final String mapKey = resultMap.getId() + ":" + columnPrefix;
+    ColumnPlan plan = columnPlans.get(mapKey);
+    if (plan == null || !plan.layout.equals(rsw.getLayout())) {
+      final String sharedKey = mapKey + ":" + rsw.getLayout();
+      final Map<String, ColumnPlan> sharedPlans = mappedStatement.getColumnPlans();
+      plan = sharedPlans.get(sharedKey);
+      if (plan == null) {
+        plan = createColumnPlan(rsw, resultMap, columnPrefix);
+        if (sharedPlans.size() < MAX_SHARED_COLUMN_PLANS) {
+          sharedPlans.putIfAbsent(sharedKey, plan);
+        }
+      } else if (plan.autoMappings != null) {
+        // 复用的 plan 不再重新计算自动映射，这里重新报告未知列
+        for (ColumnPlan.UnknownColumn unknownColumn : plan.unknownColumns) {
+          configuration.getAutoMappingUnknownColumnBehavior()
+              .doAction(mappedStatement, unknownColumn.column, unknownColumn.property, unknownColumn.propertyType);
+        }
+      }
+      columnPlans.put(mapKey, plan);
+    }
+    lastPlanResultSet = rsw;
+    lastPlanResultMap = resultMap;
+    lastPlanColumnPrefix = columnPrefix;
+    lastPlan = plan;
+    return plan;
+  }
+
+  private ColumnPlan createColumnPlan(ResultSetWrapper rsw, ResultMap resultMap, String columnPrefix) throws SQLException {
+    final List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, columnPrefix);
+    final MetaClass metaType = MetaClass.forClass(resultMap.getType(), reflectorFactory);
+    final List<ResultMapping> propertyMappings = resultMap.getPropertyResultMappings();
+    final int[] propertyColumns = new int[propertyMappings.size()];
+    final boolean[] propertyPrimitives = new boolean[propertyMappings.size()];
+    for (int i = 0; i < propertyColumns.length; i++) {
+      final ResultMapping propertyMapping = propertyMappings.get(i);
+      // the user added a column attribute to a nested result map, ignore it
+      final String column = propertyMapping.getNestedResultMapId() != null ? null
+          : prependPrefix(propertyMapping.getColumn(), columnPrefix);
+      if (column != null && mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH))) {
+        propertyColumns[i] = rsw.getColumnIndex(column);
+      }
+      final String property = propertyMapping.getProperty();
+      propertyPrimitives[i] = property != null && metaType.hasSetter(property)
+          && metaType.getSetterType(property).isPrimitive();
+    }
+    return new ColumnPlan(rsw.getLayout(), propertyColumns, propertyPrimitives);
+  }
+
   private boolean shouldApplyAutomaticMappings(ResultMap resultMap, boolean isNested) {
     // 检测 <resultMap> 是否配置了 autoMapping 属性
     if (resultMap.getAutoMapping() != null) {
@@ -512,8 +786,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
 
   private boolean applyPropertyMappings(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, ResultLoaderMap lazyLoader, String columnPrefix)
       throws SQLException {
-    // 获取已映射的列名
-    final List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, columnPrefix);
+    // 获取各属性对应的列序号（未出现在结果集中的列为 0）
+    final ColumnPlan plan = getColumnPlan(rsw, resultMap, columnPrefix);
 
     boolean foundValues = false;
 
@@ -521,28 +795,24 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     final List<ResultMapping> propertyMappings = resultMap.getPropertyResultMappings();
 
 
-    for (ResultMapping propertyMapping : propertyMappings) {
-      // 拼接列名前缀，得到完整列名
-      String column = prependPrefix(propertyMapping.getColumn(), columnPrefix);
-      if (propertyMapping.getNestedResultMapId() != null) {
-        // the user added a column attribute to a nested result map, ignore it
-        column = null;
-      }
+    for (int i = 0; i < propertyMappings.size(); i++) {
+      final ResultMapping propertyMapping = propertyMappings.get(i);
+      final int columnIndex = plan.propertyColumns[i];
 
       /*
        * 下面的 if 分支由三个或条件组合而成，三个条件的含义如下：
        * 条件一：检测 column 是否为 {prop1=col1, prop2=col2} 形式，该
        * 种形式的 column 一般用于关联查询
-       * 条件二：检测当前列名是否被包含在已映射的列名集合中，
-       * 若包含则可进行数据集映射操作
+       * 条件二：检测当前列是否出现在结果集中（嵌套映射上的 column 属性被忽略），
+       * 若出现则可进行数据集映射操作
        * 条件三：多结果集相关，暂不分析
        */
       if (propertyMapping.isCompositeResult()
-          || (column != null && mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH)))
+          || columnIndex > 0
           || propertyMapping.getResultSet() != null) {
 
         // 从结果集中获取指定列的数据
-        Object value = getPropertyMappingValue(rsw.getResultSet(), metaObject, propertyMapping, lazyLoader, columnPrefix);
+        Object value = getPropertyMappingValue(rsw.getResultSet(), metaObject, propertyMapping, lazyLoader, columnPrefix, columnIndex);
         // issue #541 make property optional
         final String property = propertyMapping.getProperty();
         if (property == null) {
@@ -556,7 +826,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         if (value != null) {
           foundValues = true;
         }
-        if (value != null || (configuration.isCallSettersOnNulls() && !metaObject.getSetterType(property).isPrimitive())) {
+        if (value != null || (configuration.isCallSettersOnNulls() && !plan.propertyPrimitives[i])) {
           // gcode issue #377, call setter on nulls (value is not 'found')
 
           // 将获取到的值设置到实体类对象中
@@ -567,8 +837,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return foundValues;
   }
 
-  private Object getPropertyMappingValue(ResultSet rs, MetaObject metaResultObject, ResultMapping propertyMapping, ResultLoaderMap lazyLoader, String columnPrefix)
-      throws SQLException {
+  private Object getPropertyMappingValue(ResultSet rs, MetaObject metaResultObject, ResultMapping propertyMapping, ResultLoaderMap lazyLoader, String columnPrefix,
+      int columnIndex) throws SQLException {
     if (propertyMapping.getNestedQueryId() != null) {
       // 获取关联查询结果
       return getNestedQueryMappingValue(rs, metaResultObject, propertyMapping, lazyLoader, columnPrefix);
@@ -578,6 +848,10 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       return DEFERRED;
     } else {
       final TypeHandler<?> typeHandler = propertyMapping.getTypeHandler();
+      if (columnIndex > 0) {
+        // 按列序号取值，避免驱动按列名查找
+        return typeHandler.getResult(rs, columnIndex);
+      }
       // 拼接前缀
       final String column = prependPrefix(propertyMapping.getColumn(), columnPrefix);
       // 从 ResultSet 中获取指定列的值
@@ -592,15 +866,16 @@ public class DefaultResultSetHandler implements ResultSetHandler {
    * 4. 将下划线形式的列名转成驼峰式
    * 5. 获取属性类型
    * 6. 获取类型处理器
-   * 7. 创建 UnMappedColumnAutoMapping 实例
+   * 7. 创建 ColumnPlan.AutoMapping 实例，并缓存到 ColumnPlan 中
    */
-  private List<UnMappedColumnAutoMapping> createAutomaticMappings(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, String columnPrefix) throws SQLException {
-    final String mapKey = resultMap.getId() + ":" + columnPrefix;
-    // 从缓存中获取 UnMappedColumnAutoMapping 列表
-    List<UnMappedColumnAutoMapping> autoMapping = autoMappingsCache.get(mapKey);
-    // 缓存未命中
+  private List<ColumnPlan.AutoMapping> createAutomaticMappings(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, String columnPrefix) throws SQLException {
+    final ColumnPlan plan = getColumnPlan(rsw, resultMap, columnPrefix);
+    // 从 ColumnPlan 中获取自动映射列表
+    List<ColumnPlan.AutoMapping> autoMapping = plan.autoMappings;
+    // 尚未计算
     if (autoMapping == null) {
       autoMapping = new ArrayList<>();
+      final List<ColumnPlan.UnknownColumn> unknownColumns = new ArrayList<>();
       // 从 ResultSetWrapper 中获取未配置在 <resultMap> 中的列名
       final List<String> unmappedColumnNames = rsw.getUnmappedColumnNames(resultMap, columnPrefix);
       for (String columnName : unmappedColumnNames) {
@@ -628,9 +903,11 @@ public class DefaultResultSetHandler implements ResultSetHandler {
           if (typeHandlerRegistry.hasTypeHandler(propertyType, rsw.getJdbcType(columnName))) {
             // 获取类型处理器
             final TypeHandler<?> typeHandler = rsw.getTypeHandler(propertyType, columnName);
-            // 封装上面获取到的信息到 UnMappedColumnAutoMapping 对象中
-            autoMapping.add(new UnMappedColumnAutoMapping(columnName, property, typeHandler, propertyType.isPrimitive()));
+            // 封装上面获取到的信息到 AutoMapping 对象中
+            autoMapping.add(new ColumnPlan.AutoMapping(rsw.getColumnIndex(columnName), columnName, property, typeHandler,
+                propertyType.isPrimitive()));
           } else {
+            unknownColumns.add(new ColumnPlan.UnknownColumn(columnName, property, propertyType));
             configuration.getAutoMappingUnknownColumnBehavior()
                 .doAction(mappedStatement, columnName, property, propertyType);
           }
@@ -641,24 +918,26 @@ public class DefaultResultSetHandler implements ResultSetHandler {
           // 2. 仅打印日志
           // 3. 抛出异常
           // 默认情况下，是什么都不做
+          unknownColumns.add(new ColumnPlan.UnknownColumn(columnName, (property != null) ? property : propertyName, null));
           configuration.getAutoMappingUnknownColumnBehavior()
               .doAction(mappedStatement, columnName, (property != null) ? property : propertyName, null);
         }
       }
-      // 写入缓存
-      autoMappingsCache.put(mapKey, autoMapping);
+      // 写入缓存，unknownColumns 须先于 autoMappings 发布
+      plan.unknownColumns = unknownColumns;
+      plan.autoMappings = autoMapping;
     }
     return autoMapping;
   }
 
   private boolean applyAutomaticMappings(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, String columnPrefix) throws SQLException {
-    // 获取 UnMappedColumnAutoMapping 列表
-    List<UnMappedColumnAutoMapping> autoMapping = createAutomaticMappings(rsw, resultMap, metaObject, columnPrefix);
+    // 获取自动映射列表
+    List<ColumnPlan.AutoMapping> autoMapping = createAutomaticMappings(rsw, resultMap, metaObject, columnPrefix);
     boolean foundValues = false;
     if (!autoMapping.isEmpty()) {
       // 通过 TypeHandler 从结果集中获取指定列的数据
-      for (UnMappedColumnAutoMapping mapping : autoMapping) {
-        final Object value = mapping.typeHandler.getResult(rsw.getResultSet(), mapping.column);
+      for (ColumnPlan.AutoMapping mapping : autoMapping) {
+        final Object value = mapping.typeHandler.getResult(rsw.getResultSet(), mapping.columnIndex);
         if (value != null) {
           foundValues = true;
         }
@@ -824,7 +1103,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       Class<?> parameterType = constructor.getParameterTypes()[i];
       String columnName = rsw.getColumnNames().get(i);
       TypeHandler<?> typeHandler = rsw.getTypeHandler(parameterType, columnName);
-      Object value = typeHandler.getResult(rsw.getResultSet(), columnName);
+      Object value = typeHandler.getResult(rsw.getResultSet(), i + 1);
       constructorArgTypes.add(parameterType);
       constructorArgs.add(value);
       foundValues = value != null || foundValues;
@@ -1071,13 +1350,15 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     ResultSet resultSet = rsw.getResultSet();
     skipRows(resultSet, rowBounds);
     Object rowValue = previousRowValue;
+    final boolean ordered = isOrderedNestedResults(resultHandler, parentMapping);
     while (shouldProcessMoreRows(resultContext, rowBounds) && !resultSet.isClosed() && resultSet.next()) {
       final ResultMap discriminatedResultMap = resolveDiscriminatedResultMap(resultSet, resultMap, null);
-      final CacheKey rowKey = createRowKey(discriminatedResultMap, rsw, null);
+      final RowKey rowKey = createRowKey(discriminatedResultMap, rsw, null, null);
       Object partialObject = nestedResultObjects.get(rowKey);
       // issue #577 && #542
-      if (mappedStatement.isResultOrdered()) {
+      if (ordered) {
         if (partialObject == null && rowValue != null) {
+          // 外层对象的行键变化，上一个外层对象已经完整，交出后丢弃它的整棵子树
           nestedResultObjects.clear();
           storeObject(resultHandler, resultContext, rowValue, parentMapping, resultSet);
         }
@@ -1089,7 +1370,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         }
       }
     }
-    if (rowValue != null && mappedStatement.isResultOrdered() && shouldProcessMoreRows(resultContext, rowBounds)) {
+    if (rowValue != null && ordered && shouldProcessMoreRows(resultContext, rowBounds)) {
+      nestedResultObjects.clear();
       storeObject(resultHandler, resultContext, rowValue, parentMapping, resultSet);
       previousRowValue = null;
     } else if (rowValue != null) {
@@ -1097,11 +1379,25 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     }
   }
 
+  /**
+   * Whether the rows are grouped by root object, so that a root object can be handed out (and forgotten) as soon as
+   * its row key changes: for statements declared {@code resultOrdered}, and for the results streamed to a
+   * {@link ResultHandler} or a {@link Cursor} when {@code nestedResultStreaming} is enabled.
+   */
+  private boolean isOrderedNestedResults(ResultHandler<?> resultHandler, ResultMapping parentMapping) {
+    if (mappedStatement.isResultOrdered()) {
+      return true;
+    }
+    // DefaultResultHandler 会保留全部结果，没有必要逐个交出
+    return configuration.isNestedResultStreaming() && parentMapping == null
+        && !(resultHandler instanceof DefaultResultHandler);
+  }
+
   //
   // GET VALUE FROM ROW FOR NESTED RESULT MAP
   //
 
-  private Object getRowValue(ResultSetWrapper rsw, ResultMap resultMap, CacheKey combinedKey, String columnPrefix, Object partialObject) throws SQLException {
+  private Object getRowValue(ResultSetWrapper rsw, ResultMap resultMap, RowKey combinedKey, String columnPrefix, Object partialObject) throws SQLException {
     final String resultMapId = resultMap.getId();
     Object rowValue = partialObject;
 
@@ -1147,10 +1443,10 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         foundValues = lazyLoader.size() > 0 || foundValues;
         rowValue = foundValues || configuration.isReturnInstanceForEmptyRow() ? rowValue : null;
       }
-      if (combinedKey != CacheKey.NULL_CACHE_KEY) {
+      if (combinedKey != RowKey.NULL) {
 
         // 将外层对象记录到 nestedResultObjects 集合中，等待后续使用
-        nestedResultObjects.put(combinedKey, rowValue);
+        nestedResultObjects.put(combinedKey.materialize(), rowValue);
       }
     }
     return rowValue;
@@ -1164,7 +1460,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   // NESTED RESULT MAP (JOIN MAPPING)
   //
 
-  private boolean applyNestedResultMappings(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, String parentPrefix, CacheKey parentRowKey, boolean newObject) {
+  private boolean applyNestedResultMappings(ResultSetWrapper rsw, ResultMap resultMap, MetaObject metaObject, String parentPrefix, RowKey parentRowKey, boolean newObject) {
     boolean foundValues = false;
     for (ResultMapping resultMapping : resultMap.getPropertyResultMappings()) {
       final String nestedResultMapId = resultMapping.getNestedResultMapId();
@@ -1183,8 +1479,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
               continue;
             }
           }
-          final CacheKey rowKey = createRowKey(nestedResultMap, rsw, columnPrefix);
-          final CacheKey combinedKey = combineKeys(rowKey, parentRowKey);
+          final RowKey combinedKey = createRowKey(nestedResultMap, rsw, columnPrefix, parentRowKey);
           Object rowValue = nestedResultObjects.get(combinedKey);
           boolean knownValue = rowValue != null;
           instantiateCollectionPropertyIfAppropriate(resultMapping, metaObject); // mandatory
@@ -1245,8 +1540,15 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   // UNIQUE RESULT KEY
   //
 
-  private CacheKey createRowKey(ResultMap resultMap, ResultSetWrapper rsw, String columnPrefix) throws SQLException {
-    final CacheKey cacheKey = new CacheKey();
+  /**
+   * 创建行键，嵌套对象的行键同时引用外层对象的行键。返回的是复用的临时行键，保存前需要调用 {@link RowKey#materialize()}
+   */
+  private RowKey createRowKey(ResultMap resultMap, ResultSetWrapper rsw, String columnPrefix, RowKey parentRowKey) throws SQLException {
+    if (parentRowKey == RowKey.NULL) {
+      return RowKey.NULL;
+    }
+    final RowKey cacheKey = getScratchRowKey(parentRowKey == null ? 0 : parentRowKey.getDepth() + 1);
+    cacheKey.reset(parentRowKey);
     cacheKey.update(resultMap.getId());
     List<ResultMapping> resultMappings = getResultMappingsForRowKey(resultMap);
     if (resultMappings.isEmpty()) {
@@ -1259,23 +1561,16 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       createRowKeyForMappedProperties(resultMap, rsw, cacheKey, resultMappings, columnPrefix);
     }
     if (cacheKey.getUpdateCount() < 2) {
-      return CacheKey.NULL_CACHE_KEY;
+      return RowKey.NULL;
     }
     return cacheKey;
   }
 
-  private CacheKey combineKeys(CacheKey rowKey, CacheKey parentRowKey) {
-    if (rowKey.getUpdateCount() > 1 && parentRowKey.getUpdateCount() > 1) {
-      CacheKey combinedKey;
-      try {
-        combinedKey = rowKey.clone();
-      } catch (CloneNotSupportedException e) {
-        throw new ExecutorException("Error cloning cache key.  Cause: " + e, e);
-      }
-      combinedKey.update(parentRowKey);
-      return combinedKey;
+  private RowKey getScratchRowKey(int depth) {
+    while (scratchRowKeys.size() <= depth) {
+      scratchRowKeys.add(RowKey.scratch(scratchRowKeys.size()));
     }
-    return CacheKey.NULL_CACHE_KEY;
+    return scratchRowKeys.get(depth);
   }
 
   private List<ResultMapping> getResultMappingsForRowKey(ResultMap resultMap) {
@@ -1286,7 +1581,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return resultMappings;
   }
 
-  private void createRowKeyForMappedProperties(ResultMap resultMap, ResultSetWrapper rsw, CacheKey cacheKey, List<ResultMapping> resultMappings, String columnPrefix) throws SQLException {
+  private void createRowKeyForMappedProperties(ResultMap resultMap, ResultSetWrapper rsw, RowKey cacheKey, List<ResultMapping> resultMappings, String columnPrefix) throws SQLException {
     for (ResultMapping resultMapping : resultMappings) {
       if (resultMapping.getNestedResultMapId() != null && resultMapping.getResultSet() == null) {
         // Issue #392
@@ -1309,7 +1604,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     }
   }
 
-  private void createRowKeyForUnmappedProperties(ResultMap resultMap, ResultSetWrapper rsw, CacheKey cacheKey, String columnPrefix) throws SQLException {
+  private void createRowKeyForUnmappedProperties(ResultMap resultMap, ResultSetWrapper rsw, RowKey cacheKey, String columnPrefix) throws SQLException {
     final MetaClass metaType = MetaClass.forClass(resultMap.getType(), reflectorFactory);
     List<String> unmappedColumnNames = rsw.getUnmappedColumnNames(resultMap, columnPrefix);
     for (String column : unmappedColumnNames) {
@@ -1332,7 +1627,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     }
   }
 
-  private void createRowKeyForMap(ResultSetWrapper rsw, CacheKey cacheKey) throws SQLException {
+  private void createRowKeyForMap(ResultSetWrapper rsw, RowKey cacheKey) throws SQLException {
     List<String> columnNames = rsw.getColumnNames();
     for (String columnName : columnNames) {
       final String value = rsw.getResultSet().getString(columnName);
@@ -42,9 +42,11 @@ public class ResultSetWrapper {
 
   private final ResultSet resultSet;
   private final TypeHandlerRegistry typeHandlerRegistry;
-  private final List<String> columnNames = new ArrayList<>();
-  private final List<String> classNames = new ArrayList<>();
-  private final List<JdbcType> jdbcTypes = new ArrayList<>();
+  private final List<String> columnNames;
+  private final List<String> classNames;
+  private final List<JdbcType> jdbcTypes;
+  private final Map<String, Integer> columnIndexes;
+  private final String layout;
   private final Map<String, Map<Class<?>, TypeHandler<?>>> typeHandlerMap = new HashMap<>();
   private final Map<String, List<String>> mappedColumnNamesMap = new HashMap<>();
   private final Map<String, List<String>> unMappedColumnNamesMap = new HashMap<>();
@@ -53,13 +55,41 @@ public class ResultSetWrapper {
     super();
     this.typeHandlerRegistry = configuration.getTypeHandlerRegistry();
     this.resultSet = rs;
+    this.columnNames = new ArrayList<>();
+    this.classNames = new ArrayList<>();
+    this.jdbcTypes = new ArrayList<>();
+    this.columnIndexes = new HashMap<>();
     final ResultSetMetaData metaData = rs.getMetaData();
     final int columnCount = metaData.getColumnCount();
+    final StringBuilder layout = new StringBuilder();
     for (int i = 1; i <= columnCount; i++) {
-      columnNames.add(configuration.isUseColumnLabel() ? metaData.getColumnLabel(i) : metaData.getColumnName(i));
-      jdbcTypes.add(JdbcType.forCode(metaData.getColumnType(i)));
-      classNames.add(metaData.getColumnClassName(i));
+      final String columnName = configuration.isUseColumnLabel() ? metaData.getColumnLabel(i) : metaData.getColumnName(i);
+      final int columnType = metaData.getColumnType(i);
+      final String className = metaData.getColumnClassName(i);
+      columnNames.add(columnName);
+      jdbcTypes.add(JdbcType.forCode(columnType));
+      classNames.add(className);
+      // 与 JDBC 按名称取值一致：不区分大小写，重名时取第一列
+      if (columnName != null) {
+        columnIndexes.putIfAbsent(columnName.toUpperCase(Locale.ENGLISH), i);
+      }
+      layout.append(columnName).append(':').append(columnType).append(':').append(className).append(',');
     }
+    this.layout = layout.toString();
+  }
+
+  /**
+   * Wraps a result set with the same columns as {@code source}, e.g. a {@link BufferedRowResultSet} holding rows read
+   * from it. The column information is shared, the caches are not.
+   */
+  ResultSetWrapper(ResultSetWrapper source, ResultSet rs) {
+    this.typeHandlerRegistry = source.typeHandlerRegistry;
+    this.resultSet = rs;
+    this.columnNames = source.columnNames;
+    this.classNames = source.classNames;
+    this.jdbcTypes = source.jdbcTypes;
+    this.columnIndexes = source.columnIndexes;
+    this.layout = source.layout;
   }
 
   public ResultSet getResultSet() {
@@ -79,12 +109,26 @@ public class ResultSetWrapper {
   }
 
   public JdbcType getJdbcType(String columnName) {
-    for (int i = 0 ; i < columnNames.size(); i++) {
-      if (columnNames.get(i).equalsIgnoreCase(columnName)) {
-        return jdbcTypes.get(i);
-      }
-    }
-    return null;
+    final int columnIndex = getColumnIndex(columnName);
+    return columnIndex == 0 ? null : jdbcTypes.get(columnIndex - 1);
+  }
+
+  /**
+   * @param columnName the column name, not case sensitive
+   * @return the index of the first column with this name, starting at 1, or 0 if there is none
+   * @since 3.5.3
+   */
+  public int getColumnIndex(String columnName) {
+    final Integer columnIndex = columnIndexes.get(columnName.toUpperCase(Locale.ENGLISH));
+    return columnIndex == null ? 0 : columnIndex;
+  }
+
+  /**
+   * @return the names and types of the columns, equal for result sets with the same columns
+   * @since 3.5.3
+   */
+  public String getLayout() {
+    return layout;
   }
 
   /**
@@ -111,8 +155,8 @@ public class ResultSetWrapper {
       // Replicate logic of UnknownTypeHandler#resolveTypeHandler
       // See issue #59 comment 10
       if (handler == null || handler instanceof UnknownTypeHandler) {
-        final int index = columnNames.indexOf(columnName);
-        final Class<?> javaType = resolveClass(classNames.get(index));
+        final int index = getColumnIndex(columnName);
+        final Class<?> javaType = index == 0 ? null : resolveClass(classNames.get(index - 1));
         if (javaType != null && jdbcType != null) {
           handler = typeHandlerRegistry.getTypeHandler(javaType, jdbcType);
         } else if (javaType != null) {
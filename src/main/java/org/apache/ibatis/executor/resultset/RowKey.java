@@ -0,0 +1,155 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+import org.apache.ibatis.reflection.ArrayUtil;
+
+/**
+ * Identity of an object built from a row by a nested result map, used by {@link DefaultResultSetHandler} in place of a
+ * {@link org.apache.ibatis.cache.CacheKey}.
+ * <p>
+ * The values (result map id, then column names and values) are kept in a flat array and the key of a nested object
+ * points to the key of its parent instead of copying it, which is what
+ * {@link org.apache.ibatis.cache.CacheKey#update(Object)} with the parent key amounts to. Two keys are equal when they
+ * have the same values (compared with {@link ArrayUtil#equals(Object, Object)}) and equal parents.
+ * <p>
+ * The keys of a row are first built in scratch keys, one per nesting level, that are reused for every row: looking up
+ * an object that is already known does not allocate anything. A scratch key must be {@link #materialize() materialized}
+ * before being stored.
+ *
+ * @since 3.5.3
+ */
+final class RowKey {
+
+  /**
+   * The key of the rows that do not identify an object (no value), never stored.
+   */
+  static final RowKey NULL = new RowKey(-1, false);
+
+  private static final int DEFAULT_HASHCODE = 17;
+  private static final int DEFAULT_MULTIPLIER = 37;
+  private static final Object[] EMPTY = new Object[0];
+
+  private final int depth;
+  private final boolean scratch;
+  private Object[] values = EMPTY;
+  private int size;
+  private int hashcode = DEFAULT_HASHCODE;
+  private RowKey parent;
+  private RowKey materialized;
+
+  private RowKey(int depth, boolean scratch) {
+    this.depth = depth;
+    this.scratch = scratch;
+  }
+
+  /**
+   * @param depth nesting level (0 for the root result map)
+   * @return a new scratch key
+   */
+  static RowKey scratch(int depth) {
+    RowKey key = new RowKey(depth, true);
+    key.values = new Object[8];
+    return key;
+  }
+
+  int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Empties this scratch key, for the row key of an object nested in {@code parent} (null for a root object).
+   */
+  void reset(RowKey parent) {
+    Arrays.fill(values, 0, size, null);
+    size = 0;
+    hashcode = DEFAULT_HASHCODE;
+    this.parent = parent;
+    materialized = null;
+  }
+
+  void update(Object object) {
+    if (size == values.length) {
+      values = Arrays.copyOf(values, size * 2);
+    }
+    values[size++] = object;
+    hashcode = DEFAULT_MULTIPLIER * hashcode + (object == null ? 1 : ArrayUtil.hashCode(object));
+  }
+
+  int getUpdateCount() {
+    return size;
+  }
+
+  /**
+   * @return this key if it is not a scratch key, otherwise an immutable copy of it (and of its parents), the same
+   *         one until the scratch key is reset
+   */
+  RowKey materialize() {
+    if (!scratch) {
+      return this;
+    }
+    if (materialized == null) {
+      RowKey key = new RowKey(depth, false);
+      key.values = Arrays.copyOf(values, size);
+      key.size = size;
+      key.hashcode = hashcode;
+      key.parent = parent == null ? null : parent.materialize();
+      materialized = key;
+    }
+    return materialized;
+  }
+
+  @Override
+  public int hashCode() {
+    return parent == null ? hashcode : DEFAULT_MULTIPLIER * hashcode + parent.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) {
+      return true;
+    }
+    if (!(object instanceof RowKey)) {
+      return false;
+    }
+    final RowKey rowKey = (RowKey) object;
+    if (size != rowKey.size || hashcode != rowKey.hashcode) {
+      return false;
+    }
+    for (int i = 0; i < size; i++) {
+      if (!ArrayUtil.equals(values[i], rowKey.values[i])) {
+        return false;
+      }
+    }
+    return parent == null ? rowKey.parent == null : parent.equals(rowKey.parent);
+  }
+
+  @Override
+  public String toString() {
+    StringJoiner returnValue = new StringJoiner(":");
+    for (int i = 0; i < size; i++) {
+      returnValue.add(ArrayUtil.toString(values[i]));
+    }
+    if (parent != null) {
+      returnValue.add("[" + parent + "]");
+    }
+    return returnValue.toString();
+  }
+
+}
@@ -0,0 +1,330 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.reflection.property.PropertyNamer;
+import org.apache.ibatis.type.BigDecimalTypeHandler;
+import org.apache.ibatis.type.BooleanTypeHandler;
+import org.apache.ibatis.type.ByteTypeHandler;
+import org.apache.ibatis.type.DoubleTypeHandler;
+import org.apache.ibatis.type.FloatTypeHandler;
+import org.apache.ibatis.type.IntegerTypeHandler;
+import org.apache.ibatis.type.LongTypeHandler;
+import org.apache.ibatis.type.ShortTypeHandler;
+import org.apache.ibatis.type.StringTypeHandler;
+import org.apache.ibatis.type.TypeHandler;
+import org.apache.ibatis.type.TypeReference;
+
+/**
+ * Generates a {@link CompiledRowMapper} class per result type and column layout with Javassist.
+ * <p>
+ * The generated code does what {@link DefaultResultSetHandler} does for a simple result map through
+ * {@link org.apache.ibatis.reflection.MetaObject}: it creates the result object with its default constructor and, for
+ * each mapped column, reads the value and calls the setter when the value is not null (or when
+ * {@code callSettersOnNulls} asks for it). The built-in type handlers of the primitive wrappers, {@code String} and
+ * {@code BigDecimal} are inlined as typed {@code ResultSet} getters by index; the other handlers are called by index.
+ * <p>
+ * The generated classes are shared by all the statements with the same layout. When a layout cannot be compiled
+ * (non public type or setter, a setter that does not accept the type handler's type, Javassist missing...), this is
+ * remembered and {@link #compile} returns null so that the caller keeps the reflective mapping.
+ *
+ * @since 3.5.3
+ */
+public class RowMapperCompiler {
+
+  private static final Log log = LogFactory.getLog(RowMapperCompiler.class);
+
+  private static final AtomicInteger classCounter = new AtomicInteger();
+
+  private static final Map<Class<?>, Inline> inlines = new HashMap<>();
+
+  static {
+    inlines.put(StringTypeHandler.class, new Inline("getString", String.class, null));
+    inlines.put(BigDecimalTypeHandler.class, new Inline("getBigDecimal", java.math.BigDecimal.class, null));
+    inlines.put(IntegerTypeHandler.class, new Inline("getInt", int.class, Integer.class));
+    inlines.put(LongTypeHandler.class, new Inline("getLong", long.class, Long.class));
+    inlines.put(ShortTypeHandler.class, new Inline("getShort", short.class, Short.class));
+    inlines.put(ByteTypeHandler.class, new Inline("getByte", byte.class, Byte.class));
+    inlines.put(DoubleTypeHandler.class, new Inline("getDouble", double.class, Double.class));
+    inlines.put(FloatTypeHandler.class, new Inline("getFloat", float.class, Float.class));
+    inlines.put(BooleanTypeHandler.class, new Inline("getBoolean", boolean.class, Boolean.class));
+  }
+
+  private final Map<Class<?>, Map<String, Optional<Constructor<?>>>> mapperClasses = new ConcurrentHashMap<>();
+
+  /**
+   * @param type the result type
+   * @param mappings the columns to map, in the order the setters must be called
+   * @param callSettersOnNulls the {@code callSettersOnNulls} setting
+   * @param returnInstanceForEmptyRow the {@code returnInstanceForEmptyRow} setting
+   * @return a new mapper, or null if this layout cannot be compiled
+   */
+  public CompiledRowMapper compile(Class<?> type, List<Mapping> mappings, boolean callSettersOnNulls,
+      boolean returnInstanceForEmptyRow) {
+    StringBuilder signature = new StringBuilder();
+    signature.append(callSettersOnNulls).append(',').append(returnInstanceForEmptyRow);
+    TypeHandler<?>[] typeHandlers = new TypeHandler<?>[mappings.size()];
+    for (int i = 0; i < typeHandlers.length; i++) {
+      Mapping mapping = mappings.get(i);
+      typeHandlers[i] = mapping.typeHandler;
+      signature.append(';').append(mapping.columnIndex).append(':').append(mapping.property).append(':')
+          .append(mapping.setterType.getName()).append(':').append(mapping.typeHandler.getClass().getName());
+    }
+    Optional<Constructor<?>> constructor = mapperClasses.computeIfAbsent(type, k -> new ConcurrentHashMap<>())
+        .computeIfAbsent(signature.toString(), k -> Optional.ofNullable(generate(type, mappings, callSettersOnNulls,
+            returnInstanceForEmptyRow)));
+    if (!constructor.isPresent()) {
+      return null;
+    }
+    try {
+      return (CompiledRowMapper) constructor.get().newInstance((Object) typeHandlers);
+    } catch (ReflectiveOperationException e) {
+      throw new ExecutorException("Error creating the row mapper of " + type + ".  Cause: " + e, e);
+    }
+  }
+
+  private Constructor<?> generate(Class<?> type, List<Mapping> mappings, boolean callSettersOnNulls,
+      boolean returnInstanceForEmptyRow) {
+    try {
+      String source = mapMethodSource(type, mappings, callSettersOnNulls, returnInstanceForEmptyRow);
+      if (source == null) {
+        return null;
+      }
+      ClassLoader parent = type.getClassLoader() != null
+          ? type.getClassLoader() : RowMapperCompiler.class.getClassLoader();
+      MapperClassLoader loader = new MapperClassLoader(parent);
+      String className = CompiledRowMapper.class.getName() + "$$" + classCounter.incrementAndGet();
+
+      ClassPool pool = new ClassPool(true);
+      pool.appendClassPath(new LoaderClassPath(parent));
+      pool.appendClassPath(new ClassClassPath(CompiledRowMapper.class));
+      CtClass ctClass = pool.makeClass(className, pool.get(CompiledRowMapper.class.getName()));
+      ctClass.addConstructor(CtNewConstructor.make("public " + ctClass.getSimpleName()
+          + "(org.apache.ibatis.type.TypeHandler[] typeHandlers) { super(typeHandlers); }", ctClass));
+      ctClass.addMethod(CtNewMethod.make(source, ctClass));
+      byte[] bytecode = ctClass.toBytecode();
+      ctClass.detach();
+
+      Class<?> mapperClass = loader.define(className, bytecode);
+      if (!CompiledRowMapper.class.isAssignableFrom(mapperClass)) {
+        // 结果类型的 ClassLoader 加载了另一份 MyBatis
+        return null;
+      }
+      return mapperClass.getConstructor(TypeHandler[].class);
+    } catch (Throwable t) {
+      if (log.isDebugEnabled()) {
+        log.debug("Could not compile a row mapper for " + type + ", the reflective mapping is used.  Cause: " + t);
+      }
+      return null;
+    }
+  }
+
+  private String mapMethodSource(Class<?> type, List<Mapping> mappings, boolean callSettersOnNulls,
+      boolean returnInstanceForEmptyRow) throws NoSuchMethodException {
+    if (!Modifier.isPublic(type.getModifiers()) || Modifier.isAbstract(type.getModifiers())
+        || (type.isMemberClass() && !Modifier.isStatic(type.getModifiers()))
+        || Map.class.isAssignableFrom(type) || Collection.class.isAssignableFrom(type)) {
+      return null;
+    }
+    type.getConstructor();
+    StringBuilder code = new StringBuilder();
+    code.append("public java.lang.Object map(java.sql.ResultSet rs) throws java.sql.SQLException {\n");
+    code.append(sourceName(type)).append(" obj = new ").append(sourceName(type)).append("();\n");
+    code.append("boolean found = false;\n");
+    for (int i = 0; i < mappings.size(); i++) {
+      Mapping mapping = mappings.get(i);
+      Method setter = findSetter(type, mapping.property, mapping.setterType);
+      if (setter == null) {
+        return null;
+      }
+      Class<?> parameterType = setter.getParameterTypes()[0];
+      Class<?> boxedType = box(parameterType);
+      Inline inline = inlines.get(mapping.typeHandler.getClass());
+      Class<?> valueType = inline != null ? box(inline.type) : rawType(mapping.typeHandler);
+      if (!isPublic(parameterType) || valueType != Object.class && !boxedType.isAssignableFrom(valueType)) {
+        return null;
+      }
+      String set = "obj." + setter.getName() + "(";
+      String onNull = callSettersOnNulls && !parameterType.isPrimitive()
+          ? set + "(" + sourceName(parameterType) + ") null);" : "";
+      code.append("{\n");
+      if (inline != null && inline.type.isPrimitive()) {
+        String value = parameterType.isPrimitive() ? "v"
+            : "(" + sourceName(parameterType) + ") " + inline.box.getName() + ".valueOf(v)";
+        String notNull = inline.type == boolean.class ? "v || !rs.wasNull()" : "v != 0 || !rs.wasNull()";
+        code.append(inline.type.getName()).append(" v = ").append(inline.type == boolean.class ? "false" : "0")
+            .append(";\nboolean present = false;\n");
+        code.append("try { v = rs.").append(inline.getter).append('(').append(mapping.columnIndex)
+            .append("); present = ").append(notNull).append("; }");
+        appendColumnError(code, mapping.columnIndex);
+        code.append("if (present) { found = true; ").append(set).append(value).append("); }");
+      } else {
+        String value;
+        if (inline != null) {
+          code.append(inline.type.getName()).append(" v = null;\n");
+          code.append("try { v = rs.").append(inline.getter).append('(').append(mapping.columnIndex).append("); }");
+          appendColumnError(code, mapping.columnIndex);
+          value = "(" + sourceName(parameterType) + ") v";
+        } else {
+          code.append("java.lang.Object v = typeHandlers[").append(i).append("].getResult(rs, ")
+              .append(mapping.columnIndex).append(");\n");
+          value = parameterType.isPrimitive()
+              ? "((" + boxedType.getName() + ") v)." + parameterType.getName() + "Value()"
+              : "(" + sourceName(parameterType) + ") v";
+        }
+        code.append("if (v != null) { found = true; ").append(set).append(value).append("); }");
+      }
+      code.append(" else { ").append(onNull).append(" }\n}\n");
+    }
+    code.append(returnInstanceForEmptyRow ? "return obj;\n" : "return found ? (java.lang.Object) obj : null;\n");
+    code.append("}");
+    return code.toString();
+  }
+
+  /**
+   * 内联的取值方法与 BaseTypeHandler 一样，将异常包装为带列序号的 ResultMapException
+   */
+  private static void appendColumnError(StringBuilder code, int columnIndex) {
+    code.append(" catch (java.lang.Exception e) { throw columnError(").append(columnIndex).append(", e); }\n");
+  }
+
+  private static Method findSetter(Class<?> type, String property, Class<?> setterType) {
+    Method candidate = null;
+    for (Method method : type.getMethods()) {
+      if (method.getParameterTypes().length != 1 || method.isBridge() || Modifier.isStatic(method.getModifiers())
+          || !PropertyNamer.isSetter(method.getName())
+          || !property.equals(PropertyNamer.methodToProperty(method.getName()))) {
+        continue;
+      }
+      Class<?> parameterType = method.getParameterTypes()[0];
+      if (parameterType == setterType) {
+        return method;
+      }
+      if (parameterType.isAssignableFrom(setterType)) {
+        candidate = method;
+      }
+    }
+    return candidate;
+  }
+
+  private static boolean isPublic(Class<?> type) {
+    Class<?> elementType = type;
+    while (elementType.isArray()) {
+      elementType = elementType.getComponentType();
+    }
+    return elementType.isPrimitive() || Modifier.isPublic(elementType.getModifiers());
+  }
+
+  private static Class<?> rawType(TypeHandler<?> typeHandler) {
+    if (typeHandler instanceof TypeReference) {
+      Type rawType = ((TypeReference<?>) typeHandler).getRawType();
+      if (rawType instanceof Class) {
+        return box((Class<?>) rawType);
+      }
+    }
+    return Object.class;
+  }
+
+  private static Class<?> box(Class<?> type) {
+    if (!type.isPrimitive()) {
+      return type;
+    }
+    for (Inline inline : inlines.values()) {
+      if (inline.type == type) {
+        return inline.box;
+      }
+    }
+    return type == char.class ? Character.class : Void.class;
+  }
+
+  private static String sourceName(Class<?> type) {
+    return type.isArray() ? sourceName(type.getComponentType()) + "[]" : type.getName();
+  }
+
+  public static class Mapping {
+    private final int columnIndex;
+    private final String property;
+    private final Class<?> setterType;
+    private final TypeHandler<?> typeHandler;
+
+    /**
+     * @param columnIndex the index of the column, starting at 1
+     * @param property the property to set
+     * @param setterType the type of the property, as resolved by the {@link org.apache.ibatis.reflection.Reflector}
+     * @param typeHandler the type handler reading the column
+     */
+    public Mapping(int columnIndex, String property, Class<?> setterType, TypeHandler<?> typeHandler) {
+      this.columnIndex = columnIndex;
+      this.property = property;
+      this.setterType = setterType;
+      this.typeHandler = typeHandler;
+    }
+  }
+
+  private static final class Inline {
+    final String getter;
+    final Class<?> type;
+    final Class<?> box;
+
+    Inline(String getter, Class<?> type, Class<?> box) {
+      this.getter = getter;
+      this.type = type;
+      this.box = box;
+    }
+  }
+
+  /**
+   * Loads the generated class next to the result type, and falls back to the MyBatis classes it extends.
+   */
+  private static final class MapperClassLoader extends ClassLoader {
+
+    MapperClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      return RowMapperCompiler.class.getClassLoader().loadClass(name);
+    }
+
+    Class<?> define(String name, byte[] bytecode) {
+      return defineClass(name, bytecode, 0, bytecode.length);
+    }
+  }
+
+}
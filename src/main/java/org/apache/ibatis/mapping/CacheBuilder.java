@@ -29,7 +29,9 @@ import org.apache.ibatis.cache.decorators.LoggingCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.ScheduledCache;
 import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.decorators.SingleFlightCache;
 import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
@@ -46,6 +48,7 @@ public class CacheBuilder {
   private boolean readWrite;
   private Properties properties;
   private boolean blocking;
+  private boolean singleFlight;
 
   public CacheBuilder(String id) {
     this.id = id;
@@ -84,6 +87,14 @@ public class CacheBuilder {
     return this;
   }
 
+  /**
+   * @since 3.5.3
+   */
+  public CacheBuilder singleFlight(boolean singleFlight) {
+    this.singleFlight = singleFlight;
+    return this;
+  }
+
   public CacheBuilder properties(Properties properties) {
     this.properties = properties;
     return this;
@@ -136,6 +147,8 @@ public class CacheBuilder {
     try {
       // 创建“元信息”对象
       MetaObject metaCache = SystemMetaObject.forObject(cache);
+      // 自身线程安全的淘汰策略无需再用 SynchronizedCache 串行化所有访问
+      boolean threadSafe = cache instanceof TinyLfuCache;
       if (size != null && metaCache.hasSetter("size")) {
         // 设置 size 属性
         metaCache.setValue("size", size);
@@ -148,6 +161,8 @@ public class CacheBuilder {
       if (readWrite) {
         // readWrite 为 true，应用 SerializedCache 装饰器
         cache = new SerializedCache(cache);
+        // 应用 codec 等序列化相关配置
+        setCacheProperties(cache);
       }
 
       /*
@@ -155,9 +170,15 @@ public class CacheBuilder {
        * 使原缓存具备打印日志和线程同步的能力
        */
       cache = new LoggingCache(cache);
-      cache = new SynchronizedCache(cache);
+      if (!threadSafe) {
+        cache = new SynchronizedCache(cache);
+      }
 
-      if (blocking) {
+      if (singleFlight) {
+        // singleFlight 为 true，应用 SingleFlightCache 装饰器，优先于 blocking
+        cache = new SingleFlightCache(cache);
+        setCacheProperties(cache);
+      } else if (blocking) {
         // blocking 为 true，应用 BlockingCache 装饰器
         cache = new BlockingCache(cache);
       }
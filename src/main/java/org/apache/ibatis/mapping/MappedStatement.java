@@ -18,11 +18,14 @@ package org.apache.ibatis.mapping;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.executor.resultset.ColumnPlan;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.scripting.LanguageDriver;
@@ -47,6 +50,8 @@ public final class MappedStatement {
   private boolean flushCacheRequired;
   private boolean useCache;
   private boolean resultOrdered;
+  private boolean parallelMapping;
+  private boolean cursorPrefetch;
   private SqlCommandType sqlCommandType;
   private KeyGenerator keyGenerator;
   private String[] keyProperties;
@@ -56,6 +61,7 @@ public final class MappedStatement {
   private Log statementLog;
   private LanguageDriver lang;
   private String[] resultSets;
+  private final Map<String, ColumnPlan> columnPlans = new ConcurrentHashMap<>();
 
   MappedStatement() {
     // constructor disabled
@@ -144,6 +150,22 @@ public final class MappedStatement {
       return this;
     }
 
+    /**
+     * @since 3.5.3
+     */
+    public Builder parallelMapping(boolean parallelMapping) {
+      mappedStatement.parallelMapping = parallelMapping;
+      return this;
+    }
+
+    /**
+     * @since 3.5.3
+     */
+    public Builder cursorPrefetch(boolean cursorPrefetch) {
+      mappedStatement.cursorPrefetch = cursorPrefetch;
+      return this;
+    }
+
     public Builder keyGenerator(KeyGenerator keyGenerator) {
       mappedStatement.keyGenerator = keyGenerator;
       return this;
@@ -261,6 +283,24 @@ public final class MappedStatement {
     return resultOrdered;
   }
 
+  /**
+   * @return whether the rows of a simple result map are mapped to objects by a pool of threads, while the calling
+   *         thread reads the result set
+   * @since 3.5.3
+   */
+  public boolean isParallelMapping() {
+    return parallelMapping;
+  }
+
+  /**
+   * @return whether the items of a cursor are read ahead on another thread, which then uses the connection of the
+   *         session until the cursor is consumed or closed
+   * @since 3.5.3
+   */
+  public boolean isCursorPrefetch() {
+    return cursorPrefetch;
+  }
+
   public String getDatabaseId() {
     return databaseId;
   }
@@ -293,6 +333,14 @@ public final class MappedStatement {
     return resultSets;
   }
 
+  /**
+   * @return the column plans of the result sets already mapped, keyed by result map, column prefix and column layout
+   * @since 3.5.3
+   */
+  public Map<String, ColumnPlan> getColumnPlans() {
+    return columnPlans;
+  }
+
   public BoundSql getBoundSql(Object parameterObject) {
     // 调用 sqlSource 的 getBoundSql 获取 BoundSql
     BoundSql boundSql = sqlSource.getBoundSql(parameterObject);
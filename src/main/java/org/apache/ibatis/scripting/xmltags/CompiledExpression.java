@@ -0,0 +1,415 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.scripting.xmltags;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import ognl.OgnlOps;
+
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+
+/**
+ * An OGNL expression of the subset commonly used in dynamic SQL, evaluated without the OGNL interpreter.
+ * <p>
+ * The subset is made of property paths ({@code user.name}), the {@code size()}, {@code isEmpty()} and
+ * {@code length()} methods, {@code null}, boolean, integer, character and string literals, the comparison operators
+ * ({@code == != < > <= >=} and {@code eq neq lt gt lte gte}), the boolean operators ({@code and or not && || !}) and
+ * parentheses. The properties are read like OGNL reads them (from the bindings of a {@link DynamicContext}, from maps
+ * or through the getters found by the {@link Reflector}), and the operators are those of {@link OgnlOps}, so that the
+ * result is the same.
+ * <p>
+ * {@link #compile(String)} returns null for the other expressions. When the evaluation meets a case that is not
+ * handled (e.g. a property of a null object, or of a type with specific OGNL accessors), {@link #getValue(Object)}
+ * throws {@link #FALLBACK} and the expression must be evaluated by OGNL.
+ *
+ * @since 3.5.3
+ */
+final class CompiledExpression {
+
+  /**
+   * Thrown (without stack trace) when an expression must be evaluated by OGNL.
+   */
+  static final RuntimeException FALLBACK = new RuntimeException("Evaluate with OGNL", null, false, false) {
+    private static final long serialVersionUID = 1L;
+  };
+
+  private static final ReflectorFactory REFLECTOR_FACTORY = new DefaultReflectorFactory();
+  private static final Set<String> UNSUPPORTED_KEYWORDS = new HashSet<>(Arrays.asList(
+      "in", "instanceof", "new", "shl", "shr", "ushr", "band", "bor", "xor"));
+
+  private final Node root;
+
+  private CompiledExpression(Node root) {
+    this.root = root;
+  }
+
+  /**
+   * @return the compiled expression, or null when the expression is not in the supported subset
+   */
+  static CompiledExpression compile(String expression) {
+    Parser parser = new Parser(expression);
+    Node node = parser.parseOr();
+    if (node == null || parser.peek() != null) {
+      return null;
+    }
+    return new CompiledExpression(node);
+  }
+
+  /**
+   * @throws RuntimeException {@link #FALLBACK} when the expression must be evaluated by OGNL
+   */
+  Object getValue(Object root) {
+    try {
+      return this.root.getValue(root);
+    } catch (Exception e) {
+      // OGNL 会重新求值，给出它自己的结果或异常
+      throw FALLBACK;
+    }
+  }
+
+  @FunctionalInterface
+  private interface Node {
+    Object getValue(Object root) throws Exception;
+  }
+
+  static Object getProperty(Object target, String name) throws Exception {
+    if (target == null) {
+      throw FALLBACK;
+    }
+    if (target instanceof DynamicContext.ContextMap) {
+      return DynamicContext.ContextAccessor.getValue((Map) target, name);
+    }
+    if (target instanceof Map) {
+      // 与 ognl.MapPropertyAccessor 一致
+      Map<?, ?> map = (Map<?, ?>) target;
+      switch (name) {
+        case "size":
+          return map.size();
+        case "keys":
+        case "keySet":
+          return map.keySet();
+        case "values":
+          return map.values();
+        case "isEmpty":
+          return map.isEmpty() ? Boolean.TRUE : Boolean.FALSE;
+        default:
+          return map.get(name);
+      }
+    }
+    if (target instanceof Collection || target instanceof Iterator || target instanceof Enumeration
+        || target instanceof Class || target.getClass().isArray()) {
+      // OGNL 对这些类型有专门的属性访问器
+      throw FALLBACK;
+    }
+    Reflector reflector = REFLECTOR_FACTORY.findForClass(target.getClass());
+    if (!reflector.hasGetter(name)) {
+      throw FALLBACK;
+    }
+    return reflector.getGetInvoker(name).invoke(target, null);
+  }
+
+  static Object invokeMethod(Object target, String name) {
+    if ("size".equals(name)) {
+      if (target instanceof Collection) {
+        return ((Collection<?>) target).size();
+      } else if (target instanceof Map) {
+        return ((Map<?, ?>) target).size();
+      }
+    } else if ("isEmpty".equals(name)) {
+      if (target instanceof Collection) {
+        return ((Collection<?>) target).isEmpty();
+      } else if (target instanceof Map) {
+        return ((Map<?, ?>) target).isEmpty();
+      } else if (target instanceof String) {
+        return ((String) target).isEmpty();
+      }
+    } else if ("length".equals(name) && target instanceof CharSequence) {
+      return ((CharSequence) target).length();
+    }
+    throw FALLBACK;
+  }
+
+  private static final class Parser {
+
+    private final String expression;
+    private int position;
+    private String token;
+    private Object literal;
+    private boolean invalid;
+
+    Parser(String expression) {
+      this.expression = expression;
+      next();
+    }
+
+    String peek() {
+      return token;
+    }
+
+    Node parseOr() {
+      Node left = parseAnd();
+      while (left != null && ("or".equals(token) || "||".equals(token))) {
+        next();
+        Node l = left;
+        Node r = parseAnd();
+        if (r == null) {
+          return null;
+        }
+        // 与 ognl.ASTOr 一致，返回最后求值的操作数
+        left = root -> {
+          Object value = l.getValue(root);
+          return OgnlOps.booleanValue(value) ? value : r.getValue(root);
+        };
+      }
+      return left;
+    }
+
+    private Node parseAnd() {
+      Node left = parseEquality();
+      while (left != null && ("and".equals(token) || "&&".equals(token))) {
+        next();
+        Node l = left;
+        Node r = parseEquality();
+        if (r == null) {
+          return null;
+        }
+        left = root -> {
+          Object value = l.getValue(root);
+          return OgnlOps.booleanValue(value) ? r.getValue(root) : value;
+        };
+      }
+      return left;
+    }
+
+    private Node parseEquality() {
+      Node left = parseRelational();
+      while (left != null) {
+        boolean equal;
+        if ("==".equals(token) || "eq".equals(token)) {
+          equal = true;
+        } else if ("!=".equals(token) || "neq".equals(token)) {
+          equal = false;
+        } else {
+          break;
+        }
+        next();
+        Node l = left;
+        Node r = parseRelational();
+        if (r == null) {
+          return null;
+        }
+        left = root -> OgnlOps.equal(l.getValue(root), r.getValue(root)) == equal ? Boolean.TRUE : Boolean.FALSE;
+      }
+      return left;
+    }
+
+    private Node parseRelational() {
+      Node left = parseUnary();
+      while (left != null) {
+        String operator = token;
+        if (!"<".equals(operator) && !"lt".equals(operator) && !">".equals(operator) && !"gt".equals(operator)
+            && !"<=".equals(operator) && !"lte".equals(operator) && !">=".equals(operator) && !"gte".equals(operator)) {
+          break;
+        }
+        next();
+        Node l = left;
+        Node r = parseUnary();
+        if (r == null) {
+          return null;
+        }
+        switch (operator) {
+          case "<":
+          case "lt":
+            left = root -> OgnlOps.less(l.getValue(root), r.getValue(root)) ? Boolean.TRUE : Boolean.FALSE;
+            break;
+          case ">":
+          case "gt":
+            left = root -> OgnlOps.greater(l.getValue(root), r.getValue(root)) ? Boolean.TRUE : Boolean.FALSE;
+            break;
+          case "<=":
+          case "lte":
+            left = root -> OgnlOps.greater(l.getValue(root), r.getValue(root)) ? Boolean.FALSE : Boolean.TRUE;
+            break;
+          default:
+            left = root -> OgnlOps.less(l.getValue(root), r.getValue(root)) ? Boolean.FALSE : Boolean.TRUE;
+            break;
+        }
+      }
+      return left;
+    }
+
+    private Node parseUnary() {
+      if ("!".equals(token) || "not".equals(token)) {
+        next();
+        Node operand = parseUnary();
+        if (operand == null) {
+          return null;
+        }
+        return root -> OgnlOps.booleanValue(operand.getValue(root)) ? Boolean.FALSE : Boolean.TRUE;
+      }
+      return parsePrimary();
+    }
+
+    private Node parsePrimary() {
+      if (token == null || invalid) {
+        return null;
+      }
+      if ("(".equals(token)) {
+        next();
+        Node node = parseOr();
+        if (node == null || !")".equals(token)) {
+          return null;
+        }
+        next();
+        return node;
+      }
+      if ("'".equals(token) || "0".equals(token)) {
+        // 字面量
+        Object value = literal;
+        next();
+        return root -> value;
+      }
+      if ("null".equals(token) || "true".equals(token) || "false".equals(token)) {
+        Object value = "null".equals(token) ? null : Boolean.valueOf(token);
+        next();
+        return root -> value;
+      }
+      if (!isIdentifier(token)) {
+        return null;
+      }
+      String first = token;
+      next();
+      Node node = root -> getProperty(root, first);
+      while (".".equals(token)) {
+        next();
+        if (!isIdentifier(token)) {
+          return null;
+        }
+        String name = token;
+        next();
+        Node target = node;
+        if ("(".equals(token)) {
+          next();
+          if (!")".equals(token)) {
+            return null;
+          }
+          next();
+          node = root -> invokeMethod(target.getValue(root), name);
+        } else {
+          node = root -> getProperty(target.getValue(root), name);
+        }
+      }
+      return node;
+    }
+
+    private boolean isIdentifier(String token) {
+      if (token == null || invalid || !Character.isJavaIdentifierStart(token.charAt(0))) {
+        return false;
+      }
+      switch (token) {
+        case "and":
+        case "or":
+        case "not":
+        case "eq":
+        case "neq":
+        case "lt":
+        case "gt":
+        case "lte":
+        case "gte":
+        case "null":
+        case "true":
+        case "false":
+          return false;
+        default:
+          return !UNSUPPORTED_KEYWORDS.contains(token);
+      }
+    }
+
+    /**
+     * Reads the next token: an identifier or keyword, an operator, {@code "'"} for a character or string literal and
+     * {@code "0"} for an integer literal (the value is then in {@link #literal}), or null at the end. Sets
+     * {@link #invalid} on anything else.
+     */
+    private void next() {
+      while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+        position++;
+      }
+      if (position >= expression.length()) {
+        token = null;
+        return;
+      }
+      char c = expression.charAt(position);
+      int start = position;
+      if (Character.isJavaIdentifierStart(c)) {
+        while (position < expression.length() && Character.isJavaIdentifierPart(expression.charAt(position))) {
+          position++;
+        }
+        token = expression.substring(start, position);
+      } else if (c >= '0' && c <= '9') {
+        while (position < expression.length() && Character.isLetterOrDigit(expression.charAt(position))
+            || position < expression.length() && expression.charAt(position) == '.') {
+          position++;
+        }
+        String number = expression.substring(start, position);
+        // 只支持 int 范围内的十进制整数（OGNL 中为 Integer）
+        if (number.length() > 9 || number.length() > 1 && number.charAt(0) == '0' || !number.chars().allMatch(Character::isDigit)) {
+          fail();
+          return;
+        }
+        literal = Integer.valueOf(number);
+        token = "0";
+      } else if (c == '\'' || c == '"') {
+        int end = expression.indexOf(c, position + 1);
+        if (end < 0 || expression.lastIndexOf('\\', end) > position) {
+          fail();
+          return;
+        }
+        String value = expression.substring(position + 1, end);
+        position = end + 1;
+        // OGNL 中单引号内的单个字符是 Character
+        literal = c == '\'' && value.length() == 1 ? (Object) value.charAt(0) : value;
+        token = "'";
+      } else {
+        String two = position + 1 < expression.length() ? expression.substring(position, position + 2) : "";
+        if ("==".equals(two) || "!=".equals(two) || "<=".equals(two) || ">=".equals(two) || "&&".equals(two)
+            || "||".equals(two)) {
+          token = two;
+          position += 2;
+        } else if (c == '(' || c == ')' || c == '.' || c == '!' || c == '<' || c == '>') {
+          token = String.valueOf(c);
+          position++;
+        } else {
+          fail();
+        }
+      }
+    }
+
+    private void fail() {
+      invalid = true;
+      token = "";
+      position = expression.length();
+    }
+  }
+
+}
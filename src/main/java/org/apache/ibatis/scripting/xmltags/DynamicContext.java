@@ -115,8 +115,10 @@ public class DynamicContext {
 
     @Override
     public Object getProperty(Map context, Object target, Object name) {
-      Map map = (Map) target;
+      return getValue((Map) target, name);
+    }
 
+    static Object getValue(Map map, Object name) {
       Object result = map.get(name);
       if (map.containsKey(name) || result != null) {
         return result;
@@ -0,0 +1,559 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.scripting.xmltags;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A tree of the {@link SqlNode}s built by {@link XMLScriptBuilder}, compiled into a flat list of instructions.
+ * <p>
+ * The instructions are run in a single loop, which renders the SQL into one buffer (plus one per {@code trim},
+ * {@code where} or {@code set} element being rendered) instead of going through a {@link DynamicContext} wrapper per
+ * element and per {@code foreach} iteration. The consecutive static texts are joined when compiling, and the
+ * {@code #{}} placeholders of the static texts nested in {@code foreach} elements are parsed once: only the number of
+ * the iteration is appended when rendering.
+ * <p>
+ * The generated SQL and bindings are the same as with the tree. {@link #compile(SqlNode)} returns the tree itself
+ * when it contains other node types.
+ *
+ * @since 3.5.3
+ */
+final class DynamicSqlProgram implements SqlNode {
+
+  // 每条指令占 3 个 int：操作码与两个操作数
+  private static final int TEXT = 0;
+  private static final int RAW_TEXT = 1;
+  private static final int TEMPLATE = 2;
+  private static final int DYNAMIC_TEXT = 3;
+  private static final int BIND = 4;
+  private static final int JUMP_IF_FALSE = 5;
+  private static final int JUMP = 6;
+  private static final int TRIM_BEGIN = 7;
+  private static final int TRIM_END = 8;
+  private static final int FOREACH_BEGIN = 9;
+  private static final int FOREACH_NEXT = 10;
+  private static final int FOREACH_END = 11;
+  private static final int FOREACH_EXPAND = 12;
+
+  private static final int ROOT_FRAME = 0;
+  private static final int TRIM_FRAME = 1;
+  private static final int FOREACH_FRAME = 2;
+
+  private static final Pattern SIMPLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+  private static final ExpressionEvaluator EVALUATOR = new ExpressionEvaluator();
+
+  private final int[] code;
+  private final Object[] constants;
+  private final int frameCount;
+
+  private DynamicSqlProgram(int[] code, Object[] constants, int frameCount) {
+    this.code = code;
+    this.constants = constants;
+    this.frameCount = frameCount;
+  }
+
+  /**
+   * @return the compiled program, or the tree itself when it cannot be compiled
+   */
+  static SqlNode compile(SqlNode rootSqlNode) {
+    Compiler compiler = new Compiler();
+    if (!compiler.compile(rootSqlNode)) {
+      return rootSqlNode;
+    }
+    return new DynamicSqlProgram(Arrays.copyOf(compiler.code, compiler.size), compiler.constants.toArray(),
+        compiler.maxFrame + 1);
+  }
+
+  @Override
+  public boolean apply(DynamicContext context) {
+    final Map<String, Object> bindings = context.getBindings();
+    final Frame[] frames = new Frame[frameCount];
+    final Frame root = frames[0] = new Frame();
+    root.kind = ROOT_FRAME;
+    root.buffer = new StringBuilder();
+    int top = 0;
+    int pc = 0;
+    while (pc < code.length) {
+      final int operand = code[pc + 1];
+      switch (code[pc]) {
+        case TEXT:
+          append(frames, top, (String) constants[operand], true);
+          break;
+        case RAW_TEXT:
+          append(frames, top, (String) constants[operand], false);
+          break;
+        case TEMPLATE:
+          append(frames, top, ((Template) constants[operand]).render(frames), true);
+          break;
+        case DYNAMIC_TEXT:
+          append(frames, top, ((TextSqlNode) constants[operand]).getSql(context), false);
+          break;
+        case BIND: {
+          VarDeclSqlNode node = (VarDeclSqlNode) constants[operand];
+          context.bind(node.getName(), OgnlCache.getValue(node.getExpression(), bindings));
+          break;
+        }
+        case JUMP_IF_FALSE:
+          if (!EVALUATOR.evaluateBoolean((String) constants[operand], bindings)) {
+            pc = code[pc + 2];
+            continue;
+          }
+          break;
+        case JUMP:
+          pc = code[pc + 2];
+          continue;
+        case TRIM_BEGIN: {
+          Frame frame = frame(frames, ++top, TRIM_FRAME);
+          if (frame.buffer == null) {
+            frame.buffer = new StringBuilder();
+          } else {
+            frame.buffer.setLength(0);
+          }
+          break;
+        }
+        case TRIM_END: {
+          String sql = ((TrimSqlNode) constants[operand]).trim(frames[top].buffer.toString());
+          top--;
+          append(frames, top, sql, false);
+          break;
+        }
+        case FOREACH_BEGIN: {
+          ForEachSqlNode node = (ForEachSqlNode) constants[operand];
+          Iterable<?> iterable = EVALUATOR.evaluateIterable(node.getCollectionExpression(), bindings);
+          if (!iterable.iterator().hasNext()) {
+            pc = code[pc + 2];
+            continue;
+          }
+          if (node.getOpen() != null) {
+            append(frames, top, node.getOpen(), false);
+          }
+          Frame frame = frame(frames, ++top, FOREACH_FRAME);
+          frame.forEach = node;
+          frame.iterator = iterable.iterator();
+          frame.first = true;
+          frame.index = 0;
+          break;
+        }
+        case FOREACH_NEXT: {
+          ForEachSqlNode node = (ForEachSqlNode) constants[operand];
+          Frame frame = frames[top];
+          if (!frame.iterator.hasNext()) {
+            frame.iterator = null;
+            top--;
+            if (node.getClose() != null) {
+              append(frames, top, node.getClose(), false);
+            }
+            bindings.remove(node.getItem());
+            bindings.remove(node.getIndex());
+            pc = code[pc + 2];
+            continue;
+          }
+          Object o = frame.iterator.next();
+          frame.prefix = frame.first || node.getSeparator() == null ? "" : node.getSeparator();
+          frame.prefixApplied = false;
+          int uniqueNumber = context.getUniqueNumber();
+          frame.uniqueNumber = uniqueNumber;
+          // Issue #709
+          if (o instanceof Map.Entry) {
+            Map.Entry<?, ?> mapEntry = (Map.Entry<?, ?>) o;
+            bind(context, node.getIndex(), mapEntry.getKey(), uniqueNumber);
+            bind(context, node.getItem(), mapEntry.getValue(), uniqueNumber);
+          } else {
+            bind(context, node.getIndex(), frame.index, uniqueNumber);
+            bind(context, node.getItem(), o, uniqueNumber);
+          }
+          break;
+        }
+        case FOREACH_EXPAND: {
+          String sql = ((ForEachSqlNode) constants[operand]).expand(context);
+          if (sql != null) {
+            append(frames, top, sql, false);
+          }
+          break;
+        }
+        case FOREACH_END: {
+          Frame frame = frames[top];
+          if (frame.first) {
+            frame.first = !frame.prefixApplied;
+          }
+          frame.index++;
+          pc = code[pc + 2];
+          continue;
+        }
+        default:
+          throw new IllegalStateException("Unknown instruction " + code[pc]);
+      }
+      pc += 3;
+    }
+    if (root.count > 0) {
+      context.appendSql(root.buffer.toString());
+    }
+    return true;
+  }
+
+  private static Frame frame(Frame[] frames, int slot, int kind) {
+    Frame frame = frames[slot];
+    if (frame == null) {
+      frame = frames[slot] = new Frame();
+    }
+    frame.kind = kind;
+    return frame;
+  }
+
+  private static void bind(DynamicContext context, String name, Object value, int uniqueNumber) {
+    if (name != null) {
+      context.bind(name, value);
+      context.bind(ForEachSqlNode.itemizeItem(name, uniqueNumber), value);
+    }
+  }
+
+  /**
+   * Appends a piece of SQL like {@link DynamicContext#appendSql(String)} on the context of the element being rendered:
+   * joined with a space at the root, added to the buffer of a trim, or itemized and prefixed with the separator in a
+   * foreach (and then appended to the enclosing element).
+   *
+   * @param itemized true when the placeholders of the SQL do not need to be itemized
+   */
+  private static void append(Frame[] frames, int slot, String sql, boolean itemized) {
+    Frame frame = frames[slot];
+    switch (frame.kind) {
+      case ROOT_FRAME:
+        if (frame.count++ > 0) {
+          frame.buffer.append(' ');
+        }
+        frame.buffer.append(sql);
+        break;
+      case TRIM_FRAME:
+        frame.buffer.append(sql);
+        break;
+      default:
+        if (!itemized && sql.contains("#{")) {
+          ForEachSqlNode node = frame.forEach;
+          sql = ForEachSqlNode.itemizeParameters(sql, node.getItem(), node.getIndex(), frame.uniqueNumber);
+        }
+        if (!frame.prefixApplied && !isBlank(sql)) {
+          append(frames, slot - 1, frame.prefix, false);
+          frame.prefixApplied = true;
+        }
+        append(frames, slot - 1, sql, itemized);
+        break;
+    }
+  }
+
+  private static boolean isBlank(String sql) {
+    // 与 sql.trim().length() == 0 相同
+    for (int i = 0; i < sql.length(); i++) {
+      if (sql.charAt(i) > ' ') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The state of the element being rendered at a nesting level.
+   */
+  private static final class Frame {
+    int kind;
+    StringBuilder buffer;
+    int count;
+    ForEachSqlNode forEach;
+    Iterator<?> iterator;
+    int index;
+    int uniqueNumber;
+    boolean first;
+    String prefix;
+    boolean prefixApplied;
+  }
+
+  /**
+   * A static text nested in foreach elements, with the placeholders referring to their items already itemized except
+   * for the number of the iteration.
+   */
+  private static final class Template {
+    private final String[] texts;
+    private final String[] names;
+    private final int[] slots;
+    private final int length;
+
+    Template(List<String> texts, List<String> names, List<Integer> slots) {
+      this.texts = texts.toArray(new String[0]);
+      this.names = names.toArray(new String[0]);
+      this.slots = slots.stream().mapToInt(Integer::intValue).toArray();
+      int total = 0;
+      for (String text : texts) {
+        total += text.length();
+      }
+      for (String name : names) {
+        total += name.length() + 4;
+      }
+      this.length = total;
+    }
+
+    String render(Frame[] frames) {
+      StringBuilder sql = new StringBuilder(length);
+      for (int i = 0; i < names.length; i++) {
+        sql.append(texts[i]).append(names[i]).append(frames[slots[i]].uniqueNumber);
+      }
+      return sql.append(texts[names.length]).toString();
+    }
+  }
+
+  private static final class Compiler {
+    private int[] code = new int[48];
+    private int size;
+    private final List<Object> constants = new ArrayList<>();
+    /**
+     * Kind of the frame of each enclosing element (the root first).
+     */
+    private final Deque<Integer> frameKinds = new ArrayDeque<>();
+    /**
+     * The enclosing foreach elements, the innermost first, and their frames.
+     */
+    private final Deque<ForEachSqlNode> forEachNodes = new ArrayDeque<>();
+    private final Deque<Integer> forEachSlots = new ArrayDeque<>();
+    private int maxFrame;
+    private int lastText = -1;
+
+    Compiler() {
+      frameKinds.push(ROOT_FRAME);
+    }
+
+    boolean compile(SqlNode node) {
+      Class<?> type = node.getClass();
+      if (type == MixedSqlNode.class) {
+        for (SqlNode child : ((MixedSqlNode) node).getContents()) {
+          if (!compile(child)) {
+            return false;
+          }
+        }
+        return true;
+      } else if (type == StaticTextSqlNode.class) {
+        text(((StaticTextSqlNode) node).getText());
+        return true;
+      } else if (type == TextSqlNode.class) {
+        emit(DYNAMIC_TEXT, constant(node), 0);
+        return true;
+      } else if (type == VarDeclSqlNode.class) {
+        emit(BIND, constant(node), 0);
+        return true;
+      } else if (type == IfSqlNode.class) {
+        IfSqlNode ifNode = (IfSqlNode) node;
+        int jump = emit(JUMP_IF_FALSE, constant(ifNode.getTest()), -1);
+        if (!compile(ifNode.getContents())) {
+          return false;
+        }
+        patch(jump);
+        return true;
+      } else if (type == ChooseSqlNode.class) {
+        return compileChoose((ChooseSqlNode) node);
+      } else if (type == TrimSqlNode.class || type == WhereSqlNode.class || type == SetSqlNode.class) {
+        emit(TRIM_BEGIN, 0, 0);
+        enter(TRIM_FRAME);
+        if (!compile(((TrimSqlNode) node).getContents())) {
+          return false;
+        }
+        frameKinds.pop();
+        emit(TRIM_END, constant(node), 0);
+        return true;
+      } else if (type == ForEachSqlNode.class) {
+        return compileForEach((ForEachSqlNode) node);
+      }
+      return false;
+    }
+
+    private boolean compileChoose(ChooseSqlNode node) {
+      List<Integer> ends = new ArrayList<>();
+      for (SqlNode when : node.getIfSqlNodes()) {
+        if (when.getClass() != IfSqlNode.class) {
+          return false;
+        }
+        IfSqlNode ifNode = (IfSqlNode) when;
+        int jump = emit(JUMP_IF_FALSE, constant(ifNode.getTest()), -1);
+        if (!compile(ifNode.getContents())) {
+          return false;
+        }
+        ends.add(emit(JUMP, 0, -1));
+        patch(jump);
+      }
+      if (node.getDefaultSqlNode() != null && !compile(node.getDefaultSqlNode())) {
+        return false;
+      }
+      for (int end : ends) {
+        patch(end);
+      }
+      return true;
+    }
+
+    private boolean compileForEach(ForEachSqlNode node) {
+      int constant = constant(node);
+      if (node.getMode() != ForEachSqlNode.Mode.ITEMS) {
+        emit(FOREACH_EXPAND, constant, 0);
+        return true;
+      }
+      int begin = emit(FOREACH_BEGIN, constant, -1);
+      int slot = enter(FOREACH_FRAME);
+      forEachNodes.push(node);
+      forEachSlots.push(slot);
+      int next = emit(FOREACH_NEXT, constant, -1);
+      lastText = -1;
+      if (!compile(node.getContents())) {
+        return false;
+      }
+      emit(FOREACH_END, 0, next);
+      forEachSlots.pop();
+      forEachNodes.pop();
+      frameKinds.pop();
+      patch(begin);
+      patch(next);
+      return true;
+    }
+
+    private int enter(int kind) {
+      frameKinds.push(kind);
+      maxFrame = Math.max(maxFrame, frameKinds.size() - 1);
+      lastText = -1;
+      return frameKinds.size() - 1;
+    }
+
+    private void text(String text) {
+      int kind = frameKinds.peek();
+      if (!forEachNodes.isEmpty() && text.contains("#{")) {
+        // 在 trim 中的文本要先经过 trim 的处理，再由 foreach 改写
+        Template template = kind == FOREACH_FRAME ? template(text) : null;
+        if (template != null) {
+          emit(TEMPLATE, constant(template), 0);
+        } else {
+          emit(RAW_TEXT, constant(text), 0);
+        }
+        return;
+      }
+      if (lastText == size - 3 && kind != FOREACH_FRAME) {
+        // 合并连续的静态文本
+        String previous = (String) constants.get(code[lastText + 1]);
+        constants.set(code[lastText + 1], kind == ROOT_FRAME ? previous + " " + text : previous + text);
+        return;
+      }
+      lastText = emit(TEXT, constant(text), 0);
+    }
+
+    /**
+     * @return the text with its placeholders parsed like by the enclosing foreach elements, or null when it must be
+     *         parsed when rendering
+     */
+    private Template template(String text) {
+      if (text.indexOf('\\') >= 0) {
+        return null;
+      }
+      for (ForEachSqlNode node : forEachNodes) {
+        if (!isSimpleName(node.getItem()) || node.getIndex() != null && !isSimpleName(node.getIndex())) {
+          return null;
+        }
+      }
+      List<String> texts = new ArrayList<>();
+      List<String> names = new ArrayList<>();
+      List<Integer> slots = new ArrayList<>();
+      StringBuilder current = new StringBuilder();
+      int offset = 0;
+      int start = text.indexOf("#{");
+      while (start > -1) {
+        int end = text.indexOf('}', start + 2);
+        if (end == -1) {
+          break;
+        }
+        current.append(text, offset, start).append("#{");
+        String content = text.substring(start + 2, end);
+        String rest = null;
+        Iterator<Integer> slotIterator = forEachSlots.iterator();
+        for (ForEachSqlNode node : forEachNodes) {
+          int slot = slotIterator.next();
+          rest = itemize(content, node.getItem(), slot, names, slots);
+          if (rest == null && node.getIndex() != null) {
+            rest = itemize(content, node.getIndex(), slot, names, slots);
+          }
+          if (rest != null) {
+            break;
+          }
+        }
+        if (rest == null) {
+          current.append(content);
+        } else {
+          texts.add(current.toString());
+          current.setLength(0);
+          current.append(rest);
+        }
+        current.append('}');
+        offset = end + 1;
+        start = text.indexOf("#{", offset);
+      }
+      current.append(text, offset, text.length());
+      texts.add(current.toString());
+      return new Template(texts, names, slots);
+    }
+
+    /**
+     * @return the rest of the content when it starts with the name (the name is then added), otherwise null
+     */
+    private String itemize(String content, String name, int slot, List<String> names, List<Integer> slots) {
+      Matcher matcher = Pattern.compile(ForEachSqlNode.itemPattern(name)).matcher(content);
+      if (!matcher.find()) {
+        return null;
+      }
+      names.add(ForEachSqlNode.ITEM_PREFIX + name + "_");
+      slots.add(slot);
+      return content.substring(matcher.end());
+    }
+
+    private boolean isSimpleName(String name) {
+      // 生成的变量名不能再被外层的 foreach 匹配
+      return name != null && !name.startsWith(ForEachSqlNode.ITEM_PREFIX) && SIMPLE_NAME.matcher(name).matches();
+    }
+
+    private int constant(Object value) {
+      constants.add(value);
+      return constants.size() - 1;
+    }
+
+    private int emit(int opcode, int operand, int target) {
+      if (size + 3 > code.length) {
+        code = Arrays.copyOf(code, code.length * 2);
+      }
+      code[size] = opcode;
+      code[size + 1] = operand;
+      code[size + 2] = target;
+      size += 3;
+      return size - 3;
+    }
+
+    /**
+     * Makes the jump of an instruction go to the next instruction.
+     */
+    private void patch(int instruction) {
+      code[instruction + 2] = size;
+      lastText = -1;
+    }
+  }
+
+}
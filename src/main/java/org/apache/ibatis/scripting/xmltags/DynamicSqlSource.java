@@ -15,18 +15,37 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.apache.ibatis.builder.SqlSourceBuilder;
+import org.apache.ibatis.builder.SqlSourceBuilder.ParsedSql;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.SqlSource;
 import org.apache.ibatis.session.Configuration;
 
 /**
+ * The "#{}" placeholders of the generated SQL are parsed once per distinct SQL, the same combinations of dynamic
+ * elements being generated again and again. The {@value #MAX_PARSED_SQL} most recently used SQL are kept.
+ *
  * @author Clinton Begin
  */
 public class DynamicSqlSource implements SqlSource {
 
+  private static final int MAX_PARSED_SQL = 64;
+
   private final Configuration configuration;
   private final SqlNode rootSqlNode;
+  private final Map<String, ParsedSql> parsedSqls = Collections.synchronizedMap(new LinkedHashMap<String, ParsedSql>(16, .75F, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, ParsedSql> eldest) {
+      return size() > MAX_PARSED_SQL;
+    }
+  });
 
   public DynamicSqlSource(Configuration configuration, SqlNode rootSqlNode) {
     this.configuration = configuration;
@@ -37,8 +56,8 @@ public class DynamicSqlSource implements SqlSource {
    * 步骤如下：
    * 1. 创建 DynamicContext
    * 2. 解析 SQL 片段，并将解析结果存储到 DynamicContext 中
-   * 3. 解析 SQL 语句，并构建 StaticSqlSource
-   * 4. 调用 StaticSqlSource 的 getBoundSql 获取 BoundSql
+   * 3. 解析 SQL 语句中的 #{} 占位符（或复用同样 SQL 的解析结果）
+   * 4. 创建 BoundSql
    * 5. 将 DynamicContext 的 ContextMap 中的内容拷贝到 BoundSql 中
    */
   @Override
@@ -51,14 +70,19 @@ public class DynamicSqlSource implements SqlSource {
      */
     // 调用 rootSqlNode.apply() 方法，完成整个树形结构中全部 SqlNode 对象对 SQL 片段的解析
     rootSqlNode.apply(context);
-    // 通过 SqlSourceBuilder 解析"#{}"占位符中的属性，并将 SQL 语句中的"#{}"占位符替换成"?"占位符
-    SqlSourceBuilder sqlSourceParser = new SqlSourceBuilder(configuration);
+    // 通过 SqlSourceBuilder 解析"#{}"占位符中的属性，并将 SQL 语句中的"#{}"占位符替换成"?"占位符，
+    // 为每个占位符构建相应的 ParameterMapping。同样的 SQL 且参数类型不变时复用之前的解析结果
     Class<?> parameterType = parameterObject == null ? Object.class : parameterObject.getClass();
-    // 构建 StaticSqlSource，在此过程中将 sql 语句中的占位符 #{} 替换为问号 ?，并为每个占位符构建相应的 ParameterMapping
-    SqlSource sqlSource = sqlSourceParser.parse(context.getSql(), parameterType, context.getBindings());
+    String sql = context.getSql();
+    ParsedSql parsedSql = parsedSqls.get(sql);
+    if (parsedSql == null || !parsedSql.isReusableFor(parameterType, context.getBindings())) {
+      SqlSourceBuilder sqlSourceParser = new SqlSourceBuilder(configuration);
+      parsedSql = sqlSourceParser.parseReusable(sql, parameterType, context.getBindings());
+      parsedSqls.put(sql, parsedSql);
+    }
 
-    // 调用 StaticSqlSource 的 getBoundSql 来创建 BoundSql 对象
-    BoundSql boundSql = sqlSource.getBoundSql(parameterObject);
+    // 创建 BoundSql 对象，ParameterMapping 列表可能被插件修改，因此每次复制
+    BoundSql boundSql = new BoundSql(configuration, parsedSql.getSql(), new ArrayList<>(parsedSql.getParameterMappings()), parameterObject);
 
     // 将 DynamicContext 的 ContextMap 中的内容拷贝到 BoundSql 中
     context.getBindings().forEach(boundSql::setAdditionalParameter);
@@ -15,10 +15,19 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.parsing.GenericTokenParser;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.ArrayTypeHandler;
 
 /**
  * @author Clinton Begin
@@ -35,8 +44,20 @@ public class ForEachSqlNode implements SqlNode {
   private final String item;
   private final String index;
   private final Configuration configuration;
+  private final Mode mode;
+  /**
+   * Options of the #{item} parameter of the body (e.g. ",jdbcType=INTEGER"), in the BUCKET and ARRAY modes.
+   */
+  private final String itemOptions;
 
   public ForEachSqlNode(Configuration configuration, SqlNode contents, String collectionExpression, String index, String item, String open, String close, String separator) {
+    this(configuration, contents, collectionExpression, index, item, open, close, separator, Mode.ITEMS);
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public ForEachSqlNode(Configuration configuration, SqlNode contents, String collectionExpression, String index, String item, String open, String close, String separator, Mode mode) {
     this.evaluator = new ExpressionEvaluator();
     this.collectionExpression = collectionExpression;
     this.contents = contents;
@@ -46,10 +67,19 @@ public class ForEachSqlNode implements SqlNode {
     this.index = index;
     this.item = item;
     this.configuration = configuration;
+    this.mode = mode;
+    this.itemOptions = mode == Mode.ITEMS ? null : parseItemOptions(contents, item);
   }
 
   @Override
   public boolean apply(DynamicContext context) {
+    if (mode != Mode.ITEMS) {
+      String sql = expand(context);
+      if (sql != null) {
+        context.appendSql(sql);
+      }
+      return true;
+    }
     Map<String, Object> bindings = context.getBindings();
     final Iterable<?> iterable = evaluator.evaluateIterable(collectionExpression, bindings);
     if (!iterable.iterator().hasNext()) {
@@ -119,10 +149,212 @@ public class ForEachSqlNode implements SqlNode {
     }
   }
 
-  private static String itemizeItem(String item, int i) {
+  /**
+   * Renders the BUCKET and ARRAY modes: binds the collection once, instead of each of its items.
+   *
+   * @return the SQL, or null when the collection is empty
+   */
+  String expand(DynamicContext context) {
+    final Iterable<?> iterable = evaluator.evaluateIterable(collectionExpression, context.getBindings());
+    final List<?> values = toValues(iterable);
+    if (values.isEmpty()) {
+      return null;
+    }
+    final String name = itemizeItem(item, context.getUniqueNumber());
+    final StringBuilder sql = new StringBuilder();
+    if (open != null) {
+      sql.append(open);
+    }
+    if (mode == Mode.ARRAY) {
+      context.bind(name, toArray(values));
+      sql.append("#{").append(name).append(",typeHandler=").append(ArrayTypeHandler.class.getName()).append('}');
+    } else {
+      // 补齐到 2 的幂，使不同长度的集合生成相同的 SQL
+      int size = bucketSize(values.size());
+      context.bind(name, size == values.size() ? values : new PaddedList(values, size));
+      for (int i = 0; i < size; i++) {
+        if (i > 0 && separator != null) {
+          sql.append(separator);
+        }
+        sql.append("#{").append(name).append('[').append(i).append(']').append(itemOptions).append('}');
+      }
+    }
+    if (close != null) {
+      sql.append(close);
+    }
+    return sql.toString();
+  }
+
+  static int bucketSize(int size) {
+    return size <= 1 ? size : Integer.highestOneBit(size - 1) << 1;
+  }
+
+  private static List<?> toValues(Iterable<?> iterable) {
+    if (iterable instanceof List && iterable instanceof RandomAccess) {
+      return (List<?>) iterable;
+    }
+    List<Object> values = new ArrayList<>();
+    for (Object o : iterable) {
+      values.add(o instanceof Map.Entry ? ((Map.Entry<?, ?>) o).getValue() : o);
+    }
+    return values;
+  }
+
+  /**
+   * @return the values in an array of their class (if they all have the same), so that the type of the SQL array can
+   *         be resolved by {@link ArrayTypeHandler}
+   */
+  private static Object[] toArray(List<?> values) {
+    Class<?> type = null;
+    for (Object value : values) {
+      if (value != null) {
+        if (type == null) {
+          type = value.getClass();
+        } else if (type != value.getClass()) {
+          type = Object.class;
+          break;
+        }
+      }
+    }
+    return values.toArray((Object[]) Array.newInstance(type == null ? Object.class : type, values.size()));
+  }
+
+  private static String parseItemOptions(SqlNode contents, String item) {
+    StringBuilder body = new StringBuilder();
+    if (item != null && appendText(contents, body)) {
+      Matcher matcher = Pattern.compile("\\s*#\\{\\s*" + Pattern.quote(item) + "\\s*(,[^}]*)?}\\s*").matcher(body);
+      if (matcher.matches()) {
+        return matcher.group(1) == null ? "" : matcher.group(1);
+      }
+    }
+    throw new BuilderException("The body of a foreach element using the bucket or array mode must be a single #{item} parameter.");
+  }
+
+  private static boolean appendText(SqlNode node, StringBuilder body) {
+    if (node instanceof StaticTextSqlNode) {
+      body.append(((StaticTextSqlNode) node).getText());
+      return true;
+    } else if (node instanceof MixedSqlNode) {
+      for (SqlNode child : ((MixedSqlNode) node).getContents()) {
+        if (!appendText(child, body)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  static String itemizeItem(String item, int i) {
     return ITEM_PREFIX + item + "_" + i;
   }
 
+  /**
+   * Replaces the item (or else the index) at the start of the "#{}" placeholders of the SQL by the variables bound
+   * for the iteration.
+   */
+  static String itemizeParameters(String sql, String item, String itemIndex, int index) {
+    // 创建识别"#{}"的 GenericTokenParser 解析器
+    GenericTokenParser parser = new GenericTokenParser("#{", "}", content -> {
+      // 这个 TokenHandler 实现会将 #{i} 替换成 #{__frch_i_0}、#{__frch_i_1}...
+      String newContent = content.replaceFirst(itemPattern(item), itemizeItem(item, index));
+      if (itemIndex != null && newContent.equals(content)) {
+        // 这里会将 #{j} 替换成 #{__frch_j_0}、#{__frch_j_1}...
+        newContent = content.replaceFirst(itemPattern(itemIndex), itemizeItem(itemIndex, index));
+      }
+      return "#{" + newContent + "}";
+    });
+    return parser.parse(sql);
+  }
+
+  /**
+   * @return the regular expression matching a name at the start of the content of a "#{}" placeholder
+   */
+  static String itemPattern(String name) {
+    return "^\\s*" + name + "(?![^.,:\\s])";
+  }
+
+  String getCollectionExpression() {
+    return collectionExpression;
+  }
+
+  SqlNode getContents() {
+    return contents;
+  }
+
+  String getOpen() {
+    return open;
+  }
+
+  String getClose() {
+    return close;
+  }
+
+  String getSeparator() {
+    return separator;
+  }
+
+  String getItem() {
+    return item;
+  }
+
+  String getIndex() {
+    return index;
+  }
+
+  Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * How the items of the collection are bound.
+   *
+   * @since 3.5.3
+   */
+  public enum Mode {
+    /**
+     * The body is rendered for each item, with the item and index bound to variables.
+     */
+    ITEMS,
+    /**
+     * The body must be a single #{item} parameter, repeated once per item then up to the next power of two with the
+     * last item, so that collections of similar sizes share the same SQL. The collection is bound once and the
+     * parameters refer to its items by index.
+     */
+    BUCKET,
+    /**
+     * The body must be a single #{item} parameter, replaced by a single parameter bound to the items as an SQL array
+     * (e.g. {@code id = ANY(...)}), for the drivers supporting {@link java.sql.Connection#createArrayOf}.
+     */
+    ARRAY
+  }
+
+  /**
+   * A list followed by copies of its last element.
+   */
+  private static final class PaddedList extends AbstractList<Object> implements RandomAccess {
+    private final List<?> values;
+    private final int size;
+
+    PaddedList(List<?> values, int size) {
+      this.values = values;
+      this.size = size;
+    }
+
+    @Override
+    public Object get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+      return values.get(Math.min(index, values.size() - 1));
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
   private static class FilteredDynamicContext extends DynamicContext {
     private final DynamicContext delegate;
     private final int index;
@@ -154,19 +386,8 @@ public class ForEachSqlNode implements SqlNode {
 
     @Override
     public void appendSql(String sql) {
-      // 创建识别"#{}"的 GenericTokenParser 解析器
-      GenericTokenParser parser = new GenericTokenParser("#{", "}", content -> {
-        // 这个 TokenHandler 实现会将 #{i} 替换成 #{__frch_i_0}、#{__frch_i_1}...
-        String newContent = content.replaceFirst("^\\s*" + item + "(?![^.,:\\s])", itemizeItem(item, index));
-        if (itemIndex != null && newContent.equals(content)) {
-          // 这里会将 #{j} 替换成 #{__frch_j_0}、#{__frch_j_1}...
-          newContent = content.replaceFirst("^\\s*" + itemIndex + "(?![^.,:\\s])", itemizeItem(itemIndex, index));
-        }
-        return "#{" + newContent + "}";
-      });
-
       // 保存解析后的 SQL 片段
-      delegate.appendSql(parser.parse(sql));
+      delegate.appendSql(itemizeParameters(sql, item, itemIndex, index));
     }
 
     @Override
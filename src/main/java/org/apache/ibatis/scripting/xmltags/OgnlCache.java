@@ -16,6 +16,7 @@
 package org.apache.ibatis.scripting.xmltags;
 
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
 import ognl.Ognl;
@@ -25,6 +26,9 @@ import org.apache.ibatis.builder.BuilderException;
 
 /**
  * Caches OGNL parsed expressions.
+ * <p>
+ * The expressions of the subset supported by {@link CompiledExpression} are evaluated without the OGNL interpreter,
+ * the others (and the cases the compiled expression does not handle) by OGNL.
  *
  * @author Eduardo Macarron
  *
@@ -35,12 +39,25 @@ public final class OgnlCache {
   private static final OgnlMemberAccess MEMBER_ACCESS = new OgnlMemberAccess();
   private static final OgnlClassResolver CLASS_RESOLVER = new OgnlClassResolver();
   private static final Map<String, Object> expressionCache = new ConcurrentHashMap<>();
+  private static final Map<String, Optional<CompiledExpression>> compiledExpressionCache = new ConcurrentHashMap<>();
 
   private OgnlCache() {
     // Prevent Instantiation of Static Class
   }
 
   public static Object getValue(String expression, Object root) {
+    CompiledExpression compiledExpression = compiledExpressionCache
+        .computeIfAbsent(expression, key -> Optional.ofNullable(CompiledExpression.compile(key))).orElse(null);
+    if (compiledExpression != null) {
+      try {
+        return compiledExpression.getValue(root);
+      } catch (RuntimeException e) {
+        if (e != CompiledExpression.FALLBACK) {
+          throw e;
+        }
+        // 交给 OGNL 求值
+      }
+    }
     try {
       Map context = Ognl.createDefaultContext(root, MEMBER_ACCESS, CLASS_RESOLVER, null);
       return Ognl.getValue(parseExpression(expression), context, root);
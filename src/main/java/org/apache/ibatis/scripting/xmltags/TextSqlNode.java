@@ -47,13 +47,20 @@ public class TextSqlNode implements SqlNode {
 
   @Override
   public boolean apply(DynamicContext context) {
-    // 创建 GenericTokenParser 解析器，这里指定的占位符的起止符号分别是"${"和"}"
-    GenericTokenParser parser = createParser(new BindingTokenParser(context, injectionFilter));
     // 将解析之后的 SQL 片段追加到 DynamicContext 暂存
-    context.appendSql(parser.parse(text));
+    context.appendSql(getSql(context));
     return true;
   }
 
+  /**
+   * @return the text with its "${}" placeholders replaced by their values
+   */
+  String getSql(DynamicContext context) {
+    // 创建 GenericTokenParser 解析器，这里指定的占位符的起止符号分别是"${"和"}"
+    GenericTokenParser parser = createParser(new BindingTokenParser(context, injectionFilter));
+    return parser.parse(text);
+  }
+
   private GenericTokenParser createParser(TokenHandler handler) {
     // 创建占位符解析器，GenericTokenParser 是一个通用解析器，并非只能解析 ${} 占位符
     return new GenericTokenParser("${", "}", handler);
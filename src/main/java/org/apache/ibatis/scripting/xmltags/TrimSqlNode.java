@@ -72,34 +72,123 @@ public class TrimSqlNode implements SqlNode {
     return Collections.emptyList();
   }
 
+  /**
+   * Trims the SQL generated by the contents, then removes the prefix and suffix to override and adds the prefix and
+   * suffix (when it is not empty).
+   */
+  String trim(String sql) {
+    String trimmedSql = sql.trim();
+    if (trimmedSql.isEmpty()) {
+      return trimmedSql;
+    }
+    StringBuilder sqlBuffer = new StringBuilder(trimmedSql);
+    applyPrefix(sqlBuffer, trimmedSql);
+    applySuffix(sqlBuffer, trimmedSql);
+    return sqlBuffer.toString();
+  }
+
+  private void applyPrefix(StringBuilder sql, String trimmedSql) {
+    if (prefixesToOverride != null) {
+      for (String toRemove : prefixesToOverride) {
+        // 检测当前 sql 字符串是否包含前缀，比如 'AND ', 'AND\t'等
+        if (startsWithUppercase(trimmedSql, toRemove)) {
+          // 移除前缀
+          sql.delete(0, toRemove.trim().length());
+          break;
+        }
+      }
+    }
+
+    // 插入前缀，比如 WHERE
+    if (prefix != null) {
+      sql.insert(0, " ");
+      sql.insert(0, prefix);
+    }
+  }
+
+  // 该方法逻辑与 applyPrefix 大同小异
+  private void applySuffix(StringBuilder sql, String trimmedSql) {
+    if (suffixesToOverride != null) {
+      for (String toRemove : suffixesToOverride) {
+        if (endsWithUppercase(trimmedSql, toRemove) || endsWithUppercase(trimmedSql, toRemove.trim())) {
+          int start = sql.length() - toRemove.trim().length();
+          int end = sql.length();
+          sql.delete(start, end);
+          break;
+        }
+      }
+    }
+    if (suffix != null) {
+      sql.append(" ");
+      sql.append(suffix);
+    }
+  }
+
+  /**
+   * Same as {@code sql.toUpperCase(Locale.ENGLISH).startsWith(prefix)}, without converting the whole SQL when the
+   * characters to compare are ASCII.
+   */
+  private static boolean startsWithUppercase(String sql, String prefix) {
+    int length = Math.min(sql.length(), prefix.length());
+    if (!isAscii(sql, 0, length)) {
+      return sql.toUpperCase(Locale.ENGLISH).startsWith(prefix);
+    }
+    return sql.length() >= prefix.length() && equalsUppercase(sql, 0, prefix);
+  }
+
+  /**
+   * Same as {@code sql.toUpperCase(Locale.ENGLISH).endsWith(suffix)}, without converting the whole SQL when the
+   * characters to compare are ASCII.
+   */
+  private static boolean endsWithUppercase(String sql, String suffix) {
+    int length = Math.min(sql.length(), suffix.length());
+    if (!isAscii(sql, sql.length() - length, sql.length())) {
+      return sql.toUpperCase(Locale.ENGLISH).endsWith(suffix);
+    }
+    return sql.length() >= suffix.length() && equalsUppercase(sql, sql.length() - suffix.length(), suffix);
+  }
+
+  private static boolean isAscii(String sql, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (sql.charAt(i) >= 128) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean equalsUppercase(String sql, int from, String uppercase) {
+    for (int i = 0; i < uppercase.length(); i++) {
+      char c = sql.charAt(from + i);
+      if (c >= 'a' && c <= 'z') {
+        c = (char) (c - ('a' - 'A'));
+      }
+      if (c != uppercase.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  SqlNode getContents() {
+    return contents;
+  }
+
   private class FilteredDynamicContext extends DynamicContext {
     private DynamicContext delegate;
 
-    /** 构造方法会将下面两个布尔值置为 false */
-    private boolean prefixApplied;
-    private boolean suffixApplied;
-
     private StringBuilder sqlBuffer;
 
     public FilteredDynamicContext(DynamicContext delegate) {
       super(configuration, null);
       this.delegate = delegate;
-      this.prefixApplied = false;
-      this.suffixApplied = false;
       this.sqlBuffer = new StringBuilder();
     }
 
     public void applyAll() {
-      // 引用前缀和后缀，也就是对 sql 进行过滤操作，移除掉前缀或后缀
-      sqlBuffer = new StringBuilder(sqlBuffer.toString().trim());
-      String trimmedUppercaseSql = sqlBuffer.toString().toUpperCase(Locale.ENGLISH);
-      if (trimmedUppercaseSql.length() > 0) {
-        applyPrefix(sqlBuffer, trimmedUppercaseSql);
-        applySuffix(sqlBuffer, trimmedUppercaseSql);
-      }
-
-      // 将当前对象的 sqlBuffer 内容添加到代理类中
-      delegate.appendSql(sqlBuffer.toString());
+      // 引用前缀和后缀，也就是对 sql 进行过滤操作，移除掉前缀或后缀，
+      // 然后将结果添加到代理类中
+      delegate.appendSql(trim(sqlBuffer.toString()));
     }
 
     @Override
@@ -127,50 +216,6 @@ public class TrimSqlNode implements SqlNode {
       return delegate.getSql();
     }
 
-    private void applyPrefix(StringBuilder sql, String trimmedUppercaseSql) {
-      if (!prefixApplied) {
-        // 设置 prefixApplied 为 true，以下逻辑仅会被执行一次
-        prefixApplied = true;
-        if (prefixesToOverride != null) {
-          for (String toRemove : prefixesToOverride) {
-            // 检测当前 sql 字符串是否包含前缀，比如 'AND ', 'AND\t'等
-            if (trimmedUppercaseSql.startsWith(toRemove)) {
-              // 移除前缀
-              sql.delete(0, toRemove.trim().length());
-              break;
-            }
-          }
-        }
-
-        // 插入前缀，比如 WHERE
-        if (prefix != null) {
-          sql.insert(0, " ");
-          sql.insert(0, prefix);
-        }
-      }
-    }
-
-    // 该方法逻辑与 applyPrefix 大同小异
-    private void applySuffix(StringBuilder sql, String trimmedUppercaseSql) {
-      if (!suffixApplied) {
-        suffixApplied = true;
-        if (suffixesToOverride != null) {
-          for (String toRemove : suffixesToOverride) {
-            if (trimmedUppercaseSql.endsWith(toRemove) || trimmedUppercaseSql.endsWith(toRemove.trim())) {
-              int start = sql.length() - toRemove.trim().length();
-              int end = sql.length();
-              sql.delete(start, end);
-              break;
-            }
-          }
-        }
-        if (suffix != null) {
-          sql.append(" ");
-          sql.append(suffix);
-        }
-      }
-    }
-
   }
 
 }
@@ -18,6 +18,7 @@ package org.apache.ibatis.scripting.xmltags;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import org.apache.ibatis.builder.BaseBuilder;
@@ -69,7 +70,12 @@ public class XMLScriptBuilder extends BaseBuilder {
     SqlSource sqlSource;
     // 根据该 SQL 是否为动态 SQL，创建不同的 SqlSource 实现
     if (isDynamic) {
-      sqlSource = new DynamicSqlSource(configuration, rootSqlNode);
+      SqlNode sqlNode = rootSqlNode;
+      if (configuration.isCompiledDynamicSql()) {
+        // 编译为扁平的指令序列
+        sqlNode = DynamicSqlProgram.compile(rootSqlNode);
+      }
+      sqlSource = new DynamicSqlSource(configuration, sqlNode);
     } else {
       sqlSource = new RawSqlSource(configuration, rootSqlNode, parameterType);
     }
@@ -197,11 +203,20 @@ public class XMLScriptBuilder extends BaseBuilder {
       String open = nodeToHandle.getStringAttribute("open");
       String close = nodeToHandle.getStringAttribute("close");
       String separator = nodeToHandle.getStringAttribute("separator");
-      ForEachSqlNode forEachSqlNode = new ForEachSqlNode(configuration, mixedSqlNode, collection, index, item, open, close, separator);
+      ForEachSqlNode.Mode mode = resolveForEachMode(nodeToHandle.getStringAttribute("mode", "items"));
+      ForEachSqlNode forEachSqlNode = new ForEachSqlNode(configuration, mixedSqlNode, collection, index, item, open, close, separator, mode);
       targetContents.add(forEachSqlNode);
     }
   }
 
+  private ForEachSqlNode.Mode resolveForEachMode(String mode) {
+    try {
+      return ForEachSqlNode.Mode.valueOf(mode.toUpperCase(Locale.ENGLISH));
+    } catch (IllegalArgumentException e) {
+      throw new BuilderException("Unknown foreach mode '" + mode + "'. Use items, bucket or array.", e);
+    }
+  }
+
   private class IfHandler implements NodeHandler {
     public IfHandler() {
       // Prevent Synthetic Access
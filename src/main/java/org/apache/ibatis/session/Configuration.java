@@ -25,6 +25,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 
 import org.apache.ibatis.binding.MapperRegistry;
@@ -37,7 +41,10 @@ import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.SoftCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
 import org.apache.ibatis.cache.decorators.WeakCache;
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.datasource.jndi.JndiDataSourceFactory;
 import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
@@ -45,7 +52,9 @@ import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
 import org.apache.ibatis.executor.BatchExecutor;
 import org.apache.ibatis.executor.CachingExecutor;
 import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.GroupedBatchExecutor;
 import org.apache.ibatis.executor.ReuseExecutor;
+import org.apache.ibatis.executor.ReuseStatementStatistics;
 import org.apache.ibatis.executor.SimpleExecutor;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.loader.ProxyFactory;
@@ -54,6 +63,7 @@ import org.apache.ibatis.executor.loader.javassist.JavassistProxyFactory;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
 import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
 import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.executor.resultset.RowMapperCompiler;
 import org.apache.ibatis.executor.statement.RoutingStatementHandler;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.io.VFS;
@@ -113,6 +123,19 @@ public class Configuration {
   protected boolean callSettersOnNulls;
   protected boolean useActualParamName = true;
   protected boolean returnInstanceForEmptyRow;
+  protected boolean compiledRowMapping;
+  protected boolean nestedResultStreaming;
+  protected boolean batchGrouping;
+  protected int batchFlushSize;
+  protected int batchFlushBytes;
+  protected boolean batchInsertRewrite;
+  protected int batchInsertParameterLimit = 1000;
+  protected int cursorPrefetchSize = 100;
+  protected int cursorPrefetchQueueSize = 2;
+  protected boolean compiledDynamicSql;
+  protected int reuseStatementCacheSize;
+  private final ReuseStatementStatistics reuseStatementStatistics = new ReuseStatementStatistics();
+  protected volatile java.util.concurrent.Executor asyncExecutor;
 
   protected String logPrefix;
   protected Class<? extends Log> logImpl;
@@ -149,6 +172,7 @@ public class Configuration {
   protected final TypeHandlerRegistry typeHandlerRegistry = new TypeHandlerRegistry();
   protected final TypeAliasRegistry typeAliasRegistry = new TypeAliasRegistry();
   protected final LanguageDriverRegistry languageRegistry = new LanguageDriverRegistry();
+  protected final RowMapperCompiler rowMapperCompiler = new RowMapperCompiler();
 
   protected final Map<String, MappedStatement> mappedStatements = new StrictMap<MappedStatement>("Mapped Statements collection")
       .conflictMessageProducer((savedValue, targetValue) ->
@@ -190,10 +214,13 @@ public class Configuration {
 
     // 注册缓存策略的别名
     typeAliasRegistry.registerAlias("PERPETUAL", PerpetualCache.class);
+    typeAliasRegistry.registerAlias("OFFHEAP", OffHeapCache.class);
     typeAliasRegistry.registerAlias("FIFO", FifoCache.class);
     typeAliasRegistry.registerAlias("LRU", LruCache.class);
     typeAliasRegistry.registerAlias("SOFT", SoftCache.class);
     typeAliasRegistry.registerAlias("WEAK", WeakCache.class);
+    typeAliasRegistry.registerAlias("TINYLFU", TinyLfuCache.class);
+    typeAliasRegistry.registerAlias("WEIGHTED", WeightedCache.class);
 
     typeAliasRegistry.registerAlias("DB_VENDOR", VendorDatabaseIdProvider.class);
 
@@ -271,6 +298,232 @@ public class Configuration {
     this.returnInstanceForEmptyRow = returnEmptyInstance;
   }
 
+  /**
+   * @since 3.5.3
+   */
+  public boolean isCompiledRowMapping() {
+    return compiledRowMapping;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public void setCompiledRowMapping(boolean compiledRowMapping) {
+    this.compiledRowMapping = compiledRowMapping;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public boolean isNestedResultStreaming() {
+    return nestedResultStreaming;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public void setNestedResultStreaming(boolean nestedResultStreaming) {
+    this.nestedResultStreaming = nestedResultStreaming;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public boolean isBatchGrouping() {
+    return batchGrouping;
+  }
+
+  /**
+   * Use a {@link GroupedBatchExecutor} for {@link ExecutorType#BATCH}.
+   *
+   * @since 3.5.3
+   */
+  public void setBatchGrouping(boolean batchGrouping) {
+    this.batchGrouping = batchGrouping;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public int getBatchFlushSize() {
+    return batchFlushSize;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public void setBatchFlushSize(int batchFlushSize) {
+    this.batchFlushSize = batchFlushSize;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public int getBatchFlushBytes() {
+    return batchFlushBytes;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public void setBatchFlushBytes(int batchFlushBytes) {
+    this.batchFlushBytes = batchFlushBytes;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public boolean isBatchInsertRewrite() {
+    return batchInsertRewrite;
+  }
+
+  /**
+   * Execute the batches of single row inserts as multi row inserts.
+   *
+   * @since 3.5.3
+   */
+  public void setBatchInsertRewrite(boolean batchInsertRewrite) {
+    this.batchInsertRewrite = batchInsertRewrite;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public int getBatchInsertParameterLimit() {
+    return batchInsertParameterLimit;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public void setBatchInsertParameterLimit(int batchInsertParameterLimit) {
+    this.batchInsertParameterLimit = batchInsertParameterLimit;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public int getCursorPrefetchSize() {
+    return cursorPrefetchSize;
+  }
+
+  /**
+   * Read the items of the cursors of statements with {@link MappedStatement#isCursorPrefetch() cursorPrefetch} ahead,
+   * on a thread of the {@link #getAsyncExecutor() async executor}, in batches of {@code cursorPrefetchSize} items (0
+   * to read them on the thread of the consumer).
+   *
+   * @since 3.5.3
+   */
+  public void setCursorPrefetchSize(int cursorPrefetchSize) {
+    this.cursorPrefetchSize = cursorPrefetchSize;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public int getCursorPrefetchQueueSize() {
+    return cursorPrefetchQueueSize;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public void setCursorPrefetchQueueSize(int cursorPrefetchQueueSize) {
+    this.cursorPrefetchQueueSize = cursorPrefetchQueueSize;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public boolean isCompiledDynamicSql() {
+    return compiledDynamicSql;
+  }
+
+  /**
+   * Renders the dynamic SQL of XML mappers with a flat program compiled from their elements, instead of walking the
+   * tree of {@link org.apache.ibatis.scripting.xmltags.SqlNode}s.
+   *
+   * @since 3.5.3
+   */
+  public void setCompiledDynamicSql(boolean compiledDynamicSql) {
+    this.compiledDynamicSql = compiledDynamicSql;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public int getReuseStatementCacheSize() {
+    return reuseStatementCacheSize;
+  }
+
+  /**
+   * Makes the {@link ExecutorType#REUSE} executor keep at most {@code reuseStatementCacheSize} statements until the
+   * session is closed, instead of closing them all at each commit or rollback (0).
+   *
+   * @since 3.5.3
+   */
+  public void setReuseStatementCacheSize(int reuseStatementCacheSize) {
+    this.reuseStatementCacheSize = reuseStatementCacheSize;
+  }
+
+  /**
+   * @return the statement counters of all the {@link ExecutorType#REUSE} executors of this configuration
+   * @since 3.5.3
+   */
+  public ReuseStatementStatistics getReuseStatementStatistics() {
+    return reuseStatementStatistics;
+  }
+
+  /**
+   * Returns the executor of the mapper methods returning a {@code CompletableFuture} or a {@code CompletionStage}, also
+   * used to prefetch the items of the cursors. By
+   * default a pool of as many daemon threads as available processors, created when first needed and shared by the
+   * configurations without an executor of their own; the calls beyond that wait in its queue. Applications that keep
+   * many prefetching cursors open, or that wait for an async call from another one, should set an executor sized for
+   * that.
+   *
+   * @since 3.5.3
+   */
+  public java.util.concurrent.Executor getAsyncExecutor() {
+    java.util.concurrent.Executor executor = asyncExecutor;
+    return executor != null ? executor : DefaultAsyncExecutorHolder.EXECUTOR;
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public void setAsyncExecutor(java.util.concurrent.Executor asyncExecutor) {
+    this.asyncExecutor = asyncExecutor;
+  }
+
+  /**
+   * 默认的异步执行器在第一次使用时由类加载创建，无需加锁
+   */
+  private static final class DefaultAsyncExecutorHolder {
+
+    private static final java.util.concurrent.Executor EXECUTOR = create();
+
+    private static ThreadPoolExecutor create() {
+      AtomicInteger threadCount = new AtomicInteger();
+      int poolSize = Runtime.getRuntime().availableProcessors();
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "mybatis-async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+  }
+
+  /**
+   * @since 3.5.3
+   */
+  public RowMapperCompiler getRowMapperCompiler() {
+    return rowMapperCompiler;
+  }
+
   public String getDatabaseId() {
     return databaseId;
   }
@@ -610,7 +863,7 @@ public class Configuration {
     executorType = executorType == null ? ExecutorType.SIMPLE : executorType;
     Executor executor;
     if (ExecutorType.BATCH == executorType) {
-      executor = new BatchExecutor(this, transaction);
+      executor = batchGrouping ? new GroupedBatchExecutor(this, transaction) : new BatchExecutor(this, transaction);
     } else if (ExecutorType.REUSE == executorType) {
       executor = new ReuseExecutor(this, transaction);
     } else {
@@ -0,0 +1,104 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.InvocationInterceptor;
+import org.junit.jupiter.api.extension.ReflectiveInvocationContext;
+import org.opentest4j.AssertionFailedError;
+
+/**
+ * Runs the test methods on virtual threads when the {@code mybatis.test.virtualThreads} system property is true, and
+ * fails the tests during which the JVM reports a pinned virtual thread (with {@code -Djdk.tracePinnedThreads}).
+ * <p>
+ * Registered through the service loader, it is only used when the extension auto-detection of JUnit is enabled (see
+ * the {@code virtual-threads} profile). The virtual threads are created by reflection, so it compiles on Java 8.
+ */
+public class VirtualThreadExtension implements InvocationInterceptor {
+
+  private static final boolean ENABLED = Boolean.getBoolean("mybatis.test.virtualThreads");
+
+  @Override
+  public void interceptTestMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext,
+      ExtensionContext extensionContext) throws Throwable {
+    if (!ENABLED) {
+      invocation.proceed();
+      return;
+    }
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Runnable test = () -> {
+      try {
+        invocation.proceed();
+      } catch (Throwable t) {
+        failure.set(t);
+      }
+    };
+    PrintStream out = System.out;
+    ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(new TeeOutputStream(out, captured), true));
+    try {
+      Thread thread = (Thread) Thread.class.getMethod("startVirtualThread", Runnable.class).invoke(null, test);
+      thread.join();
+    } finally {
+      System.setOut(out);
+    }
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+    String output = new String(captured.toByteArray(), Charset.defaultCharset());
+    if (output.contains("<== monitors")) {
+      throw new AssertionFailedError("A virtual thread was pinned:" + System.lineSeparator() + output);
+    }
+  }
+
+  private static class TeeOutputStream extends OutputStream {
+
+    private final OutputStream first;
+    private final OutputStream second;
+
+    TeeOutputStream(OutputStream first, OutputStream second) {
+      this.first = first;
+      this.second = second;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      first.write(b);
+      second.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      first.write(b, off, len);
+      second.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      first.flush();
+      second.flush();
+    }
+  }
+
+}
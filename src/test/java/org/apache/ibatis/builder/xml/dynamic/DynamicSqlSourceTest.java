@@ -16,12 +16,15 @@
 package org.apache.ibatis.builder.xml.dynamic;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +44,7 @@ import org.apache.ibatis.scripting.xmltags.WhereSqlNode;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.type.IntegerTypeHandler;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -376,6 +380,66 @@ class DynamicSqlSourceTest extends BaseDataTest {
     assertEquals("__frch_u_0", boundSql.getParameterMappings().get(3).getProperty());
   }
 
+  @Test
+  void shouldReuseParameterMappingsOfTheSameSql() throws Exception {
+    DynamicSqlSource source = createDynamicSqlSource(
+        new TextSqlNode("SELECT * FROM BLOG"),
+        new WhereSqlNode(new Configuration(), mixedContents(
+            new IfSqlNode(mixedContents(new TextSqlNode("AND ID = #{id}")), "id != null"),
+            new IfSqlNode(mixedContents(new TextSqlNode("AND TITLE = #{title}")), "title != null"))));
+    Map<String, Object> byId = new HashMap<>();
+    byId.put("id", 1);
+    Map<String, Object> byTitle = new HashMap<>();
+    byTitle.put("title", "Title");
+
+    BoundSql first = source.getBoundSql(byId);
+    BoundSql other = source.getBoundSql(byTitle);
+    BoundSql second = source.getBoundSql(byId);
+
+    assertEquals("SELECT * FROM BLOG WHERE ID = ?", first.getSql().replaceAll("\\s+", " "));
+    assertEquals("SELECT * FROM BLOG WHERE TITLE = ?", other.getSql().replaceAll("\\s+", " "));
+    assertEquals("title", other.getParameterMappings().get(0).getProperty());
+    assertEquals(first.getSql(), second.getSql());
+    assertSame(first.getParameterMappings().get(0), second.getParameterMappings().get(0));
+    assertNotSame(first.getParameterMappings(), second.getParameterMappings());
+  }
+
+  @Test
+  void shouldNotReuseParameterMappingsWhenItemTypesChange() throws Exception {
+    DynamicSqlSource source = createDynamicSqlSource(
+        new TextSqlNode("SELECT * FROM BLOG WHERE ID in"),
+        new ForEachSqlNode(new Configuration(), mixedContents(new TextSqlNode("#{item}")), "list", null, "item", "(", ")", ","));
+    Map<String, Object> integers = new HashMap<>();
+    integers.put("list", Arrays.asList(1, 2));
+    Map<String, Object> strings = new HashMap<>();
+    strings.put("list", Arrays.asList("1", "2"));
+
+    BoundSql first = source.getBoundSql(integers);
+    BoundSql second = source.getBoundSql(strings);
+    BoundSql third = source.getBoundSql(integers);
+
+    assertEquals(first.getSql(), second.getSql());
+    assertEquals(Integer.class, first.getParameterMappings().get(0).getJavaType());
+    assertEquals(String.class, second.getParameterMappings().get(0).getJavaType());
+    assertEquals(IntegerTypeHandler.class, third.getParameterMappings().get(1).getTypeHandler().getClass());
+  }
+
+  @Test
+  void shouldKeepRecentlyUsedSqlWhenManyAreGenerated() throws Exception {
+    DynamicSqlSource source = createDynamicSqlSource(
+        new TextSqlNode("SELECT * FROM BLOG WHERE ID in"),
+        new ForEachSqlNode(new Configuration(), mixedContents(new TextSqlNode("#{item}")), "list", null, "item", "(", ")", ","));
+    BoundSql last = null;
+    for (int size = 1; size <= 100; size++) {
+      Map<String, Object> ids = new HashMap<>();
+      ids.put("list", Collections.nCopies(size, 1));
+      last = source.getBoundSql(ids);
+    }
+    Map<String, Object> ids = new HashMap<>();
+    ids.put("list", Collections.nCopies(100, 1));
+    assertSame(last.getParameterMappings().get(0), source.getBoundSql(ids).getParameterMappings().get(0));
+  }
+
   private DynamicSqlSource createDynamicSqlSource(SqlNode... contents) throws IOException, SQLException {
     createBlogDataSource();
     final String resource = "org/apache/ibatis/builder/MapperConfig.xml";
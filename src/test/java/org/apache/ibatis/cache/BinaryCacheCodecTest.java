@@ -0,0 +1,147 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.ImmutableAuthor;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class BinaryCacheCodecTest {
+
+  private final CacheCodec codec = new BinaryCacheCodec();
+
+  @Test
+  void shouldCopyValueTypes() {
+    Timestamp timestamp = new Timestamp(1000);
+    timestamp.setNanos(123456789);
+    List<Object> values = Arrays.asList(null, "text", 1, 2L, (short) 3, (byte) 4, 5.0, 6.0f, true, 'c',
+        new BigDecimal("12.345"), new BigInteger("123456789012345678901234567890"), new Date(1000),
+        new java.sql.Date(2000), new java.sql.Time(3000), timestamp, Section.NEWS);
+    for (Object value : values) {
+      assertEquals(value, codec.decode(codec.encode(value)));
+    }
+    assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) codec.decode(codec.encode(new byte[] { 1, 2, 3 })));
+    assertArrayEquals(new String[] { "a", null }, (String[]) codec.decode(codec.encode(new String[] { "a", null })));
+  }
+
+  @Test
+  void shouldCopyBeansAndCollections() {
+    Author author = new Author(101, "jim", "********", "jim@ibatis.apache.org", "", Section.NEWS);
+    List<Object> list = new ArrayList<>();
+    list.add(author);
+    list.add(author);
+    Map<String, Object> map = new HashMap<>();
+    map.put("set", new LinkedHashSet<>(Arrays.asList(3, 1, 2)));
+    list.add(map);
+
+    @SuppressWarnings("unchecked")
+    List<Object> copy = (List<Object>) codec.decode(codec.encode(list));
+    Author authorCopy = (Author) copy.get(0);
+    assertNotSame(author, authorCopy);
+    assertEquals(author.toString(), authorCopy.toString());
+    assertEquals(Section.NEWS, authorCopy.getFavouriteSection());
+    // shared references stay shared
+    assertSame(authorCopy, copy.get(1));
+    assertEquals(map, copy.get(2));
+  }
+
+  @Test
+  void shouldPreserveCircularReferences() {
+    Node parent = new Node();
+    Node child = new Node();
+    parent.children.add(child);
+    child.parent = parent;
+    Node copy = (Node) codec.decode(codec.encode(parent));
+    assertSame(copy, copy.children.get(0).parent);
+  }
+
+  @Test
+  void shouldFallBackToJavaSerialization() {
+    ImmutableAuthor author = new ImmutableAuthor(1, "user", "password", "email", "bio", Section.NEWS);
+    ImmutableAuthor copy = (ImmutableAuthor) codec.decode(codec.encode(author));
+    assertEquals(author.getUsername(), copy.getUsername());
+    assertThrows(CacheException.class, () -> codec.encode(new Object()));
+  }
+
+  @Test
+  void shouldPreserveReferencesOfJavaSerializedValues() {
+    ImmutableAuthor author = new ImmutableAuthor(1, "user", "password", "email", "bio", Section.NEWS);
+    Node node = new Node();
+    List<Object> list = new ArrayList<>(Arrays.asList(node, new NodeHolder(node), author, author));
+    @SuppressWarnings("unchecked")
+    List<Object> copy = (List<Object>) codec.decode(codec.encode(list));
+    assertSame(copy.get(0), ((NodeHolder) copy.get(1)).node);
+    assertSame(copy.get(2), copy.get(3));
+    assertThrows(CacheException.class, () -> codec.encode(Arrays.asList(author, new Object())));
+  }
+
+  @Test
+  void shouldBeMoreCompactThanJavaSerialization() {
+    List<Author> authors = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      authors.add(new Author(i, "user" + i, "password", "user" + i + "@example.com", "bio", Section.NEWS));
+    }
+    assertTrue(codec.encode(authors).length < new JavaSerializationCodec().encode(authors).length);
+  }
+
+  @Test
+  void shouldBeConfiguredOnReadWriteCache() {
+    Properties props = new Properties();
+    props.setProperty("codec", BinaryCacheCodec.class.getName());
+    props.setProperty("maxBytes", "100000");
+    Cache cache = new CacheBuilder("default").addDecorator(WeightedCache.class).readWrite(true).properties(props)
+        .build();
+    Author author = new Author(101, "jim", "********", "jim@ibatis.apache.org", "", Section.NEWS);
+    cache.putObject("key", author);
+    Author copy = (Author) cache.getObject("key");
+    assertNotSame(author, copy);
+    assertEquals(author.toString(), copy.toString());
+  }
+
+  public static class Node implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private Node parent;
+    private List<Node> children = new ArrayList<>();
+  }
+
+  public static class NodeHolder implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final Node node;
+
+    public NodeHolder(Node node) {
+      this.node = node;
+    }
+  }
+
+}
@@ -0,0 +1,130 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.impl.OffHeapCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class OffHeapCacheTest {
+
+  @Test
+  void shouldReturnCopiesOfCachedValues() {
+    OffHeapCache cache = new OffHeapCache("default");
+    List<String> value = new ArrayList<>(Collections.nCopies(1000, "a value spanning several blocks"));
+    cache.putObject("key", value);
+    @SuppressWarnings("unchecked")
+    List<String> copy = (List<String>) cache.getObject("key");
+    assertEquals(value, copy);
+    assertNotSame(value, copy);
+    assertNotSame(copy, cache.getObject("key"));
+    assertEquals(1, cache.getSize());
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyUsedItemsWhenFull() throws Exception {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setMaxBytes(4096);
+    cache.setBlockSize(256);
+    cache.setSegments(1);
+    cache.initialize();
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+      assertEquals(i, cache.getObject(i));
+      // keeps the first entry recently used
+      assertEquals(0, cache.getObject(0));
+    }
+    assertEquals(16, cache.getSize());
+    assertEquals(0, cache.getObject(0));
+    assertNull(cache.getObject(1));
+    assertEquals(99, cache.getObject(99));
+    assertEquals(4096, cache.getAllocatedBytes());
+  }
+
+  @Test
+  void shouldNotCacheValuesLargerThanASegment() throws Exception {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setMaxBytes(1024);
+    cache.setSegments(1);
+    cache.initialize();
+    cache.putObject("key", new byte[2048]);
+    assertNull(cache.getObject("key"));
+  }
+
+  @Test
+  void shouldRemoveAndFlushItemsOnDemand() {
+    Cache cache = new OffHeapCache("default");
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    cache.putObject(5, null);
+    assertNull(cache.getObject(5));
+    cache.removeObject(0);
+    assertNull(cache.getObject(0));
+    assertEquals(1, cache.getObject(1));
+    cache.clear();
+    assertNull(cache.getObject(1));
+    assertEquals(0, cache.getSize());
+    cache.putObject(1, 1);
+    assertEquals(1, cache.getObject(1));
+  }
+
+  @Test
+  void shouldRejectNonSerializableValues() {
+    Cache cache = new OffHeapCache("default");
+    assertThrows(CacheException.class, () -> cache.putObject("key", new Object()));
+  }
+
+  @Test
+  void shouldLeaveSerializabilityToTheCodec() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setCodec(StringCodec.class.getName());
+    cache.putObject("key", new StringBuilder("not serializable"));
+    assertEquals("not serializable", cache.getObject("key"));
+  }
+
+  @Test
+  void shouldBeConfiguredByCacheBuilder() {
+    Properties props = new Properties();
+    props.setProperty("maxBytes", "1048576");
+    props.setProperty("segments", "4");
+    Cache cache = new CacheBuilder("default").implementation(OffHeapCache.class).properties(props).build();
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+  }
+
+  public static class StringCodec implements CacheCodec {
+
+    @Override
+    public byte[] encode(Object value) {
+      return value.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Object decode(byte[] data) {
+      return new String(data, StandardCharsets.UTF_8);
+    }
+  }
+
+}
@@ -0,0 +1,136 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.decorators.SingleFlightCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightCacheTest {
+
+  @Test
+  void shouldLoadOnceForConcurrentMisses() throws Exception {
+    SingleFlightCache cache = new SingleFlightCache(new PerpetualCache("default"));
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Object>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        results.add(executor.submit(() -> {
+          start.await();
+          Object value = cache.getObject("key");
+          if (value == null) {
+            // this thread is the loader
+            loads.incrementAndGet();
+            Thread.sleep(100);
+            value = "value";
+            cache.putObject("key", value);
+          }
+          return value;
+        }));
+      }
+      start.countDown();
+      for (Future<Object> result : results) {
+        assertEquals("value", result.get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, loads.get());
+    assertEquals(0, cache.getInFlightCount());
+  }
+
+  @Test
+  void shouldHandOverTheLoadOnRollback() throws Exception {
+    SingleFlightCache cache = new SingleFlightCache(new PerpetualCache("default"));
+    assertNull(cache.getObject("key"));
+    // the loader asking again does not wait for itself
+    assertNull(cache.getObject("key"));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Object> waiter = executor.submit(() -> cache.getObject("key"));
+      Thread.sleep(100);
+      assertFalse(waiter.isDone());
+      cache.removeObject("key");
+      // the waiter is now the loader
+      assertNull(waiter.get(10, TimeUnit.SECONDS));
+      assertEquals(1, cache.getInFlightCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldFailAfterTimeout() throws Exception {
+    SingleFlightCache cache = new SingleFlightCache(new PerpetualCache("default"));
+    cache.setTimeout(50);
+    assertNull(cache.getObject("key"));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Object> waiter = executor.submit(() -> cache.getObject("key"));
+      Exception e = assertThrows(Exception.class, () -> waiter.get(10, TimeUnit.SECONDS));
+      assertTrue(e.getCause() instanceof CacheException);
+    } finally {
+      executor.shutdownNow();
+    }
+    cache.putObject("key", "value");
+    assertEquals(0, cache.getInFlightCount());
+    assertEquals("value", cache.getObject("key"));
+  }
+
+  @Test
+  void shouldStopWaitingForAStuckLoaderWithoutTimeout() throws Exception {
+    SingleFlightCache cache = new SingleFlightCache(new PerpetualCache("default"));
+    // the loader is alive but never puts nor gives up
+    assertNull(cache.getObject("key"));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      long start = System.nanoTime();
+      Future<Object> waiter = executor.submit(() -> cache.getObject("key"));
+      assertNull(waiter.get(SingleFlightCache.DEFAULT_WAIT + 10000, TimeUnit.MILLISECONDS));
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(SingleFlightCache.DEFAULT_WAIT));
+    } finally {
+      executor.shutdownNow();
+    }
+    // the value put by the waiter lands the load of the stuck loader
+    cache.putObject("key", "value");
+    assertEquals(0, cache.getInFlightCount());
+  }
+
+  @Test
+  void shouldBeConfiguredByCacheBuilder() {
+    Properties props = new Properties();
+    props.setProperty("timeout", "1000");
+    Cache cache = new CacheBuilder("default").blocking(true).singleFlight(true).properties(props).build();
+    assertTrue(cache instanceof SingleFlightCache);
+    assertEquals(1000, ((SingleFlightCache) cache).getTimeout());
+  }
+
+}
@@ -0,0 +1,84 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.jupiter.api.Test;
+
+class SynchronizedCacheTest {
+
+  @Test
+  void shouldGuardDelegateAgainstConcurrentAccess() throws Exception {
+    // LruCache 本身不是线程安全的
+    LruCache lru = new LruCache(new PerpetualCache("default"));
+    lru.setSize(10000);
+    Cache cache = new SynchronizedCache(lru);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        final int thread = t;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 1000; i++) {
+            Object key = thread * 1000 + i;
+            cache.putObject(key, i);
+            assertEquals(i, cache.getObject(key));
+            if (i % 2 == 0) {
+              cache.removeObject(key);
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(4000, cache.getSize());
+    cache.clear();
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldAllowReentrantAccessFromDelegate() {
+    Cache[] self = new Cache[1];
+    Cache cache = new SynchronizedCache(new PerpetualCache("default") {
+      @Override
+      public void putObject(Object key, Object value) {
+        super.putObject(key, value);
+        // 被装饰的缓存回调装饰器时不能死锁
+        self[0].getSize();
+      }
+    });
+    self[0] = cache;
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+  }
+
+}
@@ -0,0 +1,108 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class WeightedCacheTest {
+
+  @Test
+  void shouldEvictLeastRecentlyUsedItemsBeyondMaxBytes() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setMaxBytes(300);
+    for (int i = 0; i < 3; i++) {
+      cache.putObject(i, new byte[100]);
+    }
+    assertNotNull(cache.getObject(0));
+    cache.putObject(3, new byte[100]);
+    assertNull(cache.getObject(1));
+    assertNotNull(cache.getObject(0));
+    assertEquals(3, cache.getSize());
+    assertEquals(300, cache.getTotalWeight());
+    // one heavy entry pushes out several light ones
+    cache.putObject(4, new byte[250]);
+    assertEquals(1, cache.getSize());
+    assertEquals(250, cache.getTotalWeight());
+  }
+
+  @Test
+  void shouldNotCacheItemsHeavierThanMaxBytes() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setMaxBytes(100);
+    cache.putObject(0, new byte[10]);
+    cache.putObject(0, new byte[101]);
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getTotalWeight());
+  }
+
+  @Test
+  void shouldWeighListsByTheirContent() {
+    DefaultCacheWeigher weigher = new DefaultCacheWeigher();
+    List<String> small = Collections.singletonList("a");
+    List<String> large = new ArrayList<>();
+    for (int i = 0; i < 50000; i++) {
+      large.add("row " + i);
+    }
+    assertTrue(weigher.weigh("key", large) > 1000 * weigher.weigh("key", small));
+    assertTrue(weigher.weigh("key", Arrays.asList(new Row(1, "first"), new Row(2, "second"))) > 2 * 16);
+  }
+
+  @Test
+  void shouldFlushAllItemsOnDemand() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, Collections.singletonList(i));
+    }
+    assertNotNull(cache.getObject(0));
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getTotalWeight());
+  }
+
+  @Test
+  void shouldUseSerializedSizeInReadWriteCache() {
+    Properties props = new Properties();
+    props.setProperty("maxBytes", "2000");
+    Cache cache = new CacheBuilder("default").addDecorator(WeightedCache.class).readWrite(true).properties(props).build();
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, new ArrayList<>(Collections.nCopies(10, "value " + i)));
+    }
+    assertTrue(cache.getSize() > 0 && cache.getSize() < 100, "size=" + cache.getSize());
+    assertEquals(Collections.nCopies(10, "value 99"), cache.getObject(99));
+  }
+
+  static class Row {
+    private final int id;
+    private final String name;
+
+    Row(int id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+  }
+
+}
@@ -136,6 +136,7 @@ class DefaultCursorTest {
    * Simulate a driver that closes ResultSet automatically when next() returns false (e.g. DB2).
    */
   protected abstract class ImpatientResultSet implements ResultSet {
+    private final String[] columnLabels = { "id", "role" };
     private int rowIndex = -1;
     private List<Map<String, Object>> rows = new ArrayList<>();
 
@@ -169,6 +170,16 @@ class DefaultCursorTest {
       return (Integer) rows.get(rowIndex).get(columnLabel);
     }
 
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+      return getString(columnLabels[columnIndex - 1]);
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+      return getInt(columnLabels[columnIndex - 1]);
+    }
+
     @Override
     public boolean wasNull() throws SQLException {
       throwIfClosed();
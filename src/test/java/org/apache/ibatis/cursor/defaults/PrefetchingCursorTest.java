@@ -0,0 +1,194 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor.defaults;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class PrefetchingCursorTest {
+
+  private static ExecutorService executor;
+
+  @BeforeAll
+  static void setUp() {
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @AfterAll
+  static void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void shouldReturnAllItemsInOrder() {
+    CountingCursor source = new CountingCursor(10, -1);
+    PrefetchingCursor<Integer> cursor = new PrefetchingCursor<>(source, 3, 2, executor);
+    assertFalse(cursor.isOpen());
+    assertEquals(-1, cursor.getCurrentIndex());
+
+    List<Integer> items = new ArrayList<>();
+    Iterator<Integer> iterator = cursor.iterator();
+    assertTrue(cursor.isOpen());
+    while (iterator.hasNext()) {
+      items.add(iterator.next());
+      assertEquals(items.size() - 1, cursor.getCurrentIndex());
+    }
+
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), items);
+    assertTrue(cursor.isConsumed());
+    assertFalse(cursor.isOpen());
+    assertTrue(source.closed);
+    assertThrows(NoSuchElementException.class, iterator::next);
+  }
+
+  @Test
+  void shouldStopReadingWhenClosed() {
+    CountingCursor source = new CountingCursor(10000, -1);
+    PrefetchingCursor<Integer> cursor = new PrefetchingCursor<>(source, 10, 2, executor);
+    Iterator<Integer> iterator = cursor.iterator();
+    assertEquals(0, (int) iterator.next());
+
+    cursor.close();
+
+    assertTrue(source.closed);
+    assertFalse(cursor.isOpen());
+    assertFalse(cursor.isConsumed());
+    assertFalse(iterator.hasNext());
+    // 生产者最多领先队列容量加上正在读的批次
+    assertTrue(source.read.get() <= 10 * 4, "read " + source.read.get());
+  }
+
+  @Test
+  void shouldRethrowFailureOfTheProducer() {
+    CountingCursor source = new CountingCursor(10, 5);
+    PrefetchingCursor<Integer> cursor = new PrefetchingCursor<>(source, 2, 1, executor);
+    Iterator<Integer> iterator = cursor.iterator();
+    for (int i = 0; i < 4; i++) {
+      assertEquals(i, (int) iterator.next());
+    }
+    IllegalStateException e = assertThrows(IllegalStateException.class, iterator::hasNext);
+    assertEquals("row 5", e.getMessage());
+    assertTrue(source.closed);
+  }
+
+  @Test
+  void shouldNotOpenTwoIterators() {
+    PrefetchingCursor<Integer> cursor = new PrefetchingCursor<>(new CountingCursor(3, -1), 2, 1, executor);
+    cursor.iterator();
+    assertThrows(IllegalStateException.class, cursor::iterator);
+    cursor.close();
+  }
+
+  @Test
+  void shouldCloseWhenTheExecutorRejectsTheProducer() {
+    CountingCursor source = new CountingCursor(3, -1);
+    PrefetchingCursor<Integer> cursor = new PrefetchingCursor<>(source, 2, 1, command -> {
+      throw new RejectedExecutionException("full");
+    });
+    assertThrows(RejectedExecutionException.class, cursor::iterator);
+    assertFalse(cursor.isOpen());
+    assertTimeoutPreemptively(Duration.ofSeconds(5), cursor::close);
+    assertTrue(source.closed);
+  }
+
+  @Test
+  void shouldPassItemsInBatches() {
+    List<List<Integer>> batches = new ArrayList<>();
+    new PrefetchingCursor<>(new CountingCursor(7, -1), 2, 2, executor).forEachBatch(3, batches::add);
+    assertEquals(Arrays.asList(Arrays.asList(0, 1, 2), Arrays.asList(3, 4, 5), Arrays.asList(6)), batches);
+  }
+
+  @Test
+  void shouldCloseCursorWhenStreamIsClosed() {
+    CountingCursor source = new CountingCursor(5, -1);
+    try (Stream<Integer> stream = source.stream()) {
+      assertEquals(Arrays.asList(0, 1), stream.limit(2).collect(Collectors.toList()));
+    }
+    assertTrue(source.closed);
+  }
+
+  private static class CountingCursor implements Cursor<Integer> {
+    private final int size;
+    private final int failAt;
+    private final AtomicInteger read = new AtomicInteger();
+    private volatile boolean closed;
+
+    CountingCursor(int size, int failAt) {
+      this.size = size;
+      this.failAt = failAt;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return read.get() > 0 && !closed;
+    }
+
+    @Override
+    public boolean isConsumed() {
+      return read.get() == size;
+    }
+
+    @Override
+    public int getCurrentIndex() {
+      return read.get() - 1;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+      return new Iterator<Integer>() {
+        @Override
+        public boolean hasNext() {
+          return !closed && read.get() < size;
+        }
+
+        @Override
+        public Integer next() {
+          int next = read.getAndIncrement();
+          if (next == failAt) {
+            throw new IllegalStateException("row " + next);
+          }
+          return next;
+        }
+      };
+    }
+  }
+}
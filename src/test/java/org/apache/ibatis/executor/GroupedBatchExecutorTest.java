@@ -0,0 +1,252 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMap;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.apache.ibatis.type.TypeHandlerRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class GroupedBatchExecutorTest extends BaseExecutorTest {
+
+  private static DataSource dataSource;
+
+  @BeforeAll
+  static void setupDataSource() throws Exception {
+    dataSource = createBlogDataSource();
+  }
+
+  @Test
+  void shouldGroupInterleavedStatements() throws Exception {
+    Executor executor = createExecutor(new JdbcTransaction(dataSource, null, false));
+    try {
+      MappedStatement insertAuthor = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      MappedStatement insertBlog = prepareInsertBlogMappedStatement();
+      MappedStatement selectAuthor = ExecutorTestHelper.prepareSelectOneAuthorMappedStatement(config);
+      for (int i = 0; i < 3; i++) {
+        executor.update(insertAuthor, newAuthor(200 + i));
+        executor.update(insertBlog, newBlog(300 + i, 200 + i));
+      }
+      List<BatchResult> results = executor.flushStatements();
+      assertEquals(2, results.size());
+      assertSame(insertAuthor, results.get(0).getMappedStatement());
+      assertEquals(3, results.get(0).getUpdateCounts().length);
+      assertSame(insertBlog, results.get(1).getMappedStatement());
+      assertEquals(3, results.get(1).getParameterObjects().size());
+      assertEquals(1, executor.query(selectAuthor, 202, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER).size());
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  void shouldNotMoveStatementsAheadOfOtherKinds() throws Exception {
+    Executor executor = createExecutor(new JdbcTransaction(dataSource, null, false));
+    try {
+      MappedStatement insertAuthor = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      MappedStatement deleteAuthor = ExecutorTestHelper.prepareDeleteAuthorMappedStatement(config);
+      Author author = newAuthor(210);
+      executor.update(insertAuthor, author);
+      executor.update(deleteAuthor, author);
+      executor.update(insertAuthor, author);
+      List<BatchResult> results = executor.flushStatements();
+      assertEquals(3, results.size());
+      assertSame(insertAuthor, results.get(0).getMappedStatement());
+      assertSame(deleteAuthor, results.get(1).getMappedStatement());
+      assertSame(insertAuthor, results.get(2).getMappedStatement());
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  void shouldNotReorderInterleavedUpdates() throws Exception {
+    Executor executor = createExecutor(new JdbcTransaction(dataSource, null, false));
+    try {
+      MappedStatement updateAuthor = ExecutorTestHelper.prepareUpdateAuthorMappedStatement(config);
+      MappedStatement updateUsername = prepareUpdateUsernameMappedStatement();
+      MappedStatement selectAuthor = ExecutorTestHelper.prepareSelectOneAuthorMappedStatement(config);
+      Author author = new Author(101, "A", "******", "jim@ibatis.apache.org", "", Section.NEWS);
+      executor.update(updateAuthor, author);
+      Map<String, Object> username = new HashMap<>();
+      username.put("id", 101);
+      username.put("username", "B");
+      executor.update(updateUsername, username);
+      author.setUsername("C");
+      executor.update(updateAuthor, author);
+      List<BatchResult> results = executor.flushStatements();
+      assertEquals(3, results.size());
+      List<Author> authors = executor.query(selectAuthor, 101, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      assertEquals("C", authors.get(0).getUsername());
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  void shouldNotMoveStatementsAheadOfNewSqlOfPendingStatement() throws Exception {
+    Executor executor = createExecutor(new JdbcTransaction(dataSource, null, false));
+    try {
+      MappedStatement insertAuthor = prepareInsertAuthorWithOptionalBioMappedStatement();
+      MappedStatement insertBlog = prepareInsertBlogMappedStatement();
+      Author withBio = newAuthor(241);
+      withBio.setBio("bio");
+      executor.update(insertAuthor, withBio);
+      executor.update(insertBlog, newBlog(341, 241));
+      executor.update(insertAuthor, newAuthor(240));
+      executor.update(insertBlog, newBlog(340, 240));
+      List<BatchResult> results = executor.flushStatements();
+      // [a241] [b341] [a240] [b340]: the second blog must not join the batch executed before its author
+      assertEquals(4, results.size());
+      assertSame(insertAuthor, results.get(0).getMappedStatement());
+      assertSame(insertBlog, results.get(1).getMappedStatement());
+      assertEquals(1, results.get(1).getUpdateCounts().length);
+      assertSame(insertAuthor, results.get(2).getMappedStatement());
+      assertSame(insertBlog, results.get(3).getMappedStatement());
+      assertEquals(1, results.get(3).getUpdateCounts().length);
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  void shouldFlushWhenBatchIsFull() throws Exception {
+    config.setBatchFlushSize(2);
+    Executor executor = createExecutor(new JdbcTransaction(dataSource, null, false));
+    try {
+      MappedStatement insertAuthor = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      MappedStatement insertBlog = prepareInsertBlogMappedStatement();
+      for (int i = 0; i < 3; i++) {
+        executor.update(insertAuthor, newAuthor(220 + i));
+        executor.update(insertBlog, newBlog(320 + i, 220 + i));
+      }
+      List<BatchResult> results = executor.flushStatements();
+      // [a0, a1] [b0] flushed by a1, then [b1, b2] [a2] flushed by b2
+      assertEquals(4, results.size());
+      assertSame(insertAuthor, results.get(0).getMappedStatement());
+      assertEquals(2, results.get(0).getUpdateCounts().length);
+      assertSame(insertBlog, results.get(1).getMappedStatement());
+      assertEquals(1, results.get(1).getUpdateCounts().length);
+      assertSame(insertBlog, results.get(2).getMappedStatement());
+      assertEquals(2, results.get(2).getUpdateCounts().length);
+      assertSame(insertAuthor, results.get(3).getMappedStatement());
+      assertEquals(1, results.get(3).getUpdateCounts().length);
+      assertEquals(0, executor.flushStatements().size());
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  void shouldFlushWhenByteBudgetIsReached() throws Exception {
+    config.setBatchFlushBytes(1);
+    Executor executor = createExecutor(new JdbcTransaction(dataSource, null, false));
+    try {
+      MappedStatement insertAuthor = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      executor.update(insertAuthor, newAuthor(230));
+      executor.update(insertAuthor, newAuthor(231));
+      List<BatchResult> results = executor.flushStatements();
+      assertEquals(2, results.size());
+      assertEquals(1, results.get(0).getUpdateCounts().length);
+      assertEquals(1, results.get(1).getUpdateCounts().length);
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Override
+  protected Executor createExecutor(Transaction transaction) {
+    return new GroupedBatchExecutor(config, transaction);
+  }
+
+  private Author newAuthor(int id) {
+    return new Author(id, "someone" + id, "******", "someone@apache.org", null, Section.NEWS);
+  }
+
+  private Map<String, Object> newBlog(int id, int authorId) {
+    Map<String, Object> blog = new HashMap<>();
+    blog.put("id", id);
+    blog.put("authorId", authorId);
+    blog.put("title", "Blog " + id);
+    return blog;
+  }
+
+  private MappedStatement prepareUpdateUsernameMappedStatement() {
+    final TypeHandlerRegistry registry = config.getTypeHandlerRegistry();
+    List<ParameterMapping> parameterMappings = new ArrayList<>();
+    parameterMappings.add(new ParameterMapping.Builder(config, "username", registry.getTypeHandler(String.class)).build());
+    parameterMappings.add(new ParameterMapping.Builder(config, "id", registry.getTypeHandler(int.class)).build());
+    return new MappedStatement.Builder(config, "updateUsername",
+        new StaticSqlSource(config, "UPDATE author SET username = ? WHERE id = ?"), SqlCommandType.UPDATE)
+        .parameterMap(new ParameterMap.Builder(config, "defaultParameterMap", Map.class, parameterMappings).build())
+        .build();
+  }
+
+  private MappedStatement prepareInsertAuthorWithOptionalBioMappedStatement() {
+    final TypeHandlerRegistry registry = config.getTypeHandlerRegistry();
+    return new MappedStatement.Builder(config, "insertAuthorWithOptionalBio", parameterObject -> {
+      List<ParameterMapping> parameterMappings = new ArrayList<>();
+      parameterMappings.add(new ParameterMapping.Builder(config, "id", registry.getTypeHandler(int.class)).build());
+      parameterMappings.add(new ParameterMapping.Builder(config, "username", registry.getTypeHandler(String.class)).build());
+      parameterMappings.add(new ParameterMapping.Builder(config, "password", registry.getTypeHandler(String.class)).build());
+      parameterMappings.add(new ParameterMapping.Builder(config, "email", registry.getTypeHandler(String.class)).build());
+      if (((Author) parameterObject).getBio() == null) {
+        return new BoundSql(config, "INSERT INTO author (id,username,password,email) values(?,?,?,?)", parameterMappings, parameterObject);
+      }
+      parameterMappings.add(new ParameterMapping.Builder(config, "bio", registry.getTypeHandler(String.class)).build());
+      return new BoundSql(config, "INSERT INTO author (id,username,password,email,bio) values(?,?,?,?,?)", parameterMappings, parameterObject);
+    }, SqlCommandType.INSERT).build();
+  }
+
+  private MappedStatement prepareInsertBlogMappedStatement() {
+    final TypeHandlerRegistry registry = config.getTypeHandlerRegistry();
+    List<ParameterMapping> parameterMappings = new ArrayList<>();
+    parameterMappings.add(new ParameterMapping.Builder(config, "id", registry.getTypeHandler(int.class)).build());
+    parameterMappings.add(new ParameterMapping.Builder(config, "authorId", registry.getTypeHandler(int.class)).build());
+    parameterMappings.add(new ParameterMapping.Builder(config, "title", registry.getTypeHandler(String.class)).build());
+    return new MappedStatement.Builder(config, "insertBlog",
+        new StaticSqlSource(config, "INSERT INTO blog (id,author_id,title) values(?,?,?)"), SqlCommandType.INSERT)
+        .parameterMap(new ParameterMap.Builder(config, "defaultParameterMap", Map.class, parameterMappings).build())
+        .build();
+  }
+
+}
@@ -15,7 +15,16 @@
  */
 package org.apache.ibatis.executor;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
 import org.junit.jupiter.api.Test;
 
 class ReuseExecutorTest extends BaseExecutorTest {
@@ -30,6 +39,88 @@ class ReuseExecutorTest extends BaseExecutorTest {
     super.shouldFetchPostWithBlogWithCompositeKey();
   }
 
+  @Test
+  void shouldKeepStatementsAcrossTransactionsUpToCacheSize() throws Exception {
+    config.setReuseStatementCacheSize(1);
+    ReuseExecutor executor = new ReuseExecutor(config, new JdbcTransaction(BaseDataTest.createBlogDataSource(), null, false));
+    try {
+      MappedStatement selectOne = ExecutorTestHelper.prepareSelectOneAuthorMappedStatement(config);
+      MappedStatement selectAll = ExecutorTestHelper.prepareSelectAllAuthorsAutoMappedStatement(config);
+      executor.query(selectOne, 101, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      executor.commit(true);
+      executor.query(selectOne, 101, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      executor.rollback(true);
+      executor.query(selectOne, 102, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      assertEquals(2, executor.getStatementHitCount());
+      assertEquals(1, executor.getStatementMissCount());
+      executor.query(selectAll, null, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      executor.query(selectOne, 101, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      assertEquals(2, executor.getStatementHitCount());
+      assertEquals(3, executor.getStatementMissCount());
+      assertEquals(2, executor.getStatementEvictionCount());
+    } finally {
+      executor.close(false);
+    }
+  }
+
+  @Test
+  void shouldCloseStatementsAtCommitByDefault() throws Exception {
+    ReuseExecutor executor = new ReuseExecutor(config, new JdbcTransaction(BaseDataTest.createBlogDataSource(), null, false));
+    try {
+      MappedStatement selectOne = ExecutorTestHelper.prepareSelectOneAuthorMappedStatement(config);
+      executor.query(selectOne, 101, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      executor.query(selectOne, 102, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      executor.commit(true);
+      executor.query(selectOne, 101, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      assertEquals(1, executor.getStatementHitCount());
+      assertEquals(2, executor.getStatementMissCount());
+      assertEquals(0, executor.getStatementEvictionCount());
+    } finally {
+      executor.close(false);
+    }
+  }
+
+  @Test
+  void shouldCountStatementsOfWrappedExecutors() throws Exception {
+    config.setReuseStatementCacheSize(1);
+    Executor executor = config.newExecutor(new JdbcTransaction(BaseDataTest.createBlogDataSource(), null, false),
+        ExecutorType.REUSE);
+    assertTrue(executor instanceof CachingExecutor);
+    try {
+      MappedStatement selectOne = ExecutorTestHelper.prepareSelectOneAuthorMappedStatement(config);
+      MappedStatement selectAll = ExecutorTestHelper.prepareSelectAllAuthorsAutoMappedStatement(config);
+      executor.query(selectOne, 101, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      executor.query(selectOne, 102, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      executor.query(selectAll, null, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      ReuseStatementStatistics statistics = config.getReuseStatementStatistics();
+      assertEquals(1, statistics.getHitCount());
+      assertEquals(2, statistics.getMissCount());
+      assertEquals(1, statistics.getEvictionCount());
+    } finally {
+      executor.close(false);
+    }
+  }
+
+  @Test
+  void shouldCanonicalizeWhitespaceOutsideQuotes() {
+    assertEquals("select * from author where id = ?",
+        ReuseExecutor.canonicalize("  select *\n  from author\n\twhere id = ?  "));
+    assertEquals("select 'a  b', \"c\t d\" from t where x = 'it''s  ok'",
+        ReuseExecutor.canonicalize("select  'a  b',\n\"c\t d\" from t where x = 'it''s  ok'"));
+    String canonical = "select * from author";
+    assertSame(canonical, ReuseExecutor.canonicalize(canonical));
+    String comment = "select * -- all columns\n  from author";
+    assertSame(comment, ReuseExecutor.canonicalize(comment));
+    String blockComment = "select /*+ index(a) */  *  from author a";
+    assertSame(blockComment, ReuseExecutor.canonicalize(blockComment));
+    String escapedQuote = "select 'it\\'s  ok'  from author";
+    assertSame(escapedQuote, ReuseExecutor.canonicalize(escapedQuote));
+    String hashComment = "select * # all columns\n  from author";
+    assertSame(hashComment, ReuseExecutor.canonicalize(hashComment));
+    String dollarQuoted = "select $$a  b$$  from author";
+    assertSame(dollarQuoted, ReuseExecutor.canonicalize(dollarQuoted));
+  }
+
   @Override
   protected Executor createExecutor(Transaction transaction) {
     return new ReuseExecutor(config,transaction);
@@ -0,0 +1,49 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.LocalDateTimeTypeHandler;
+import org.apache.ibatis.type.OffsetDateTimeTypeHandler;
+import org.apache.ibatis.type.OffsetTimeTypeHandler;
+import org.apache.ibatis.type.StringTypeHandler;
+import org.apache.ibatis.type.ZonedDateTimeTypeHandler;
+import org.junit.jupiter.api.Test;
+
+class BufferedRowResultSetTest {
+
+  @Test
+  void shouldRejectVendorTemporalColumns() {
+    assertTrue(BufferedRowResultSet.supportsColumn(JdbcType.TIMESTAMP, "java.sql.Timestamp"));
+    assertTrue(BufferedRowResultSet.supportsColumn(JdbcType.VARCHAR, "java.lang.String"));
+    assertFalse(BufferedRowResultSet.supportsColumn(JdbcType.TIMESTAMP, "oracle.sql.TIMESTAMP"));
+    assertFalse(BufferedRowResultSet.supportsColumn(JdbcType.TIMESTAMP_WITH_TIMEZONE, "java.time.OffsetDateTime"));
+    assertFalse(BufferedRowResultSet.supportsColumn(JdbcType.SQLXML, "java.sql.SQLXML"));
+    assertFalse(BufferedRowResultSet.supportsColumn(null, "oracle.sql.TIMESTAMPTZ"));
+  }
+
+  @Test
+  void shouldRejectJavaTimeTypeHandlersWithZone() {
+    assertTrue(BufferedRowResultSet.supportsTypeHandler(new StringTypeHandler()));
+    assertTrue(BufferedRowResultSet.supportsTypeHandler(new LocalDateTimeTypeHandler()));
+    assertFalse(BufferedRowResultSet.supportsTypeHandler(new OffsetDateTimeTypeHandler()));
+    assertFalse(BufferedRowResultSet.supportsTypeHandler(new OffsetTimeTypeHandler()));
+    assertFalse(BufferedRowResultSet.supportsTypeHandler(new ZonedDateTimeTypeHandler()));
+  }
+
+}
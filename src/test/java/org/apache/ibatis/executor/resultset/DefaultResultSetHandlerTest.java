@@ -16,6 +16,7 @@
 package org.apache.ibatis.executor.resultset;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -87,7 +88,7 @@ class DefaultResultSetHandlerTest {
     when(rs.getMetaData()).thenReturn(rsmd);
     when(rs.getType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
     when(rs.next()).thenReturn(true).thenReturn(false);
-    when(rs.getInt("CoLuMn1")).thenReturn(100);
+    when(rs.getInt(1)).thenReturn(100);
     when(rsmd.getColumnCount()).thenReturn(1);
     when(rsmd.getColumnLabel(1)).thenReturn("CoLuMn1");
     when(rsmd.getColumnType(1)).thenReturn(Types.INTEGER);
@@ -101,6 +102,38 @@ class DefaultResultSetHandlerTest {
     assertEquals(100, ((HashMap) results.get(0)).get("cOlUmN1"));
   }
 
+  @Test
+  void shouldShareColumnPlanAcrossExecutions() throws Exception {
+    final MappedStatement ms = getMappedStatement();
+    final RowBounds rowBounds = new RowBounds(0, 100);
+
+    when(stmt.getResultSet()).thenReturn(rs);
+    when(rs.getMetaData()).thenReturn(rsmd);
+    when(rs.getType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
+    when(rs.next()).thenReturn(true, false, true, false);
+    when(rs.getInt(1)).thenReturn(100, 200);
+    when(rsmd.getColumnCount()).thenReturn(1);
+    when(rsmd.getColumnLabel(1)).thenReturn("CoLuMn1");
+    when(rsmd.getColumnType(1)).thenReturn(Types.INTEGER);
+    when(rsmd.getColumnClassName(1)).thenReturn(Integer.class.getCanonicalName());
+    when(stmt.getConnection()).thenReturn(conn);
+    when(conn.getMetaData()).thenReturn(dbmd);
+    when(dbmd.supportsMultipleResultSets()).thenReturn(false);
+
+    final List<Object> first = new DefaultResultSetHandler(null, ms, null, null, null, rowBounds).handleResultSets(stmt);
+    final ColumnPlan plan = ms.getColumnPlans().values().iterator().next();
+    final List<Object> second = new DefaultResultSetHandler(null, ms, null, null, null, rowBounds).handleResultSets(stmt);
+    assertEquals(100, ((HashMap) first.get(0)).get("cOlUmN1"));
+    assertEquals(200, ((HashMap) second.get(0)).get("cOlUmN1"));
+    assertEquals(1, ms.getColumnPlans().size());
+    assertSame(plan, ms.getColumnPlans().values().iterator().next());
+    assertEquals(1, plan.propertyColumns[0]);
+
+    final ResultSetWrapper rsw = new ResultSetWrapper(rs, ms.getConfiguration());
+    assertEquals(1, rsw.getColumnIndex("column1"));
+    assertEquals(0, rsw.getColumnIndex("column2"));
+  }
+
   @Test
   void shouldThrowExceptionWithColumnName() throws Exception {
     final MappedStatement ms = getMappedStatement();
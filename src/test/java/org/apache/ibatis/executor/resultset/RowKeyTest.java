@@ -0,0 +1,90 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class RowKeyTest {
+
+  @Test
+  void shouldFindMaterializedKeyWithScratchKey() {
+    RowKey root = RowKey.scratch(0);
+    root.reset(null);
+    root.update("users");
+    root.update("ID");
+    root.update(1);
+    RowKey child = RowKey.scratch(1);
+    child.reset(root);
+    child.update("groups");
+    child.update("GROUP_ID");
+    child.update(new byte[] { 1, 2 });
+
+    Map<RowKey, Object> objects = new HashMap<>();
+    objects.put(root.materialize(), "user");
+    objects.put(child.materialize(), "group");
+    assertSame(child.materialize(), child.materialize());
+
+    // next row, same user and group
+    root.reset(null);
+    root.update("users");
+    root.update("ID");
+    root.update(1);
+    child.reset(root);
+    child.update("groups");
+    child.update("GROUP_ID");
+    child.update(new byte[] { 1, 2 });
+    assertEquals("user", objects.get(root));
+    assertEquals("group", objects.get(child));
+
+    // same group in another user
+    root.reset(null);
+    root.update("users");
+    root.update("ID");
+    root.update(2);
+    child.reset(root);
+    child.update("groups");
+    child.update("GROUP_ID");
+    child.update(new byte[] { 1, 2 });
+    assertNull(objects.get(root));
+    assertNull(objects.get(child));
+  }
+
+  @Test
+  void shouldNotChangeMaterializedKeyWhenScratchKeyIsReused() {
+    RowKey scratch = RowKey.scratch(0);
+    scratch.reset(null);
+    scratch.update("users");
+    scratch.update(null);
+    RowKey stored = scratch.materialize();
+    scratch.reset(null);
+    scratch.update("users");
+    scratch.update("other");
+    assertNotEquals(stored, scratch);
+    assertEquals(2, stored.getUpdateCount());
+    scratch.reset(null);
+    scratch.update("users");
+    scratch.update(null);
+    assertEquals(stored, scratch);
+    assertEquals(stored.hashCode(), scratch.hashCode());
+    assertNotSame(stored, scratch.materialize());
+  }
+
+}
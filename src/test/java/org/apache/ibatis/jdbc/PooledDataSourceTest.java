@@ -17,6 +17,9 @@ package org.apache.ibatis.jdbc;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.WeakReference;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -24,10 +27,21 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.pooled.LatencyHistogram;
+import org.apache.ibatis.datasource.pooled.PoolListener;
+import org.apache.ibatis.datasource.pooled.PoolMode;
 import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.io.Resources;
 import org.hsqldb.jdbc.JDBCConnection;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -91,6 +105,490 @@ class PooledDataSourceTest extends BaseDataTest {
     c.close();
   }
 
+  @Test
+  void shouldProperlyMaintainPoolOf3ActiveAnd2IdleConnectionsInConcurrentMode() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolMode(PoolMode.CONCURRENT);
+      ds.setDefaultAutoCommit(false);
+      ds.setPoolMaximumActiveConnections(3);
+      ds.setPoolMaximumIdleConnections(2);
+      ds.setPoolMaximumCheckoutTime(10000);
+      ds.setPoolPingConnectionsNotUsedFor(1);
+      ds.setPoolPingEnabled(true);
+      ds.setPoolPingQuery("SELECT * FROM PRODUCT");
+      ds.setPoolTimeToWait(10000);
+      List<Connection> connections = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        connections.add(ds.getConnection());
+      }
+      assertEquals(3, ds.getPoolState().getActiveConnectionCount());
+      for (Connection c : connections) {
+        c.close();
+      }
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(4, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+      assertEquals(0, ds.getPoolState().getHadToWaitCount());
+      assertEquals(0, ds.getPoolState().getClaimedOverdueConnectionCount());
+      assertNotNull(ds.getPoolState().toString());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldShareConnectionsBetweenThreadsInConcurrentMode() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolMode(PoolMode.CONCURRENT);
+    ds.setPoolMaximumActiveConnections(2);
+    ds.setPoolMaximumIdleConnections(2);
+    ds.setPoolTimeToWait(100);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < 50; j++) {
+            try (Connection c = ds.getConnection()) {
+              executeHsqldbQuery(c);
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+      assertEquals(400, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldHandOffConnectionsToWaitingThreadsInSynchronizedMode() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolMaximumActiveConnections(2);
+    ds.setPoolMaximumIdleConnections(2);
+    // 等待的线程必须被归还连接的线程唤醒，而不是等到超时
+    ds.setPoolTimeToWait(60000);
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < 25; j++) {
+            try (Connection c = ds.getConnection()) {
+              executeHsqldbQuery(c);
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+      assertEquals(400, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(0, ds.getPoolState().getWaitingThreadCount());
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldWakeUpWaitingThreadWhenConnectionIsReturned() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolMaximumActiveConnections(1);
+    ds.setPoolMaximumIdleConnections(1);
+    ds.setPoolTimeToWait(60000);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Connection first = ds.getConnection();
+      Future<Boolean> waiting = executor.submit(() -> {
+        try (Connection c = ds.getConnection()) {
+          return c.isValid(1);
+        }
+      });
+      long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+      while (ds.getPoolState().getWaitingThreadCount() == 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(1, ds.getPoolState().getWaitingThreadCount());
+      first.close();
+      assertTrue(waiting.get(10, TimeUnit.SECONDS));
+      assertEquals(1, ds.getPoolState().getHadToWaitCount());
+      assertEquals(0, ds.getPoolState().getWaitingThreadCount());
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldWaitWithoutTimeoutInConcurrentMode() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolMode(PoolMode.CONCURRENT);
+    ds.setPoolMaximumActiveConnections(1);
+    ds.setPoolTimeToWait(0);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Connection first = ds.getConnection();
+      Connection realConnection = first.unwrap(Connection.class);
+      AtomicLong waiterId = new AtomicLong();
+      Future<Connection> waiting = executor.submit(() -> {
+        waiterId.set(Thread.currentThread().getId());
+        try (Connection c = ds.getConnection()) {
+          return c.unwrap(Connection.class);
+        }
+      });
+      long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+      while (ds.getPoolState().getWaitingThreadCount() == 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(1, ds.getPoolState().getWaitingThreadCount());
+      // the waiter blocks instead of spinning
+      ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      long cpuTime = threads.getThreadCpuTime(waiterId.get());
+      Thread.sleep(200);
+      assertTrue(threads.getThreadCpuTime(waiterId.get()) - cpuTime < TimeUnit.MILLISECONDS.toNanos(50));
+      assertFalse(waiting.isDone());
+      first.close();
+      assertSame(realConnection, waiting.get(10, TimeUnit.SECONDS));
+      assertEquals(1, ds.getPoolState().getHadToWaitCount());
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldReleaseReservedSlotWhenOpeningFailsInConcurrentMode() throws Exception {
+    Properties props = Resources.getResourceAsProperties(JPETSTORE_PROPERTIES);
+    AtomicInteger failures = new AtomicInteger(3);
+    UnpooledDataSource unpooled = new UnpooledDataSource(props.getProperty("driver"), props.getProperty("url"),
+        props.getProperty("username"), props.getProperty("password")) {
+      @Override
+      public Connection getConnection() throws SQLException {
+        if (failures.getAndDecrement() > 0) {
+          throw new IllegalStateException("driver failure");
+        }
+        return super.getConnection();
+      }
+    };
+    PooledDataSource ds = new PooledDataSource(unpooled);
+    ds.setPoolMode(PoolMode.CONCURRENT);
+    ds.setPoolMaximumActiveConnections(1);
+    ds.setPoolTimeToWait(100);
+    try {
+      for (int i = 0; i < 3; i++) {
+        assertThrows(IllegalStateException.class, ds::getConnection);
+      }
+      assertEquals(0, ds.getPoolState().getTotalConnectionCount());
+      try (Connection c = ds.getConnection()) {
+        executeHsqldbQuery(c);
+      }
+      assertEquals(0, ds.getPoolState().getHadToWaitCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldClaimOverdueConnectionInConcurrentMode() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolMode(PoolMode.CONCURRENT);
+    ds.setPoolMaximumActiveConnections(1);
+    ds.setPoolMaximumCheckoutTime(50);
+    try {
+      Connection leaked = ds.getConnection();
+      Thread.sleep(100);
+      Connection claimed = ds.getConnection();
+      assertEquals(1, ds.getPoolState().getClaimedOverdueConnectionCount());
+      assertThrows(SQLException.class, leaked::getAutoCommit);
+      executeHsqldbQuery(claimed);
+      leaked.close();
+      claimed.close();
+      assertEquals(1, ds.getPoolState().getBadConnectionCount());
+      assertEquals(1, ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldSelectPoolModeFromFactoryProperties() throws Exception {
+    Properties props = Resources.getResourceAsProperties(JPETSTORE_PROPERTIES);
+    Properties factoryProps = new Properties();
+    factoryProps.setProperty("driver", props.getProperty("driver"));
+    factoryProps.setProperty("url", props.getProperty("url"));
+    factoryProps.setProperty("username", props.getProperty("username"));
+    factoryProps.setProperty("password", props.getProperty("password"));
+    factoryProps.setProperty("poolMode", "CONCURRENT");
+    PooledDataSourceFactory factory = new PooledDataSourceFactory();
+    factory.setProperties(factoryProps);
+    PooledDataSource ds = (PooledDataSource) factory.getDataSource();
+    assertEquals(PoolMode.CONCURRENT, ds.getPoolMode());
+    try (Connection c = ds.getConnection()) {
+      assertEquals(1, ds.getPoolState().getActiveConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldWarmUpMinimumIdleConnections() throws Exception {
+    for (PoolMode mode : PoolMode.values()) {
+      PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+      ds.setPoolMode(mode);
+      ds.setPoolMinimumIdleConnections(3);
+      try {
+        ds.warmUp();
+        waitForIdleConnections(ds, 3);
+        assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+        try (Connection c = ds.getConnection()) {
+          assertEquals(1, ds.getPoolState().getActiveConnectionCount());
+          // the filler tops the pool up again in the background
+          waitForIdleConnections(ds, 3);
+        }
+        assertTrue(ds.getPoolState().getIdleConnectionCount() <= ds.getPoolMaximumIdleConnections());
+      } finally {
+        ds.forceCloseAll();
+      }
+    }
+  }
+
+  @Test
+  void shouldDiscardBrokenIdleConnectionsInTheBackground() throws Exception {
+    for (PoolMode mode : PoolMode.values()) {
+      PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+      ds.setPoolMode(mode);
+      ds.setPoolHousekeepingInterval(50);
+      try {
+        Connection c = ds.getConnection();
+        Connection realConnection = PooledDataSource.unwrapConnection(c);
+        c.close();
+        assertEquals(1, ds.getPoolState().getIdleConnectionCount());
+        realConnection.close();
+        waitForIdleConnections(ds, 0);
+        // the housekeeper takes the connection out of the pool before validating it
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (ds.getPoolState().getBadConnectionCount() == 0 && System.currentTimeMillis() < deadline) {
+          Thread.sleep(10);
+        }
+        assertEquals(1, ds.getPoolState().getBadConnectionCount());
+      } finally {
+        ds.setPoolHousekeepingInterval(0);
+      }
+    }
+  }
+
+  @Test
+  void shouldRetireExpiredAndIdleConnectionsInTheBackground() throws Exception {
+    for (PoolMode mode : PoolMode.values()) {
+      PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+      ds.setPoolMode(mode);
+      ds.setPoolIdleTimeout(100);
+      ds.setPoolHousekeepingInterval(50);
+      try {
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+          connections.add(ds.getConnection());
+        }
+        for (Connection c : connections) {
+          c.close();
+        }
+        assertEquals(3, ds.getPoolState().getIdleConnectionCount());
+        waitForIdleConnections(ds, 0);
+
+        ds.setPoolMaximumLifetime(100);
+        ds.setPoolIdleTimeout(0);
+        Connection c = ds.getConnection();
+        Thread.sleep(150);
+        c.close();
+        // expired connections are closed on return instead of going back to the pool
+        assertEquals(0, ds.getPoolState().getIdleConnectionCount());
+        assertEquals(0, ds.getPoolState().getBadConnectionCount());
+      } finally {
+        ds.setPoolHousekeepingInterval(0);
+      }
+    }
+  }
+
+  @Test
+  void shouldStopHousekeepingWhenClosed() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolMinimumIdleConnections(1);
+    ds.setPoolHousekeepingInterval(20);
+    try {
+      waitForIdleConnections(ds, 1);
+      ds.close();
+      assertEquals(0, ds.getPoolState().getIdleConnectionCount());
+      // the housekeeper would warm the pool up again
+      Thread.sleep(200);
+      assertEquals(0, ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      ds.setPoolHousekeepingInterval(0);
+    }
+  }
+
+  @Test
+  void shouldNotKeepUnusedDataSourceAliveForHousekeeping() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolHousekeepingInterval(20);
+    WeakReference<PooledDataSource> reference = new WeakReference<>(ds);
+    ds = null;
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (reference.get() != null && System.currentTimeMillis() < deadline) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertNull(reference.get());
+  }
+
+  @Test
+  void shouldRestoreStatementSettingsBeforeReuse() throws Exception {
+    String sql = "SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS";
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolPreparedStatementCacheSize(1);
+    try {
+      int maxRows;
+      int queryTimeout;
+      int fetchSize;
+      try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+        maxRows = ps.getMaxRows();
+        queryTimeout = ps.getQueryTimeout();
+        fetchSize = ps.getFetchSize();
+        ps.setMaxRows(maxRows + 5);
+        ps.setQueryTimeout(queryTimeout + 7);
+        ps.setFetchSize(fetchSize + 11);
+      }
+      try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+        assertEquals(maxRows, ps.getMaxRows());
+        assertEquals(queryTimeout, ps.getQueryTimeout());
+        assertEquals(fetchSize, ps.getFetchSize());
+      }
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldReusePreparedStatementsAcrossCheckouts() throws Exception {
+    String sql = "SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS";
+    for (PoolMode mode : PoolMode.values()) {
+      PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+      ds.setPoolMode(mode);
+      ds.setPoolPreparedStatementCacheSize(1);
+      try {
+        PreparedStatement first;
+        try (Connection c = ds.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+          first = ps.unwrap(PreparedStatement.class);
+          executeHsqldbQuery(c);
+        }
+        try (Connection c = ds.getConnection()) {
+          PreparedStatement ps = c.prepareStatement(sql);
+          assertSame(first, ps.unwrap(PreparedStatement.class));
+          // the statement is in use, so preparing it again must not return the same one
+          try (PreparedStatement other = c.prepareStatement(sql)) {
+            assertNotSame(first, other.unwrap(PreparedStatement.class));
+          }
+          ps.close();
+          assertTrue(ps.isClosed());
+          assertFalse(first.isClosed());
+          assertThrows(SQLException.class, ps::executeQuery);
+          // a different statement evicts the least recently used one
+          c.prepareStatement("SELECT 2 FROM INFORMATION_SCHEMA.SYSTEM_USERS").close();
+          assertTrue(first.isClosed());
+        }
+      } finally {
+        ds.forceCloseAll();
+      }
+    }
+  }
+
+  @Test
+  void shouldRecordMetricsAndNotifyListeners() throws Exception {
+    for (PoolMode mode : PoolMode.values()) {
+      PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+      ds.setPoolMode(mode);
+      ds.setPoolMaximumIdleConnections(1);
+      AtomicInteger created = new AtomicInteger();
+      AtomicInteger checkedOut = new AtomicInteger();
+      AtomicInteger returned = new AtomicInteger();
+      List<PoolListener.EvictionCause> evicted = new ArrayList<>();
+      ds.addPoolListener(new PoolListener() {
+        @Override
+        public void connectionCreated(Connection connection, long elapsedMicros) {
+          created.incrementAndGet();
+        }
+
+        @Override
+        public void connectionCheckedOut(Connection connection, long waitMicros) {
+          checkedOut.incrementAndGet();
+        }
+
+        @Override
+        public void connectionReturned(Connection connection, long checkoutMicros) {
+          returned.incrementAndGet();
+        }
+
+        @Override
+        public synchronized void connectionEvicted(Connection connection, EvictionCause cause) {
+          evicted.add(cause);
+        }
+      });
+      try {
+        Connection c1 = ds.getConnection();
+        Connection c2 = ds.getConnection();
+        assertEquals(2, ds.getPoolState().getTotalConnectionCount());
+        c1.close();
+        c2.close();
+        assertEquals(2, created.get());
+        assertEquals(2, checkedOut.get());
+        assertEquals(2, returned.get());
+        assertEquals(1, evicted.size());
+        assertEquals(PoolListener.EvictionCause.SURPLUS, evicted.get(0));
+        assertEquals(2, ds.getPoolState().getCreatedConnectionCount());
+        assertEquals(1, ds.getPoolState().getTotalConnectionCount());
+        assertEquals(0, ds.getPoolState().getWaitingThreadCount());
+        assertEquals(2, ds.getPoolState().getRequestTimeHistogram().getCount());
+        assertEquals(2, ds.getPoolState().getCheckoutTimeHistogram().getCount());
+        assertEquals(2, ds.getPoolState().getCreationTimeHistogram().getCount());
+      } finally {
+        ds.forceCloseAll();
+      }
+      assertEquals(PoolListener.EvictionCause.FORCED, evicted.get(1));
+    }
+  }
+
+  @Test
+  void shouldReportHistogramPercentilesWithBoundedError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getValueAtPercentile(99));
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+    assertEquals(1000, histogram.getCount());
+    assertEquals(1000, histogram.getMax());
+    assertEquals(500, histogram.getMean());
+    long p50 = histogram.getValueAtPercentile(50);
+    assertTrue(p50 >= 500 && p50 <= 500 + 500 / 32, "p50=" + p50);
+    long p99 = histogram.getValueAtPercentile(99);
+    assertTrue(p99 >= 990 && p99 <= 990 + 990 / 32, "p99=" + p99);
+    assertEquals(1000, histogram.getValueAtPercentile(100));
+  }
+
   @Disabled("See the comments")
   @Test
   void shouldReconnectWhenServerKilledLeakedConnection() throws Exception {
@@ -144,4 +642,19 @@ class PooledDataSourceTest extends BaseDataTest {
       }
     }
   }
+
+  private void executeHsqldbQuery(Connection con) throws SQLException {
+    try (PreparedStatement st = con.prepareStatement("SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS");
+         ResultSet rs = st.executeQuery()) {
+      assertTrue(rs.next());
+    }
+  }
+
+  private void waitForIdleConnections(PooledDataSource ds, int expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (ds.getPoolState().getIdleConnectionCount() != expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, ds.getPoolState().getIdleConnectionCount());
+  }
 }
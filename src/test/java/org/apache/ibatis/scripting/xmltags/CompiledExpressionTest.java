@@ -0,0 +1,111 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.scripting.xmltags;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import ognl.Ognl;
+
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class CompiledExpressionTest {
+
+  private static final Configuration CONFIGURATION = new Configuration();
+
+  @Test
+  void shouldEvaluateLikeOgnlWithBeanParameter() throws Exception {
+    Author author = new Author(1, "cbegin", null, "", "N/A", Section.NEWS);
+    Map<String, Object> bindings = new DynamicContext(CONFIGURATION, author).getBindings();
+    for (String expression : new String[] {
+        "username", "username != null", "username != null and username != ''", "password == null",
+        "username == 'cbegin'", "username eq \"cbegin\"", "username neq 'norm'", "id > 0", "id gte 2", "id <= 1",
+        "id lt 1", "id == 1", "!(id == 1)", "not id", "username != null && username.length() > 3",
+        "password != null || id > 0", "password or username", "username and password", "favouriteSection",
+        "favouriteSection != null", "email.isEmpty()", "_parameter != null", "_databaseId == null" }) {
+      assertSameResultAsOgnl(expression, bindings);
+    }
+  }
+
+  @Test
+  void shouldEvaluateLikeOgnlWithMapParameter() throws Exception {
+    Map<String, Object> nested = new HashMap<>();
+    nested.put("name", "nested");
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("ids", Arrays.asList(1, 2, 3));
+    parameter.put("names", Arrays.asList("a", "b"));
+    parameter.put("empty", Collections.emptyList());
+    parameter.put("name", "a");
+    parameter.put("nested", nested);
+    parameter.put("count", 3L);
+    parameter.put("flag", Boolean.FALSE);
+    Map<String, Object> bindings = new DynamicContext(CONFIGURATION, parameter).getBindings();
+    for (String expression : new String[] {
+        "ids", "ids != null and ids.size() > 0", "ids.isEmpty()", "names.size() == 2", "name == 'ab'",
+        "name == \"a\"", "name != null and name != ''", "empty.isEmpty()", "nested.name", "nested.size",
+        "nested.isEmpty", "nested.name.length() >= 5", "count > 10", "count == 3", "flag", "flag == true", "!flag",
+        "missing", "missing == null" }) {
+      assertSameResultAsOgnl(expression, bindings);
+    }
+  }
+
+  @Test
+  void shouldNotCompileUnsupportedExpressions() {
+    for (String expression : new String[] { "ids[0]", "1 + 1", "@java.lang.Math@max(1, 2)", "#this", "a ? b : c",
+        "name in {'a', 'b'}", "list.contains('a')", "size()", "1.5 > 1", "name == 'a\\'b'", "a.b(", "(a", "a ==" }) {
+      assertNull(CompiledExpression.compile(expression), expression);
+    }
+  }
+
+  @Test
+  void shouldFallBackToOgnlForUnhandledCases() {
+    Map<String, Object> bindings = new DynamicContext(CONFIGURATION, new HashMap<>()).getBindings();
+    CompiledExpression nullTarget = CompiledExpression.compile("missing.name");
+    assertNotNull(nullTarget);
+    assertSame(CompiledExpression.FALLBACK, assertThrows(RuntimeException.class, () -> nullTarget.getValue(bindings)));
+
+    bindings.put("array", new int[] { 1 });
+    CompiledExpression arrayLength = CompiledExpression.compile("array.length");
+    assertSame(CompiledExpression.FALLBACK, assertThrows(RuntimeException.class, () -> arrayLength.getValue(bindings)));
+    assertEquals(1, OgnlCache.getValue("array.length", bindings));
+
+    // OGNL 比较 String 与 Character 时抛出 NumberFormatException，由 OGNL 重新求值并报告
+    bindings.put("name", "a");
+    CompiledExpression character = CompiledExpression.compile("name == 'a'");
+    assertSame(CompiledExpression.FALLBACK, assertThrows(RuntimeException.class, () -> character.getValue(bindings)));
+    assertThrows(NumberFormatException.class, () -> OgnlCache.getValue("name == 'a'", bindings));
+  }
+
+  private void assertSameResultAsOgnl(String expression, Map<String, Object> bindings) throws Exception {
+    CompiledExpression compiled = CompiledExpression.compile(expression);
+    assertNotNull(compiled, expression);
+    Object expected = Ognl.getValue(Ognl.parseExpression(expression),
+        Ognl.createDefaultContext(bindings, new OgnlMemberAccess(), new OgnlClassResolver(), null), bindings);
+    assertEquals(expected, compiled.getValue(bindings), expression);
+  }
+
+}
@@ -0,0 +1,126 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.scripting.xmltags;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.scripting.LanguageDriver;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class DynamicSqlProgramTest {
+
+  private static final String[] SCRIPTS = {
+      "select * from blog where id = #{id}",
+      "select * from blog where ${column} = #{id}",
+      "select * from blog <where> <if test='id != null'> and id = #{id}</if> <if test='name != null'>OR name = #{name}</if> </where>",
+      "select * from blog <where> <if test='missing != null'> and id = #{id}</if> </where> order by id",
+      "update blog <set> <if test='name != null'>name = #{name},</if> <if test='id != null'>id = #{id},</if> </set> where id = #{id}",
+      "select * from blog <trim prefix='WHERE' prefixOverrides='and |or ' suffix='!' suffixOverrides=','> and a = 1, </trim>",
+      "select * from blog <choose> <when test='id == 0'>a</when> <when test='id == 1'>b = #{id}</when> <otherwise>c</otherwise> </choose> d",
+      "select * from blog <choose> <when test='id == 0'>a</when> </choose> d",
+      "select * from blog where id in <foreach collection='ids' item='item' open='(' separator=',' close=')'>#{item}</foreach>",
+      "select * from blog where id in <foreach collection='ids' item='item' index='i' open='(' separator=', ' close=')'>#{ item , jdbcType=INTEGER} + #{i}</foreach>",
+      "select * from blog where <foreach collection='ids' item='item' separator=' or '><if test='item != 2'>id = #{item}</if></foreach>",
+      "select * from blog where <foreach collection='map' item='value' index='key' separator=' and '>${key} = #{value}</foreach>",
+      "select * from blog <foreach collection='empty' item='item' open='where (' close=')'>#{item}</foreach> x",
+      "insert into blog values <foreach collection='rows' item='row' separator=','>(<foreach collection='row' item='col' separator=','>#{col} #{row[0]} #{ids[0]}</foreach>)</foreach>",
+      "insert into blog values <foreach collection='rows' item='row' index='i' separator=','><foreach collection='row' item='i' separator=','>#{i} #{row,javaType=java.lang.Object}</foreach></foreach>",
+      "select <foreach collection='ids' item='item' separator=','><trim prefix='(' suffix=')' prefixOverrides='and'>and #{item} <if test='item > 1'>and #{item,jdbcType=INTEGER}</if></trim></foreach>",
+      "select <foreach collection='ids' item='item' separator=','><where>#{item}</where></foreach>",
+      "select <foreach collection='ids' item='item'><bind name='x' value='item * 2'/>#{x} ${x}</foreach> #{x}",
+      "select <bind name='pattern' value=\"'%' + column + '%'\"/> #{pattern} <if test='id != null'></if> <if test='id != null'> </if>",
+      "select <foreach collection='ids' item='item' separator=','> </foreach> <foreach collection='ids' item='item' separator=','><if test='item > 1'>#{item}</if></foreach>",
+      "select <foreach collection='ids' item='item' separator=','>a\\#{item} #{item}</foreach>",
+      "select <foreach collection='ids' item='item'>#{__frch_item_0} #{itemx} #{item:VARCHAR}</foreach>",
+      "select * from blog where id in <foreach collection='ids' item='id' open='(' separator=',' close=')' mode='bucket'> #{id,jdbcType=INTEGER} </foreach>",
+      "select a <if test='id != null'>b</if> c <where> d <if test='id != null'>e</if> f </where> g",
+  };
+
+  @Test
+  void shouldRenderSameSqlAsTree() {
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("id", 1);
+    parameter.put("name", "a");
+    parameter.put("column", "title");
+    parameter.put("ids", Arrays.asList(1, 2, 3));
+    parameter.put("empty", Collections.emptyList());
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("title", "t");
+    map.put("author", "a");
+    parameter.put("map", map);
+    parameter.put("rows", Arrays.asList(Arrays.asList(1, 2), Collections.emptyList(), Arrays.asList(3)));
+    for (String script : SCRIPTS) {
+      assertEquals(render(script, parameter, false), render(script, parameter, true), script);
+    }
+  }
+
+  @Test
+  void shouldRenderSameSqlAsTreeWithEmptyParameter() {
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("ids", Collections.emptyList());
+    parameter.put("empty", Collections.emptyList());
+    parameter.put("map", Collections.emptyMap());
+    parameter.put("rows", Collections.emptyList());
+    parameter.put("id", 0);
+    parameter.put("name", null);
+    parameter.put("column", "id");
+    for (String script : SCRIPTS) {
+      assertEquals(render(script, parameter, false), render(script, parameter, true), script);
+    }
+  }
+
+  @Test
+  void shouldNotCompileTreeWithCustomNode() {
+    Configuration configuration = new Configuration();
+    SqlNode custom = context -> {
+      context.appendSql("custom");
+      return true;
+    };
+    SqlNode supported = new MixedSqlNode(Arrays.asList(new StaticTextSqlNode("a"),
+        new WhereSqlNode(configuration, new StaticTextSqlNode("b"))));
+    SqlNode unsupported = new MixedSqlNode(Arrays.asList(new StaticTextSqlNode("a"),
+        new WhereSqlNode(configuration, custom)));
+    assertTrue(DynamicSqlProgram.compile(supported) instanceof DynamicSqlProgram);
+    assertSame(unsupported, DynamicSqlProgram.compile(unsupported));
+  }
+
+  private String render(String script, Object parameter, boolean compiled) {
+    Configuration configuration = new Configuration();
+    configuration.setCompiledDynamicSql(compiled);
+    LanguageDriver driver = configuration.getDefaultScriptingLanguageInstance();
+    SqlSource sqlSource = driver.createSqlSource(configuration, "<script>" + script + "</script>", Object.class);
+    BoundSql boundSql = sqlSource.getBoundSql(parameter);
+    List<String> parameters = boundSql.getParameterMappings().stream().map(ParameterMapping::getProperty)
+        .map(property -> property + "=" + (boundSql.hasAdditionalParameter(property) ? boundSql.getAdditionalParameter(property) : "?"))
+        .collect(Collectors.toList());
+    return boundSql.getSql() + " " + parameters;
+  }
+
+}
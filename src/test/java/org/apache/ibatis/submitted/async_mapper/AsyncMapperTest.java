@@ -0,0 +1,129 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.async_mapper;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Reader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AsyncMapperTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/async_mapper/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/async_mapper/CreateDB.sql");
+  }
+
+  @Test
+  void shouldRunQueriesAsynchronously() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      CompletableFuture<User> user = mapper.getUser(2);
+      CompletableFuture<List<User>> users = mapper.getUsers().toCompletableFuture();
+      CompletableFuture<List<User>> annotated = mapper.getUsersAnnotated();
+      CompletableFuture<Map<Integer, User>> userMap = mapper.getUserMap();
+      assertEquals("User2", user.join().getName());
+      assertEquals(3, users.join().size());
+      assertEquals("User3", annotated.join().get(2).getName());
+      assertEquals("User1", userMap.join().get(1).getName());
+      assertEquals("User1", mapper.findUser(1).join().get().getName());
+      assertFalse(mapper.findUser(9).join().isPresent());
+    }
+  }
+
+  @Test
+  void shouldUseBoundedDefaultExecutor() {
+    Executor executor = sqlSessionFactory.getConfiguration().getAsyncExecutor();
+    assertSame(executor, new Configuration().getAsyncExecutor());
+    assertTrue(executor instanceof ThreadPoolExecutor);
+    assertEquals(Runtime.getRuntime().availableProcessors(), ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+  }
+
+  @Test
+  void shouldRunOnConfiguredExecutor() {
+    AtomicInteger tasks = new AtomicInteger();
+    List<String> threads = new CopyOnWriteArrayList<>();
+    Executor executor = command -> {
+      tasks.incrementAndGet();
+      new Thread(() -> {
+        threads.add(Thread.currentThread().getName());
+        command.run();
+      }, "custom-async").start();
+    };
+    sqlSessionFactory.getConfiguration().setAsyncExecutor(executor);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertEquals("User1", mapper.getUser(1).join().getName());
+      assertEquals(1, tasks.get());
+      assertEquals(Collections.singletonList("custom-async"), threads);
+    }
+  }
+
+  @Test
+  void shouldCommitAsynchronousInsert() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertEquals(Integer.valueOf(1), mapper.insertUser(new User(4, "User4")).join());
+      // the caller's session is not involved
+      sqlSession.rollback(true);
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals("User4", sqlSession.getMapper(Mapper.class).getUser(4).join().getName());
+    }
+  }
+
+  @Test
+  void shouldCompleteExceptionally() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      CompletableFuture<Integer> duplicate = mapper.insertUser(new User(1, "User1"));
+      assertThrows(CompletionException.class, duplicate::join);
+    }
+  }
+
+  @Test
+  void shouldNotReturnCursorAsynchronously() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertThrows(BindingException.class, mapper::getUserCursor);
+    }
+  }
+
+}
@@ -0,0 +1,115 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.compiled_row_mapping;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Reader;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.result.ResultMapException;
+import org.apache.ibatis.executor.resultset.CompiledRowMapper;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CompiledRowMappingTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/compiled_row_mapping/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/compiled_row_mapping/CreateDB.sql");
+  }
+
+  @BeforeEach
+  void resetSettings() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    configuration.setCallSettersOnNulls(false);
+    configuration.setReturnInstanceForEmptyRow(false);
+  }
+
+  @Test
+  void shouldMapLikeTheReflectiveMapping() {
+    List<Item> compiled = select(Mapper::selectItems, true);
+    List<Item> reflective = select(Mapper::selectItems, false);
+    assertEquals(reflective.toString(), compiled.toString());
+    // the row of nulls is not returned
+    assertEquals(3, compiled.size());
+    assertNull(compiled.get(0));
+    assertTrue(CompiledRowMapper.class.isAssignableFrom(loadClass(compiled.get(1).getLabelSetBy())));
+    assertFalse(CompiledRowMapper.class.isAssignableFrom(loadClass(reflective.get(1).getLabelSetBy())));
+  }
+
+  @Test
+  void shouldApplyEmptyRowAndNullSettings() {
+    sqlSessionFactory.getConfiguration().setCallSettersOnNulls(true);
+    sqlSessionFactory.getConfiguration().setReturnInstanceForEmptyRow(true);
+    List<Item> compiled = select(Mapper::selectItems, true);
+    List<Item> reflective = select(Mapper::selectItems, false);
+    assertEquals(reflective.toString(), compiled.toString());
+    assertNotNull(compiled.get(0));
+  }
+
+  @Test
+  void shouldFallBackForNonPublicTypes() {
+    List<HiddenItem> compiled = select(Mapper::selectHiddenItems, true);
+    assertEquals(select(Mapper::selectHiddenItems, false).toString(), compiled.toString());
+    assertEquals("1,apple", compiled.get(1).toString());
+    // no mapper was generated, the rows were mapped by reflection
+    assertFalse(CompiledRowMapper.class.isAssignableFrom(loadClass(compiled.get(1).getItemNameSetBy())));
+  }
+
+  @Test
+  void shouldReportTheColumnOfInlinedGetterErrors() {
+    for (boolean compiledRowMapping : new boolean[] { true, false }) {
+      PersistenceException e = assertThrows(PersistenceException.class,
+          () -> select(Mapper::selectItemsWithTextId, compiledRowMapping));
+      assertTrue(e.getCause() instanceof ResultMapException);
+      assertTrue(e.getCause().getMessage().startsWith("Error attempting to get column #1 from result set."));
+    }
+  }
+
+  private <T> List<T> select(Function<Mapper, List<T>> query, boolean compiledRowMapping) {
+    sqlSessionFactory.getConfiguration().setCompiledRowMapping(compiledRowMapping);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      return query.apply(sqlSession.getMapper(Mapper.class));
+    } finally {
+      sqlSessionFactory.getConfiguration().setCompiledRowMapping(true);
+    }
+  }
+
+  private Class<?> loadClass(String className) {
+    try {
+      return className.contains("CompiledRowMapper") ? CompiledRowMapper.class : Class.forName(className);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
@@ -0,0 +1,31 @@
+--
+--    Copyright 2009-2019 the original author or authors.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--       http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+drop table item if exists;
+
+create table item (
+  id int,
+  item_name varchar(20),
+  price decimal(10,2),
+  quantity int,
+  active boolean,
+  code bigint,
+  created timestamp
+);
+
+insert into item (id, item_name, price, quantity, active, code, created) values (1, 'apple', 1.50, 10, true, 100, '2019-01-01 10:00:00');
+insert into item (id, item_name, price, quantity, active, code, created) values (2, 'pear', null, null, false, 200, null);
+insert into item (id, item_name, price, quantity, active, code, created) values (null, null, null, null, null, null, null);
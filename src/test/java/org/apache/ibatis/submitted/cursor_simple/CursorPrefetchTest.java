@@ -0,0 +1,120 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cursor_simple;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.defaults.PrefetchingCursor;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class CursorPrefetchTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cursor_simple/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    sqlSessionFactory.getConfiguration().setCursorPrefetchSize(2);
+    sqlSessionFactory.getConfiguration().setCursorPrefetchQueueSize(1);
+
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/cursor_simple/CreateDB.sql");
+  }
+
+  @Test
+  void shouldPrefetchAllUsers() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Cursor<User> cursor = sqlSession.getMapper(Mapper.class).getAllUsersPrefetched();
+      assertTrue(cursor instanceof PrefetchingCursor);
+
+      List<String> names = new ArrayList<>();
+      Iterator<User> iterator = cursor.iterator();
+      while (iterator.hasNext()) {
+        names.add(iterator.next().getName());
+        assertEquals(names.size() - 1, cursor.getCurrentIndex());
+      }
+      assertEquals(Arrays.asList("User1", "User2", "User3", "User4", "User5"), names);
+      assertTrue(cursor.isConsumed());
+      cursor.close();
+    }
+  }
+
+  @Test
+  void shouldNotPrefetchWithoutOptIn() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession();
+        Cursor<User> cursor = sqlSession.getMapper(Mapper.class).getAllUsers()) {
+      assertFalse(cursor instanceof PrefetchingCursor);
+    }
+  }
+
+  @Test
+  void shouldPrefetchWithRowBounds() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession();
+        Cursor<User> cursor = sqlSession.selectCursor("getAllUsersPrefetched", null, new RowBounds(1, 3))) {
+      List<String> names = new ArrayList<>();
+      for (User user : cursor) {
+        names.add(user.getName());
+      }
+      assertEquals(Arrays.asList("User2", "User3", "User4"), names);
+      assertEquals(3, cursor.getCurrentIndex());
+      assertTrue(cursor.isConsumed());
+    }
+  }
+
+  @Test
+  void shouldStreamUsers() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Cursor<User> cursor = sqlSession.getMapper(Mapper.class).getAllUsersPrefetched();
+      try (Stream<User> users = cursor.stream()) {
+        assertEquals(Arrays.asList("User1", "User2", "User3"),
+            users.limit(3).map(User::getName).collect(Collectors.toList()));
+      }
+      assertFalse(cursor.isOpen());
+      assertFalse(cursor.isConsumed());
+    }
+  }
+
+  @Test
+  void shouldFetchUsersInBatches() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession();
+        Cursor<User> cursor = sqlSession.getMapper(Mapper.class).getAllUsersPrefetched()) {
+      List<Integer> sizes = new ArrayList<>();
+      cursor.forEachBatch(3, batch -> sizes.add(batch.size()));
+      assertEquals(Arrays.asList(3, 2), sizes);
+    }
+  }
+
+}
@@ -24,6 +24,8 @@ public interface Mapper {
 
   Cursor<User> getAllUsers();
 
+  Cursor<User> getAllUsersPrefetched();
+
   @Select({
     "select null id, null name from (values (0))",
     "union all",
@@ -0,0 +1,105 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.foreach_mode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class ForEachModeTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/foreach_mode/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/foreach_mode/CreateDB.sql");
+  }
+
+  @Test
+  void shouldSelectWithBucketedInList() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertEquals(Collections.singletonList("User2"), mapper.selectNamesIn(Collections.singletonList(2)));
+      assertEquals(Arrays.asList("User1", "User3", "User4"), mapper.selectNamesIn(Arrays.asList(4, 1, 3)));
+      assertEquals(Arrays.asList("User1", "User2", "User3", "User5"), mapper.selectNamesIn(Arrays.asList(1, 2, 3, 5, 9)));
+    }
+  }
+
+  @Test
+  void shouldShareSqlBetweenListsOfSameBucket() {
+    MappedStatement ms = sqlSessionFactory.getConfiguration().getMappedStatement("selectNamesIn");
+    BoundSql five = ms.getBoundSql(Collections.singletonMap("list", Arrays.asList(1, 2, 3, 4, 5)));
+    BoundSql seven = ms.getBoundSql(Collections.singletonMap("list", Arrays.asList(1, 2, 3, 4, 5, 6, 7)));
+    BoundSql nine = ms.getBoundSql(Collections.singletonMap("list", Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9)));
+    assertEquals(five.getSql(), seven.getSql());
+    assertNotEquals(five.getSql(), nine.getSql());
+    assertEquals(8, five.getParameterMappings().size());
+    assertEquals(16, nine.getParameterMappings().size());
+    String last = five.getParameterMappings().get(7).getProperty();
+    assertEquals(5, five.getAdditionalParameter(last));
+  }
+
+  @Test
+  void shouldSelectWithArrayParameter() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertEquals(Arrays.asList("User1", "User3", "User4"), mapper.selectNamesInArray(Arrays.asList(4, 1, 3)));
+      BoundSql boundSql = sqlSessionFactory.getConfiguration().getMappedStatement("selectNamesInArray")
+          .getBoundSql(Collections.singletonMap("list", Arrays.asList(1, 2, 3, 4, 5, 6, 7)));
+      assertEquals(1, boundSql.getParameterMappings().size());
+      assertTrue(boundSql.getAdditionalParameter(boundSql.getParameterMappings().get(0).getProperty()) instanceof Integer[]);
+    }
+  }
+
+  @Test
+  void shouldRejectBodyOtherThanItemParameter() {
+    Configuration configuration = new Configuration();
+    for (String body : new String[] { "#{id} + 1", "#{other}", "(#{id})", "<if test='id != null'>#{id}</if>" }) {
+      String script = "<script>select * from users where id in <foreach item='id' collection='list' mode='bucket'>"
+          + body + "</foreach></script>";
+      assertThrows(BuilderException.class,
+          () -> configuration.getDefaultScriptingLanguageInstance().createSqlSource(configuration, script, Object.class),
+          body);
+    }
+    String script = "<script><foreach item='id' collection='list' mode='all'>#{id}</foreach></script>";
+    assertThrows(BuilderException.class,
+        () -> configuration.getDefaultScriptingLanguageInstance().createSqlSource(configuration, script, Object.class));
+  }
+
+}
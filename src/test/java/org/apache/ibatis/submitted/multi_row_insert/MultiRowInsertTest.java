@@ -0,0 +1,122 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.multi_row_insert;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MultiRowInsertTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/multi_row_insert/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/multi_row_insert/CreateDB.sql");
+    SqlRecorder.preparedSql.clear();
+  }
+
+  @Test
+  void shouldRewriteBatchOfInserts() {
+    shouldRewriteBatchOfInserts(false);
+  }
+
+  @Test
+  void shouldRewriteGroupedBatchOfInserts() {
+    shouldRewriteBatchOfInserts(true);
+  }
+
+  private void shouldRewriteBatchOfInserts(boolean grouping) {
+    sqlSessionFactory.getConfiguration().setBatchGrouping(grouping);
+    List<User> users = new ArrayList<>();
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 0; i < 5; i++) {
+        User user = new User(null, "User" + i);
+        users.add(user);
+        mapper.insertUser(user);
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(1, results.size());
+      assertArrayEquals(new int[] { 1, 1, 1, 1, 1 }, results.get(0).getUpdateCounts());
+      sqlSession.commit();
+    }
+    // parameter limit of 2: chunks of 2, 2 and 1 rows, the first statement is reused for the second chunk
+    assertEquals(Arrays.asList(
+        "insert into users (name) values (?), (?)",
+        "insert into users (name) values (?)"), SqlRecorder.preparedSql);
+    for (int i = 0; i < 5; i++) {
+      assertNotNull(users.get(i).getId());
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<User> stored = sqlSession.getMapper(Mapper.class).getUsers();
+      assertEquals(5, stored.size());
+      for (int i = 0; i < 5; i++) {
+        assertEquals(users.get(i).getId(), stored.get(i).getId());
+        assertEquals("User" + i, stored.get(i).getName());
+      }
+    }
+  }
+
+  @Test
+  void shouldKeepLiteralsOfEachRow() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertUserWithId(10);
+      mapper.insertUserWithId(11);
+      mapper.insertUserWithId(12);
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(3, results.get(0).getUpdateCounts().length);
+      sqlSession.commit();
+    }
+    assertEquals("insert into users (id, name) values (?, 'fixed'), (?, 'fixed')", SqlRecorder.preparedSql.get(0));
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<User> stored = sqlSession.getMapper(Mapper.class).getUsers();
+      assertEquals(3, stored.size());
+      assertEquals(Integer.valueOf(12), stored.get(2).getId());
+      assertEquals("fixed", stored.get(2).getName());
+    }
+  }
+
+  @Test
+  void shouldReportFailedChunk() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertUser(new User(null, "User"));
+      mapper.insertUser(new User(null, "a name that is much too long for the column"));
+      Exception e = assertThrows(Exception.class, sqlSession::flushStatements);
+      assertTrue(e.getMessage().contains("insertUser (batch index #1) failed"), e.getMessage());
+    }
+  }
+
+}
@@ -0,0 +1,106 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.nested_result_streaming;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class NestedResultStreamingTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/nested_result_streaming/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/nested_result_streaming/CreateDB.sql");
+  }
+
+  @Test
+  void shouldHandOutCompleteUsersToResultHandler() {
+    List<User> users = new ArrayList<>();
+    List<String> seen = new ArrayList<>();
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      // no resultOrdered on the statement, the safe result handler check must not complain
+      sqlSession.select("getAllUsers", context -> {
+        User user = (User) context.getResultObject();
+        // the user is complete when handed out
+        seen.add(user.getId() + ":" + user.getGroups().size() + ":" + user.getRoles().size());
+        users.add(user);
+      });
+    }
+    assertEquals(4, users.size());
+    assertEquals("[1:2:3, 2:1:3, 3:3:1, 4:2:2]", seen.toString());
+    // nothing was added to a user after it was handed out
+    for (int i = 0; i < users.size(); i++) {
+      User user = users.get(i);
+      assertEquals(seen.get(i), user.getId() + ":" + user.getGroups().size() + ":" + user.getRoles().size());
+    }
+  }
+
+  @Test
+  void shouldStreamUsersFromCursor() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      try (Cursor<User> cursor = sqlSession.getMapper(Mapper.class).getAllUsers()) {
+        Iterator<User> iterator = cursor.iterator();
+        User user = iterator.next();
+        assertEquals(Integer.valueOf(1), user.getId());
+        assertEquals(2, user.getGroups().size());
+        assertEquals(3, user.getRoles().size());
+        user = iterator.next();
+        assertEquals(1, user.getGroups().size());
+        assertEquals(3, user.getRoles().size());
+        user = iterator.next();
+        assertEquals(3, user.getGroups().size());
+        assertEquals(1, user.getRoles().size());
+        user = iterator.next();
+        assertEquals(Integer.valueOf(4), user.getId());
+        assertEquals(2, user.getGroups().size());
+        assertEquals(2, user.getRoles().size());
+        assertFalse(iterator.hasNext());
+        assertTrue(cursor.isConsumed());
+      }
+    }
+  }
+
+  @Test
+  void shouldNotChangeListResults() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<User> users = sqlSession.selectList("getAllUsers");
+      assertEquals(4, users.size());
+      assertEquals(2, users.get(0).getGroups().size());
+      assertEquals(3, users.get(0).getRoles().size());
+      assertEquals(2, users.get(3).getRoles().size());
+    }
+  }
+
+}
@@ -0,0 +1,31 @@
+--
+--    Copyright 2009-2019 the original author or authors.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--       http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+drop table items if exists;
+
+create table items (
+  id int primary key,
+  name varchar(20),
+  description clob,
+  price decimal(10, 2),
+  created timestamp,
+  active boolean
+);
+
+insert into items (id, name, description, price, created, active)
+select n, 'Item' || n, 'Description of item ' || n, n * 1.25,
+  timestamp '2019-01-01 00:00:00' + n minute, case when mod(n, 2) = 0 then true else false end
+from unnest(sequence_array(1, 1000, 1)) as t(n);
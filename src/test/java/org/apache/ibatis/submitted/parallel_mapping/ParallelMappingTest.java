@@ -0,0 +1,173 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.parallel_mapping;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class ParallelMappingTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/parallel_mapping/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/parallel_mapping/CreateDB.sql");
+  }
+
+  @Test
+  void shouldReadParallelMappingOption() {
+    assertTrue(sqlSessionFactory.getConfiguration().getMappedStatement("getItems").isParallelMapping());
+    assertTrue(sqlSessionFactory.getConfiguration().getMappedStatement("getItemsAnnotated").isParallelMapping());
+    assertFalse(sqlSessionFactory.getConfiguration().getMappedStatement("getItemsSequentially").isParallelMapping());
+  }
+
+  @Test
+  void shouldMapRowsInOrder() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Item> items = mapper.getItems();
+      List<Item> expected = mapper.getItemsSequentially();
+      assertEquals(1000, items.size());
+      for (int i = 0; i < items.size(); i++) {
+        assertItemEquals(expected.get(i), items.get(i));
+      }
+      Item item = items.get(41);
+      assertEquals(Integer.valueOf(42), item.getId());
+      assertEquals("Item42", item.getName());
+      assertEquals("ITEM42", item.getUpperName());
+      assertEquals("Description of item 42", item.getDescription());
+      assertEquals(new BigDecimal("52.50"), item.getPrice());
+      assertEquals(LocalDateTime.of(2019, 1, 1, 0, 42), item.getCreated());
+      assertTrue(item.isActive());
+    }
+  }
+
+  @Test
+  void shouldMapSingleColumnRows() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<String> descriptions = sqlSession.getMapper(Mapper.class).getDescriptions();
+      assertEquals(1000, descriptions.size());
+      assertEquals("Description of item 1", descriptions.get(0));
+      assertEquals("Description of item 1000", descriptions.get(999));
+    }
+  }
+
+  @Test
+  void shouldMapAnnotatedStatement() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<Item> items = sqlSession.getMapper(Mapper.class).getItemsAnnotated();
+      assertEquals(1000, items.size());
+      assertEquals("Item1000", items.get(999).getName());
+      assertEquals(new BigDecimal("1250.00"), items.get(999).getPrice());
+      assertNull(items.get(999).getDescription());
+    }
+  }
+
+  @Test
+  void shouldApplyRowBounds() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<Item> items = sqlSession.getMapper(Mapper.class).getItems(new RowBounds(100, 300));
+      assertEquals(300, items.size());
+      assertEquals(Integer.valueOf(101), items.get(0).getId());
+      assertEquals(Integer.valueOf(400), items.get(299).getId());
+    }
+  }
+
+  @Test
+  void shouldStopWhenResultHandlerStops() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<Integer> ids = new ArrayList<>();
+      sqlSession.getMapper(Mapper.class).getItems(context -> {
+        ids.add(context.getResultObject().getId());
+        if (ids.size() == 500) {
+          context.stop();
+        }
+      });
+      assertEquals(500, ids.size());
+      for (int i = 0; i < ids.size(); i++) {
+        assertEquals(Integer.valueOf(i + 1), ids.get(i));
+      }
+    }
+  }
+
+  @Test
+  void shouldFetchCursorRowByRow() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession();
+         Cursor<Item> cursor = sqlSession.getMapper(Mapper.class).getItemsCursor()) {
+      int expectedId = 1;
+      for (Item item : cursor) {
+        assertEquals(Integer.valueOf(expectedId++), item.getId());
+      }
+      assertEquals(1001, expectedId);
+    } catch (Exception e) {
+      fail(e);
+    }
+  }
+
+  @Test
+  void shouldMapUnsupportedTypesSequentially() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      // OffsetDateTimeTypeHandler and OffsetTimeTypeHandler read values the row buffer cannot convert
+      List<TimedItem> items = sqlSession.getMapper(Mapper.class).getTimedItems();
+      assertEquals(1000, items.size());
+      TimedItem item = items.get(999);
+      assertEquals(Integer.valueOf(1000), item.getId());
+      assertEquals(LocalDateTime.of(2019, 1, 1, 16, 40), item.getCreated());
+      assertEquals(item.getCreated(), item.getCreatedOffset().toLocalDateTime());
+      assertEquals(item.getCreated().toLocalTime(), item.getCreatedTime().toLocalTime());
+    }
+  }
+
+  @Test
+  void shouldPropagateTypeHandlerErrors() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      PersistenceException e = assertThrows(PersistenceException.class,
+          () -> sqlSession.getMapper(Mapper.class).getItemsFailing());
+      assertTrue(e.getMessage().contains("Cannot convert fail"), e.getMessage());
+    }
+  }
+
+  private void assertItemEquals(Item expected, Item actual) {
+    assertEquals(expected.getId(), actual.getId());
+    assertEquals(expected.getName(), actual.getName());
+    assertEquals(expected.getUpperName(), actual.getUpperName());
+    assertEquals(expected.getDescription(), actual.getDescription());
+    assertEquals(expected.getPrice(), actual.getPrice());
+    assertEquals(expected.getCreated(), actual.getCreated());
+    assertEquals(expected.isActive(), actual.isActive());
+  }
+
+}
@@ -0,0 +1,61 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.parallel_mapping;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+
+public class TimedItem {
+
+  private Integer id;
+  private LocalDateTime created;
+  private OffsetDateTime createdOffset;
+  private OffsetTime createdTime;
+
+  public Integer getId() {
+    return id;
+  }
+
+  public void setId(Integer id) {
+    this.id = id;
+  }
+
+  public LocalDateTime getCreated() {
+    return created;
+  }
+
+  public void setCreated(LocalDateTime created) {
+    this.created = created;
+  }
+
+  public OffsetDateTime getCreatedOffset() {
+    return createdOffset;
+  }
+
+  public void setCreatedOffset(OffsetDateTime createdOffset) {
+    this.createdOffset = createdOffset;
+  }
+
+  public OffsetTime getCreatedTime() {
+    return createdTime;
+  }
+
+  public void setCreatedTime(OffsetTime createdTime) {
+    this.createdTime = createdTime;
+  }
+
+}